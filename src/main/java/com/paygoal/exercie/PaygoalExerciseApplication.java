@@ -2,8 +2,10 @@ package com.paygoal.exercie;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 
 @SpringBootApplication
+@ConfigurationPropertiesScan
 public class PaygoalExerciseApplication {
 	public static void main(String[] args) {
 		SpringApplication.run(PaygoalExerciseApplication.class, args);
@@ -0,0 +1,132 @@
+package com.paygoal.exercie.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.paygoal.exercie.configuration.ProductCacheProperties;
+import com.paygoal.exercie.dto.CacheStatsDto;
+import com.paygoal.exercie.dto.ProductDto;
+import com.paygoal.exercie.event.ProductChangedEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Read-through cache of {@link ProductDto} by id, bounded by size and TTL (Caffeine uses W-TinyLFU admission).
+ * Entries are dropped only once the writing transaction has committed.
+ */
+@Component
+public class ProductCache implements MeterBinder {
+
+    private final Cache<Long, ProductDto> cache;
+    private final boolean enabled;
+    // Bumped before every invalidation so a load that raced with a commit never publishes its stale result
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public ProductCache(ProductCacheProperties properties) {
+        this.enabled = properties.isEnabled();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfterWrite(properties.getExpireAfterWrite())
+                .recordStats()
+                .build();
+    }
+
+    public ProductDto get(Long id, Function<Long, ProductDto> loader) {
+        if (!enabled) {
+            return loader.apply(id);
+        }
+        ProductDto cached = cache.getIfPresent(id);
+        if (cached != null) {
+            return copyOf(cached);
+        }
+
+        long stamp = invalidationStamp();
+        ProductDto loaded = loader.apply(id);
+        putIfNotInvalidated(id, loaded, stamp);
+        // The loader may hand the same instance to every caller it coalesced, each one gets its own like on a hit
+        return copyOf(loaded);
+    }
+
+    /**
+     * To be taken before a load that does not go through {@link #get}, and handed back with its result to
+     * {@link #putIfNotInvalidated}.
+     */
+    public long invalidationStamp() {
+        return invalidations.get();
+    }
+
+    /**
+     * Caches a product loaded after {@link #invalidationStamp()}, unless something was invalidated since.
+     */
+    public void putIfNotInvalidated(Long id, ProductDto loaded, long stamp) {
+        if (!enabled) {
+            return;
+        }
+        ProductDto entry = copyOf(loaded);
+        // compute() and invalidate() serialize on the key, so an invalidation can never slip between check and put
+        cache.asMap().compute(id, (key, current) -> invalidations.get() == stamp ? entry : current);
+    }
+
+    /**
+     * Cached product without loading it, or null when it is not cached.
+     */
+    public ProductDto getIfPresent(Long id) {
+        if (!enabled) {
+            return null;
+        }
+        ProductDto cached = cache.getIfPresent(id);
+        return cached != null ? copyOf(cached) : null;
+    }
+
+    public void invalidate(Long id) {
+        invalidations.incrementAndGet();
+        cache.invalidate(id);
+    }
+
+    @Order(0)
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        if (event.getType() != ProductChangedEvent.Type.CREATED) {
+            invalidate(event.getProductId());
+        }
+    }
+
+    public CacheStatsDto stats() {
+        CacheStats stats = cache.stats();
+        return CacheStatsDto.builder()
+                .size(cache.estimatedSize())
+                .hitCount(stats.hitCount())
+                .missCount(stats.missCount())
+                .hitRate(stats.hitRate())
+                .evictionCount(stats.evictionCount())
+                .build();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "products");
+    }
+
+    Cache<Long, ProductDto> nativeCache() {
+        return cache;
+    }
+
+    static ProductDto copyOf(ProductDto productDto) {
+        return ProductDto.builder()
+                .id(productDto.getId())
+                .name(productDto.getName())
+                .description(productDto.getDescription())
+                .price(productDto.getPrice())
+                .stock(productDto.getStock())
+                .version(productDto.getVersion())
+                .build();
+    }
+}
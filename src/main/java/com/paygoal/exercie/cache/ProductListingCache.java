@@ -0,0 +1,234 @@
+package com.paygoal.exercie.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.paygoal.exercie.configuration.ListingCacheProperties;
+import com.paygoal.exercie.dto.ProductFilter;
+import com.paygoal.exercie.dto.ProductPage;
+import com.paygoal.exercie.event.ProductChangedEvent;
+import com.paygoal.exercie.utils.ProductETags;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Listing responses kept as the bytes sent on the wire, plain and gzipped, per query (filters, cursor and size).
+ * A hit skips the query, the mapping and Jackson altogether.
+ * <p>
+ * Every committed write bumps a catalog version, and an entry is only fresh while the version it was built at is the
+ * current one. The version is read before the page is loaded, so a write committing during the build leaves the
+ * entry stale from the start. Listings served from the {@link ProductPriceIndex} only see a write once the index has
+ * applied it, after the commit, so the index bumps the version again then with {@link #invalidate()}.
+ * With stale-while-revalidate an outdated entry is still served, and one rebuild per query runs on the application
+ * task executor; a reader may then see the catalog as it was before its own write.
+ */
+@Slf4j
+@Component
+public class ProductListingCache implements MeterBinder {
+
+    private final ListingCacheProperties properties;
+    private final ObjectMapper objectMapper;
+    private final Executor executor;
+    private final Cache<Key, Listing> cache;
+    private final AtomicLong catalogVersion = new AtomicLong();
+    private final Set<Key> refreshing = ConcurrentHashMap.newKeySet();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder builds = new LongAdder();
+
+    public ProductListingCache(ListingCacheProperties properties, ObjectMapper objectMapper,
+                               @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME) Executor executor) {
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+        this.executor = executor;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(properties.getMaximumSize().toBytes())
+                .weigher((Key key, Listing listing) -> listing.getJson().length + listing.getGzip().length)
+                .build();
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * The serialized listing for the query, built with loader when there is no usable entry.
+     * Exceptions of the loader, such as invalid filters, are thrown as they are and nothing is cached.
+     */
+    public Listing get(ProductFilter filter, String cursor, Integer size, Supplier<ProductPage> loader) {
+        Key key = new Key(filter, cursor, size);
+        Listing cached = cache.getIfPresent(key);
+        if (cached != null) {
+            if (cached.getCatalogVersion() == catalogVersion.get()) {
+                hits.increment();
+                return cached;
+            }
+            if (properties.isStaleWhileRevalidate()) {
+                staleHits.increment();
+                refreshInBackground(key, loader);
+                return cached;
+            }
+        }
+        return build(key, loader);
+    }
+
+    public long catalogVersion() {
+        return catalogVersion.get();
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        catalogVersion.incrementAndGet();
+    }
+
+    /**
+     * Makes every entry stale, for a source of listings that reflects committed writes some time after the commit.
+     */
+    public void invalidate() {
+        catalogVersion.incrementAndGet();
+    }
+
+    private Listing build(Key key, Supplier<ProductPage> loader) {
+        long version = catalogVersion.get();
+        ProductPage page = loader.get();
+        Listing listing = serialize(page, version);
+        builds.increment();
+        // A slower build of an older version must not replace a newer entry
+        cache.asMap().merge(key, listing, (current, built) ->
+                built.getCatalogVersion() >= current.getCatalogVersion() ? built : current);
+        return listing;
+    }
+
+    private void refreshInBackground(Key key, Supplier<ProductPage> loader) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    build(key, loader);
+                } catch (RuntimeException ex) {
+                    // The stale entry keeps being served, the next reader retries
+                    log.warn("Rebuild of the cached listing {} failed", key, ex);
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            refreshing.remove(key);
+        }
+    }
+
+    private Listing serialize(ProductPage page, long version) {
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(page.getItems());
+            return new Listing(version, ProductETags.of(page.getItems(), page.getNextCursor()), page.getNextCursor(),
+                    json, gzip(json));
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("Cannot serialize the product listing", ex);
+        }
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4 + 64);
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(bytes);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return compressed.toByteArray();
+    }
+
+    /**
+     * Whether an Accept-Encoding header allows a gzipped body: gzip (or *) is listed and not with q=0.
+     */
+    public static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            if (!"gzip".equalsIgnoreCase(name) && !"*".equals(name)) {
+                continue;
+            }
+            boolean refused = false;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        refused = Double.parseDouble(parameter.substring(2)) == 0;
+                    } catch (NumberFormatException ex) {
+                        refused = true;
+                    }
+                }
+            }
+            return !refused;
+        }
+        return false;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("products.listing.cache.requests", hits, LongAdder::sum)
+                .tag("result", "hit")
+                .description("Listings answered from the serialized response cache")
+                .register(registry);
+        FunctionCounter.builder("products.listing.cache.requests", staleHits, LongAdder::sum)
+                .tag("result", "stale")
+                .description("Outdated listings served while they were rebuilt in the background")
+                .register(registry);
+        FunctionCounter.builder("products.listing.cache.requests", builds, LongAdder::sum)
+                .tag("result", "build")
+                .description("Listings queried, mapped and serialized")
+                .register(registry);
+        Gauge.builder("products.listing.cache.bytes", cache,
+                        listings -> listings.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L))
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("products.catalog.version", catalogVersion, AtomicLong::get)
+                .description("Committed product writes since startup, plus the price index catching up with them")
+                .register(registry);
+    }
+
+    @Value
+    private static class Key {
+        ProductFilter filter;
+        String cursor;
+        Integer size;
+    }
+
+    /**
+     * A listing response ready to be written: the JSON array, the same bytes gzipped and the page headers.
+     */
+    @Value
+    public static class Listing {
+        long catalogVersion;
+        String eTag;
+        String nextCursor;
+        byte[] json;
+        byte[] gzip;
+    }
+}
@@ -0,0 +1,119 @@
+package com.paygoal.exercie.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.paygoal.exercie.dto.CoalescingStatsDto;
+import com.paygoal.exercie.dto.ProductDto;
+import com.paygoal.exercie.event.ProductChangedEvent;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Single-flight loader: concurrent lookups of the same id share one in-flight load,
+ * including its {@link com.paygoal.exercie.exception.ProductNotFoundException}.
+ */
+@Component
+public class ProductLoadCoalescer implements MeterBinder {
+
+    private static final int TRACKED_KEYS = 1_000;
+    private static final int REPORTED_KEYS = 20;
+
+    private final ConcurrentMap<Long, CompletableFuture<ProductDto>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder collapsed = new LongAdder();
+    // Bounded so a scan over many ids cannot grow the metrics without limit
+    private final Cache<Long, LongAdder> collapsedByKey = Caffeine.newBuilder()
+            .maximumSize(TRACKED_KEYS)
+            .build();
+
+    public ProductDto load(Long id, Function<Long, ProductDto> loader) {
+        CompletableFuture<ProductDto> mine = new CompletableFuture<>();
+        CompletableFuture<ProductDto> existing = inFlight.putIfAbsent(id, mine);
+        if (existing != null) {
+            collapsed.increment();
+            collapsedByKey.get(id, key -> new LongAdder()).increment();
+            return await(existing);
+        }
+
+        loads.increment();
+        try {
+            ProductDto loaded = loader.apply(id);
+            mine.complete(loaded);
+            return loaded;
+        } catch (Throwable ex) {
+            // Errors too, or the callers joined on this load would wait forever
+            mine.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(id, mine);
+        }
+    }
+
+    /**
+     * Lets callers arriving after a commit start a fresh load instead of joining one that may have read the old row.
+     * Runs before {@link ProductCache} invalidates, otherwise a caller could join the old load under the new cache stamp.
+     */
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        inFlight.remove(event.getProductId());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("products.coalescer.loads", loads, LongAdder::sum)
+                .description("Product loads that went to the database")
+                .register(registry);
+        FunctionCounter.builder("products.coalescer.collapsed", collapsed, LongAdder::sum)
+                .description("Product lookups that joined an in-flight load")
+                .register(registry);
+        Gauge.builder("products.coalescer.in.flight", inFlight, Map::size)
+                .register(registry);
+    }
+
+    public CoalescingStatsDto stats() {
+        Map<Long, Long> topKeys = new LinkedHashMap<>();
+        collapsedByKey.asMap().entrySet().stream()
+                .map(entry -> Map.entry(entry.getKey(), entry.getValue().sum()))
+                .sorted(Map.Entry.<Long, Long>comparingByValue(Comparator.reverseOrder()))
+                .limit(REPORTED_KEYS)
+                .forEach(entry -> topKeys.put(entry.getKey(), entry.getValue()));
+        return CoalescingStatsDto.builder()
+                .loads(loads.sum())
+                .collapsed(collapsed.sum())
+                .inFlight(inFlight.size())
+                .collapsedByProduct(topKeys)
+                .build();
+    }
+
+    private static ProductDto await(CompletableFuture<ProductDto> future) {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            if (ex.getCause() instanceof Error) {
+                throw (Error) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.paygoal.exercie.cache;
+
+import com.paygoal.exercie.configuration.LookupProperties;
+import com.paygoal.exercie.configuration.PriceIndexProperties;
+import com.paygoal.exercie.configuration.SearchProperties;
+import com.paygoal.exercie.dto.PriceIndexCheckDto;
+import com.paygoal.exercie.dto.ProductDto;
+import com.paygoal.exercie.model.Product;
+import com.paygoal.exercie.repository.ProductRepository;
+import com.paygoal.exercie.search.IncrementalProductIndex;
+import com.paygoal.exercie.utils.ProductMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.persistence.EntityManager;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Whole catalog in memory ordered by (price, id), the order of the listing, so a page or a price range is a walk of a
+ * concurrent skip list instead of a query. Disabled unless {@code products.price-index.enabled}.
+ * <p>
+ * Pages are read without locks while committed changes are applied, so like the skip list iterators they are weakly
+ * consistent: a product whose price changes during the read can show up twice in that page.
+ */
+@Component
+public class ProductPriceIndex extends IncrementalProductIndex implements MeterBinder {
+
+    private final PriceIndexProperties properties;
+    private final ProductRepository productRepository;
+    private final ProductMapper productMapper;
+    private final ProductListingCache listingCache;
+    private volatile Entries entries = new Entries();
+    private volatile boolean loaded;
+
+    public ProductPriceIndex(ProductRepository productRepository, EntityManager entityManager,
+                             LookupProperties lookupProperties, SearchProperties searchProperties,
+                             PriceIndexProperties properties, ProductMapper productMapper,
+                             PlatformTransactionManager transactionManager, ProductListingCache listingCache) {
+        super("product-price-index", productRepository, entityManager, lookupProperties, searchProperties, transactionManager);
+        this.properties = properties;
+        this.productRepository = productRepository;
+        this.productMapper = productMapper;
+        this.listingCache = listingCache;
+    }
+
+    /**
+     * Whether listings can be served from memory, once the startup load has finished.
+     */
+    public boolean isServing() {
+        return loaded;
+    }
+
+    /**
+     * Products with a price in [minPrice, maxPrice] (either bound may be null) ordered by price and id, starting
+     * after the given position when it is not null.
+     */
+    public List<ProductDto> page(BigDecimal minPrice, BigDecimal maxPrice, BigDecimal afterPrice, Long afterId, int limit) {
+        NavigableMap<PriceKey, ProductDto> range = entries.byPrice;
+        PriceKey from = minPrice == null ? null : new PriceKey(minPrice, Long.MIN_VALUE);
+        if (afterPrice != null) {
+            PriceKey after = new PriceKey(afterPrice, afterId);
+            if (from == null || after.compareTo(from) >= 0) {
+                range = range.tailMap(after, false);
+                from = null;
+            }
+        }
+        if (from != null) {
+            range = range.tailMap(from, true);
+        }
+        if (maxPrice != null) {
+            range = range.headMap(new PriceKey(maxPrice, Long.MAX_VALUE), true);
+        }
+        return range.values().stream()
+                .limit(limit)
+                .map(ProductCache::copyOf)
+                .collect(Collectors.toList());
+    }
+
+    public int size() {
+        return entries.keys.size();
+    }
+
+    /**
+     * Compares every row of the table with the index. Differences can also come from writes that commit during the
+     * scan, so only products that still differ after applying those writes are reported.
+     */
+    public PriceIndexCheckDto check() {
+        long start = System.nanoTime();
+        refresh();
+        List<Long> missing = new ArrayList<>();
+        List<Long> stale = new ArrayList<>();
+        long[][] tableIds = {new long[1024]};
+        int[] tableRows = {0};
+        scanTable(products -> products.forEach(product -> {
+            if (tableRows[0] == tableIds[0].length) {
+                tableIds[0] = Arrays.copyOf(tableIds[0], tableRows[0] * 2);
+            }
+            // streamAll() is ordered by id, so the array ends up sorted
+            tableIds[0][tableRows[0]++] = product.getId();
+            compare(product, entries.find(product.getId()), missing, stale);
+        }));
+        long[] sortedIds = Arrays.copyOf(tableIds[0], tableRows[0]);
+        List<Long> extra = entries.keys.keySet().stream()
+                .filter(id -> Arrays.binarySearch(sortedIds, id) < 0)
+                .collect(Collectors.toList());
+
+        // Second look at the suspects only, once the writes that raced with the scan are applied
+        refresh();
+        TreeSet<Long> suspects = new TreeSet<>(missing);
+        suspects.addAll(stale);
+        suspects.addAll(extra);
+        missing.clear();
+        stale.clear();
+        extra.clear();
+        Map<Long, Product> current = productRepository.findAllById(suspects).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+        for (Long id : suspects) {
+            Product product = current.get(id);
+            if (product == null) {
+                if (entries.find(id) != null) {
+                    extra.add(id);
+                }
+            } else {
+                compare(product, entries.find(id), missing, stale);
+            }
+        }
+
+        int maxIds = properties.getMaxReportedIds();
+        return PriceIndexCheckDto.builder()
+                .consistent(missing.isEmpty() && stale.isEmpty() && extra.isEmpty())
+                .tableRows(tableRows[0])
+                .indexEntries(size())
+                .missingIds(missing.stream().limit(maxIds).collect(Collectors.toList()))
+                .staleIds(stale.stream().limit(maxIds).collect(Collectors.toList()))
+                .extraIds(extra.stream().limit(maxIds).collect(Collectors.toList()))
+                .elapsedMs((System.nanoTime() - start) / 1_000_000)
+                .build();
+    }
+
+    @Override
+    protected boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    @Override
+    protected Duration refreshDelay() {
+        return properties.getRefreshDelay();
+    }
+
+    @Override
+    protected void replaceAll(Stream<Product> products) {
+        Entries rebuilt = new Entries();
+        products.forEach(product -> rebuilt.put(productMapper.toDto(product)));
+        entries = rebuilt;
+        loaded = true;
+    }
+
+    @Override
+    protected void apply(Long id, Product product) {
+        if (product == null) {
+            entries.remove(id);
+        } else {
+            entries.put(productMapper.toDto(product));
+        }
+    }
+
+    // Listings built from the index between a commit and now were cached as current, they are not anymore
+    @Override
+    protected void applied() {
+        listingCache.invalidate();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("products.price.index.entries", this, ProductPriceIndex::size).register(registry);
+        Gauge.builder("products.price.index.pending", this, ProductPriceIndex::pendingCount).register(registry);
+    }
+
+    private void compare(Product product, ProductDto indexed, List<Long> missing, List<Long> stale) {
+        if (indexed == null) {
+            missing.add(product.getId());
+        } else if (!productMapper.toDto(product).equals(indexed)) {
+            stale.add(product.getId());
+        }
+    }
+
+    // Only written by the single refresh thread
+    private static final class Entries {
+        private final ConcurrentSkipListMap<PriceKey, ProductDto> byPrice = new ConcurrentSkipListMap<>();
+        private final Map<Long, PriceKey> keys = new ConcurrentHashMap<>();
+
+        private ProductDto find(Long id) {
+            PriceKey key = keys.get(id);
+            return key == null ? null : byPrice.get(key);
+        }
+
+        private void put(ProductDto product) {
+            PriceKey key = new PriceKey(product.getPrice(), product.getId());
+            // New position first, a reader may briefly see the product twice but never miss it
+            byPrice.put(key, product);
+            PriceKey previous = keys.put(product.getId(), key);
+            if (previous != null && !previous.equals(key)) {
+                byPrice.remove(previous);
+            }
+        }
+
+        private void remove(Long id) {
+            PriceKey previous = keys.remove(id);
+            if (previous != null) {
+                byPrice.remove(previous);
+            }
+        }
+    }
+
+    private static final class PriceKey implements Comparable<PriceKey> {
+        private final BigDecimal price;
+        private final long id;
+
+        private PriceKey(BigDecimal price, long id) {
+            this.price = price;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(PriceKey other) {
+            int byPrice = price.compareTo(other.price);
+            return byPrice != 0 ? byPrice : Long.compare(id, other.id);
+        }
+
+        // Consistent with compareTo, so 10.0 and 10.00 are the same key
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof PriceKey && compareTo((PriceKey) other) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(price.stripTrailingZeros(), id);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.paygoal.exercie.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "products.batch")
+public class BatchProperties {
+
+    private int maxItems = 10_000;
+
+    // Also drives hibernate.jdbc.batch_size, see application.properties
+    private int jdbcBatchSize = 50;
+}
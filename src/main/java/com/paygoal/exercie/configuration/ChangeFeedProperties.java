@@ -0,0 +1,26 @@
+package com.paygoal.exercie.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "products.change-feed")
+public class ChangeFeedProperties {
+
+    // Committed writes are kept in memory and streamed over GET /api/products/changes
+    private boolean enabled = false;
+
+    // Changes kept for resuming; a consumer further behind than this is told to resync
+    private int capacity = 4096;
+
+    // Open streams at once, each one may hold a delivery thread while its client is slow to read
+    private int maxSubscribers = 256;
+
+    // Comment sent to an idle stream, keeps proxies from closing it and finds dead clients
+    private Duration heartbeat = Duration.ofSeconds(15);
+
+    // A stream is closed after this long, the client reconnects with Last-Event-ID
+    private Duration timeout = Duration.ofMinutes(30);
+}
@@ -0,0 +1,43 @@
+package com.paygoal.exercie.configuration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.paygoal.exercie.utils.ProductProtobufHttpMessageConverter;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+/**
+ * Binary representations of the product payloads for service-to-service callers, picked with the Accept and
+ * Content-Type headers: application/x-protobuf (product.proto), application/cbor and application/x-jackson-smile.
+ * <p>
+ * They come after the JSON converter, so JSON is still what a request without Accept, or with *&#47;*, gets.
+ * Spring already registers CBOR and Smile when their Jackson modules are present, but with a bare ObjectMapper; these
+ * replace them with mappers built from Boot's Jackson settings, so both formats carry the same fields as the JSON.
+ */
+@Configuration
+public class ContentNegotiationConfig implements WebMvcConfigurer {
+
+    private final ObjectMapper cborMapper;
+    private final ObjectMapper smileMapper;
+
+    public ContentNegotiationConfig(Jackson2ObjectMapperBuilder objectMapperBuilder) {
+        this.cborMapper = objectMapperBuilder.factory(new CBORFactory()).build();
+        this.smileMapper = objectMapperBuilder.factory(new SmileFactory()).build();
+    }
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.removeIf(converter -> converter instanceof MappingJackson2CborHttpMessageConverter
+                || converter instanceof MappingJackson2SmileHttpMessageConverter);
+        converters.add(new ProductProtobufHttpMessageConverter());
+        converters.add(new MappingJackson2CborHttpMessageConverter(cborMapper));
+        converters.add(new MappingJackson2SmileHttpMessageConverter(smileMapper));
+    }
+}
@@ -0,0 +1,23 @@
+package com.paygoal.exercie.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "products.group-commit")
+public class GroupCommitProperties {
+
+    // Single-product creates and updates are queued and committed together instead of one transaction each
+    private boolean enabled = false;
+
+    // Writes per transaction, past the JDBC batch size the INSERTs just go out in more batches
+    private int maxBatchSize = 50;
+
+    // How long the first write of a group waits for others; zero only groups the writes queued during the last commit
+    private Duration maxWait = Duration.ofMillis(2);
+
+    // Longest a caller waits for its group to commit before giving up on the answer
+    private Duration timeout = Duration.ofSeconds(30);
+}
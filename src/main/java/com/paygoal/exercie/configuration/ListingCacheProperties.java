@@ -0,0 +1,19 @@
+package com.paygoal.exercie.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+@Data
+@ConfigurationProperties(prefix = "products.listing-cache")
+public class ListingCacheProperties {
+
+    // Keep GET /api/products responses serialized and gzipped per query, until the next committed write
+    private boolean enabled = true;
+
+    // Plain plus gzipped bytes of every cached response
+    private DataSize maximumSize = DataSize.ofMegabytes(64);
+
+    // Serve the outdated response while a single background rebuild runs, instead of rebuilding in the request
+    private boolean staleWhileRevalidate = false;
+}
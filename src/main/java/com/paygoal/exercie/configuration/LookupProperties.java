@@ -0,0 +1,13 @@
+package com.paygoal.exercie.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "products.lookup")
+public class LookupProperties {
+
+    private int chunkSize = 500;
+
+    private int maxIds = 5_000;
+}
@@ -0,0 +1,13 @@
+package com.paygoal.exercie.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "products.pagination")
+public class PaginationProperties {
+
+    private int defaultPageSize = 20;
+
+    private int maxPageSize = 100;
+}
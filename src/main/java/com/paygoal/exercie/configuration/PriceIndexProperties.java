@@ -0,0 +1,20 @@
+package com.paygoal.exercie.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "products.price-index")
+public class PriceIndexProperties {
+
+    // Serve the unfiltered and price range listings from memory instead of H2
+    private boolean enabled = false;
+
+    // Listings should not lag writes, so changes are applied as soon as they commit
+    private Duration refreshDelay = Duration.ZERO;
+
+    // Ids listed per kind of difference in a consistency report
+    private int maxReportedIds = 100;
+}
@@ -0,0 +1,17 @@
+package com.paygoal.exercie.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "products.cache")
+public class ProductCacheProperties {
+
+    private boolean enabled = true;
+
+    private long maximumSize = 10_000;
+
+    private Duration expireAfterWrite = Duration.ofMinutes(10);
+}
@@ -0,0 +1,35 @@
+package com.paygoal.exercie.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "products.journal")
+public class ProductJournalProperties {
+
+    // Committed product writes are journaled to disk and the catalog is restored from there at startup
+    private boolean enabled = false;
+
+    // Holds the journal segments and the snapshots, keep it across restarts
+    private Path directory = Path.of("product-journal");
+
+    // Each journal segment is mapped whole, a new one starts when a record no longer fits
+    private DataSize segmentSize = DataSize.ofMegabytes(64);
+
+    // How often the mapped segment is flushed to disk; a crash of the machine can lose the writes of this interval,
+    // a crash of the process alone loses none
+    private Duration forceInterval = Duration.ofSeconds(1);
+
+    // Longest the journal grows before it is compacted into a new snapshot
+    private Duration snapshotInterval = Duration.ofMinutes(10);
+
+    // Journaled writes since the last snapshot that trigger one before the interval is up
+    private int snapshotThreshold = 100_000;
+
+    // Journal segments decoded and rows inserted in parallel at restore
+    private int replayThreads = 4;
+}
@@ -0,0 +1,71 @@
+package com.paygoal.exercie.configuration;
+
+import io.r2dbc.h2.H2ConnectionConfiguration;
+import io.r2dbc.h2.H2ConnectionFactory;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.reactive.TransactionalOperator;
+
+import javax.annotation.PreDestroy;
+
+/**
+ * Non-blocking stack of the reactive profile: Netty, and R2DBC on the same H2 database the JPA side uses,
+ * so Flyway, the seed data, the caches and the in-memory indexes are shared by both.
+ * <p>
+ * The R2DBC auto-configuration is excluded in application.properties: its transaction manager would sit next to the
+ * JPA one and leave every {@code @Transactional} without a default. The reactive side opens its transactions through
+ * the {@link TransactionalOperator} instead.
+ */
+@Configuration
+@Profile("reactive")
+public class ReactiveConfig {
+
+    private static final String JDBC_H2_PREFIX = "jdbc:h2:";
+
+    // Tomcat is on the classpath for the servlet stack and would otherwise be picked for WebFlux too
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    // Deliberately not a bean: a ConnectionFactory bean switches off the DataSource auto-configuration JPA needs
+    private ConnectionPool connectionPool;
+
+    @Bean
+    public DatabaseClient databaseClient(DataSourceProperties dataSourceProperties, ReactiveProperties properties) {
+        String url = dataSourceProperties.determineUrl();
+        if (url == null || !url.startsWith(JDBC_H2_PREFIX)) {
+            throw new IllegalStateException("The reactive profile only supports H2, datasource url is " + url);
+        }
+        H2ConnectionConfiguration.Builder configuration = H2ConnectionConfiguration.builder()
+                .url(url.substring(JDBC_H2_PREFIX.length()))
+                .username(dataSourceProperties.determineUsername());
+        if (dataSourceProperties.determinePassword() != null) {
+            configuration.password(dataSourceProperties.determinePassword());
+        }
+        connectionPool = new ConnectionPool(ConnectionPoolConfiguration.builder(new H2ConnectionFactory(configuration.build()))
+                .maxSize(properties.getPoolMaxSize())
+                .name("products-r2dbc")
+                .build());
+        return DatabaseClient.create(connectionPool);
+    }
+
+    @Bean
+    public TransactionalOperator transactionalOperator(DatabaseClient databaseClient) {
+        return TransactionalOperator.create(new R2dbcTransactionManager(databaseClient.getConnectionFactory()));
+    }
+
+    @PreDestroy
+    public void closeConnectionPool() {
+        if (connectionPool != null) {
+            connectionPool.dispose();
+        }
+    }
+}
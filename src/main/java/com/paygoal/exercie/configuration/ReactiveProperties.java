@@ -0,0 +1,15 @@
+package com.paygoal.exercie.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "products.reactive")
+public class ReactiveProperties {
+
+    // R2DBC connections, requests wait for one without holding a thread
+    private int poolMaxSize = 20;
+
+    // Rows per keyset query when streaming the listing or the export, fetched only as the client reads
+    private int streamChunkSize = 500;
+}
@@ -0,0 +1,20 @@
+package com.paygoal.exercie.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "products.search")
+public class SearchProperties {
+
+    // How long committed changes are collected before the index reloads them in one go
+    private Duration refreshDelay = Duration.ofMillis(50);
+
+    // Above this many pending products the indexes are rebuilt from the table instead of reloading each one
+    private int rebuildThreshold = 5_000;
+
+    // Suggestions kept per trie node, and so the most GET /suggest can return
+    private int suggestSize = 10;
+}
@@ -0,0 +1,17 @@
+package com.paygoal.exercie.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "products.seed")
+public class SeedProperties {
+
+    // 0 keeps the rows from data.sql, anything else replaces them with a synthetic catalog
+    private long count = 0;
+
+    private int batchSize = 1_000;
+
+    // Same seed, same catalog, so load test runs are comparable
+    private long randomSeed = 42;
+}
@@ -0,0 +1,27 @@
+package com.paygoal.exercie.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "products.stock-write-behind")
+public class StockWriteBehindProperties {
+
+    // Stock reservations and releases are counted in memory and written to the products table in net deltas
+    private boolean enabled = false;
+
+    // Longest a delta waits for its UPDATE, listings and filters see the new stock only then
+    private Duration flushInterval = Duration.ofMillis(100);
+
+    // Deltas accepted since the last flush that trigger one before the interval is up
+    private int flushThreshold = 10_000;
+
+    // Where accepted deltas are logged until their UPDATE commits, replayed at startup after a crash
+    private Path logDirectory = Path.of("stock-intents");
+
+    // fsync every accepted delta before answering; off, a crash of the machine can lose the last deltas
+    private boolean fsync = true;
+}
@@ -33,6 +33,9 @@ public class SwaggerConfig {
                 ))
                 .components(new Components()
                         .addSchemas("NotFoundError", createSimpleErrorSchema(404, "Not Found"))
+                        .addSchemas("ConflictError", createSimpleErrorSchema(409, "Not enough stock for product 1: requested 3, available 2"))
+                        .addSchemas("PreconditionFailedError", createSimpleErrorSchema(412, "Product 1 has been modified, current ETag is \"3\""))
+                        .addSchemas("BadRequestError", createSimpleErrorSchema(400, "Bad Request"))
                         .addSchemas("BadRequestValidationError", createValidationErrorSchema())
                         .addResponses("NotFoundResponse", createApiResponse("Not Found", "#/components/schemas/NotFoundError"))
                         .addResponses("BadRequestResponse", createApiResponse("Bad Request", "#/components/schemas/BadRequestValidationError")));
@@ -0,0 +1,53 @@
+package com.paygoal.exercie.configuration;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Runs Tomcat requests and the application task executor (async MVC, {@code @Async}) on virtual threads, so a request
+ * blocked on JDBC or a slow call parks instead of holding one of Tomcat's 200 platform threads.
+ * <p>
+ * Admission is no longer the thread pool's job: {@link com.paygoal.exercie.controller.RequestAdmissionFilter} caps the
+ * requests in flight, and Hikari's pool stays sized for the database, not for the request count. Requests past the pool
+ * wait for a connection up to spring.datasource.hikari.connection-timeout and then get a 503.
+ */
+@Configuration
+@ConditionalOnProperty("products.virtual-threads.enabled")
+public class VirtualThreadConfig {
+
+    private final ExecutorService requestExecutor;
+
+    public VirtualThreadConfig() {
+        // Fail at startup rather than silently falling back to platform threads
+        if (!VirtualThreads.isSupported()) {
+            throw new IllegalStateException("products.virtual-threads.enabled needs a Java 21 runtime, running on "
+                    + Runtime.version());
+        }
+        this.requestExecutor = VirtualThreads.newThreadPerTaskExecutor("tomcat-virtual-");
+    }
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        return protocolHandler -> protocolHandler.setExecutor(requestExecutor);
+    }
+
+    // Same name as Boot's pool, which backs off, so MVC async support and @Async pick this one
+    @Bean(name = {TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME, "taskExecutor"})
+    public SimpleAsyncTaskExecutor applicationTaskExecutor() {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor();
+        executor.setThreadFactory(VirtualThreads.factory("task-virtual-"));
+        return executor;
+    }
+
+    @PreDestroy
+    public void shutdownRequestExecutor() {
+        requestExecutor.shutdown();
+    }
+}
@@ -0,0 +1,20 @@
+package com.paygoal.exercie.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "products.virtual-threads")
+public class VirtualThreadProperties {
+
+    // Tomcat requests and async work on virtual threads, needs a Java 21 runtime
+    private boolean enabled = false;
+
+    // Requests in flight at once, each one parked on a virtual thread. Kept under server.tomcat.max-connections
+    private int maxConcurrentRequests = 5_000;
+
+    // How long a request past the limit waits for a slot before getting a 503
+    private Duration admissionTimeout = Duration.ofMillis(100);
+}
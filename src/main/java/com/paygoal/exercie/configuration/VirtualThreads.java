@@ -0,0 +1,84 @@
+package com.paygoal.exercie.configuration;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Virtual thread API reached through reflection, so the build can keep targeting Java 11 and the same jar runs on
+ * both: {@link #isSupported()} is false before Java 21.
+ */
+public final class VirtualThreads {
+
+    private static final Method OF_VIRTUAL = method(Thread.class, "ofVirtual");
+    private static final Method IS_VIRTUAL = method(Thread.class, "isVirtual");
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR = method(Executors.class, "newThreadPerTaskExecutor", ThreadFactory.class);
+    private static final Method BUILDER_NAME = builderMethod("name", String.class, long.class);
+    private static final Method BUILDER_FACTORY = builderMethod("factory");
+
+    private VirtualThreads() {
+    }
+
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null && BUILDER_NAME != null && BUILDER_FACTORY != null && NEW_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * Factory of virtual threads named prefix0, prefix1...
+     */
+    public static ThreadFactory factory(String prefix) {
+        requireSupported();
+        Object builder = invoke(OF_VIRTUAL, null);
+        builder = invoke(BUILDER_NAME, builder, prefix, 0L);
+        return (ThreadFactory) invoke(BUILDER_FACTORY, builder);
+    }
+
+    /**
+     * Executor starting one virtual thread per task, nothing is pooled or queued.
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String prefix) {
+        return (ExecutorService) invoke(NEW_THREAD_PER_TASK_EXECUTOR, null, factory(prefix));
+    }
+
+    public static boolean isVirtual(Thread thread) {
+        return IS_VIRTUAL != null && (Boolean) invoke(IS_VIRTUAL, thread);
+    }
+
+    private static void requireSupported() {
+        if (!isSupported()) {
+            throw new IllegalStateException("Virtual threads need Java 21 or later, running on " + Runtime.version());
+        }
+    }
+
+    private static Object invoke(Method method, Object target, Object... args) {
+        try {
+            return method.invoke(target, args);
+        } catch (IllegalAccessException ex) {
+            throw new IllegalStateException("Cannot call " + method, ex);
+        } catch (InvocationTargetException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("Call to " + method + " failed", cause);
+        }
+    }
+
+    private static Method builderMethod(String name, Class<?>... parameterTypes) {
+        try {
+            return method(Class.forName("java.lang.Thread$Builder"), name, parameterTypes);
+        } catch (ClassNotFoundException ex) {
+            return null;
+        }
+    }
+
+    private static Method method(Class<?> type, String name, Class<?>... parameterTypes) {
+        try {
+            return type.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException ex) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.paygoal.exercie.controller;
+
+import com.paygoal.exercie.cache.ProductCache;
+import com.paygoal.exercie.cache.ProductLoadCoalescer;
+import com.paygoal.exercie.dto.CacheStatsDto;
+import com.paygoal.exercie.dto.CoalescingStatsDto;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/cache")
+@Tag(name = "Cache Controller", description = "API for inspecting in-process caches")
+@RequiredArgsConstructor
+public class CacheController {
+
+    private final ProductCache productCache;
+    private final ProductLoadCoalescer loadCoalescer;
+
+    @Operation(summary = "Get product cache statistics", description = "Returns hit, miss and eviction counters of the product cache")
+    @ApiResponse(responseCode = "200", description = "Cache statistics",
+            content = @Content(mediaType = "application/json", schema = @Schema(implementation = CacheStatsDto.class)))
+    @GetMapping("/products")
+    public CacheStatsDto getProductCacheStats() {
+        return productCache.stats();
+    }
+
+    @Operation(summary = "Get product load coalescing statistics",
+            description = "Returns how many concurrent product lookups shared an in-flight database load, overall and per product")
+    @ApiResponse(responseCode = "200", description = "Coalescing statistics",
+            content = @Content(mediaType = "application/json", schema = @Schema(implementation = CoalescingStatsDto.class)))
+    @GetMapping("/products/coalescing")
+    public CoalescingStatsDto getProductCoalescingStats() {
+        return loadCoalescer.stats();
+    }
+}
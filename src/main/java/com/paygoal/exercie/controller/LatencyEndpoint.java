@@ -0,0 +1,77 @@
+package com.paygoal.exercie.controller;
+
+import com.paygoal.exercie.dto.LatencyDto;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * /actuator/latency: every timer with its percentiles in one JSON document, slowest p99 first.
+ * Lines up http.server.requests, products.service, spring.data.repository.invocations and hikaricp.connections
+ * so a slow request can be followed down the layers without querying metric by metric.
+ */
+@Component
+@Endpoint(id = "latency")
+@RequiredArgsConstructor
+public class LatencyEndpoint {
+
+    private static final double P99 = 0.99;
+
+    private final MeterRegistry meterRegistry;
+
+    @ReadOperation
+    public List<LatencyDto> latency(@Nullable String prefix) {
+        return meterRegistry.getMeters().stream()
+                .filter(Timer.class::isInstance)
+                .map(Timer.class::cast)
+                .filter(timer -> prefix == null || timer.getId().getName().startsWith(prefix))
+                .filter(timer -> timer.count() > 0)
+                .map(LatencyEndpoint::toDto)
+                .sorted(Comparator.comparingDouble(LatencyEndpoint::p99OrMax).reversed())
+                .collect(Collectors.toList());
+    }
+
+    private static LatencyDto toDto(Timer timer) {
+        HistogramSnapshot snapshot = timer.takeSnapshot();
+        Map<String, Double> percentiles = null;
+        if (snapshot.percentileValues().length > 0) {
+            percentiles = new LinkedHashMap<>();
+            for (ValueAtPercentile value : snapshot.percentileValues()) {
+                percentiles.put(String.valueOf(value.percentile()), value.value(TimeUnit.MILLISECONDS));
+            }
+        }
+        Map<String, String> tags = new LinkedHashMap<>();
+        for (Tag tag : timer.getId().getTagsAsIterable()) {
+            tags.put(tag.getKey(), tag.getValue());
+        }
+        return LatencyDto.builder()
+                .name(timer.getId().getName())
+                .tags(tags)
+                .count(snapshot.count())
+                .meanMs(snapshot.mean(TimeUnit.MILLISECONDS))
+                .maxMs(snapshot.max(TimeUnit.MILLISECONDS))
+                .percentilesMs(percentiles)
+                .build();
+    }
+
+    private static double p99OrMax(LatencyDto latency) {
+        if (latency.getPercentilesMs() != null && latency.getPercentilesMs().containsKey(String.valueOf(P99))) {
+            return latency.getPercentilesMs().get(String.valueOf(P99));
+        }
+        return latency.getMaxMs();
+    }
+}
@@ -0,0 +1,27 @@
+package com.paygoal.exercie.controller;
+
+import com.paygoal.exercie.cache.ProductPriceIndex;
+import com.paygoal.exercie.dto.PriceIndexCheckDto;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * /actuator/priceindex: scans the table and reports the products the in-memory price index has missing, stale or
+ * left over. A full table scan, so meant for operators and not for probes.
+ */
+@Component
+@Endpoint(id = "priceindex")
+@ConditionalOnProperty("products.price-index.enabled")
+@RequiredArgsConstructor
+public class PriceIndexEndpoint {
+
+    private final ProductPriceIndex priceIndex;
+
+    @ReadOperation
+    public PriceIndexCheckDto check() {
+        return priceIndex.check();
+    }
+}
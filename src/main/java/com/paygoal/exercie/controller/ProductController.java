@@ -1,28 +1,69 @@
 package com.paygoal.exercie.controller;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.paygoal.exercie.cache.ProductListingCache;
+import com.paygoal.exercie.dto.ProductBatchRequest;
+import com.paygoal.exercie.dto.ProductChangeDto;
 import com.paygoal.exercie.dto.ProductDto;
+import com.paygoal.exercie.dto.ProductFilter;
+import com.paygoal.exercie.dto.ProductLookupResult;
+import com.paygoal.exercie.feed.ProductChangeFeed;
+import com.paygoal.exercie.service.ProductGroupCommitter;
 import com.paygoal.exercie.service.ProductService;
+import com.paygoal.exercie.stock.StockWriteBehind;
+import com.paygoal.exercie.utils.ProductETags;
+import com.paygoal.exercie.utils.ProductMergePatch;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import com.paygoal.exercie.dto.ProductPage;
+import com.paygoal.exercie.dto.ProductSearchPage;
+import com.paygoal.exercie.dto.ProductSuggestion;
+import com.paygoal.exercie.dto.StockDto;
+import com.paygoal.exercie.dto.StockRequest;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
 import java.util.List;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api/products")
+// ReactiveProductController serves the same paths in the reactive profile
+@Profile("!reactive")
 @Tag(name = "Product Controller", description = "API for managing products")
 @RequiredArgsConstructor
 public class ProductController {
 
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private final ProductService productService;
+    private final ObjectMapper objectMapper;
+    private final ProductMergePatch productMergePatch;
+    private final ProductListingCache listingCache;
+    private final ProductGroupCommitter groupCommitter;
+    private final StockWriteBehind stockWriteBehind;
+    private final ProductChangeFeed changeFeed;
 
     @Operation(summary = "Create a new product", description = "Creates a new product and returns it")
     @ApiResponses(value = {
@@ -34,19 +75,52 @@ public class ProductController {
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
     public ProductDto createProduct(@Valid @RequestBody ProductDto productDto) {
+        if (groupCommitter.isEnabled()) {
+            return groupCommitter.create(productDto);
+        }
         return productService.create(productDto);
     }
 
-    @Operation(summary = "Get product by ID", description = "Returns a product by its ID")
+    @Operation(summary = "Create products in bulk",
+            description = "Validates every product and inserts them in JDBC batches within one transaction. "
+                    + "If any product is invalid nothing is created and the errors are reported per item")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "201", description = "Products created successfully",
+                    content = @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = ProductDto.class)))),
+            @ApiResponse(responseCode = "400", description = "Invalid input data",
+                    content = @Content(schema = @Schema(ref = "#/components/schemas/BadRequestValidationError")))
+    })
+    @PostMapping("/batch")
+    @ResponseStatus(HttpStatus.CREATED)
+    public List<ProductDto> createProducts(@Valid @RequestBody ProductBatchRequest request) {
+        return productService.createAll(request.getProducts());
+    }
+
+    @Operation(summary = "Get product by ID",
+            description = "Returns a product by its ID with its version as a strong ETag, answers 304 when If-None-Match still matches")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Product found",
                     content = @Content(mediaType = "application/json", schema = @Schema(implementation = ProductDto.class))),
+            @ApiResponse(responseCode = "304", description = "Product not modified"),
             @ApiResponse(responseCode = "404", description = "Product not found",
                     content = @Content(schema = @Schema(ref = "#/components/schemas/NotFoundError")))
     })
     @GetMapping("/{id}")
-    public ProductDto getProductById(@Parameter(description = "Product ID") @PathVariable Long id) {
-        return productService.findById(id);
+    public ResponseEntity<ProductDto> getProductById(@Parameter(description = "Product ID") @PathVariable Long id,
+                                                     WebRequest request) {
+        // Stock deltas not yet written leave the version behind, such a product goes out without an ETag
+        if (stockWriteBehind.isEnabled() && stockWriteBehind.hasPendingDeltas(id)) {
+            return ResponseEntity.ok(productService.findById(id));
+        }
+        // Revalidation only needs the version, the product is loaded and serialized only when it changed
+        if (request.getHeader(HttpHeaders.IF_NONE_MATCH) != null
+                && request.checkNotModified(ProductETags.of(productService.findVersionById(id)))) {
+            return null;
+        }
+        ProductDto productDto = productService.findById(id);
+        return ResponseEntity.ok()
+                .eTag(ProductETags.of(productDto.getVersion()))
+                .body(productDto);
     }
 
     @Operation(summary = "Update an existing product", description = "Updates a product and returns it")
@@ -56,31 +130,285 @@ public class ProductController {
             @ApiResponse(responseCode = "400", description = "Invalid input data",
                     content = @Content(schema = @Schema(ref = "#/components/schemas/BadRequestValidationError"))),
             @ApiResponse(responseCode = "404", description = "Product not found",
-                    content = @Content(schema = @Schema(ref = "#/components/schemas/NotFoundError")))
+                    content = @Content(schema = @Schema(ref = "#/components/schemas/NotFoundError"))),
+            @ApiResponse(responseCode = "412", description = "If-Match does not match the current version",
+                    content = @Content(schema = @Schema(ref = "#/components/schemas/PreconditionFailedError")))
     })
     @PutMapping("/{id}")
     public ProductDto updateProduct(
             @Parameter(description = "Product ID") @PathVariable Long id,
+            @Parameter(description = "ETag the update is based on") @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
             @Valid @RequestBody ProductDto productDto) {
-        return productService.update(id, productDto);
+        if (groupCommitter.isEnabled()) {
+            return groupCommitter.update(id, productDto, expectedVersions(ifMatch));
+        }
+        return productService.update(id, productDto, expectedVersions(ifMatch));
+    }
+
+    @Operation(summary = "Partially update a product",
+            description = "Applies a JSON Merge Patch: only the fields present in the body are written, null clears the description")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Product updated successfully",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = ProductDto.class))),
+            @ApiResponse(responseCode = "400", description = "Invalid input data",
+                    content = @Content(schema = @Schema(ref = "#/components/schemas/BadRequestValidationError"))),
+            @ApiResponse(responseCode = "404", description = "Product not found",
+                    content = @Content(schema = @Schema(ref = "#/components/schemas/NotFoundError")))
+    })
+    @PatchMapping(value = "/{id}", consumes = {ProductMergePatch.MEDIA_TYPE, MediaType.APPLICATION_JSON_VALUE})
+    public ProductDto patchProduct(
+            @Parameter(description = "Product ID") @PathVariable Long id,
+            @io.swagger.v3.oas.annotations.parameters.RequestBody(description = "Fields to change",
+                    content = @Content(mediaType = ProductMergePatch.MEDIA_TYPE, schema = @Schema(implementation = ProductDto.class)))
+            @RequestBody JsonNode patch) {
+        return productService.patch(id, productMergePatch.toChanges(patch));
     }
 
     @Operation(summary = "Delete a product", description = "Deletes a product by ID")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "204", description = "Product deleted successfully"),
             @ApiResponse(responseCode = "404", description = "Product not found",
-                    content = @Content(schema = @Schema(ref = "#/components/schemas/NotFoundError")))
+                    content = @Content(schema = @Schema(ref = "#/components/schemas/NotFoundError"))),
+            @ApiResponse(responseCode = "412", description = "If-Match does not match the current version",
+                    content = @Content(schema = @Schema(ref = "#/components/schemas/PreconditionFailedError")))
     })
     @DeleteMapping("/{id}")
     @ResponseStatus(HttpStatus.NO_CONTENT)
-    public void deleteProduct(@Parameter(description = "Product ID") @PathVariable Long id) {
-        productService.delete(id);
+    public void deleteProduct(
+            @Parameter(description = "Product ID") @PathVariable Long id,
+            @Parameter(description = "ETag the delete is based on") @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        productService.delete(id, expectedVersions(ifMatch));
+    }
+
+    @Operation(summary = "Reserve stock", description = "Atomically decrements the stock of a product if enough units are available")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Stock reserved successfully",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = StockDto.class))),
+            @ApiResponse(responseCode = "400", description = "Invalid quantity",
+                    content = @Content(schema = @Schema(ref = "#/components/schemas/BadRequestValidationError"))),
+            @ApiResponse(responseCode = "404", description = "Product not found",
+                    content = @Content(schema = @Schema(ref = "#/components/schemas/NotFoundError"))),
+            @ApiResponse(responseCode = "409", description = "Not enough stock",
+                    content = @Content(schema = @Schema(ref = "#/components/schemas/ConflictError")))
+    })
+    @PostMapping("/{id}/stock/reserve")
+    public StockDto reserveStock(
+            @Parameter(description = "Product ID") @PathVariable Long id,
+            @Valid @RequestBody StockRequest request) {
+        if (stockWriteBehind.isEnabled()) {
+            return stockWriteBehind.reserve(id, request.getQuantity());
+        }
+        return productService.reserveStock(id, request.getQuantity());
+    }
+
+    @Operation(summary = "Release stock", description = "Atomically increments the stock of a product, e.g. when a reservation is cancelled")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Stock released successfully",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = StockDto.class))),
+            @ApiResponse(responseCode = "400", description = "Invalid quantity",
+                    content = @Content(schema = @Schema(ref = "#/components/schemas/BadRequestValidationError"))),
+            @ApiResponse(responseCode = "404", description = "Product not found",
+                    content = @Content(schema = @Schema(ref = "#/components/schemas/NotFoundError"))),
+            @ApiResponse(responseCode = "409", description = "Stock would exceed the maximum",
+                    content = @Content(schema = @Schema(ref = "#/components/schemas/ConflictError")))
+    })
+    @PostMapping("/{id}/stock/release")
+    public StockDto releaseStock(
+            @Parameter(description = "Product ID") @PathVariable Long id,
+            @Valid @RequestBody StockRequest request) {
+        if (stockWriteBehind.isEnabled()) {
+            return stockWriteBehind.release(id, request.getQuantity());
+        }
+        return productService.releaseStock(id, request.getQuantity());
     }
 
-    @Operation(summary = "Get all products ordered by price", description = "Returns a list of products ordered by price ascending")
-    @ApiResponse(responseCode = "200", description = "List of products found successfully")
+    @Operation(summary = "Get products ordered by price",
+            description = "Returns a page of products ordered by price ascending, optionally filtered. "
+                    + "When more products are available the " + NEXT_CURSOR_HEADER + " header carries the cursor of the next page, "
+                    + "which must be sent with the same filters")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "List of products found successfully",
+                    content = @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = ProductDto.class)))),
+            @ApiResponse(responseCode = "304", description = "Page not modified since the ETag in If-None-Match"),
+            @ApiResponse(responseCode = "400", description = "Invalid cursor, page size or filters",
+                    content = @Content(schema = @Schema(ref = "#/components/schemas/BadRequestError")))
+    })
     @GetMapping
-    public List<ProductDto> getAllProductsOrderedByPrice() {
-        return productService.findAllOrderedByPrice();
+    public ResponseEntity<?> getAllProductsOrderedByPrice(
+            @Parameter(description = "Cursor returned by the previous page") @RequestParam(required = false) String cursor,
+            @Parameter(description = "Page size, capped by products.pagination.max-page-size") @RequestParam(required = false) Integer size,
+            @Parameter(description = "Lowest price, inclusive") @RequestParam(required = false) BigDecimal minPrice,
+            @Parameter(description = "Highest price, inclusive") @RequestParam(required = false) BigDecimal maxPrice,
+            @Parameter(description = "true for products with stock, false for products without") @RequestParam(required = false) Boolean inStock,
+            @Parameter(description = "Highest stock, inclusive, e.g. for low stock reports") @RequestParam(required = false) Integer maxStock,
+            @Parameter(description = "Beginning of the name, case insensitive") @RequestParam(required = false) String namePrefix,
+            @Parameter(hidden = true) @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @Parameter(hidden = true) @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @Parameter(hidden = true) @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        ProductFilter filter = ProductFilter.builder()
+                .minPrice(minPrice)
+                .maxPrice(maxPrice)
+                .inStock(inStock)
+                .maxStock(maxStock)
+                .namePrefix(namePrefix)
+                .build();
+        // Only JSON is cached, the binary formats go through the message converters
+        if (listingCache.isEnabled() && prefersJson(accept)) {
+            return cachedListing(listingCache.get(filter, cursor, size,
+                    () -> productService.findPageOrderedByPrice(filter, cursor, size)), acceptEncoding, ifNoneMatch);
+        }
+        ProductPage page = productService.findPageOrderedByPrice(filter, cursor, size);
+        // A matching If-None-Match is answered with 304 before the page is serialized
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .eTag(ProductETags.of(page.getItems(), page.getNextCursor()));
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return response.body(page.getItems());
+    }
+
+    @Operation(summary = "Search products",
+            description = "Full-text search over name and description, accent and case insensitive, most relevant first (BM25)")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Search completed successfully",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = ProductSearchPage.class))),
+            @ApiResponse(responseCode = "400", description = "Blank query or invalid page",
+                    content = @Content(schema = @Schema(ref = "#/components/schemas/BadRequestError")))
+    })
+    @GetMapping("/search")
+    public ProductSearchPage searchProducts(
+            @Parameter(description = "Words to search for", example = "lampara") @RequestParam String q,
+            @Parameter(description = "Page number, starting at 0") @RequestParam(required = false) Integer page,
+            @Parameter(description = "Page size, capped by products.pagination.max-page-size") @RequestParam(required = false) Integer size) {
+        return productService.search(q, page, size);
+    }
+
+    @Operation(summary = "Suggest products",
+            description = "Autocompletes product names by prefix, accent and case insensitive. "
+                    + "Products with more stock come first, then the cheapest")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Suggestions found successfully",
+                    content = @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = ProductSuggestion.class)))),
+            @ApiResponse(responseCode = "400", description = "Blank prefix or invalid limit",
+                    content = @Content(schema = @Schema(ref = "#/components/schemas/BadRequestError")))
+    })
+    @GetMapping("/suggest")
+    public List<ProductSuggestion> suggestProducts(
+            @Parameter(description = "Beginning of the product name", example = "lamp") @RequestParam String prefix,
+            @Parameter(description = "Number of suggestions, capped by products.search.suggest-size") @RequestParam(required = false) Integer limit) {
+        return productService.suggest(prefix, limit);
+    }
+
+    @Operation(summary = "Get products by IDs",
+            description = "Returns the requested products in the requested order, reporting the IDs that do not exist")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Products looked up successfully",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = ProductLookupResult.class))),
+            @ApiResponse(responseCode = "400", description = "No IDs or too many IDs",
+                    content = @Content(schema = @Schema(ref = "#/components/schemas/BadRequestError")))
+    })
+    @GetMapping(params = "ids")
+    public ProductLookupResult getProductsByIds(
+            @Parameter(description = "Comma separated product IDs", example = "1,2,3") @RequestParam List<Long> ids) {
+        return productService.findAllByIds(ids);
+    }
+
+    @Operation(summary = "Get products by IDs (long lists)",
+            description = "Same as GET /api/products?ids= but takes the IDs as a JSON array in the body")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Products looked up successfully",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = ProductLookupResult.class))),
+            @ApiResponse(responseCode = "400", description = "No IDs or too many IDs",
+                    content = @Content(schema = @Schema(ref = "#/components/schemas/BadRequestError")))
+    })
+    @PostMapping("/lookup")
+    public ProductLookupResult lookupProducts(@RequestBody List<Long> ids) {
+        return productService.findAllByIds(ids);
+    }
+
+    @Operation(summary = "Export all products",
+            description = "Streams every product as newline-delimited JSON, one product per line ordered by id")
+    @ApiResponse(responseCode = "200", description = "Products exported successfully",
+            content = @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE, schema = @Schema(implementation = ProductDto.class)))
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public void exportProducts(HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        OutputStream out = response.getOutputStream();
+        productService.exportAll(productDto -> {
+            try {
+                out.write(objectMapper.writeValueAsBytes(productDto));
+                out.write('\n');
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+        out.flush();
+    }
+
+    @Operation(summary = "Stream product changes",
+            description = "Server-Sent Events with every committed create, update and delete, with the version left and the "
+                    + "fields written. Reconnecting with Last-Event-ID resumes after that event; a client too far behind, or "
+                    + "resuming from an id of before a restart, gets a resync event with the id to resume from after re-reading "
+                    + "the listing. Needs products.change-feed.enabled")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Stream of product-changed events",
+                    content = @Content(mediaType = MediaType.TEXT_EVENT_STREAM_VALUE, schema = @Schema(implementation = ProductChangeDto.class))),
+            @ApiResponse(responseCode = "404", description = "Change feed disabled"),
+            @ApiResponse(responseCode = "503", description = "Too many open streams")
+    })
+    @GetMapping(value = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<ResponseBodyEmitter> streamChanges(
+            @Parameter(description = "Id of the last event received") @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        if (!changeFeed.isEnabled()) {
+            return ResponseEntity.notFound().build();
+        }
+        return changeFeed.subscribe(lastEventId)
+                .map(emitter -> ResponseEntity.ok().contentType(MediaType.TEXT_EVENT_STREAM).body(emitter))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
+    }
+
+    /**
+     * The bytes are written as they are. The gzipped bytes have their own tag, and an If-None-Match naming either
+     * encoding gets a 304 carrying the tag it matched, so a cache keeps serving the copy it has.
+     */
+    private static ResponseEntity<byte[]> cachedListing(ProductListingCache.Listing listing, String acceptEncoding,
+                                                        String ifNoneMatch) {
+        boolean gzip = ProductListingCache.acceptsGzip(acceptEncoding);
+        String identityTag = listing.getETag();
+        String gzipTag = ProductETags.gzipOf(identityTag);
+        String matched = ifNoneMatch == null ? null
+                : ProductETags.matchedBy(ifNoneMatch, gzip ? gzipTag : identityTag, gzip ? identityTag : gzipTag);
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(matched != null ? HttpStatus.NOT_MODIFIED : HttpStatus.OK)
+                .eTag(matched != null ? matched : gzip ? gzipTag : identityTag)
+                .varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if (listing.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, listing.getNextCursor());
+        }
+        if (matched != null) {
+            return response.build();
+        }
+        response.contentType(MediaType.APPLICATION_JSON);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(gzip ? listing.getGzip() : listing.getJson());
+    }
+
+    private static boolean prefersJson(String accept) {
+        if (accept == null) {
+            return true;
+        }
+        try {
+            List<MediaType> mediaTypes = MediaType.parseMediaTypes(accept);
+            MediaType.sortBySpecificityAndQuality(mediaTypes);
+            return mediaTypes.isEmpty() || mediaTypes.get(0).includes(MediaType.APPLICATION_JSON);
+        } catch (InvalidMediaTypeException ex) {
+            // Left to the regular negotiation to reject
+            return false;
+        }
+    }
+
+    private static Set<Long> expectedVersions(String ifMatch) {
+        return ifMatch == null ? null : ProductETags.versionsOf(ifMatch);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,177 @@
+package com.paygoal.exercie.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.paygoal.exercie.dto.ProductBatchRequest;
+import com.paygoal.exercie.dto.ProductDto;
+import com.paygoal.exercie.dto.ProductFilter;
+import com.paygoal.exercie.dto.ProductLookupResult;
+import com.paygoal.exercie.dto.ProductSearchPage;
+import com.paygoal.exercie.dto.ProductSuggestion;
+import com.paygoal.exercie.dto.StockDto;
+import com.paygoal.exercie.dto.StockRequest;
+import com.paygoal.exercie.service.ReactiveProductService;
+import com.paygoal.exercie.utils.ProductETags;
+import com.paygoal.exercie.utils.ProductMergePatch;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.validation.Valid;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Same endpoints, status codes and headers as {@link ProductController}, served by WebFlux when the reactive profile
+ * is active. The OpenAPI documentation is the servlet controller's, springdoc only runs on the servlet stack.
+ * <p>
+ * The listing can also be read as newline-delimited JSON, which streams every matching product from the cursor on
+ * instead of one page.
+ */
+@RestController
+@RequestMapping("/api/products")
+@Profile("reactive")
+@RequiredArgsConstructor
+public class ReactiveProductController {
+
+    private final ReactiveProductService productService;
+    private final ProductMergePatch productMergePatch;
+
+    @PostMapping
+    @ResponseStatus(HttpStatus.CREATED)
+    public Mono<ProductDto> createProduct(@Valid @RequestBody ProductDto productDto) {
+        return productService.create(productDto);
+    }
+
+    @PostMapping("/batch")
+    @ResponseStatus(HttpStatus.CREATED)
+    public Mono<List<ProductDto>> createProducts(@Valid @RequestBody ProductBatchRequest request) {
+        return productService.createAll(request.getProducts());
+    }
+
+    @GetMapping("/{id}")
+    public Mono<ResponseEntity<ProductDto>> getProductById(@PathVariable Long id, ServerWebExchange exchange) {
+        Mono<ResponseEntity<ProductDto>> product = productService.findById(id)
+                .map(productDto -> ResponseEntity.ok()
+                        .eTag(ProductETags.of(productDto.getVersion()))
+                        .body(productDto));
+        if (exchange.getRequest().getHeaders().getFirst(HttpHeaders.IF_NONE_MATCH) == null) {
+            return product;
+        }
+        // Revalidation only needs the version, the product is loaded and serialized only when it changed
+        return productService.findVersionById(id)
+                .flatMap(version -> exchange.checkNotModified(ProductETags.of(version)) ? Mono.empty() : product);
+    }
+
+    @PutMapping("/{id}")
+    public Mono<ProductDto> updateProduct(@PathVariable Long id,
+                                          @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                          @Valid @RequestBody ProductDto productDto) {
+        return productService.update(id, productDto, expectedVersions(ifMatch));
+    }
+
+    @PatchMapping(value = "/{id}", consumes = {ProductMergePatch.MEDIA_TYPE, MediaType.APPLICATION_JSON_VALUE})
+    public Mono<ProductDto> patchProduct(@PathVariable Long id, @RequestBody JsonNode patch) {
+        return productService.patch(id, productMergePatch.toChanges(patch));
+    }
+
+    @DeleteMapping("/{id}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public Mono<Void> deleteProduct(@PathVariable Long id,
+                                    @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return productService.delete(id, expectedVersions(ifMatch));
+    }
+
+    @PostMapping("/{id}/stock/reserve")
+    public Mono<StockDto> reserveStock(@PathVariable Long id, @Valid @RequestBody StockRequest request) {
+        return productService.reserveStock(id, request.getQuantity());
+    }
+
+    @PostMapping("/{id}/stock/release")
+    public Mono<StockDto> releaseStock(@PathVariable Long id, @Valid @RequestBody StockRequest request) {
+        return productService.releaseStock(id, request.getQuantity());
+    }
+
+    @GetMapping
+    public Mono<ResponseEntity<List<ProductDto>>> getAllProductsOrderedByPrice(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(required = false) BigDecimal minPrice,
+            @RequestParam(required = false) BigDecimal maxPrice,
+            @RequestParam(required = false) Boolean inStock,
+            @RequestParam(required = false) Integer maxStock,
+            @RequestParam(required = false) String namePrefix) {
+        ProductFilter filter = filter(minPrice, maxPrice, inStock, maxStock, namePrefix);
+        return productService.findPageOrderedByPrice(filter, cursor, size)
+                .map(page -> {
+                    // A matching If-None-Match is answered with 304 before the page is serialized
+                    ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                            .eTag(ProductETags.of(page.getItems(), page.getNextCursor()));
+                    if (page.getNextCursor() != null) {
+                        response.header(ProductController.NEXT_CURSOR_HEADER, page.getNextCursor());
+                    }
+                    return response.body(page.getItems());
+                });
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<ProductDto> streamProductsOrderedByPrice(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) BigDecimal minPrice,
+            @RequestParam(required = false) BigDecimal maxPrice,
+            @RequestParam(required = false) Boolean inStock,
+            @RequestParam(required = false) Integer maxStock,
+            @RequestParam(required = false) String namePrefix) {
+        return productService.streamOrderedByPrice(filter(minPrice, maxPrice, inStock, maxStock, namePrefix), cursor);
+    }
+
+    @GetMapping("/search")
+    public Mono<ProductSearchPage> searchProducts(@RequestParam String q,
+                                                  @RequestParam(required = false) Integer page,
+                                                  @RequestParam(required = false) Integer size) {
+        return productService.search(q, page, size);
+    }
+
+    @GetMapping("/suggest")
+    public Mono<List<ProductSuggestion>> suggestProducts(@RequestParam String prefix,
+                                                         @RequestParam(required = false) Integer limit) {
+        return productService.suggest(prefix, limit);
+    }
+
+    @GetMapping(params = "ids")
+    public Mono<ProductLookupResult> getProductsByIds(@RequestParam List<Long> ids) {
+        return productService.findAllByIds(ids);
+    }
+
+    @PostMapping("/lookup")
+    public Mono<ProductLookupResult> lookupProducts(@RequestBody List<Long> ids) {
+        return productService.findAllByIds(ids);
+    }
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<ProductDto> exportProducts() {
+        return productService.exportAll();
+    }
+
+    private static ProductFilter filter(BigDecimal minPrice, BigDecimal maxPrice, Boolean inStock, Integer maxStock,
+                                        String namePrefix) {
+        return ProductFilter.builder()
+                .minPrice(minPrice)
+                .maxPrice(maxPrice)
+                .inStock(inStock)
+                .maxStock(maxStock)
+                .namePrefix(namePrefix)
+                .build();
+    }
+
+    private static Set<Long> expectedVersions(String ifMatch) {
+        return ifMatch == null ? null : ProductETags.versionsOf(ifMatch);
+    }
+}
@@ -0,0 +1,101 @@
+package com.paygoal.exercie.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.paygoal.exercie.configuration.VirtualThreadProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caps the requests in flight when they run on virtual threads. Tomcat's thread pool used to be that cap; without it
+ * every accepted connection would start a request, and those past the connection pool would all queue on Hikari.
+ * Requests over the limit get a 503 with the usual error body. Actuator paths are never held back.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty("products.virtual-threads.enabled")
+public class RequestAdmissionFilter extends OncePerRequestFilter implements MeterBinder {
+
+    private static final String RETRY_AFTER_SECONDS = "1";
+
+    private final Semaphore permits;
+    private final int maxConcurrentRequests;
+    private final long admissionTimeoutNanos;
+    private final ObjectMapper objectMapper;
+    private final LongAdder rejected = new LongAdder();
+
+    public RequestAdmissionFilter(VirtualThreadProperties properties, ObjectMapper objectMapper) {
+        this.maxConcurrentRequests = properties.getMaxConcurrentRequests();
+        this.permits = new Semaphore(maxConcurrentRequests);
+        this.admissionTimeoutNanos = properties.getAdmissionTimeout().toNanos();
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        boolean admitted;
+        try {
+            admitted = permits.tryAcquire(admissionTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            admitted = false;
+        }
+        if (!admitted) {
+            rejected.increment();
+            reject(response);
+            return;
+        }
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            permits.release();
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return request.getRequestURI().startsWith("/actuator");
+    }
+
+    private void reject(HttpServletResponse response) throws IOException {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("status", 503);
+        body.put("timestamp", LocalDateTime.now());
+        body.put("message", "Too many requests in progress, retry later");
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS);
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), body);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("products.requests.in.flight", permits, available -> maxConcurrentRequests - available.availablePermits())
+                .description("Requests admitted and not finished yet")
+                .register(registry);
+        FunctionCounter.builder("products.requests.rejected", rejected, LongAdder::sum)
+                .description("Requests turned away with a 503 because too many were in flight")
+                .register(registry);
+    }
+}
@@ -0,0 +1,30 @@
+package com.paygoal.exercie.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Schema(description = "Estadisticas de la cache de productos")
+public class CacheStatsDto {
+
+    @Schema(description = "Cantidad de entradas en cache", example = "120")
+    private long size;
+
+    @Schema(description = "Lecturas servidas desde la cache", example = "950")
+    private long hitCount;
+
+    @Schema(description = "Lecturas que fueron a la base de datos", example = "50")
+    private long missCount;
+
+    @Schema(description = "Proporcion de aciertos", example = "0.95")
+    private double hitRate;
+
+    @Schema(description = "Entradas desalojadas por tamaño o expiracion", example = "3")
+    private long evictionCount;
+}
@@ -0,0 +1,29 @@
+package com.paygoal.exercie.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Schema(description = "Estadisticas de lecturas de productos agrupadas")
+public class CoalescingStatsDto {
+
+    @Schema(description = "Lecturas que llegaron a la base de datos", example = "40")
+    private long loads;
+
+    @Schema(description = "Lecturas que esperaron una carga ya en curso", example = "960")
+    private long collapsed;
+
+    @Schema(description = "Cargas en curso en este momento", example = "0")
+    private int inFlight;
+
+    @Schema(description = "Lecturas agrupadas por id de producto, de mayor a menor")
+    private Map<Long, Long> collapsedByProduct;
+}
@@ -0,0 +1,35 @@
+package com.paygoal.exercie.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Schema(description = "Resumen de latencia de un timer")
+public class LatencyDto {
+
+    @Schema(description = "Nombre del timer", example = "products.service")
+    private String name;
+
+    @Schema(description = "Tags del timer", example = "{\"method\": \"findById\"}")
+    private Map<String, String> tags;
+
+    @Schema(description = "Cantidad de mediciones", example = "1520")
+    private long count;
+
+    @Schema(description = "Latencia media en milisegundos", example = "0.4")
+    private double meanMs;
+
+    @Schema(description = "Latencia maxima reciente en milisegundos", example = "12.7")
+    private double maxMs;
+
+    @Schema(description = "Percentiles en milisegundos, null si el timer no los publica", example = "{\"0.5\": 0.3, \"0.99\": 4.1}")
+    private Map<String, Double> percentilesMs;
+}
@@ -0,0 +1,38 @@
+package com.paygoal.exercie.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Schema(description = "Resultado de comparar el indice de precios en memoria con la tabla")
+public class PriceIndexCheckDto {
+
+    @Schema(description = "true si el indice tiene exactamente los productos de la tabla", example = "true")
+    private boolean consistent;
+
+    @Schema(description = "Productos en la tabla", example = "1000000")
+    private long tableRows;
+
+    @Schema(description = "Productos en el indice", example = "1000000")
+    private long indexEntries;
+
+    @Schema(description = "IDs que estan en la tabla pero no en el indice")
+    private List<Long> missingIds;
+
+    @Schema(description = "IDs cuyo contenido en el indice difiere de la tabla")
+    private List<Long> staleIds;
+
+    @Schema(description = "IDs que estan en el indice pero ya no en la tabla")
+    private List<Long> extraIds;
+
+    @Schema(description = "Milisegundos que tomo la comparacion", example = "850")
+    private long elapsedMs;
+}
@@ -0,0 +1,24 @@
+package com.paygoal.exercie.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotEmpty;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Schema(description = "Lote de productos a crear")
+public class ProductBatchRequest {
+
+    // Errors are reported per item, e.g. "products[3].price"
+    @NotEmpty(message = "At least one product is required")
+    @Schema(description = "Productos a crear", requiredMode = Schema.RequiredMode.REQUIRED)
+    private List<@Valid ProductDto> products;
+}
@@ -0,0 +1,34 @@
+package com.paygoal.exercie.dto;
+
+import com.paygoal.exercie.event.ProductChangedEvent;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Schema(description = "Cambio confirmado de un producto, tal como sale en el feed de cambios")
+public class ProductChangeDto {
+
+    @Schema(description = "Tipo de cambio", example = "UPDATED")
+    private ProductChangedEvent.Type type;
+
+    @Schema(description = "ID del producto", example = "1")
+    private Long productId;
+
+    @Schema(description = "Version del producto luego del cambio, ausente si no se conoce", example = "4")
+    private Long version;
+
+    @Schema(description = "Campos escritos por el cambio, vacio en un borrado", example = "[\"price\", \"stock\"]")
+    private List<String> fields;
+
+    @Schema(description = "Momento en que el cambio llego al feed, luego del commit")
+    private Instant committedAt;
+}
@@ -1,4 +1,6 @@
 package com.paygoal.exercie.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -14,7 +16,7 @@ import java.math.BigDecimal;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-@Builder
+@Builder(toBuilder = true)
 @Schema(description = "Datos de producto para transferencia")
 public class ProductDto {
 
@@ -36,5 +38,9 @@ public class ProductDto {
     @Min(value = 0, message = "Stock cannot be negative")
     @Schema(description = "Disponibilidad de stock", example = "10", minimum = "0")
     private int stock;
+
+    // Travels in the ETag header, not in the body
+    @JsonIgnore
+    private Long version;
 }
 
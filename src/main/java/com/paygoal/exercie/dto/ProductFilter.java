@@ -0,0 +1,34 @@
+package com.paygoal.exercie.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * Optional conditions of the product listing, a null field does not filter.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder(toBuilder = true)
+public class ProductFilter {
+
+    private BigDecimal minPrice;
+
+    private BigDecimal maxPrice;
+
+    // true: stock > 0, false: stock = 0
+    private Boolean inStock;
+
+    private Integer maxStock;
+
+    // Case insensitive
+    private String namePrefix;
+
+    public boolean isEmpty() {
+        return minPrice == null && maxPrice == null && inStock == null && maxStock == null && namePrefix == null;
+    }
+}
@@ -0,0 +1,23 @@
+package com.paygoal.exercie.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Schema(description = "Resultado de la busqueda de productos por ids")
+public class ProductLookupResult {
+
+    @Schema(description = "Productos encontrados, en el orden en que fueron pedidos")
+    private List<ProductDto> products;
+
+    @Schema(description = "Ids pedidos que no existen", example = "[42]")
+    private List<Long> missingIds;
+}
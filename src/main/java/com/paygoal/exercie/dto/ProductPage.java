@@ -0,0 +1,19 @@
+package com.paygoal.exercie.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ProductPage {
+
+    private List<ProductDto> items;
+
+    private String nextCursor;
+}
@@ -0,0 +1,29 @@
+package com.paygoal.exercie.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Schema(description = "Pagina de resultados de busqueda ordenada por relevancia")
+public class ProductSearchPage {
+
+    @Schema(description = "Productos de la pagina, el mas relevante primero")
+    private List<ProductDto> items;
+
+    @Schema(description = "Cantidad total de productos que coinciden", example = "42")
+    private long total;
+
+    @Schema(description = "Numero de pagina, empezando en 0", example = "0")
+    private int page;
+
+    @Schema(description = "Tamaño de pagina", example = "20")
+    private int size;
+}
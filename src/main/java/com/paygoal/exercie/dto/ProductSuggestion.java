@@ -0,0 +1,29 @@
+package com.paygoal.exercie.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Schema(description = "Producto sugerido para completar la busqueda")
+public class ProductSuggestion {
+
+    @Schema(description = "ID del producto", example = "1")
+    private Long id;
+
+    @Schema(description = "Nombre del producto", example = "Lámpara de pie")
+    private String name;
+
+    @Schema(description = "Stock disponible", example = "12")
+    private Integer stock;
+
+    @Schema(description = "Precio del producto", example = "15000.00")
+    private BigDecimal price;
+}
@@ -0,0 +1,21 @@
+package com.paygoal.exercie.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Schema(description = "Stock de un producto luego de una reserva o liberacion")
+public class StockDto {
+
+    @Schema(description = "Identificador del producto", example = "1")
+    private Long productId;
+
+    @Schema(description = "Stock disponible", example = "9")
+    private int stock;
+}
@@ -0,0 +1,21 @@
+package com.paygoal.exercie.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.Min;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Schema(description = "Cantidad de stock a reservar o liberar")
+public class StockRequest {
+
+    @Min(value = 1, message = "Quantity must be greater than 0")
+    @Schema(description = "Unidades", example = "1", minimum = "1", requiredMode = Schema.RequiredMode.REQUIRED)
+    private int quantity;
+}
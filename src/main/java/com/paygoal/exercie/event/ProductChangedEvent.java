@@ -0,0 +1,35 @@
+package com.paygoal.exercie.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Published by the service on every product write.
+ * Listeners that keep derived state must react after commit, never before.
+ */
+@Value
+@AllArgsConstructor
+public class ProductChangedEvent {
+
+    public static final List<String> ALL_FIELDS = List.of("name", "description", "price", "stock");
+    public static final List<String> STOCK_FIELDS = List.of("stock");
+
+    public enum Type {
+        CREATED, UPDATED, DELETED,
+        // Only the stock changed, by a flush of the stock write-behind
+        STOCK
+    }
+
+    Type type;
+    Long productId;
+    // Version the write left the product at, null when the writer did not read it back
+    Long version;
+    // Fields the write set, empty for a delete
+    List<String> fields;
+
+    public ProductChangedEvent(Type type, Long productId) {
+        this(type, productId, null, List.of());
+    }
+}
@@ -0,0 +1,21 @@
+package com.paygoal.exercie.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.util.Map;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class FieldValidationException extends RuntimeException {
+
+    private final Map<String, String> errors;
+
+    public FieldValidationException(Map<String, String> errors) {
+        super("Invalid fields: " + errors.keySet());
+        this.errors = errors;
+    }
+
+    public Map<String, String> getErrors() {
+        return errors;
+    }
+}
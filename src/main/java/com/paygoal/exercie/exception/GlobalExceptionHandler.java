@@ -1,10 +1,13 @@
 package com.paygoal.exercie.exception;
 
 import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.CannotCreateTransactionException;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.method.annotation.MethodArgumentTypeMismatchException;
 
 import java.time.LocalDateTime;
 import java.util.HashMap;
@@ -21,6 +24,22 @@ public class GlobalExceptionHandler {
         body.put("message", ex.getMessage());
         return new ResponseEntity<>(body, HttpStatus.NOT_FOUND);
     }
+    @ExceptionHandler({OutOfStockException.class, StockLimitExceededException.class})
+    public ResponseEntity<?> handleOutOfStockException(RuntimeException ex) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("status", 409);
+        body.put("timestamp", LocalDateTime.now());
+        body.put("message", ex.getMessage());
+        return new ResponseEntity<>(body, HttpStatus.CONFLICT);
+    }
+    @ExceptionHandler(PreconditionFailedException.class)
+    public ResponseEntity<?> handlePreconditionFailedException(PreconditionFailedException ex) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("status", 412);
+        body.put("timestamp", LocalDateTime.now());
+        body.put("message", ex.getMessage());
+        return new ResponseEntity<>(body, HttpStatus.PRECONDITION_FAILED);
+    }
     @ExceptionHandler(BadRequestException.class)
     public ResponseEntity<?> handleBadRequestException(BadRequestException ex) {
         Map<String, Object> body = new HashMap<>();
@@ -30,6 +49,15 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(body, HttpStatus.BAD_REQUEST);
     }
 
+    @ExceptionHandler(MethodArgumentTypeMismatchException.class)
+    public ResponseEntity<?> handleTypeMismatchException(MethodArgumentTypeMismatchException ex) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("status", 400);
+        body.put("timestamp", LocalDateTime.now());
+        body.put("message", "Invalid value for parameter '" + ex.getName() + "'");
+        return new ResponseEntity<>(body, HttpStatus.BAD_REQUEST);
+    }
+
     @ExceptionHandler(MethodArgumentNotValidException.class)
     public ResponseEntity<?> handleValidationExceptions(MethodArgumentNotValidException ex) {
         Map<String, String> errors = new HashMap<>();
@@ -43,6 +71,27 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(body, HttpStatus.BAD_REQUEST);
     }
 
+    @ExceptionHandler(FieldValidationException.class)
+    public ResponseEntity<?> handleFieldValidationException(FieldValidationException ex) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("status", 400);
+        body.put("timestamp", LocalDateTime.now());
+        body.put("errors", ex.getErrors());
+        return new ResponseEntity<>(body, HttpStatus.BAD_REQUEST);
+    }
+
+    // The connection pool stayed exhausted for the whole hikari.connection-timeout: shed the request instead of a 500
+    @ExceptionHandler(CannotCreateTransactionException.class)
+    public ResponseEntity<?> handleCannotCreateTransactionException(CannotCreateTransactionException ex) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("status", 503);
+        body.put("timestamp", LocalDateTime.now());
+        body.put("message", "Database busy, retry later");
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(body);
+    }
+
     @ExceptionHandler(RuntimeException.class)
     public ResponseEntity<?> handleGlobalException(Exception ex) {
         Map<String, Object> body = new HashMap<>();
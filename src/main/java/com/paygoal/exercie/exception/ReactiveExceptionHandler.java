@@ -0,0 +1,62 @@
+package com.paygoal.exercie.exception;
+
+import org.springframework.beans.TypeMismatchException;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.bind.support.WebExchangeBindException;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebInputException;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * WebFlux raises its own exceptions for invalid bodies and parameters. They are answered with the same bodies as
+ * {@link GlobalExceptionHandler} gives their Spring MVC counterparts, which handles everything else in both stacks.
+ */
+// Ahead of GlobalExceptionHandler, whose RuntimeException handler would otherwise turn these into 500s
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@Profile("reactive")
+@RestControllerAdvice
+public class ReactiveExceptionHandler {
+
+    @ExceptionHandler(WebExchangeBindException.class)
+    public ResponseEntity<?> handleValidationExceptions(WebExchangeBindException ex) {
+        Map<String, String> errors = new HashMap<>();
+        ex.getBindingResult().getFieldErrors().forEach(error ->
+                errors.put(error.getField(), error.getDefaultMessage())
+        );
+        Map<String, Object> body = new HashMap<>();
+        body.put("status", 400);
+        body.put("timestamp", LocalDateTime.now());
+        body.put("errors", errors);
+        return new ResponseEntity<>(body, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(ServerWebInputException.class)
+    public ResponseEntity<?> handleInputException(ServerWebInputException ex) {
+        if (ex.getCause() instanceof TypeMismatchException && ex.getMethodParameter() != null) {
+            return error(HttpStatus.BAD_REQUEST, "Invalid value for parameter '" + ex.getMethodParameter().getParameterName() + "'");
+        }
+        return error(HttpStatus.BAD_REQUEST, ex.getReason());
+    }
+
+    @ExceptionHandler(ResponseStatusException.class)
+    public ResponseEntity<?> handleResponseStatusException(ResponseStatusException ex) {
+        return error(ex.getStatus(), ex.getReason());
+    }
+
+    private static ResponseEntity<?> error(HttpStatus status, String message) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("status", status.value());
+        body.put("timestamp", LocalDateTime.now());
+        body.put("message", message);
+        return new ResponseEntity<>(body, status);
+    }
+}
@@ -0,0 +1,11 @@
+package com.paygoal.exercie.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.CONFLICT)
+public class StockLimitExceededException extends RuntimeException {
+    public StockLimitExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,367 @@
+package com.paygoal.exercie.feed;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.paygoal.exercie.configuration.ChangeFeedProperties;
+import com.paygoal.exercie.dto.ProductChangeDto;
+import com.paygoal.exercie.event.ProductChangedEvent;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Committed product writes as a stream of Server-Sent Events, so consumers stop polling the listing for changes.
+ * <p>
+ * Every change gets the next sequence number and goes into a ring of the last {@code products.change-feed.capacity}
+ * changes; a write only sets a slot and wakes the subscribers, it never waits on one. Each subscriber has its own
+ * position in the ring and at most one delivery task running, so a client that reads slowly only holds up itself.
+ * Event ids are {@code <epoch>-<sequence>}: a client reconnecting with {@code Last-Event-ID} gets every change after
+ * it. One that fell further behind than the ring holds, or whose id comes from an earlier run, gets a {@code resync}
+ * event carrying the current id and is disconnected; it re-reads the listing and resumes from that id.
+ * <p>
+ * Events are rendered here in the {@code text/event-stream} format and written to a plain {@link ResponseBodyEmitter}
+ * as text. An {@code SseEmitter} flushes after every part of an event, three per change; written this way a
+ * subscriber that is behind gets its pending changes in a single write.
+ */
+@Slf4j
+@Component
+public class ProductChangeFeed implements MeterBinder, SmartLifecycle {
+
+    public static final String PRODUCT_CHANGED = "product-changed";
+    public static final String RESYNC = "resync";
+    // Changes written to a stream per flush, drained in rounds past that so a resync is never far behind
+    private static final int MAX_BATCH = 256;
+    private static final MediaType EVENT_TEXT = new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8);
+
+    private final ChangeFeedProperties properties;
+    private final ObjectMapper objectMapper;
+    // Distinguishes the sequences of this run from the ones of a run before a restart
+    private final String epoch = Long.toString(System.currentTimeMillis());
+    private final AtomicReferenceArray<Change> ring;
+    private final AtomicLong sequence = new AtomicLong();
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    // Taken before a stream is opened and given back when it closes, the delivery pool has a thread per permit
+    private final Semaphore streams;
+    private final LongAdder published = new LongAdder();
+    private final LongAdder resyncs = new LongAdder();
+    private final AtomicBoolean running = new AtomicBoolean();
+    private ThreadPoolExecutor delivery;
+    private ScheduledExecutorService heartbeats;
+
+    public ProductChangeFeed(ChangeFeedProperties properties, ObjectMapper objectMapper) {
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+        this.ring = new AtomicReferenceArray<>(properties.isEnabled() ? properties.getCapacity() : 0);
+        this.streams = new Semaphore(properties.getMaxSubscribers());
+        if (properties.isEnabled()) {
+            AtomicInteger threads = new AtomicInteger();
+            delivery = new ThreadPoolExecutor(properties.getMaxSubscribers(), properties.getMaxSubscribers(),
+                    1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "product-change-feed-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            delivery.allowCoreThreadTimeOut(true);
+            heartbeats = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "product-change-feed-heartbeat");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long interval = properties.getHeartbeat().toMillis();
+            heartbeats.scheduleWithFixedDelay(this::heartbeat, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * Opens a stream starting after lastEventId, or at the next change without one. Empty when the feed already
+     * has {@code max-subscribers} streams open.
+     */
+    public Optional<ResponseBodyEmitter> subscribe(String lastEventId) {
+        return subscribe(lastEventId, new ResponseBodyEmitter(properties.getTimeout().toMillis()));
+    }
+
+    Optional<ResponseBodyEmitter> subscribe(String lastEventId, ResponseBodyEmitter emitter) {
+        if (!streams.tryAcquire()) {
+            return Optional.empty();
+        }
+        Subscriber subscriber = new Subscriber(emitter);
+        if (lastEventId == null) {
+            subscriber.next = sequence.get() + 1;
+        } else {
+            long last = sequenceOf(lastEventId);
+            if (last < 0 || last > sequence.get()) {
+                subscriber.resync = true;
+            } else {
+                // Past the ring the slot holds a later change, which delivery recognizes as a gap
+                subscriber.next = last + 1;
+            }
+        }
+        emitter.onCompletion(() -> close(subscriber));
+        emitter.onTimeout(() -> close(subscriber));
+        emitter.onError(ex -> close(subscriber));
+        subscribers.add(subscriber);
+        schedule(subscriber);
+        return Optional.of(emitter);
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        if (!isEnabled()) {
+            return;
+        }
+        long number = sequence.incrementAndGet();
+        Change change = new Change(number, ProductChangeDto.builder()
+                .type(event.getType())
+                .productId(event.getProductId())
+                .version(event.getVersion())
+                .fields(event.getFields())
+                .committedAt(Instant.now())
+                .build());
+        int slot = slot(number);
+        // A writer stalled for a whole lap of the ring must not put its change back over a later one
+        Change current;
+        do {
+            current = ring.get(slot);
+        } while ((current == null || current.sequence < number) && !ring.compareAndSet(slot, current, change));
+        published.increment();
+        subscribers.forEach(this::schedule);
+    }
+
+    private void heartbeat() {
+        subscribers.forEach(subscriber -> {
+            subscriber.heartbeatDue = true;
+            schedule(subscriber);
+        });
+    }
+
+    private void schedule(Subscriber subscriber) {
+        if (subscriber.scheduled.compareAndSet(false, true)) {
+            delivery.execute(() -> drain(subscriber));
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        do {
+            try {
+                deliver(subscriber);
+            } catch (IOException | IllegalStateException ex) {
+                // Client gone or stream already completed
+                log.debug("Change feed subscriber dropped", ex);
+                close(subscriber);
+            }
+            subscriber.scheduled.set(false);
+        } while (!subscriber.closed.get() && hasWork(subscriber) && subscriber.scheduled.compareAndSet(false, true));
+    }
+
+    private void deliver(Subscriber subscriber) throws IOException {
+        if (subscriber.closed.get()) {
+            return;
+        }
+        if (subscriber.resync) {
+            resync(subscriber);
+            return;
+        }
+        if (!subscriber.connected) {
+            // The response headers only go out with the first write, the client would wait for a change or heartbeat
+            send(subscriber, ":connected\n\n");
+            subscriber.connected = true;
+        }
+        StringBuilder batch = new StringBuilder();
+        int size = 0;
+        while (size < MAX_BATCH) {
+            long next = subscriber.next;
+            Change change = ring.get(slot(next));
+            if (change == null || change.sequence < next) {
+                // Caught up, or the change is numbered but its writer has not set it yet
+                break;
+            }
+            if (change.sequence > next) {
+                if (size > 0) {
+                    send(subscriber, batch);
+                }
+                resync(subscriber);
+                return;
+            }
+            // The json is on a single line, as the ObjectMapper writes it without indentation
+            batch.append("id:").append(eventId(next)).append("\nevent:").append(PRODUCT_CHANGED)
+                    .append("\ndata:").append(json(change)).append("\n\n");
+            size++;
+            subscriber.next = next + 1;
+        }
+        if (size > 0) {
+            send(subscriber, batch);
+        } else if (subscriber.heartbeatDue) {
+            send(subscriber, ":heartbeat\n\n");
+        }
+        subscriber.heartbeatDue = false;
+    }
+
+    // Written once for all the subscribers, by the first one to get there rather than the writer
+    private String json(Change change) throws JsonProcessingException {
+        String json = change.json;
+        if (json == null) {
+            json = objectMapper.writeValueAsString(change.change);
+            change.json = json;
+        }
+        return json;
+    }
+
+    private boolean hasWork(Subscriber subscriber) {
+        Change change = ring.get(slot(subscriber.next));
+        return subscriber.resync || !subscriber.connected || subscriber.heartbeatDue
+                || change != null && change.sequence >= subscriber.next;
+    }
+
+    private void resync(Subscriber subscriber) throws IOException {
+        resyncs.increment();
+        send(subscriber, "event:" + RESYNC + "\ndata:"
+                + objectMapper.writeValueAsString(Map.of("lastEventId", eventId(sequence.get()))) + "\n\n");
+        close(subscriber);
+        subscriber.emitter.complete();
+    }
+
+    private static void send(Subscriber subscriber, CharSequence events) throws IOException {
+        subscriber.emitter.send(events.toString(), EVENT_TEXT);
+    }
+
+    // Called again by the emitter callbacks once the stream completes, only the first call gives the permit back
+    private void close(Subscriber subscriber) {
+        if (subscriber.closed.compareAndSet(false, true)) {
+            subscribers.remove(subscriber);
+            streams.release();
+        }
+    }
+
+    private String eventId(long number) {
+        return epoch + "-" + number;
+    }
+
+    // -1 for an id that is not one of this run
+    private long sequenceOf(String eventId) {
+        int dash = eventId.lastIndexOf('-');
+        if (dash < 0 || !eventId.substring(0, dash).equals(epoch)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(eventId.substring(dash + 1));
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    private int slot(long number) {
+        return (int) (number % ring.length());
+    }
+
+    /**
+     * Stopped ahead of the web server, whose graceful shutdown would otherwise wait on the open streams and which
+     * can no longer complete them once it is down.
+     */
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public void start() {
+        running.set(true);
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    @Override
+    public void stop() {
+        shutdown();
+    }
+
+    public void shutdown() {
+        running.set(false);
+        if (delivery == null) {
+            return;
+        }
+        heartbeats.shutdownNow();
+        delivery.shutdownNow();
+        subscribers.forEach(subscriber -> {
+            close(subscriber);
+            try {
+                subscriber.emitter.complete();
+            } catch (RuntimeException ex) {
+                // The connection is gone already, the rest still get completed
+                log.debug("Change feed stream could not be completed", ex);
+            }
+        });
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("products.change.feed.events", published, LongAdder::sum)
+                .description("Committed product changes added to the change feed")
+                .register(registry);
+        FunctionCounter.builder("products.change.feed.resyncs", resyncs, LongAdder::sum)
+                .description("Streams closed with a resync, behind the ring or resuming from an unknown id")
+                .register(registry);
+        Gauge.builder("products.change.feed.subscribers", subscribers, Set::size)
+                .description("Open change feed streams")
+                .register(registry);
+    }
+
+    private static final class Change {
+        final long sequence;
+        final ProductChangeDto change;
+        volatile String json;
+
+        Change(long sequence, ProductChangeDto change) {
+            this.sequence = sequence;
+            this.change = change;
+        }
+    }
+
+    private static final class Subscriber {
+        final ResponseBodyEmitter emitter;
+        // Only one delivery task runs per subscriber, it alone moves next
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        volatile long next;
+        volatile boolean resync;
+        volatile boolean connected;
+        volatile boolean heartbeatDue;
+        final AtomicBoolean closed = new AtomicBoolean();
+
+        Subscriber(ResponseBodyEmitter emitter) {
+            this.emitter = emitter;
+        }
+    }
+}
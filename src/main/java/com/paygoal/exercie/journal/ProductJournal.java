@@ -0,0 +1,227 @@
+package com.paygoal.exercie.journal;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of committed product states, in numbered segment files of a fixed size, each memory-mapped
+ * whole when it starts. An append is a copy into the mapping: it survives a crash of the process as soon as it
+ * returns, and a crash of the machine once {@link #force} has run.
+ * <p>
+ * A record is framed by its length and a CRC32, the zeros past the last record end the segment. A record torn by a
+ * crash is recognized and ignored along with anything after it in its segment.
+ */
+@Slf4j
+class ProductJournal implements Closeable {
+
+    static final int FRAME_HEADER = Integer.BYTES + Integer.BYTES;
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("products-(\\d+)\\.journal");
+
+    private final Path directory;
+    private final int segmentSize;
+    private final ReentrantLock lock = new ReentrantLock();
+    private MappedByteBuffer buffer;
+    private volatile long segment;
+
+    ProductJournal(Path directory, int segmentSize, long firstSegment) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        try {
+            Files.createDirectories(directory);
+            open(firstSegment);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot open the product journal in " + directory, ex);
+        }
+    }
+
+    void append(ProductRecord record) {
+        byte[] payload = record.encode();
+        if (FRAME_HEADER + payload.length > segmentSize) {
+            throw new IllegalArgumentException("Product " + record.getId() + " does not fit in a journal segment");
+        }
+        lock.lock();
+        try {
+            if (buffer.remaining() < FRAME_HEADER + payload.length) {
+                next();
+            }
+            frame(buffer, payload);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot start the next product journal segment", ex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Makes every record appended so far survive a crash of the machine.
+     */
+    void force() {
+        lock.lock();
+        try {
+            buffer.force();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ends the current segment and starts the next one, so that a snapshot taken afterwards covers everything in the
+     * ended one.
+     *
+     * @return the number of the segment ended
+     */
+    long rotate() {
+        lock.lock();
+        try {
+            long ended = segment;
+            next();
+            return ended;
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot rotate the product journal", ex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Deletes the segments a snapshot covers, up to and including the given one.
+     */
+    void deleteUpTo(long snapshotted) {
+        for (long number : segments(directory)) {
+            if (number <= snapshotted && number != segment) {
+                delete(directory, number);
+            }
+        }
+    }
+
+    long segment() {
+        return segment;
+    }
+
+    @Override
+    public void close() {
+        force();
+    }
+
+    // Called with the lock held. The old mapping is released by the GC, it is never written again
+    private void next() throws IOException {
+        buffer.force();
+        open(segment + 1);
+    }
+
+    private void open(long number) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentPath(directory, number),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Mapping past the end grows the file, sparse until written
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        segment = number;
+    }
+
+    static void frame(ByteBuffer buffer, byte[] payload) {
+        buffer.putInt(payload.length).putInt(checksum(payload)).put(payload);
+    }
+
+    /**
+     * The record framed at the buffer position, or null at the end of the records or at a torn or corrupt one.
+     */
+    static ProductRecord unframe(ByteBuffer buffer, String source) {
+        if (buffer.remaining() < FRAME_HEADER) {
+            return null;
+        }
+        int position = buffer.position();
+        int length = buffer.getInt();
+        int checksum = buffer.getInt();
+        if (length == 0) {
+            return null;
+        }
+        if (length < 0 || length > buffer.remaining()) {
+            log.warn("{} ends with a torn record at byte {}, ignoring it", source, position);
+            return null;
+        }
+        byte[] payload = new byte[length];
+        buffer.get(payload);
+        if (checksum(payload) != checksum) {
+            log.warn("{} has a corrupt record at byte {}, ignoring the rest", source, position);
+            return null;
+        }
+        return ProductRecord.decode(ByteBuffer.wrap(payload));
+    }
+
+    /**
+     * Numbers of the segments in the directory, in order.
+     */
+    static List<Long> segments(Path directory) {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        List<Long> numbers = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    numbers.add(Long.parseLong(matcher.group(1)));
+                }
+            });
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot list the product journal in " + directory, ex);
+        }
+        numbers.sort(null);
+        return numbers;
+    }
+
+    /**
+     * The valid records of a segment, in the order they were appended.
+     */
+    static List<ProductRecord> read(Path directory, long number) {
+        Path path = segmentPath(directory, number);
+        List<ProductRecord> records = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            String source = "Product journal segment " + number;
+            ProductRecord record;
+            while ((record = unframe(buffer, source)) != null) {
+                records.add(record);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot read product journal segment " + path, ex);
+        }
+        return records;
+    }
+
+    static void delete(Path directory, long number) {
+        try {
+            Files.deleteIfExists(segmentPath(directory, number));
+        } catch (IOException ex) {
+            // Left behind it is skipped at restore, the snapshot covers it
+            log.warn("Cannot delete product journal segment {}", number, ex);
+        }
+    }
+
+    static Path segmentPath(Path directory, long number) {
+        return directory.resolve(String.format("products-%020d.journal", number));
+    }
+
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,266 @@
+package com.paygoal.exercie.journal;
+
+import com.paygoal.exercie.configuration.ProductJournalProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.flywaydb.core.Flyway;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Rebuilds the products table from the journal right after the Flyway migrations, before anything reads it: the
+ * in-memory database starts with the seed rows of the migrations, the catalog of the last run is the latest
+ * {@link ProductSnapshot} plus the journal segments past it.
+ * <p>
+ * The segments are decoded in parallel and merged as they come, the merge keeps the latest record of each product
+ * whatever order they arrive in. The rows then go back in JDBC batches, one share of them per thread, with the secondary
+ * indexes dropped during the load and built again once it is done.
+ * <p>
+ * The stock of a restored row may already include write-behind deltas of intent log segments still on disk, flushed
+ * but not deleted before the stop. Each record tells up to which segment it does, {@link #appliedStockSegment(long)}
+ * hands that to the intent log replay, and the checkpoint row goes back to the oldest of them.
+ */
+@Slf4j
+@Component
+public class ProductJournalRestore implements FlywayMigrationStrategy {
+
+    // The checkpoint in the same statement, so it matches the stock read
+    static final String SELECT_PRODUCTS = "SELECT id, name, description, price, stock, version, "
+            + "(SELECT applied_segment FROM stock_intent_checkpoint WHERE id = 1) AS stock_segment FROM products";
+
+    private static final String INSERT = "INSERT INTO products (id, name, description, price, stock, version) VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String SET_STOCK_CHECKPOINT = "UPDATE stock_intent_checkpoint SET applied_segment = ? WHERE id = 1";
+    private static final String CREATE_INDEX = "CREATE INDEX ";
+    private static final int BATCH_SIZE = 1_000;
+
+    private final ProductJournalProperties properties;
+    private final JdbcTemplate jdbcTemplate;
+    // Products whose record is past the oldest checkpoint of the restored records, the rest are at that one
+    private volatile Map<Long, Long> stockSegments = Map.of();
+    private volatile long stockSegmentFloor;
+    private volatile long lastSegment;
+    private volatile long maxId;
+    private volatile boolean snapshotRestored;
+    private volatile Duration restoreTime = Duration.ZERO;
+
+    public ProductJournalRestore(ProductJournalProperties properties, DataSource dataSource) {
+        this.properties = properties;
+        // Not the JdbcTemplate bean, Spring Boot makes that one wait for the migration this runs in
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @Override
+    public void migrate(Flyway flyway) {
+        flyway.migrate();
+        if (properties.isEnabled()) {
+            restore();
+        }
+    }
+
+    /**
+     * Replaces the products table with the catalog in the journal directory, if anything was journaled there.
+     */
+    public void restore() {
+        long start = System.nanoTime();
+        Optional<Long> snapshotSegment = ProductSnapshot.latest(properties.getDirectory());
+        long covered = snapshotSegment.orElse(0L);
+        List<Long> tail = ProductJournal.segments(properties.getDirectory()).stream()
+                .filter(segment -> segment > covered)
+                .collect(Collectors.toList());
+        lastSegment = tail.isEmpty() ? covered : tail.get(tail.size() - 1);
+        if (snapshotSegment.isEmpty() && tail.isEmpty()) {
+            log.info("Nothing journaled in {} yet, keeping the migrated catalog", properties.getDirectory());
+            return;
+        }
+
+        ConcurrentMap<Long, ProductRecord> products = new ConcurrentHashMap<>();
+        LongAccumulator highestId = new LongAccumulator(Math::max, 0);
+        if (snapshotSegment.isPresent()) {
+            ProductSnapshot snapshot = ProductSnapshot.read(properties.getDirectory(), covered);
+            snapshot.records.forEach(record -> products.put(record.getId(), record));
+            highestId.accumulate(snapshot.maxId);
+            snapshotRestored = true;
+        } else {
+            // Stopped before its first snapshot: the journal goes on top of the catalog the migrations seed
+            jdbcTemplate.query(SELECT_PRODUCTS, rs -> {
+                ProductRecord record = ProductRecord.of(rs);
+                products.put(record.getId(), record);
+            });
+        }
+
+        ExecutorService replay = Executors.newFixedThreadPool(properties.getReplayThreads(), threadFactory());
+        try {
+            LongAdder records = new LongAdder();
+            List<Callable<Void>> segments = new ArrayList<>();
+            for (long segment : tail) {
+                segments.add(() -> {
+                    for (ProductRecord record : ProductJournal.read(properties.getDirectory(), segment)) {
+                        products.merge(record.getId(), record, ProductRecord::latest);
+                        highestId.accumulate(record.getId());
+                        records.increment();
+                    }
+                    return null;
+                });
+            }
+            runAll(replay, segments);
+
+            // In id order, each share then fills its own end of the primary key index
+            List<ProductRecord> rows = products.values().stream()
+                    .filter(record -> !record.isDeleted())
+                    .sorted(Comparator.comparingLong(ProductRecord::getId))
+                    .collect(Collectors.toList());
+            rows.forEach(record -> highestId.accumulate(record.getId()));
+            // Maintaining the secondary indexes row by row costs most of the load, each is built once afterwards instead
+            List<String> indexes = secondaryIndexes();
+            jdbcTemplate.update("DELETE FROM products");
+            indexes.forEach(index -> jdbcTemplate.execute("DROP INDEX " + index.substring(CREATE_INDEX.length(), index.indexOf(" ON "))));
+            runAll(replay, inserts(rows));
+            indexes.forEach(jdbcTemplate::execute);
+            restoreStockCheckpoint(rows);
+            maxId = highestId.get();
+            jdbcTemplate.execute("ALTER SEQUENCE products_seq RESTART WITH " + (maxId + 1));
+            // Fresh column selectivity, the planner picks the listing filter indexes from it
+            jdbcTemplate.execute("ANALYZE");
+
+            restoreTime = Duration.ofNanos(System.nanoTime() - start);
+            log.info("Restored {} products from {} and {} journal records in {} segments in {} ms", rows.size(),
+                    snapshotSegment.isPresent() ? "snapshot " + covered : "the migrated catalog", records.sum(),
+                    tail.size(), restoreTime.toMillis());
+        } finally {
+            replay.shutdownNow();
+        }
+    }
+
+    // The tail holds at most the writes of one snapshot interval, only those records can be past the snapshot's checkpoint
+    private void restoreStockCheckpoint(List<ProductRecord> rows) {
+        long floor = rows.stream().mapToLong(ProductRecord::getStockSegment).min().orElse(0);
+        stockSegments = rows.stream()
+                .filter(record -> record.getStockSegment() > floor)
+                .collect(Collectors.toMap(ProductRecord::getId, ProductRecord::getStockSegment));
+        stockSegmentFloor = floor;
+        jdbcTemplate.update(SET_STOCK_CHECKPOINT, floor);
+    }
+
+    // Definitions of the non-unique indexes of the table as H2 scripts them, whatever the migrations created
+    private List<String> secondaryIndexes() {
+        return jdbcTemplate.queryForList("SCRIPT NODATA TABLE products", String.class).stream()
+                .filter(sql -> sql.startsWith(CREATE_INDEX))
+                .map(sql -> sql.endsWith(";") ? sql.substring(0, sql.length() - 1) : sql)
+                .collect(Collectors.toList());
+    }
+
+    // One contiguous share of the rows per thread, each inserted in its own batches
+    private List<Callable<Void>> inserts(List<ProductRecord> rows) {
+        int threads = properties.getReplayThreads();
+        int share = Math.max(1, (rows.size() + threads - 1) / threads);
+        List<Callable<Void>> inserts = new ArrayList<>();
+        for (int from = 0; from < rows.size(); from += share) {
+            List<ProductRecord> slice = rows.subList(from, Math.min(rows.size(), from + share));
+            inserts.add(() -> {
+                for (int first = 0; first < slice.size(); first += BATCH_SIZE) {
+                    insert(slice.subList(first, Math.min(slice.size(), first + BATCH_SIZE)));
+                }
+                return null;
+            });
+        }
+        return inserts;
+    }
+
+    private void insert(List<ProductRecord> batch) {
+        jdbcTemplate.batchUpdate(INSERT, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                ProductRecord record = batch.get(i);
+                ps.setLong(1, record.getId());
+                ps.setString(2, record.getName());
+                ps.setString(3, record.getDescription());
+                ps.setBigDecimal(4, record.getPrice());
+                ps.setInt(5, record.getStock());
+                ps.setLong(6, record.getVersion());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return batch.size();
+            }
+        });
+    }
+
+    private static void runAll(ExecutorService executor, List<Callable<Void>> tasks) {
+        try {
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Product journal restore interrupted", ex);
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Product journal restore failed", ex.getCause());
+        }
+    }
+
+    private static ThreadFactory threadFactory() {
+        AtomicInteger threads = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "product-journal-replay-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * The last journal segment of the previous run, the next run writes past it.
+     */
+    long lastSegment() {
+        return lastSegment;
+    }
+
+    /**
+     * Highest product id in the restored journal, deleted products included.
+     */
+    long maxId() {
+        return maxId;
+    }
+
+    /**
+     * The last stock intent log segment whose deltas the restored stock of the product includes. Only meaningful
+     * before the write-behind replays the log, and 0 when the journal restored nothing.
+     */
+    public long appliedStockSegment(long id) {
+        return stockSegments.getOrDefault(id, stockSegmentFloor);
+    }
+
+    /**
+     * Whether the catalog came from a snapshot of an earlier run rather than the migrations.
+     */
+    public boolean isSnapshotRestored() {
+        return snapshotRestored;
+    }
+
+    public Duration getRestoreTime() {
+        return restoreTime;
+    }
+}
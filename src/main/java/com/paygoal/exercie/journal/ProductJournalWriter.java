@@ -0,0 +1,212 @@
+package com.paygoal.exercie.journal;
+
+import com.paygoal.exercie.configuration.ProductJournalProperties;
+import com.paygoal.exercie.event.ProductChangedEvent;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Journals every committed product write, so the next start can restore the catalog with
+ * {@link ProductJournalRestore} instead of the in-memory database losing it.
+ * <p>
+ * After commit the row is read back and appended whole to the {@link ProductJournal}, a deletion as a tombstone.
+ * Every {@code snapshot-interval}, after {@code snapshot-threshold} writes, and once at startup to fold in the
+ * replayed tail, the journal is rotated and the table written out as a new {@link ProductSnapshot}; the segments it
+ * covers are deleted. Writes keep going meanwhile: a row read back before the rotation is appended before it too, so
+ * whatever lands past the snapshot was read after it started and is at least as recent as the table it scans.
+ */
+@Slf4j
+@Component
+public class ProductJournalWriter implements MeterBinder {
+
+    private static final String SELECT_PRODUCT = ProductJournalRestore.SELECT_PRODUCTS + " WHERE id = ?";
+    private static final String MAX_ID = "SELECT COALESCE(MAX(id), 0) FROM products";
+
+    private final ProductJournalProperties properties;
+    private final ProductJournalRestore restore;
+    private final JdbcTemplate jdbcTemplate;
+
+    private final AtomicLong maxId = new AtomicLong();
+    private final AtomicLong sinceSnapshot = new AtomicLong();
+    private final AtomicBoolean snapshotRequested = new AtomicBoolean();
+    // Reading a row back and appending it share the read lock, rotating the journal needs the write lock
+    private final ReentrantReadWriteLock rotationLock = new ReentrantReadWriteLock();
+    private final LongAdder journaled = new LongAdder();
+    private final LongAdder snapshots = new LongAdder();
+    private ProductJournal journal;
+    private ScheduledExecutorService scheduler;
+
+    public ProductJournalWriter(ProductJournalProperties properties, ProductJournalRestore restore,
+                                JdbcTemplate jdbcTemplate) {
+        this.properties = properties;
+        this.restore = restore;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!isEnabled()) {
+            return;
+        }
+        maxId.set(restore.maxId());
+        journal = new ProductJournal(properties.getDirectory(), Math.toIntExact(properties.getSegmentSize().toBytes()),
+                restore.lastSegment() + 1);
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "product-journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long force = properties.getForceInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(journal::force, force, force, TimeUnit.MILLISECONDS);
+        long snapshot = properties.getSnapshotInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(() -> {
+            if (sinceSnapshot.get() > 0) {
+                takeSnapshot();
+            }
+        }, snapshot, snapshot, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * The first snapshot of this run, after the runners: it holds the catalog as restored, or as the seed left it.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void snapshotAtStartup() {
+        if (scheduler != null) {
+            scheduler.execute(this::takeSnapshot);
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        if (journal == null) {
+            return;
+        }
+        long id = event.getProductId();
+        Lock lock = rotationLock.readLock();
+        lock.lock();
+        try {
+            ProductRecord record;
+            if (event.getType() == ProductChangedEvent.Type.DELETED) {
+                record = ProductRecord.deleted(id);
+            } else {
+                List<ProductRecord> rows = jdbcTemplate.query(SELECT_PRODUCT, (rs, rowNum) -> ProductRecord.of(rs), id);
+                if (rows.isEmpty()) {
+                    // Deleted since, its deletion is journaled on its own
+                    return;
+                }
+                record = rows.get(0);
+            }
+            journal.append(record);
+        } finally {
+            lock.unlock();
+        }
+        journaled.increment();
+        maxId.accumulateAndGet(id, Math::max);
+        if (sinceSnapshot.incrementAndGet() >= properties.getSnapshotThreshold() && snapshotRequested.compareAndSet(false, true)) {
+            scheduler.execute(this::takeSnapshot);
+        }
+    }
+
+    /**
+     * Writes a new snapshot before returning.
+     */
+    public void snapshot() {
+        try {
+            scheduler.submit(this::takeSnapshot).get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Product snapshot failed", ex.getCause());
+        }
+    }
+
+    private void takeSnapshot() {
+        snapshotRequested.set(false);
+        long start = System.nanoTime();
+        long since = sinceSnapshot.getAndSet(0);
+        long segment;
+        try {
+            rotationLock.writeLock().lock();
+            try {
+                segment = journal.rotate();
+            } finally {
+                rotationLock.writeLock().unlock();
+            }
+            try (ProductSnapshot.Writer writer = ProductSnapshot.writer(properties.getDirectory(), segment)) {
+                jdbcTemplate.query(ProductJournalRestore.SELECT_PRODUCTS, (RowCallbackHandler) rs -> writer.add(ProductRecord.of(rs)));
+                // Past the ids of the table, a deleted product's id must not be handed out again after a restore
+                writer.commit(Math.max(maxId.get(), jdbcTemplate.queryForObject(MAX_ID, Long.class)));
+                log.info("Product snapshot of {} products up to journal segment {} in {} ms", writer.count(), segment,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+        } catch (RuntimeException ex) {
+            // The journal still holds every write, the next snapshot covers these too
+            sinceSnapshot.addAndGet(since);
+            log.warn("Product snapshot failed, keeping the journal", ex);
+            return;
+        }
+        ProductSnapshot.deleteBefore(properties.getDirectory(), segment);
+        journal.deleteUpTo(segment);
+        snapshots.increment();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        // A snapshot under way is finished, the periodic tasks are dropped
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        journal.close();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("products.journal.records", journaled, LongAdder::sum)
+                .description("Committed product writes appended to the journal")
+                .register(registry);
+        FunctionCounter.builder("products.journal.snapshots", snapshots, LongAdder::sum)
+                .description("Snapshots the journal was compacted into")
+                .register(registry);
+        Gauge.builder("products.journal.tail", sinceSnapshot, AtomicLong::get)
+                .description("Journaled writes since the last snapshot, replayed on top of it at restore")
+                .register(registry);
+        TimeGauge.builder("products.journal.restore.time", restore, TimeUnit.MILLISECONDS,
+                        journalRestore -> journalRestore.getRestoreTime().toMillis())
+                .description("Time the catalog took to restore from the snapshot and the journal at startup")
+                .register(registry);
+    }
+}
@@ -0,0 +1,118 @@
+package com.paygoal.exercie.journal;
+
+import lombok.Value;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * The committed state of a product as the journal and the snapshots keep it, or the fact that it was deleted.
+ * Records carry the whole row rather than the change, so replaying them needs no order: of two records of a product
+ * the one with the higher version wins, and a deletion wins over anything since ids are never reused.
+ * <p>
+ * Each record also holds the stock intent log checkpoint read along with the row: its stock already includes the
+ * write-behind deltas of that segment and the ones before, see {@code StockWriteBehind}.
+ */
+@Value
+class ProductRecord {
+
+    private static final byte PRODUCT = 1;
+    private static final byte DELETED = 2;
+
+    long id;
+    long version;
+    String name;
+    String description;
+    BigDecimal price;
+    int stock;
+    long stockSegment;
+    boolean deleted;
+
+    static ProductRecord product(long id, long version, String name, String description, BigDecimal price, int stock,
+                                 long stockSegment) {
+        return new ProductRecord(id, version, name, description, price, stock, stockSegment, false);
+    }
+
+    // A row of ProductJournalRestore.SELECT_PRODUCTS
+    static ProductRecord of(ResultSet rs) throws SQLException {
+        return product(rs.getLong("id"), rs.getLong("version"), rs.getString("name"), rs.getString("description"),
+                rs.getBigDecimal("price"), rs.getInt("stock"), rs.getLong("stock_segment"));
+    }
+
+    static ProductRecord deleted(long id) {
+        return new ProductRecord(id, 0, null, null, null, 0, 0, true);
+    }
+
+    /**
+     * Whichever of the two records of the same product replay keeps.
+     */
+    static ProductRecord latest(ProductRecord a, ProductRecord b) {
+        if (a.deleted || b.deleted) {
+            return a.deleted ? a : b;
+        }
+        return b.version >= a.version ? b : a;
+    }
+
+    byte[] encode() {
+        byte[] name = bytes(this.name);
+        byte[] description = bytes(this.description);
+        byte[] price = this.price == null ? null : this.price.unscaledValue().toByteArray();
+        ByteBuffer buffer = ByteBuffer.allocate(Byte.BYTES + 3 * Long.BYTES + Integer.BYTES
+                + length(name) + length(description) + Integer.BYTES + length(price));
+        buffer.put(deleted ? DELETED : PRODUCT).putLong(id).putLong(version).putInt(stock).putLong(stockSegment);
+        put(buffer, name);
+        put(buffer, description);
+        buffer.putInt(this.price == null ? 0 : this.price.scale());
+        put(buffer, price);
+        return buffer.array();
+    }
+
+    static ProductRecord decode(ByteBuffer buffer) {
+        boolean deleted = buffer.get() == DELETED;
+        long id = buffer.getLong();
+        long version = buffer.getLong();
+        int stock = buffer.getInt();
+        long stockSegment = buffer.getLong();
+        byte[] name = get(buffer);
+        byte[] description = get(buffer);
+        int scale = buffer.getInt();
+        byte[] price = get(buffer);
+        return new ProductRecord(id, version, string(name), string(description),
+                price == null ? null : new BigDecimal(new BigInteger(price), scale), stock, stockSegment, deleted);
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] bytes) {
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Length prefix plus bytes, -1 for null
+    private static int length(byte[] bytes) {
+        return Integer.BYTES + (bytes == null ? 0 : bytes.length);
+    }
+
+    private static void put(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(bytes.length).put(bytes);
+        }
+    }
+
+    private static byte[] get(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,219 @@
+package com.paygoal.exercie.journal;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Every product at one point, compacted from the journal: the catalog at restore is the latest snapshot plus the
+ * records of the journal segments past the one it covers. A snapshot is written to a temporary file and renamed into
+ * place once complete, so the latest one is always whole.
+ * <p>
+ * The header holds the last journal segment covered, the highest product id ever assigned, deleted ones included,
+ * and the number of records, followed by the records framed as in the journal.
+ */
+@Slf4j
+class ProductSnapshot {
+
+    private static final int MAGIC = 0x50534e31;
+    private static final int HEADER_SIZE = Integer.BYTES + 3 * Long.BYTES;
+    private static final Pattern SNAPSHOT_NAME = Pattern.compile("products-(\\d+)\\.snapshot");
+
+    final long segment;
+    final long maxId;
+    final List<ProductRecord> records;
+
+    private ProductSnapshot(long segment, long maxId, List<ProductRecord> records) {
+        this.segment = segment;
+        this.maxId = maxId;
+        this.records = records;
+    }
+
+    /**
+     * The segment covered by the latest snapshot in the directory.
+     */
+    static Optional<Long> latest(Path directory) {
+        List<Long> snapshots = snapshots(directory);
+        return snapshots.isEmpty() ? Optional.empty() : Optional.of(snapshots.get(snapshots.size() - 1));
+    }
+
+    static ProductSnapshot read(Path directory, long segment) {
+        Path path = snapshotPath(directory, segment);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+                throw new IllegalStateException("Product snapshot " + path + " has no valid header");
+            }
+            long covered = buffer.getLong();
+            long maxId = buffer.getLong();
+            long count = buffer.getLong();
+            List<ProductRecord> records = new ArrayList<>(Math.toIntExact(count));
+            String source = "Product snapshot " + segment;
+            ProductRecord record;
+            while ((record = ProductJournal.unframe(buffer, source)) != null) {
+                records.add(record);
+            }
+            if (records.size() != count) {
+                // Renamed into place only once complete, this is damage on disk and not a crash
+                throw new IllegalStateException("Product snapshot " + path + " holds " + records.size()
+                        + " valid records of " + count);
+            }
+            return new ProductSnapshot(covered, maxId, records);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot read product snapshot " + path, ex);
+        }
+    }
+
+    /**
+     * Starts a snapshot covering the journal up to and including the given segment.
+     */
+    static Writer writer(Path directory, long segment) {
+        return new Writer(directory, segment);
+    }
+
+    /**
+     * Deletes the snapshots older than the given one.
+     */
+    static void deleteBefore(Path directory, long segment) {
+        for (long number : snapshots(directory)) {
+            if (number < segment) {
+                try {
+                    Files.deleteIfExists(snapshotPath(directory, number));
+                } catch (IOException ex) {
+                    log.warn("Cannot delete product snapshot {}", number, ex);
+                }
+            }
+        }
+    }
+
+    static Path snapshotPath(Path directory, long segment) {
+        return directory.resolve(String.format("products-%020d.snapshot", segment));
+    }
+
+    private static List<Long> snapshots(Path directory) {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        List<Long> numbers = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                Matcher matcher = SNAPSHOT_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    numbers.add(Long.parseLong(matcher.group(1)));
+                }
+            });
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot list the product snapshots in " + directory, ex);
+        }
+        numbers.sort(null);
+        return numbers;
+    }
+
+    static final class Writer implements Closeable {
+
+        private static final int BUFFER_SIZE = 1 << 20;
+
+        private final Path directory;
+        private final long segment;
+        private final Path temporary;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private long count;
+        private boolean committed;
+
+        private Writer(Path directory, long segment) {
+            this.directory = directory;
+            this.segment = segment;
+            this.temporary = directory.resolve(snapshotPath(directory, segment).getFileName() + ".tmp");
+            try {
+                Files.createDirectories(directory);
+                channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING);
+                // Filled in by commit, once the count is known
+                channel.position(HEADER_SIZE);
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Cannot start a product snapshot in " + directory, ex);
+            }
+        }
+
+        void add(ProductRecord record) {
+            byte[] payload = record.encode();
+            try {
+                if (buffer.remaining() < ProductJournal.FRAME_HEADER + payload.length) {
+                    drain();
+                }
+                ProductJournal.frame(buffer, payload);
+                count++;
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Cannot write product snapshot " + temporary, ex);
+            }
+        }
+
+        /**
+         * Makes the snapshot durable and the latest one.
+         */
+        void commit(long maxId) {
+            try {
+                drain();
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putLong(segment).putLong(maxId).putLong(count).flip();
+                channel.write(header, 0);
+                channel.force(true);
+                channel.close();
+                Files.move(temporary, snapshotPath(directory, segment), StandardCopyOption.ATOMIC_MOVE);
+                forceDirectory(directory);
+                committed = true;
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Cannot commit product snapshot " + temporary, ex);
+            }
+        }
+
+        long count() {
+            return count;
+        }
+
+        @Override
+        public void close() {
+            if (committed) {
+                return;
+            }
+            try {
+                channel.close();
+                Files.deleteIfExists(temporary);
+            } catch (IOException ex) {
+                log.warn("Cannot remove the unfinished product snapshot {}", temporary, ex);
+            }
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    private static void forceDirectory(Path directory) {
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException ex) {
+            // Not every platform can open a directory, the snapshot data itself is still forced
+            log.debug("Cannot sync directory {}", directory, ex);
+        }
+    }
+}
@@ -4,11 +4,14 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.DynamicUpdate;
 
 import javax.persistence.*;
 import java.math.BigDecimal;
 
 @Entity
+@DynamicUpdate
+// Indexes live in the Flyway migrations under db/migration
 @Table(name = "products")
 @Data
 @NoArgsConstructor
@@ -16,14 +19,24 @@ import java.math.BigDecimal;
 @Builder
 public class Product {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // A pooled sequence (not IDENTITY) so Hibernate can batch inserts
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "products_seq")
+    @SequenceGenerator(name = "products_seq", sequenceName = "products_seq", allocationSize = 50)
     private Long id;
 
     private String name;
 
+    // Generated by the database from name, only read by the name prefix filter
+    @Column(name = "name_lower", insertable = false, updatable = false)
+    private String nameLower;
+
     private String description;
 
     private BigDecimal price;
 
     private int stock;
+
+    // Bumped by every write, also by the bulk JPQL updates, and exposed as the ETag
+    @Version
+    private Long version;
 }
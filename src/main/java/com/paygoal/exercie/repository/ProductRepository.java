@@ -1,7 +1,83 @@
 package com.paygoal.exercie.repository;
 
 import com.paygoal.exercie.model.Product;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
-public interface ProductRepository extends JpaRepository<Product, Long> {
+import javax.persistence.QueryHint;
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+
+public interface ProductRepository extends JpaRepository<Product, Long>, ProductRepositoryCustom {
+
+    int STREAM_FETCH_SIZE = 500;
+
+    String UPDATE_PRODUCT = "UPDATE Product p SET p.name = :#{#product.name}, p.description = :#{#product.description}, "
+            + "p.price = :#{#product.price}, p.stock = :#{#product.stock}, p.version = p.version + 1 ";
+
+    List<Product> findAllByOrderByPriceAscIdAsc(Pageable pageable);
+
+    // The leading "price >= :price" lets the (price, id) index seek straight to the cursor position
+    @Query("SELECT p FROM Product p WHERE p.price >= :price AND (p.price > :price OR p.id > :id) ORDER BY p.price ASC, p.id ASC")
+    List<Product> findPageAfter(@Param("price") BigDecimal price, @Param("id") Long id, Pageable pageable);
+
+    // Must be consumed inside a transaction and closed by the caller
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "" + STREAM_FETCH_SIZE),
+            @QueryHint(name = HINT_READONLY, value = "true")
+    })
+    @Query("SELECT p FROM Product p ORDER BY p.id")
+    Stream<Product> streamAll();
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(UPDATE_PRODUCT + "WHERE p.id = :id")
+    int updateProduct(@Param("id") Long id, @Param("product") Product product);
+
+    // Optimistic lock check folded into the UPDATE, 0 rows means missing or modified since
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(UPDATE_PRODUCT + "WHERE p.id = :id AND p.version IN :versions")
+    int updateProductIfVersion(@Param("id") Long id, @Param("product") Product product,
+                               @Param("versions") Collection<Long> versions);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM Product p WHERE p.id = :id")
+    int deleteProductById(@Param("id") Long id);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM Product p WHERE p.id = :id AND p.version IN :versions")
+    int deleteProductByIdIfVersion(@Param("id") Long id, @Param("versions") Collection<Long> versions);
+
+    // Check and decrement in one statement, the row lock is held only for the UPDATE itself
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Product p SET p.stock = p.stock - :quantity, p.version = p.version + 1 WHERE p.id = :id AND p.stock >= :quantity")
+    int reserveStock(@Param("id") Long id, @Param("quantity") int quantity);
+
+    // The stock column is an INT, a release that would overflow it leaves the row as it is
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Product p SET p.stock = p.stock + :quantity, p.version = p.version + 1 WHERE p.id = :id "
+            + "AND p.stock <= 2147483647 - :quantity")
+    int releaseStock(@Param("id") Long id, @Param("quantity") int quantity);
+
+    // Net of the reservations and releases counted by the stock write-behind, which already checked them. Summed as a
+    // BIGINT, a row changed directly meanwhile that could not take the delta is left as it is instead of overflowing
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "UPDATE products SET stock = CAST(stock AS BIGINT) + :delta, version = version + 1 WHERE id = :id "
+            + "AND CAST(stock AS BIGINT) + :delta <= 2147483647", nativeQuery = true)
+    int applyStockDelta(@Param("id") Long id, @Param("delta") long delta);
+
+    @Query("SELECT p.stock FROM Product p WHERE p.id = :id")
+    Optional<Integer> findStockById(@Param("id") Long id);
+
+    @Query("SELECT p.version FROM Product p WHERE p.id = :id")
+    Optional<Long> findVersionById(@Param("id") Long id);
 }
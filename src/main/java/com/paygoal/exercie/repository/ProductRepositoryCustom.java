@@ -0,0 +1,23 @@
+package com.paygoal.exercie.repository;
+
+import com.paygoal.exercie.dto.ProductFilter;
+import com.paygoal.exercie.model.Product;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+public interface ProductRepositoryCustom {
+
+    /**
+     * Writes only the given columns of one product in a single UPDATE.
+     *
+     * @return the number of updated rows, 0 if the product does not exist
+     */
+    int updateColumns(Long id, Map<String, Object> changes);
+
+    /**
+     * Products matching the filter ordered by price and id, starting after the given position when it is not null.
+     */
+    List<Product> findPage(ProductFilter filter, BigDecimal afterPrice, Long afterId, int limit);
+}
@@ -0,0 +1,83 @@
+package com.paygoal.exercie.repository;
+
+import com.paygoal.exercie.dto.ProductFilter;
+import com.paygoal.exercie.model.Product;
+import lombok.RequiredArgsConstructor;
+
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.CriteriaUpdate;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+@RequiredArgsConstructor
+public class ProductRepositoryImpl implements ProductRepositoryCustom {
+
+    private final EntityManager entityManager;
+
+    @Override
+    public int updateColumns(Long id, Map<String, Object> changes) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<Product> update = builder.createCriteriaUpdate(Product.class);
+        Root<Product> product = update.from(Product.class);
+        changes.forEach(update::set);
+        update.set(product.<Long>get("version"), builder.sum(product.get("version"), 1L));
+        update.where(builder.equal(product.get("id"), id));
+
+        entityManager.flush();
+        int updated = entityManager.createQuery(update).executeUpdate();
+        entityManager.clear();
+        return updated;
+    }
+
+    @Override
+    public List<Product> findPage(ProductFilter filter, BigDecimal afterPrice, Long afterId, int limit) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Product> query = builder.createQuery(Product.class);
+        Root<Product> product = query.from(Product.class);
+        Path<Long> id = product.get("id");
+        Path<BigDecimal> price = product.get("price");
+        Path<Integer> stock = product.get("stock");
+
+        List<Predicate> predicates = new ArrayList<>();
+        if (filter.getMinPrice() != null) {
+            predicates.add(builder.greaterThanOrEqualTo(price, filter.getMinPrice()));
+        }
+        if (filter.getMaxPrice() != null) {
+            predicates.add(builder.lessThanOrEqualTo(price, filter.getMaxPrice()));
+        }
+        if (filter.getInStock() != null) {
+            // Most products are in stock, "<> 0" keeps H2 off the stock index so it walks the price index in listing
+            // order and stops after one page, instead of fetching nearly every row through the index and sorting them
+            predicates.add(filter.getInStock() ? builder.notEqual(stock, 0) : builder.equal(stock, 0));
+        }
+        if (filter.getMaxStock() != null) {
+            predicates.add(builder.lessThanOrEqualTo(stock, filter.getMaxStock()));
+        }
+        if (filter.getNamePrefix() != null) {
+            // A range rather than LIKE, H2 only turns LIKE into an index range when the pattern is a literal
+            String prefix = filter.getNamePrefix().toLowerCase(Locale.ROOT);
+            Path<String> nameLower = product.get("nameLower");
+            predicates.add(builder.greaterThanOrEqualTo(nameLower, prefix));
+            predicates.add(builder.lessThan(nameLower, prefix + Character.MAX_VALUE));
+        }
+        if (afterPrice != null) {
+            // Same seek as findPageAfter
+            predicates.add(builder.greaterThanOrEqualTo(price, afterPrice));
+            predicates.add(builder.or(builder.greaterThan(price, afterPrice), builder.greaterThan(id, afterId)));
+        }
+        query.select(product)
+                .where(predicates.toArray(new Predicate[0]))
+                .orderBy(builder.asc(price), builder.asc(id));
+        return entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+}
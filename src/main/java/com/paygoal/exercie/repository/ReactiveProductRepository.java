@@ -0,0 +1,274 @@
+package com.paygoal.exercie.repository;
+
+import com.paygoal.exercie.dto.ProductFilter;
+import com.paygoal.exercie.model.Product;
+import io.r2dbc.spi.Row;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * R2DBC counterpart of {@link ProductRepository} for the reactive profile, with the same statements written as SQL:
+ * single-statement conditional writes, the (price, id) keyset seek and the name_lower range for name prefixes.
+ */
+@Repository
+@Profile("reactive")
+@RequiredArgsConstructor
+public class ReactiveProductRepository {
+
+    // Must match INCREMENT BY of products_seq and allocationSize on Product.id
+    static final int ID_ALLOCATION_SIZE = 50;
+
+    private static final String SELECT_PRODUCT = "SELECT id, name, description, price, stock, version FROM products ";
+    private static final String UPDATE_PRODUCT = "UPDATE products SET name = :name, description = :description, "
+            + "price = :price, stock = :stock, version = version + 1 WHERE id = :id";
+    private static final Map<String, Class<?>> PATCHABLE_COLUMNS = Map.of(
+            "name", String.class,
+            "description", String.class,
+            "price", BigDecimal.class,
+            "stock", Integer.class);
+
+    private final DatabaseClient client;
+    private final AtomicReference<IdBlock> ids = new AtomicReference<>(IdBlock.EMPTY);
+
+    public Mono<Product> findById(Long id) {
+        return client.sql(SELECT_PRODUCT + "WHERE id = :id")
+                .bind("id", id)
+                .map(ReactiveProductRepository::toProduct)
+                .one();
+    }
+
+    public Flux<Product> findAllById(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return Flux.empty();
+        }
+        return client.sql(SELECT_PRODUCT + "WHERE id IN (:ids)")
+                .bind("ids", ids)
+                .map(ReactiveProductRepository::toProduct)
+                .all();
+    }
+
+    public Mono<Long> findVersionById(Long id) {
+        return client.sql("SELECT version FROM products WHERE id = :id")
+                .bind("id", id)
+                .map(row -> row.get("version", Long.class))
+                .one();
+    }
+
+    public Mono<Integer> findStockById(Long id) {
+        return client.sql("SELECT stock FROM products WHERE id = :id")
+                .bind("id", id)
+                .map(row -> row.get("stock", Integer.class))
+                .one();
+    }
+
+    /**
+     * Up to limit products matching the filter in listing order (price, id), after the given position when not null.
+     */
+    public Flux<Product> findPage(ProductFilter filter, BigDecimal afterPrice, Long afterId, int limit) {
+        List<String> predicates = new ArrayList<>();
+        Map<String, Object> values = new LinkedHashMap<>();
+        if (filter.getMinPrice() != null) {
+            predicates.add("price >= :minPrice");
+            values.put("minPrice", filter.getMinPrice());
+        }
+        if (filter.getMaxPrice() != null) {
+            predicates.add("price <= :maxPrice");
+            values.put("maxPrice", filter.getMaxPrice());
+        }
+        if (filter.getInStock() != null) {
+            // "<> 0" for the same plan as ProductRepositoryImpl: walk the price index instead of the stock one
+            predicates.add(filter.getInStock() ? "stock <> 0" : "stock = 0");
+        }
+        if (filter.getMaxStock() != null) {
+            predicates.add("stock <= :maxStock");
+            values.put("maxStock", filter.getMaxStock());
+        }
+        if (filter.getNamePrefix() != null) {
+            String prefix = filter.getNamePrefix().toLowerCase(Locale.ROOT);
+            predicates.add("name_lower >= :prefixFrom AND name_lower < :prefixTo");
+            values.put("prefixFrom", prefix);
+            values.put("prefixTo", prefix + Character.MAX_VALUE);
+        }
+        if (afterPrice != null) {
+            predicates.add("price >= :afterPrice AND (price > :afterPrice OR id > :afterId)");
+            values.put("afterPrice", afterPrice);
+            values.put("afterId", afterId);
+        }
+        String where = predicates.isEmpty() ? "" : "WHERE " + String.join(" AND ", predicates) + " ";
+        DatabaseClient.GenericExecuteSpec query = client.sql(SELECT_PRODUCT + where + "ORDER BY price, id LIMIT :limit")
+                .bind("limit", limit);
+        for (Map.Entry<String, Object> value : values.entrySet()) {
+            query = query.bind(value.getKey(), value.getValue());
+        }
+        return query.map(ReactiveProductRepository::toProduct).all();
+    }
+
+    /**
+     * Up to limit products ordered by id, after the given id when not null.
+     */
+    public Flux<Product> findAfterId(Long afterId, int limit) {
+        return client.sql(SELECT_PRODUCT + "WHERE id > :afterId ORDER BY id LIMIT :limit")
+                .bind("afterId", afterId == null ? Long.MIN_VALUE : afterId)
+                .bind("limit", limit)
+                .map(ReactiveProductRepository::toProduct)
+                .all();
+    }
+
+    /**
+     * Inserts the product with a new id and version 0 and returns it as stored.
+     */
+    public Mono<Product> insert(Product product) {
+        return nextId().flatMap(id -> {
+            DatabaseClient.GenericExecuteSpec insert = client.sql("INSERT INTO products (id, name, description, price, stock, version) "
+                            + "VALUES (:id, :name, :description, :price, :stock, 0)")
+                    .bind("id", id)
+                    .bind("stock", product.getStock());
+            insert = bind(insert, "name", product.getName(), String.class);
+            insert = bind(insert, "description", product.getDescription(), String.class);
+            insert = bind(insert, "price", product.getPrice(), BigDecimal.class);
+            return insert.then().thenReturn(Product.builder()
+                    .id(id)
+                    .name(product.getName())
+                    .description(product.getDescription())
+                    .price(product.getPrice())
+                    .stock(product.getStock())
+                    .version(0L)
+                    .build());
+        });
+    }
+
+    /**
+     * Replaces every column of the product, only if its version is one of expectedVersions when they are not null.
+     */
+    public Mono<Integer> update(Long id, Product product, Collection<Long> expectedVersions) {
+        DatabaseClient.GenericExecuteSpec update = client.sql(UPDATE_PRODUCT + versionCondition(expectedVersions))
+                .bind("id", id)
+                .bind("stock", product.getStock());
+        update = bind(update, "name", product.getName(), String.class);
+        update = bind(update, "description", product.getDescription(), String.class);
+        update = bind(update, "price", product.getPrice(), BigDecimal.class);
+        if (expectedVersions != null) {
+            update = update.bind("versions", expectedVersions);
+        }
+        return update.fetch().rowsUpdated();
+    }
+
+    /**
+     * Writes only the given columns, as produced by {@link com.paygoal.exercie.utils.ProductMergePatch}.
+     */
+    public Mono<Integer> updateColumns(Long id, Map<String, Object> changes) {
+        List<String> assignments = new ArrayList<>();
+        for (String column : changes.keySet()) {
+            if (!PATCHABLE_COLUMNS.containsKey(column)) {
+                throw new IllegalArgumentException("Column cannot be patched: " + column);
+            }
+            assignments.add(column + " = :" + column);
+        }
+        assignments.add("version = version + 1");
+        DatabaseClient.GenericExecuteSpec update = client.sql("UPDATE products SET " + String.join(", ", assignments)
+                        + " WHERE id = :id")
+                .bind("id", id);
+        for (Map.Entry<String, Object> change : changes.entrySet()) {
+            update = bind(update, change.getKey(), change.getValue(), PATCHABLE_COLUMNS.get(change.getKey()));
+        }
+        return update.fetch().rowsUpdated();
+    }
+
+    public Mono<Integer> delete(Long id, Collection<Long> expectedVersions) {
+        DatabaseClient.GenericExecuteSpec delete = client.sql("DELETE FROM products WHERE id = :id" + versionCondition(expectedVersions))
+                .bind("id", id);
+        if (expectedVersions != null) {
+            delete = delete.bind("versions", expectedVersions);
+        }
+        return delete.fetch().rowsUpdated();
+    }
+
+    // Check and decrement in one statement, same as ProductRepository.reserveStock
+    public Mono<Integer> reserveStock(Long id, int quantity) {
+        return client.sql("UPDATE products SET stock = stock - :quantity, version = version + 1 WHERE id = :id AND stock >= :quantity")
+                .bind("id", id)
+                .bind("quantity", quantity)
+                .fetch().rowsUpdated();
+    }
+
+    // Never past the INT column, same as ProductRepository.releaseStock
+    public Mono<Integer> releaseStock(Long id, int quantity) {
+        return client.sql("UPDATE products SET stock = stock + :quantity, version = version + 1 WHERE id = :id "
+                        + "AND stock <= 2147483647 - :quantity")
+                .bind("id", id)
+                .bind("quantity", quantity)
+                .fetch().rowsUpdated();
+    }
+
+    // Same pooled-lo scheme as Hibernate: each value drawn from the sequence reserves it and the next 49 ids,
+    // so ids handed out here never collide with the ones the JPA side draws
+    private Mono<Long> nextId() {
+        return Mono.defer(() -> {
+            long id = ids.get().take();
+            if (id != IdBlock.NONE) {
+                return Mono.just(id);
+            }
+            return client.sql("SELECT NEXT VALUE FOR products_seq")
+                    .map(row -> row.get(0, Long.class))
+                    .one()
+                    .map(first -> {
+                        // A block drawn concurrently may be replaced before it is used up, its ids are just skipped
+                        ids.set(new IdBlock(first + 1, first + ID_ALLOCATION_SIZE - 1));
+                        return first;
+                    });
+        });
+    }
+
+    private static String versionCondition(Collection<Long> expectedVersions) {
+        return expectedVersions == null ? "" : " AND version IN (:versions)";
+    }
+
+    private static DatabaseClient.GenericExecuteSpec bind(DatabaseClient.GenericExecuteSpec spec, String name,
+                                                          Object value, Class<?> type) {
+        return value == null ? spec.bindNull(name, type) : spec.bind(name, value);
+    }
+
+    private static Product toProduct(Row row) {
+        return Product.builder()
+                .id(row.get("id", Long.class))
+                .name(row.get("name", String.class))
+                .description(row.get("description", String.class))
+                .price(row.get("price", BigDecimal.class))
+                .stock(row.get("stock", Integer.class))
+                .version(row.get("version", Long.class))
+                .build();
+    }
+
+    private static final class IdBlock {
+
+        private static final long NONE = Long.MIN_VALUE;
+        private static final IdBlock EMPTY = new IdBlock(0, -1);
+
+        private final AtomicLong next;
+        private final long last;
+
+        private IdBlock(long first, long last) {
+            this.next = new AtomicLong(first);
+            this.last = last;
+        }
+
+        private long take() {
+            long id = next.getAndIncrement();
+            return id <= last ? id : NONE;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.paygoal.exercie.search;
+
+import com.paygoal.exercie.configuration.LookupProperties;
+import com.paygoal.exercie.configuration.SearchProperties;
+import com.paygoal.exercie.event.ProductChangedEvent;
+import com.paygoal.exercie.model.Product;
+import com.paygoal.exercie.repository.ProductRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * In-memory structure derived from the products table and kept up to date from committed writes.
+ * <p>
+ * It is built once from the table at startup. After that, committed writes only mark their product as pending. A
+ * background thread reloads the pending products in chunks after {@code products.search.refresh-delay}, so writers
+ * never wait for the index and a burst of writes costs one query per chunk. When more than
+ * {@code products.search.rebuild-threshold} products are pending, as after a bulk create, the structure is rebuilt
+ * from the table instead and swapped in at once. Reads may lag a commit by that delay. A reload that fails leaves its
+ * products pending and is retried after the same delay.
+ */
+@Slf4j
+public abstract class IncrementalProductIndex {
+
+    private final ProductRepository productRepository;
+    private final EntityManager entityManager;
+    private final LookupProperties lookupProperties;
+    private final SearchProperties searchProperties;
+    private final TransactionTemplate readOnlyTransaction;
+
+    private final Set<Long> pending = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean refreshScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService refresher;
+
+    protected IncrementalProductIndex(String name, ProductRepository productRepository, EntityManager entityManager,
+                                      LookupProperties lookupProperties, SearchProperties searchProperties,
+                                      PlatformTransactionManager transactionManager) {
+        this.productRepository = productRepository;
+        this.entityManager = entityManager;
+        this.lookupProperties = lookupProperties;
+        this.searchProperties = searchProperties;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name + "-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Replaces the whole structure with one built from the given products. Readers must keep seeing the previous
+     * structure until it is complete.
+     */
+    protected abstract void replaceAll(Stream<Product> products);
+
+    /**
+     * Brings a single product up to date, {@code product} is null when it no longer exists.
+     */
+    protected abstract void apply(Long id, Product product);
+
+    /**
+     * Called on the refresh thread once a batch of changes or a rebuild is visible to readers.
+     */
+    protected void applied() {
+    }
+
+    protected boolean isEnabled() {
+        return true;
+    }
+
+    protected Duration refreshDelay() {
+        return searchProperties.getRefreshDelay();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void build() {
+        if (isEnabled()) {
+            refresher.execute(this::rebuild);
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        if (!isEnabled()) {
+            return;
+        }
+        pending.add(event.getProductId());
+        scheduleRefresh();
+    }
+
+    private void scheduleRefresh() {
+        if (refreshScheduled.compareAndSet(false, true)) {
+            refresher.schedule(() -> {
+                refreshScheduled.set(false);
+                drainPending();
+            }, refreshDelay().toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Applies every change committed so far before returning.
+     */
+    public void refresh() {
+        try {
+            refresher.submit(this::drainPending).get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Refresh of " + getClass().getSimpleName() + " failed", ex.getCause());
+        }
+    }
+
+    protected int pendingCount() {
+        return pending.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
+
+    private void drainPending() {
+        if (pending.size() > searchProperties.getRebuildThreshold()) {
+            // Anything marked so far has committed, so the scan below sees it
+            List<Long> marked = new ArrayList<>(pending);
+            pending.removeAll(marked);
+            try {
+                rebuild();
+            } catch (RuntimeException ex) {
+                throw retryLater(marked, ex);
+            }
+            applied();
+            return;
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        int chunkSize = lookupProperties.getChunkSize();
+        boolean changed = false;
+        try {
+            while (!pending.isEmpty()) {
+                List<Long> ids = new ArrayList<>(chunkSize);
+                Iterator<Long> iterator = pending.iterator();
+                while (iterator.hasNext() && ids.size() < chunkSize) {
+                    ids.add(iterator.next());
+                    iterator.remove();
+                }
+                // Reloading gives the latest committed row whatever order the events arrived in
+                Map<Long, Product> found;
+                try {
+                    found = productRepository.findAllById(ids).stream()
+                            .collect(Collectors.toMap(Product::getId, product -> product));
+                } catch (RuntimeException ex) {
+                    throw retryLater(ids, ex);
+                }
+                ids.forEach(id -> apply(id, found.get(id)));
+                changed = true;
+            }
+        } finally {
+            if (changed) {
+                applied();
+            }
+        }
+    }
+
+    private RuntimeException retryLater(List<Long> ids, RuntimeException ex) {
+        pending.addAll(ids);
+        log.warn("{} could not reload {} products, retrying in {}", getClass().getSimpleName(), ids.size(), refreshDelay(), ex);
+        scheduleRefresh();
+        return ex;
+    }
+
+    /**
+     * Streams the whole table ordered by id in a read-only transaction.
+     */
+    protected void scanTable(Consumer<Stream<Product>> consumer) {
+        readOnlyTransaction.executeWithoutResult(status -> {
+            try (Stream<Product> products = productRepository.streamAll()) {
+                // Keep the persistence context from growing with the table
+                consumer.accept(products.peek(entityManager::detach));
+            }
+        });
+    }
+
+    private void rebuild() {
+        scanTable(this::replaceAll);
+    }
+}
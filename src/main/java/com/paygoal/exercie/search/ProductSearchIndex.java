@@ -0,0 +1,203 @@
+package com.paygoal.exercie.search;
+
+import com.paygoal.exercie.configuration.LookupProperties;
+import com.paygoal.exercie.configuration.SearchProperties;
+import com.paygoal.exercie.model.Product;
+import com.paygoal.exercie.repository.ProductRepository;
+import com.paygoal.exercie.utils.TextNormalizer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * In-memory inverted index over product name and description, ranked with BM25.
+ */
+@Component
+public class ProductSearchIndex extends IncrementalProductIndex implements MeterBinder {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    // A word in the name counts as much as two in the description
+    private static final int NAME_BOOST = 2;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Segment segment = new Segment();
+
+    public ProductSearchIndex(ProductRepository productRepository, EntityManager entityManager,
+                              LookupProperties lookupProperties, SearchProperties searchProperties,
+                              PlatformTransactionManager transactionManager) {
+        super("product-search", productRepository, entityManager, lookupProperties, searchProperties, transactionManager);
+    }
+
+    public Hits search(String query, long offset, int limit) {
+        List<String> terms = TextNormalizer.tokens(query);
+        lock.readLock().lock();
+        try {
+            Map<Long, Double> scores = new HashMap<>();
+            Map<Long, Document> documents = segment.documents;
+            double averageLength = documents.isEmpty() ? 0 : (double) segment.totalLength / documents.size();
+            for (String term : terms.stream().distinct().collect(Collectors.toList())) {
+                Map<Long, Integer> posting = segment.postings.get(term);
+                if (posting == null) {
+                    continue;
+                }
+                double idf = Math.log(1 + (documents.size() - posting.size() + 0.5) / (posting.size() + 0.5));
+                posting.forEach((id, frequency) -> {
+                    double norm = K1 * (1 - B + B * documents.get(id).length / averageLength);
+                    scores.merge(id, idf * frequency * (K1 + 1) / (frequency + norm), Double::sum);
+                });
+            }
+            return new Hits(scores.size(), top(scores, offset, limit));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return segment.documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    protected void replaceAll(Stream<Product> products) {
+        Segment rebuilt = new Segment();
+        products.forEach(product -> rebuilt.put(product.getId(), frequencies(product.getName(), product.getDescription())));
+        lock.writeLock().lock();
+        try {
+            segment = rebuilt;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    protected void apply(Long id, Product product) {
+        if (product == null) {
+            remove(id);
+        } else {
+            put(id, product.getName(), product.getDescription());
+        }
+    }
+
+    void put(Long id, String name, String description) {
+        Map<String, Integer> frequencies = frequencies(name, description);
+        lock.writeLock().lock();
+        try {
+            segment.remove(id);
+            segment.put(id, frequencies);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void remove(Long id) {
+        lock.writeLock().lock();
+        try {
+            segment.remove(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("products.search.documents", this, ProductSearchIndex::size).register(registry);
+        Gauge.builder("products.search.pending", this, ProductSearchIndex::pendingCount).register(registry);
+    }
+
+    private static Map<String, Integer> frequencies(String name, String description) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        TextNormalizer.tokens(name).forEach(term -> frequencies.merge(term, NAME_BOOST, Integer::sum));
+        TextNormalizer.tokens(description).forEach(term -> frequencies.merge(term, 1, Integer::sum));
+        return frequencies;
+    }
+
+    // Best scores first, ties by id so pages are stable
+    private static List<Long> top(Map<Long, Double> scores, long offset, int limit) {
+        long wanted = offset + limit;
+        if (offset >= scores.size() || limit <= 0) {
+            return List.of();
+        }
+        Comparator<Map.Entry<Long, Double>> ranking = Map.Entry.<Long, Double>comparingByValue().reversed()
+                .thenComparing(Map.Entry.comparingByKey());
+        PriorityQueue<Map.Entry<Long, Double>> heap = new PriorityQueue<>(ranking.reversed());
+        for (Map.Entry<Long, Double> entry : scores.entrySet()) {
+            heap.offer(entry);
+            if (heap.size() > wanted) {
+                heap.poll();
+            }
+        }
+        List<Map.Entry<Long, Double>> ranked = new ArrayList<>(heap);
+        ranked.sort(ranking);
+        return ranked.stream()
+                .skip(offset)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    @Value
+    public static class Hits {
+        long total;
+        List<Long> ids;
+    }
+
+    private static final class Segment {
+        private final Map<String, Map<Long, Integer>> postings = new HashMap<>();
+        private final Map<Long, Document> documents = new HashMap<>();
+        private long totalLength;
+
+        private void put(Long id, Map<String, Integer> frequencies) {
+            frequencies.forEach((term, frequency) ->
+                    postings.computeIfAbsent(term, key -> new HashMap<>()).put(id, frequency));
+            Document document = new Document(frequencies.keySet().toArray(new String[0]),
+                    frequencies.values().stream().mapToInt(Integer::intValue).sum());
+            documents.put(id, document);
+            totalLength += document.length;
+        }
+
+        private void remove(Long id) {
+            Document previous = documents.remove(id);
+            if (previous == null) {
+                return;
+            }
+            totalLength -= previous.length;
+            for (String term : previous.terms) {
+                Map<Long, Integer> posting = postings.get(term);
+                posting.remove(id);
+                if (posting.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+    }
+
+    private static final class Document {
+        // Only kept to find the postings to drop when the product changes
+        private final String[] terms;
+        private final int length;
+
+        private Document(String[] terms, int length) {
+            this.terms = terms;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package com.paygoal.exercie.search;
+
+import com.paygoal.exercie.utils.TextNormalizer;
+import lombok.Value;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Radix trie over accent folded product names where every node keeps its best {@code topSize} products, so a prefix
+ * lookup is one walk down the trie and never visits the subtree below it.
+ * <p>
+ * Chains of single-child nodes are collapsed into one edge, which keeps the node count under two per name. A write
+ * only touches the nodes on the path of the changed name: an added product is merged into their top lists, and a
+ * removed one makes a node recompute its list from its own names and its children's lists, only where it was listed.
+ * Not thread safe.
+ */
+public class ProductSuggestTrie {
+
+    /**
+     * Most stock first, then cheapest, then oldest.
+     */
+    public static final Comparator<Suggestion> RANKING = Comparator.comparingInt(Suggestion::getStock).reversed()
+            .thenComparing(Suggestion::getPrice)
+            .thenComparingLong(Suggestion::getId);
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Node[] NO_CHILDREN = new Node[0];
+    private static final Suggestion[] NO_SUGGESTIONS = new Suggestion[0];
+
+    private final int topSize;
+    private final Node root = new Node("");
+    private final Map<Long, Suggestion> byId = new HashMap<>();
+    private int nodeCount = 1;
+
+    public ProductSuggestTrie(int topSize) {
+        this.topSize = topSize;
+    }
+
+    public void put(Long id, String name, int stock, BigDecimal price) {
+        remove(id);
+        String key = key(name);
+        if (key.isEmpty()) {
+            return;
+        }
+        Suggestion suggestion = new Suggestion(id, name, stock, price);
+        byId.put(id, suggestion);
+
+        List<Node> path = new ArrayList<>();
+        path.add(root);
+        Node node = root;
+        String rest = key;
+        while (!rest.isEmpty()) {
+            int index = childIndex(node, rest.charAt(0));
+            if (index < 0) {
+                Node leaf = new Node(rest);
+                node.children = insertChild(node.children, -index - 1, leaf);
+                nodeCount++;
+                node = leaf;
+                path.add(node);
+                break;
+            }
+            Node child = node.children[index];
+            int common = commonPrefix(child.edge, rest);
+            if (common < child.edge.length()) {
+                Node middle = new Node(child.edge.substring(0, common));
+                child.edge = child.edge.substring(common);
+                middle.children = new Node[]{child};
+                middle.top = child.top;
+                node.children[index] = middle;
+                nodeCount++;
+                child = middle;
+            }
+            node = child;
+            path.add(node);
+            rest = rest.substring(common);
+        }
+        node.terminals = append(node.terminals, suggestion);
+        for (Node onPath : path) {
+            onPath.top = withCandidate(onPath.top, suggestion);
+        }
+    }
+
+    public boolean remove(Long id) {
+        Suggestion suggestion = byId.remove(id);
+        if (suggestion == null) {
+            return false;
+        }
+        List<Node> path = new ArrayList<>();
+        path.add(root);
+        Node node = root;
+        String rest = key(suggestion.getName());
+        while (!rest.isEmpty()) {
+            node = node.children[childIndex(node, rest.charAt(0))];
+            path.add(node);
+            rest = rest.substring(node.edge.length());
+        }
+        node.terminals = without(node.terminals, suggestion);
+        prune(path, suggestion);
+        return true;
+    }
+
+    /**
+     * Best products whose folded name starts with the folded prefix, best first.
+     */
+    public List<Suggestion> suggest(String prefix, int limit) {
+        Node node = root;
+        String rest = WHITESPACE.matcher(TextNormalizer.fold(prefix)).replaceAll(" ").stripLeading();
+        while (!rest.isEmpty()) {
+            int index = childIndex(node, rest.charAt(0));
+            if (index < 0) {
+                return List.of();
+            }
+            Node child = node.children[index];
+            int common = commonPrefix(child.edge, rest);
+            if (common == rest.length()) {
+                // The prefix ends on or inside this edge, everything below shares it
+                node = child;
+                break;
+            }
+            if (common < child.edge.length()) {
+                return List.of();
+            }
+            node = child;
+            rest = rest.substring(common);
+        }
+        return Arrays.asList(node.top).subList(0, Math.min(limit, node.top.length));
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    // Walks back up the path, dropping nodes left empty and collapsing ones left with a single child
+    private void prune(List<Node> path, Suggestion removed) {
+        for (int i = path.size() - 1; i >= 0; i--) {
+            Node node = path.get(i);
+            if (i > 0 && node.terminals.length == 0 && node.children.length <= 1) {
+                Node parent = path.get(i - 1);
+                int index = childIndex(parent, node.edge.charAt(0));
+                if (node.children.length == 0) {
+                    parent.children = removeChild(parent.children, index);
+                } else {
+                    Node only = node.children[0];
+                    only.edge = node.edge + only.edge;
+                    parent.children[index] = only;
+                }
+                nodeCount--;
+                continue;
+            }
+            if (Arrays.asList(node.top).contains(removed)) {
+                node.top = top(node);
+            }
+        }
+    }
+
+    private Suggestion[] withCandidate(Suggestion[] top, Suggestion candidate) {
+        int position = Arrays.binarySearch(top, candidate, RANKING);
+        int insertAt = position < 0 ? -position - 1 : position;
+        if (insertAt >= topSize) {
+            return top;
+        }
+        Suggestion[] result = new Suggestion[Math.min(top.length + 1, topSize)];
+        System.arraycopy(top, 0, result, 0, insertAt);
+        result[insertAt] = candidate;
+        System.arraycopy(top, insertAt, result, insertAt + 1, result.length - insertAt - 1);
+        return result;
+    }
+
+    private Suggestion[] top(Node node) {
+        int candidates = node.terminals.length;
+        for (Node child : node.children) {
+            candidates += child.top.length;
+        }
+        Suggestion[] merged = Arrays.copyOf(node.terminals, candidates);
+        int at = node.terminals.length;
+        for (Node child : node.children) {
+            System.arraycopy(child.top, 0, merged, at, child.top.length);
+            at += child.top.length;
+        }
+        Arrays.sort(merged, RANKING);
+        return merged.length > topSize ? Arrays.copyOf(merged, topSize) : merged;
+    }
+
+    private static String key(String name) {
+        return WHITESPACE.matcher(TextNormalizer.fold(name)).replaceAll(" ").strip();
+    }
+
+    // Children are sorted by the first character of their edge, which is unique among siblings
+    private static int childIndex(Node node, char first) {
+        int low = 0;
+        int high = node.children.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            char candidate = node.children[middle].edge.charAt(0);
+            if (candidate < first) {
+                low = middle + 1;
+            } else if (candidate > first) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private static int commonPrefix(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < length && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    private static Node[] insertChild(Node[] children, int index, Node child) {
+        Node[] result = new Node[children.length + 1];
+        System.arraycopy(children, 0, result, 0, index);
+        result[index] = child;
+        System.arraycopy(children, index, result, index + 1, children.length - index);
+        return result;
+    }
+
+    private static Node[] removeChild(Node[] children, int index) {
+        if (children.length == 1) {
+            return NO_CHILDREN;
+        }
+        Node[] result = new Node[children.length - 1];
+        System.arraycopy(children, 0, result, 0, index);
+        System.arraycopy(children, index + 1, result, index, children.length - index - 1);
+        return result;
+    }
+
+    private static Suggestion[] append(Suggestion[] suggestions, Suggestion suggestion) {
+        Suggestion[] result = Arrays.copyOf(suggestions, suggestions.length + 1);
+        result[suggestions.length] = suggestion;
+        return result;
+    }
+
+    private static Suggestion[] without(Suggestion[] suggestions, Suggestion suggestion) {
+        if (suggestions.length == 1) {
+            return NO_SUGGESTIONS;
+        }
+        return Arrays.stream(suggestions)
+                .filter(candidate -> candidate != suggestion)
+                .toArray(Suggestion[]::new);
+    }
+
+    @Value
+    public static class Suggestion {
+        long id;
+        String name;
+        int stock;
+        BigDecimal price;
+    }
+
+    private static final class Node {
+        private String edge;
+        private Node[] children = NO_CHILDREN;
+        // Products whose whole name ends at this node
+        private Suggestion[] terminals = NO_SUGGESTIONS;
+        private Suggestion[] top = NO_SUGGESTIONS;
+
+        private Node(String edge) {
+            this.edge = edge;
+        }
+    }
+}
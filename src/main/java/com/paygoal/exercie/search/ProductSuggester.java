@@ -0,0 +1,89 @@
+package com.paygoal.exercie.search;
+
+import com.paygoal.exercie.configuration.LookupProperties;
+import com.paygoal.exercie.configuration.SearchProperties;
+import com.paygoal.exercie.model.Product;
+import com.paygoal.exercie.repository.ProductRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Name autocomplete over a {@link ProductSuggestTrie}. Stock changes move products in the ranking, so reservations
+ * refresh it like any other write.
+ */
+@Component
+public class ProductSuggester extends IncrementalProductIndex implements MeterBinder {
+
+    private final int topSize;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private ProductSuggestTrie trie;
+
+    public ProductSuggester(ProductRepository productRepository, EntityManager entityManager,
+                            LookupProperties lookupProperties, SearchProperties searchProperties,
+                            PlatformTransactionManager transactionManager) {
+        super("product-suggest", productRepository, entityManager, lookupProperties, searchProperties, transactionManager);
+        this.topSize = searchProperties.getSuggestSize();
+        this.trie = new ProductSuggestTrie(topSize);
+    }
+
+    public List<ProductSuggestTrie.Suggestion> suggest(String prefix, int limit) {
+        return read(trie -> trie.suggest(prefix, limit));
+    }
+
+    public int size() {
+        return read(ProductSuggestTrie::size);
+    }
+
+    @Override
+    protected void replaceAll(Stream<Product> products) {
+        ProductSuggestTrie rebuilt = new ProductSuggestTrie(topSize);
+        products.forEach(product -> rebuilt.put(product.getId(), product.getName(), product.getStock(), product.getPrice()));
+        lock.writeLock().lock();
+        try {
+            trie = rebuilt;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    protected void apply(Long id, Product product) {
+        lock.writeLock().lock();
+        try {
+            if (product == null) {
+                trie.remove(id);
+            } else {
+                trie.put(id, product.getName(), product.getStock(), product.getPrice());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("products.suggest.names", this, ProductSuggester::size).register(registry);
+        Gauge.builder("products.suggest.nodes", this, suggester -> suggester.read(ProductSuggestTrie::nodeCount))
+                .register(registry);
+        Gauge.builder("products.suggest.pending", this, ProductSuggester::pendingCount).register(registry);
+    }
+
+    private <T> T read(Function<ProductSuggestTrie, T> reader) {
+        lock.readLock().lock();
+        try {
+            return reader.apply(trie);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
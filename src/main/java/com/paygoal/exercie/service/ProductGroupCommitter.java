@@ -0,0 +1,220 @@
+package com.paygoal.exercie.service;
+
+import com.paygoal.exercie.configuration.GroupCommitProperties;
+import com.paygoal.exercie.dto.ProductDto;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Group commit for single-product creates and updates: callers queue their write and wait, one thread takes what is
+ * queued, waits up to {@code products.group-commit.max-wait} for more, and applies the group with
+ * {@link ProductService#writeAll} in one transaction. Each caller gets its own product or exception back once the group
+ * has committed, so a create is never acknowledged before it is durable.
+ * <p>
+ * When the group as a whole fails, for example on a constraint violation, it is rolled back and every write is retried
+ * in a transaction of its own, so only the offending caller sees the error. The queue needs no bound of its own, every
+ * queued write has a request thread waiting on it, for at most {@code products.group-commit.timeout}.
+ * <p>
+ * Should the committer thread die, the queued callers fail and {@link #isEnabled()} turns false, so the writes that
+ * follow go back to a transaction each.
+ */
+@Slf4j
+@Component
+public class ProductGroupCommitter implements MeterBinder {
+
+    private final GroupCommitProperties properties;
+    private final ProductService productService;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final ExecutorService committer;
+    private final LongAdder fallbacks = new LongAdder();
+    private volatile boolean running = true;
+    private volatile DistributionSummary batchSizes;
+
+    public ProductGroupCommitter(GroupCommitProperties properties, ProductService productService) {
+        this.properties = properties;
+        this.productService = productService;
+        this.committer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "product-group-commit");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (properties.isEnabled()) {
+            committer.execute(this::commitLoop);
+        }
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled() && running;
+    }
+
+    public ProductDto create(ProductDto productDto) {
+        return submit(ProductWrite.create(productDto));
+    }
+
+    public ProductDto update(Long id, ProductDto productDto, Set<Long> expectedVersions) {
+        return submit(ProductWrite.update(id, productDto, expectedVersions));
+    }
+
+    private ProductDto submit(ProductWrite write) {
+        if (!running) {
+            throw new IllegalStateException("Group commit is shutting down");
+        }
+        Pending pending = new Pending(write, new CompletableFuture<>());
+        queue.add(pending);
+        if (!running) {
+            // Stopped between the check and the add, the committer may have drained the queue already
+            failQueued("Group commit is shutting down");
+        }
+        return await(pending);
+    }
+
+    private void commitLoop() {
+        List<Pending> group = new ArrayList<>(properties.getMaxBatchSize());
+        while (running) {
+            try {
+                group.add(queue.take());
+                collect(group);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+            if (!group.isEmpty()) {
+                try {
+                    commit(group);
+                } catch (Error ex) {
+                    // The thread dies with it: nobody would ever complete these callers, or the ones queued next
+                    running = false;
+                    group.forEach(pending -> pending.getResult().completeExceptionally(ex));
+                    failQueued("Group commit stopped after an error");
+                    throw ex;
+                }
+                group.clear();
+            }
+        }
+        failQueued("Group commit is shutting down");
+    }
+
+    private void collect(List<Pending> group) throws InterruptedException {
+        int maxBatchSize = properties.getMaxBatchSize();
+        queue.drainTo(group, maxBatchSize - group.size());
+        long deadline = System.nanoTime() + properties.getMaxWait().toNanos();
+        while (group.size() < maxBatchSize) {
+            long remaining = deadline - System.nanoTime();
+            Pending next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+            if (next == null) {
+                return;
+            }
+            group.add(next);
+            queue.drainTo(group, maxBatchSize - group.size());
+        }
+    }
+
+    private void commit(List<Pending> group) {
+        try {
+            complete(group, productService.writeAll(group.stream().map(Pending::getWrite).collect(Collectors.toList())));
+        } catch (RuntimeException ex) {
+            if (group.size() == 1) {
+                group.get(0).getResult().completeExceptionally(ex);
+                return;
+            }
+            fallbacks.increment();
+            log.debug("Group of {} writes rolled back, retrying them one by one", group.size(), ex);
+            for (Pending pending : group) {
+                try {
+                    complete(List.of(pending), productService.writeAll(List.of(pending.getWrite())));
+                } catch (RuntimeException writeFailure) {
+                    pending.getResult().completeExceptionally(writeFailure);
+                }
+            }
+        }
+    }
+
+    private void complete(List<Pending> group, List<ProductWrite.Result> results) {
+        DistributionSummary summary = batchSizes;
+        if (summary != null) {
+            summary.record(group.size());
+        }
+        for (int i = 0; i < group.size(); i++) {
+            ProductWrite.Result result = results.get(i);
+            if (result.getFailure() != null) {
+                group.get(i).getResult().completeExceptionally(result.getFailure());
+            } else {
+                group.get(i).getResult().complete(result.getProduct());
+            }
+        }
+    }
+
+    private void failQueued(String reason) {
+        List<Pending> abandoned = new ArrayList<>();
+        queue.drainTo(abandoned);
+        abandoned.forEach(pending -> pending.getResult().completeExceptionally(new IllegalStateException(reason)));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        committer.shutdownNow();
+        failQueued("Group commit is shutting down");
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        batchSizes = DistributionSummary.builder("products.group.commit.batch.size")
+                .description("Writes committed per transaction by the group commit")
+                .baseUnit("writes")
+                .register(registry);
+        FunctionCounter.builder("products.group.commit.fallbacks", fallbacks, LongAdder::sum)
+                .description("Groups rolled back and retried one write per transaction")
+                .register(registry);
+        Gauge.builder("products.group.commit.queued", queue, BlockingQueue::size)
+                .description("Writes waiting for the next group")
+                .register(registry);
+    }
+
+    private ProductDto await(Pending pending) {
+        try {
+            return pending.getResult().get(properties.getTimeout().toNanos(), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new CompletionException(ex.getCause());
+        } catch (TimeoutException ex) {
+            // Still queued it never reaches a transaction, taken already its outcome is unknown
+            throw new IllegalStateException(queue.remove(pending)
+                    ? "Group commit timed out before the write was committed"
+                    : "Group commit timed out, the write may still commit", ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the group commit", ex);
+        }
+    }
+
+    @Value
+    private static class Pending {
+        ProductWrite write;
+        CompletableFuture<ProductDto> result;
+    }
+}
@@ -1,14 +1,37 @@
 package com.paygoal.exercie.service;
 
 import com.paygoal.exercie.dto.ProductDto;
+import com.paygoal.exercie.dto.ProductFilter;
+import com.paygoal.exercie.dto.ProductLookupResult;
+import com.paygoal.exercie.dto.ProductPage;
+import com.paygoal.exercie.dto.ProductSearchPage;
+import com.paygoal.exercie.dto.ProductSuggestion;
+import com.paygoal.exercie.dto.StockDto;
 import com.paygoal.exercie.model.Product;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public interface ProductService {
     ProductDto findById(Long id);
+    Long findVersionById(Long id);
     ProductDto create(ProductDto productDto);
+    List<ProductDto> createAll(List<ProductDto> productDtos);
     ProductDto update(Long id, ProductDto productDto);
+    ProductDto update(Long id, ProductDto productDto, Set<Long> expectedVersions);
+    List<ProductWrite.Result> writeAll(List<ProductWrite> writes);
+    ProductDto patch(Long id, Map<String, Object> changes);
     void delete(Long id);
+    void delete(Long id, Set<Long> expectedVersions);
+    StockDto reserveStock(Long id, int quantity);
+    StockDto releaseStock(Long id, int quantity);
     List<ProductDto> findAllOrderedByPrice();
+    ProductPage findPageOrderedByPrice(String cursor, Integer size);
+    ProductPage findPageOrderedByPrice(ProductFilter filter, String cursor, Integer size);
+    ProductSearchPage search(String query, Integer page, Integer size);
+    List<ProductSuggestion> suggest(String prefix, Integer limit);
+    void exportAll(Consumer<ProductDto> consumer);
+    ProductLookupResult findAllByIds(List<Long> ids);
 }
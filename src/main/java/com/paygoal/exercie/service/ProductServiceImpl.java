@@ -1,25 +1,93 @@
 package com.paygoal.exercie.service;
 
+import com.paygoal.exercie.cache.ProductCache;
+import com.paygoal.exercie.cache.ProductLoadCoalescer;
+import com.paygoal.exercie.cache.ProductPriceIndex;
+import com.paygoal.exercie.configuration.BatchProperties;
+import com.paygoal.exercie.configuration.ChangeFeedProperties;
+import com.paygoal.exercie.configuration.LookupProperties;
+import com.paygoal.exercie.configuration.PaginationProperties;
+import com.paygoal.exercie.configuration.SearchProperties;
 import com.paygoal.exercie.dto.ProductDto;
+import com.paygoal.exercie.dto.ProductFilter;
+import com.paygoal.exercie.dto.ProductLookupResult;
+import com.paygoal.exercie.dto.ProductPage;
+import com.paygoal.exercie.dto.ProductSearchPage;
+import com.paygoal.exercie.dto.ProductSuggestion;
+import com.paygoal.exercie.dto.StockDto;
+import com.paygoal.exercie.exception.BadRequestException;
+import com.paygoal.exercie.exception.OutOfStockException;
+import com.paygoal.exercie.exception.PreconditionFailedException;
+import com.paygoal.exercie.event.ProductChangedEvent;
 import com.paygoal.exercie.exception.ProductNotFoundException;
+import com.paygoal.exercie.exception.StockLimitExceededException;
 import com.paygoal.exercie.model.Product;
 import com.paygoal.exercie.repository.ProductRepository;
+import com.paygoal.exercie.search.ProductSearchIndex;
+import com.paygoal.exercie.search.ProductSuggester;
+import com.paygoal.exercie.stock.StockWriteBehind;
+import com.paygoal.exercie.utils.ProductCursor;
+import com.paygoal.exercie.utils.ProductETags;
+import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
+@Timed("products.service")
 @RequiredArgsConstructor
 public class ProductServiceImpl implements ProductService {
 
     private final ProductRepository productRepository;
     private final com.paygoal.exercie.utils.ProductMapper productMapper;
+    private final PaginationProperties paginationProperties;
+    private final LookupProperties lookupProperties;
+    private final BatchProperties batchProperties;
+    private final EntityManager entityManager;
+    private final ProductCache productCache;
+    private final ProductLoadCoalescer loadCoalescer;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ProductSearchIndex searchIndex;
+    private final ProductSuggester suggester;
+    private final SearchProperties searchProperties;
+    private final ProductPriceIndex priceIndex;
+    private final StockWriteBehind stockWriteBehind;
+    private final ChangeFeedProperties changeFeedProperties;
 
     @Override
     public ProductDto findById(Long id) {
+        ProductDto productDto = productCache.get(id, key -> loadCoalescer.load(key, this::loadById));
+        return stockWriteBehind.isEnabled() ? stockWriteBehind.withPendingStock(productDto) : productDto;
+    }
+
+    @Override
+    public Long findVersionById(Long id) {
+        // A cached copy answers conditional requests without touching the database
+        ProductDto cached = productCache.getIfPresent(id);
+        if (cached != null) {
+            return cached.getVersion();
+        }
+        return productRepository.findVersionById(id)
+                .orElseThrow(() -> new ProductNotFoundException("Product not found with id: " + id));
+    }
+
+    private ProductDto loadById(Long id) {
         Product product = productRepository.findById(id)
                 .orElseThrow(() -> new ProductNotFoundException("Product not found with id: " + id));
         return productMapper.toDto(product);
@@ -30,26 +98,198 @@ public class ProductServiceImpl implements ProductService {
     public ProductDto create(ProductDto productDto) {
         Product product = productMapper.toEntity(productDto);
         Product savedProduct = productRepository.save(product);
+        eventPublisher.publishEvent(created(savedProduct));
         return productMapper.toDto(savedProduct);
     }
 
+    @Override
+    @Transactional
+    public List<ProductDto> createAll(List<ProductDto> productDtos) {
+        if (productDtos.size() > batchProperties.getMaxItems()) {
+            throw new BadRequestException("At most " + batchProperties.getMaxItems() + " products can be created at once");
+        }
+        int jdbcBatchSize = batchProperties.getJdbcBatchSize();
+        List<ProductDto> created = new ArrayList<>(productDtos.size());
+        for (int i = 0; i < productDtos.size(); i++) {
+            Product savedProduct = productRepository.save(productMapper.toEntity(productDtos.get(i)));
+            created.add(productMapper.toDto(savedProduct));
+            eventPublisher.publishEvent(created(savedProduct));
+            // Flush each full JDBC batch and drop it from the persistence context
+            if ((i + 1) % jdbcBatchSize == 0) {
+                entityManager.flush();
+                entityManager.clear();
+            }
+        }
+        return created;
+    }
+
     @Override
     @Transactional
     public ProductDto update(Long id, ProductDto productDto) {
-        Product product = productRepository.findById(id)
-                .orElseThrow(() -> new ProductNotFoundException("Product not found with id: " + id));
+        return update(id, productDto, null);
+    }
+
+    @Override
+    @Transactional
+    public ProductDto update(Long id, ProductDto productDto, Set<Long> expectedVersions) {
+        return applyUpdate(id, productDto, expectedVersions);
+    }
+
+    /**
+     * Applies a group of writes in one transaction: the creates first, so their INSERTs go out as JDBC batches, then
+     * the updates. A missing product or a stale version only fails its own write; any other failure rolls the whole
+     * group back. Results come in the order of the writes.
+     */
+    @Override
+    @Transactional
+    public List<ProductWrite.Result> writeAll(List<ProductWrite> writes) {
+        ProductWrite.Result[] results = new ProductWrite.Result[writes.size()];
+        for (int i = 0; i < writes.size(); i++) {
+            ProductWrite write = writes.get(i);
+            if (write.isCreate()) {
+                Product savedProduct = productRepository.save(productMapper.toEntity(write.getProduct()));
+                eventPublisher.publishEvent(created(savedProduct));
+                results[i] = ProductWrite.Result.of(productMapper.toDto(savedProduct));
+            }
+        }
+        for (int i = 0; i < writes.size(); i++) {
+            ProductWrite write = writes.get(i);
+            if (write.isCreate()) {
+                continue;
+            }
+            try {
+                results[i] = ProductWrite.Result.of(applyUpdate(write.getId(), write.getProduct(), write.getExpectedVersions()));
+            } catch (ProductNotFoundException | PreconditionFailedException ex) {
+                // Nothing was written for this one, the rest of the group still commits
+                results[i] = ProductWrite.Result.failed(ex);
+            }
+        }
+        return Arrays.asList(results);
+    }
 
-        productMapper.updateProductFromDto(productDto, product);
-        Product updatedProduct = productRepository.save(product);
-        return productMapper.toDto(updatedProduct);
+    private ProductDto applyUpdate(Long id, ProductDto productDto, Set<Long> expectedVersions) {
+        Product product = productMapper.toEntity(productDto);
+        // Single UPDATE without loading the row first, 0 rows means there was nothing to update
+        int updated;
+        if (expectedVersions == null || ProductETags.isAnyVersion(expectedVersions)) {
+            updated = productRepository.updateProduct(id, product);
+        } else {
+            updated = expectedVersions.isEmpty() ? 0 : productRepository.updateProductIfVersion(id, product, expectedVersions);
+        }
+        if (updated == 0) {
+            throw writeFailure(id, expectedVersions);
+        }
+        eventPublisher.publishEvent(new ProductChangedEvent(ProductChangedEvent.Type.UPDATED, id,
+                versionAfterUpdate(id, expectedVersions), ProductChangedEvent.ALL_FIELDS));
+        return productMapper.withId(productDto, id);
+    }
+
+    private static ProductChangedEvent created(Product product) {
+        return new ProductChangedEvent(ProductChangedEvent.Type.CREATED, product.getId(), product.getVersion(),
+                ProductChangedEvent.ALL_FIELDS);
+    }
+
+    /**
+     * Version an UPDATE just left the product at, for the change feed. An If-Match with one version tells it for free,
+     * otherwise it costs a read, and only while the feed is enabled.
+     */
+    private Long versionAfterUpdate(Long id, Set<Long> expectedVersions) {
+        if (expectedVersions != null && expectedVersions.size() == 1) {
+            return expectedVersions.iterator().next() + 1;
+        }
+        if (!changeFeedProperties.isEnabled()) {
+            return null;
+        }
+        return productRepository.findVersionById(id).orElse(null);
+    }
+
+    @Override
+    @Transactional
+    public ProductDto patch(Long id, Map<String, Object> changes) {
+        if (changes.isEmpty()) {
+            return findById(id);
+        }
+        if (productRepository.updateColumns(id, changes) == 0) {
+            throw new ProductNotFoundException("Product not found with id: " + id);
+        }
+        ProductDto patched = loadById(id);
+        eventPublisher.publishEvent(new ProductChangedEvent(ProductChangedEvent.Type.UPDATED, id, patched.getVersion(),
+                List.copyOf(changes.keySet())));
+        return patched;
     }
 
     @Override
     @Transactional
     public void delete(Long id) {
-        Product product = productRepository.findById(id)
+        delete(id, null);
+    }
+
+    @Override
+    @Transactional
+    public void delete(Long id, Set<Long> expectedVersions) {
+        int deleted;
+        if (expectedVersions == null || ProductETags.isAnyVersion(expectedVersions)) {
+            deleted = productRepository.deleteProductById(id);
+        } else {
+            deleted = expectedVersions.isEmpty() ? 0 : productRepository.deleteProductByIdIfVersion(id, expectedVersions);
+        }
+        if (deleted == 0) {
+            throw writeFailure(id, expectedVersions);
+        }
+        eventPublisher.publishEvent(new ProductChangedEvent(ProductChangedEvent.Type.DELETED, id));
+    }
+
+    // Only conditional writes pay for the extra lookup that tells a missing product from a stale version
+    private RuntimeException writeFailure(Long id, Set<Long> expectedVersions) {
+        ProductNotFoundException notFound = new ProductNotFoundException("Product not found with id: " + id);
+        if (expectedVersions == null) {
+            return notFound;
+        }
+        if (ProductETags.isAnyVersion(expectedVersions)) {
+            return anyVersionOfMissing(id);
+        }
+        return productRepository.findVersionById(id)
+                .<RuntimeException>map(version -> new PreconditionFailedException(
+                        "Product " + id + " has been modified, current ETag is " + ProductETags.of(version)))
+                .orElse(notFound);
+    }
+
+    // If-Match: * only holds while the product exists, so a missing one fails the precondition instead of a 404
+    static PreconditionFailedException anyVersionOfMissing(Long id) {
+        return new PreconditionFailedException("Product " + id + " does not exist, If-Match: * needs a current version");
+    }
+
+    @Override
+    @Transactional
+    public StockDto reserveStock(Long id, int quantity) {
+        if (productRepository.reserveStock(id, quantity) == 0) {
+            Integer stock = productRepository.findStockById(id)
+                    .orElseThrow(() -> new ProductNotFoundException("Product not found with id: " + id));
+            throw new OutOfStockException("Not enough stock for product " + id + ": requested " + quantity + ", available " + stock);
+        }
+        eventPublisher.publishEvent(new ProductChangedEvent(ProductChangedEvent.Type.UPDATED, id,
+                versionAfterUpdate(id, null), ProductChangedEvent.STOCK_FIELDS));
+        return currentStock(id);
+    }
+
+    @Override
+    @Transactional
+    public StockDto releaseStock(Long id, int quantity) {
+        if (productRepository.releaseStock(id, quantity) == 0) {
+            Integer stock = productRepository.findStockById(id)
+                    .orElseThrow(() -> new ProductNotFoundException("Product not found with id: " + id));
+            throw new StockLimitExceededException("Stock of product " + id + " cannot exceed " + Integer.MAX_VALUE
+                    + ": releasing " + quantity + " onto " + stock);
+        }
+        eventPublisher.publishEvent(new ProductChangedEvent(ProductChangedEvent.Type.UPDATED, id,
+                versionAfterUpdate(id, null), ProductChangedEvent.STOCK_FIELDS));
+        return currentStock(id);
+    }
+
+    private StockDto currentStock(Long id) {
+        int stock = productRepository.findStockById(id)
                 .orElseThrow(() -> new ProductNotFoundException("Product not found with id: " + id));
-        productRepository.delete(product);
+        return new StockDto(id, stock);
     }
 
     @Override
@@ -57,4 +297,192 @@ public class ProductServiceImpl implements ProductService {
         List<Product> products = productRepository.findAll(Sort.by("price"));
         return productMapper.toDtoList(products);
     }
-}
\ No newline at end of file
+
+    @Override
+    public ProductPage findPageOrderedByPrice(String cursor, Integer size) {
+        return findPageOrderedByPrice(new ProductFilter(), cursor, size);
+    }
+
+    @Override
+    public ProductPage findPageOrderedByPrice(ProductFilter filter, String cursor, Integer size) {
+        ProductFilter conditions = validated(filter);
+        int pageSize = resolvePageSize(size);
+        ProductCursor position = cursor == null || cursor.isBlank() ? null : ProductCursor.decode(cursor);
+        if (priceIndex.isServing() && onlyPriceConditions(conditions)) {
+            return pageFromPriceIndex(conditions, position, pageSize);
+        }
+        // One extra row tells us whether there is a next page without a count query
+        List<Product> products;
+        if (!conditions.isEmpty()) {
+            products = productRepository.findPage(conditions,
+                    position == null ? null : position.getPrice(), position == null ? null : position.getId(), pageSize + 1);
+        } else if (position == null) {
+            products = productRepository.findAllByOrderByPriceAscIdAsc(PageRequest.of(0, pageSize + 1));
+        } else {
+            products = productRepository.findPageAfter(position.getPrice(), position.getId(), PageRequest.of(0, pageSize + 1));
+        }
+
+        String nextCursor = null;
+        if (products.size() > pageSize) {
+            products = products.subList(0, pageSize);
+            Product last = products.get(pageSize - 1);
+            nextCursor = new ProductCursor(last.getPrice(), last.getId()).encode();
+        }
+        return ProductPage.builder()
+                .items(productMapper.toDtoList(products))
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    private ProductPage pageFromPriceIndex(ProductFilter conditions, ProductCursor position, int pageSize) {
+        return toPage(priceIndex.page(conditions.getMinPrice(), conditions.getMaxPrice(),
+                position == null ? null : position.getPrice(), position == null ? null : position.getId(), pageSize + 1), pageSize);
+    }
+
+    /**
+     * Page out of up to pageSize + 1 products in listing order, the extra one only tells there is a next page.
+     */
+    static ProductPage toPage(List<ProductDto> items, int pageSize) {
+        String nextCursor = null;
+        if (items.size() > pageSize) {
+            items = items.subList(0, pageSize);
+            ProductDto last = items.get(pageSize - 1);
+            nextCursor = new ProductCursor(last.getPrice(), last.getId()).encode();
+        }
+        return ProductPage.builder()
+                .items(items)
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    // The price index is ordered like the listing but knows nothing of stock or names
+    static boolean onlyPriceConditions(ProductFilter filter) {
+        return filter.getInStock() == null && filter.getMaxStock() == null && filter.getNamePrefix() == null;
+    }
+
+    @Override
+    public ProductSearchPage search(String query, Integer page, Integer size) {
+        if (query == null || query.isBlank()) {
+            throw new BadRequestException("Search query must not be blank");
+        }
+        int pageNumber = page == null ? 0 : page;
+        if (pageNumber < 0) {
+            throw new BadRequestException("Page must not be negative");
+        }
+        int pageSize = resolvePageSize(size);
+        ProductSearchIndex.Hits hits = searchIndex.search(query, (long) pageNumber * pageSize, pageSize);
+
+        Map<Long, Product> found = new HashMap<>();
+        productRepository.findAllById(hits.getIds()).forEach(product -> found.put(product.getId(), product));
+        // The index can lag a delete by a refresh, such hits are just dropped
+        List<ProductDto> items = new ArrayList<>(found.size());
+        for (Long id : hits.getIds()) {
+            Product product = found.get(id);
+            if (product != null) {
+                items.add(productMapper.toDto(product));
+            }
+        }
+        return ProductSearchPage.builder()
+                .items(items)
+                .total(hits.getTotal())
+                .page(pageNumber)
+                .size(pageSize)
+                .build();
+    }
+
+    @Override
+    public List<ProductSuggestion> suggest(String prefix, Integer limit) {
+        if (prefix == null || prefix.isBlank()) {
+            throw new BadRequestException("Prefix must not be blank");
+        }
+        if (limit != null && limit < 1) {
+            throw new BadRequestException("Limit must be greater than 0");
+        }
+        int maxSuggestions = searchProperties.getSuggestSize();
+        int resolvedLimit = limit == null ? maxSuggestions : Math.min(limit, maxSuggestions);
+        return suggester.suggest(prefix, resolvedLimit).stream()
+                .map(suggestion -> ProductSuggestion.builder()
+                        .id(suggestion.getId())
+                        .name(suggestion.getName())
+                        .stock(suggestion.getStock())
+                        .price(suggestion.getPrice())
+                        .build())
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void exportAll(Consumer<ProductDto> consumer) {
+        try (Stream<Product> products = productRepository.streamAll()) {
+            products.forEach(product -> {
+                consumer.accept(productMapper.toDto(product));
+                // Keep the persistence context from growing with the table
+                entityManager.detach(product);
+            });
+        }
+    }
+
+    @Override
+    public ProductLookupResult findAllByIds(List<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            throw new BadRequestException("At least one id is required");
+        }
+        List<Long> requested = new ArrayList<>(new LinkedHashSet<>(ids));
+        requested.removeIf(Objects::isNull);
+        if (requested.size() > lookupProperties.getMaxIds()) {
+            throw new BadRequestException("At most " + lookupProperties.getMaxIds() + " ids can be requested at once");
+        }
+
+        Map<Long, Product> found = new HashMap<>();
+        int chunkSize = lookupProperties.getChunkSize();
+        for (int from = 0; from < requested.size(); from += chunkSize) {
+            List<Long> chunk = requested.subList(from, Math.min(from + chunkSize, requested.size()));
+            productRepository.findAllById(chunk).forEach(product -> found.put(product.getId(), product));
+        }
+
+        List<ProductDto> products = new ArrayList<>(found.size());
+        List<Long> missingIds = new ArrayList<>();
+        for (Long id : requested) {
+            Product product = found.get(id);
+            if (product == null) {
+                missingIds.add(id);
+            } else if (stockWriteBehind.isEnabled()) {
+                products.add(stockWriteBehind.withPendingStock(productMapper.toDto(product)));
+            } else {
+                products.add(productMapper.toDto(product));
+            }
+        }
+        return ProductLookupResult.builder()
+                .products(products)
+                .missingIds(missingIds)
+                .build();
+    }
+
+    static ProductFilter validated(ProductFilter filter) {
+        if (filter.getMinPrice() != null && filter.getMaxPrice() != null
+                && filter.getMinPrice().compareTo(filter.getMaxPrice()) > 0) {
+            throw new BadRequestException("minPrice must not be greater than maxPrice");
+        }
+        if (filter.getMaxStock() != null && filter.getMaxStock() < 0) {
+            throw new BadRequestException("maxStock must not be negative");
+        }
+        if (filter.getNamePrefix() == null || !filter.getNamePrefix().isBlank()) {
+            return filter;
+        }
+        return filter.toBuilder().namePrefix(null).build();
+    }
+
+    private int resolvePageSize(Integer size) {
+        return resolvePageSize(size, paginationProperties);
+    }
+
+    static int resolvePageSize(Integer size, PaginationProperties paginationProperties) {
+        if (size == null) {
+            return paginationProperties.getDefaultPageSize();
+        }
+        if (size < 1) {
+            throw new BadRequestException("Page size must be greater than 0");
+        }
+        return Math.min(size, paginationProperties.getMaxPageSize());
+    }
+}
@@ -0,0 +1,48 @@
+package com.paygoal.exercie.service;
+
+import com.paygoal.exercie.dto.ProductDto;
+import lombok.Value;
+
+import java.util.Set;
+
+/**
+ * A create or an update applied as part of a group, see {@link ProductService#writeAll}.
+ */
+@Value
+public class ProductWrite {
+
+    // Null for a create
+    Long id;
+    ProductDto product;
+    // Null when the update is not conditional
+    Set<Long> expectedVersions;
+
+    public static ProductWrite create(ProductDto product) {
+        return new ProductWrite(null, product, null);
+    }
+
+    public static ProductWrite update(Long id, ProductDto product, Set<Long> expectedVersions) {
+        return new ProductWrite(id, product, expectedVersions);
+    }
+
+    public boolean isCreate() {
+        return id == null;
+    }
+
+    /**
+     * Outcome of one write of the group: the product written or why it was not.
+     */
+    @Value
+    public static class Result {
+        ProductDto product;
+        RuntimeException failure;
+
+        public static Result of(ProductDto product) {
+            return new Result(product, null);
+        }
+
+        public static Result failed(RuntimeException failure) {
+            return new Result(null, failure);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.paygoal.exercie.service;
+
+import com.paygoal.exercie.dto.ProductDto;
+import com.paygoal.exercie.dto.ProductFilter;
+import com.paygoal.exercie.dto.ProductLookupResult;
+import com.paygoal.exercie.dto.ProductPage;
+import com.paygoal.exercie.dto.ProductSearchPage;
+import com.paygoal.exercie.dto.ProductSuggestion;
+import com.paygoal.exercie.dto.StockDto;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link ProductService} for the reactive profile, same rules and errors, signalled through the returned publishers.
+ */
+public interface ReactiveProductService {
+    Mono<ProductDto> findById(Long id);
+    Mono<Long> findVersionById(Long id);
+    Mono<ProductDto> create(ProductDto productDto);
+    Mono<List<ProductDto>> createAll(List<ProductDto> productDtos);
+    Mono<ProductDto> update(Long id, ProductDto productDto, Set<Long> expectedVersions);
+    Mono<ProductDto> patch(Long id, Map<String, Object> changes);
+    Mono<Void> delete(Long id, Set<Long> expectedVersions);
+    Mono<StockDto> reserveStock(Long id, int quantity);
+    Mono<StockDto> releaseStock(Long id, int quantity);
+    Mono<ProductPage> findPageOrderedByPrice(ProductFilter filter, String cursor, Integer size);
+    Flux<ProductDto> streamOrderedByPrice(ProductFilter filter, String cursor);
+    Mono<ProductSearchPage> search(String query, Integer page, Integer size);
+    Mono<List<ProductSuggestion>> suggest(String prefix, Integer limit);
+    Flux<ProductDto> exportAll();
+    Mono<ProductLookupResult> findAllByIds(List<Long> ids);
+}
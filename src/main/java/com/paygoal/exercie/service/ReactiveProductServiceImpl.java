@@ -0,0 +1,380 @@
+package com.paygoal.exercie.service;
+
+import com.paygoal.exercie.cache.ProductCache;
+import com.paygoal.exercie.cache.ProductPriceIndex;
+import com.paygoal.exercie.configuration.BatchProperties;
+import com.paygoal.exercie.configuration.ChangeFeedProperties;
+import com.paygoal.exercie.configuration.LookupProperties;
+import com.paygoal.exercie.configuration.PaginationProperties;
+import com.paygoal.exercie.configuration.ReactiveProperties;
+import com.paygoal.exercie.dto.ProductDto;
+import com.paygoal.exercie.dto.ProductFilter;
+import com.paygoal.exercie.dto.ProductLookupResult;
+import com.paygoal.exercie.dto.ProductPage;
+import com.paygoal.exercie.dto.ProductSearchPage;
+import com.paygoal.exercie.dto.ProductSuggestion;
+import com.paygoal.exercie.dto.StockDto;
+import com.paygoal.exercie.event.ProductChangedEvent;
+import com.paygoal.exercie.exception.BadRequestException;
+import com.paygoal.exercie.exception.OutOfStockException;
+import com.paygoal.exercie.exception.PreconditionFailedException;
+import com.paygoal.exercie.exception.ProductNotFoundException;
+import com.paygoal.exercie.exception.StockLimitExceededException;
+import com.paygoal.exercie.model.Product;
+import com.paygoal.exercie.repository.ReactiveProductRepository;
+import com.paygoal.exercie.search.ProductSearchIndex;
+import com.paygoal.exercie.utils.ProductCursor;
+import com.paygoal.exercie.utils.ProductETags;
+import com.paygoal.exercie.utils.ProductMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Events are published once the transaction has committed, so the caches and indexes listening to them stay in sync
+ * with writes made through either stack.
+ */
+@Service
+@Profile("reactive")
+@RequiredArgsConstructor
+public class ReactiveProductServiceImpl implements ReactiveProductService {
+
+    private final ReactiveProductRepository productRepository;
+    private final ProductMapper productMapper;
+    private final TransactionalOperator transactionalOperator;
+    private final ApplicationEventPublisher eventPublisher;
+    private final PaginationProperties paginationProperties;
+    private final LookupProperties lookupProperties;
+    private final BatchProperties batchProperties;
+    private final ReactiveProperties reactiveProperties;
+    private final ChangeFeedProperties changeFeedProperties;
+    private final ProductCache productCache;
+    private final ProductPriceIndex priceIndex;
+    private final ProductSearchIndex searchIndex;
+    private final ProductService productService;
+
+    @Override
+    public Mono<ProductDto> findById(Long id) {
+        return Mono.defer(() -> {
+            ProductDto cached = productCache.getIfPresent(id);
+            if (cached != null) {
+                return Mono.just(cached);
+            }
+            long stamp = productCache.invalidationStamp();
+            return productRepository.findById(id)
+                    .switchIfEmpty(Mono.error(() -> notFound(id)))
+                    .map(productMapper::toDto)
+                    .doOnNext(loaded -> productCache.putIfNotInvalidated(id, loaded, stamp));
+        });
+    }
+
+    @Override
+    public Mono<Long> findVersionById(Long id) {
+        return Mono.defer(() -> {
+            ProductDto cached = productCache.getIfPresent(id);
+            if (cached != null) {
+                return Mono.just(cached.getVersion());
+            }
+            return productRepository.findVersionById(id)
+                    .switchIfEmpty(Mono.error(() -> notFound(id)));
+        });
+    }
+
+    @Override
+    public Mono<ProductDto> create(ProductDto productDto) {
+        return productRepository.insert(productMapper.toEntity(productDto))
+                .as(transactionalOperator::transactional)
+                .doOnNext(this::publishCreated)
+                .map(productMapper::toDto);
+    }
+
+    @Override
+    public Mono<List<ProductDto>> createAll(List<ProductDto> productDtos) {
+        if (productDtos.size() > batchProperties.getMaxItems()) {
+            return Mono.error(new BadRequestException("At most " + batchProperties.getMaxItems() + " products can be created at once"));
+        }
+        return Flux.fromIterable(productDtos)
+                .concatMap(productDto -> productRepository.insert(productMapper.toEntity(productDto)))
+                .collectList()
+                .as(transactionalOperator::transactional)
+                .doOnNext(saved -> saved.forEach(this::publishCreated))
+                .map(productMapper::toDtoList);
+    }
+
+    @Override
+    public Mono<ProductDto> update(Long id, ProductDto productDto, Set<Long> expectedVersions) {
+        Product product = productMapper.toEntity(productDto);
+        Set<Long> versions = versionCondition(expectedVersions);
+        Mono<Integer> updated = versions != null && versions.isEmpty()
+                ? Mono.just(0)
+                : productRepository.update(id, product, versions);
+        return updated
+                .flatMap(count -> count == 0 ? writeFailure(id, expectedVersions) : versionAfterUpdate(id, expectedVersions))
+                .as(transactionalOperator::transactional)
+                .doOnNext(version -> publish(ProductChangedEvent.Type.UPDATED, id, version, ProductChangedEvent.ALL_FIELDS))
+                .thenReturn(productMapper.withId(productDto, id));
+    }
+
+    @Override
+    public Mono<ProductDto> patch(Long id, Map<String, Object> changes) {
+        if (changes.isEmpty()) {
+            return findById(id);
+        }
+        // Read back in the same transaction, so the event carries the version this write left
+        return productRepository.updateColumns(id, changes)
+                .flatMap(count -> count == 0 ? Mono.<Product>error(notFound(id)) : productRepository.findById(id))
+                .switchIfEmpty(Mono.error(() -> notFound(id)))
+                .as(transactionalOperator::transactional)
+                .doOnNext(patched -> publish(ProductChangedEvent.Type.UPDATED, id, Optional.of(patched.getVersion()),
+                        List.copyOf(changes.keySet())))
+                .map(productMapper::toDto);
+    }
+
+    @Override
+    public Mono<Void> delete(Long id, Set<Long> expectedVersions) {
+        Set<Long> versions = versionCondition(expectedVersions);
+        Mono<Integer> deleted = versions != null && versions.isEmpty()
+                ? Mono.just(0)
+                : productRepository.delete(id, versions);
+        return deleted
+                .flatMap(count -> count == 0 ? writeFailure(id, expectedVersions) : Mono.just(count))
+                .as(transactionalOperator::transactional)
+                .doOnNext(count -> eventPublisher.publishEvent(new ProductChangedEvent(ProductChangedEvent.Type.DELETED, id)))
+                .then();
+    }
+
+    // If-Match: * writes any version, only a missing row tells it apart from an unconditional write
+    private static Set<Long> versionCondition(Set<Long> expectedVersions) {
+        return ProductETags.isAnyVersion(expectedVersions) ? null : expectedVersions;
+    }
+
+    // Only conditional writes pay for the extra lookup that tells a missing product from a stale version
+    private <T> Mono<T> writeFailure(Long id, Set<Long> expectedVersions) {
+        if (expectedVersions == null) {
+            return Mono.error(notFound(id));
+        }
+        if (ProductETags.isAnyVersion(expectedVersions)) {
+            return Mono.error(ProductServiceImpl.anyVersionOfMissing(id));
+        }
+        return productRepository.findVersionById(id)
+                .<RuntimeException>map(version -> new PreconditionFailedException(
+                        "Product " + id + " has been modified, current ETag is " + ProductETags.of(version)))
+                .defaultIfEmpty(notFound(id))
+                .flatMap(Mono::<T>error);
+    }
+
+    @Override
+    public Mono<StockDto> reserveStock(Long id, int quantity) {
+        return productRepository.reserveStock(id, quantity)
+                .flatMap(count -> {
+                    if (count > 0) {
+                        return currentStock(id).zipWith(versionAfterUpdate(id, null));
+                    }
+                    return productRepository.findStockById(id)
+                            .switchIfEmpty(Mono.error(() -> notFound(id)))
+                            .flatMap(stock -> Mono.<Tuple2<StockDto, Optional<Long>>>error(new OutOfStockException(
+                                    "Not enough stock for product " + id + ": requested " + quantity + ", available " + stock)));
+                })
+                .as(transactionalOperator::transactional)
+                .doOnNext(stock -> publish(ProductChangedEvent.Type.UPDATED, id, stock.getT2(), ProductChangedEvent.STOCK_FIELDS))
+                .map(Tuple2::getT1);
+    }
+
+    @Override
+    public Mono<StockDto> releaseStock(Long id, int quantity) {
+        return productRepository.releaseStock(id, quantity)
+                .flatMap(count -> {
+                    if (count > 0) {
+                        return currentStock(id).zipWith(versionAfterUpdate(id, null));
+                    }
+                    return productRepository.findStockById(id)
+                            .switchIfEmpty(Mono.error(() -> notFound(id)))
+                            .flatMap(stock -> Mono.<Tuple2<StockDto, Optional<Long>>>error(new StockLimitExceededException(
+                                    "Stock of product " + id + " cannot exceed " + Integer.MAX_VALUE
+                                            + ": releasing " + quantity + " onto " + stock)));
+                })
+                .as(transactionalOperator::transactional)
+                .doOnNext(stock -> publish(ProductChangedEvent.Type.UPDATED, id, stock.getT2(), ProductChangedEvent.STOCK_FIELDS))
+                .map(Tuple2::getT1);
+    }
+
+    private Mono<StockDto> currentStock(Long id) {
+        return productRepository.findStockById(id)
+                .switchIfEmpty(Mono.error(() -> notFound(id)))
+                .map(stock -> new StockDto(id, stock));
+    }
+
+    @Override
+    public Mono<ProductPage> findPageOrderedByPrice(ProductFilter filter, String cursor, Integer size) {
+        return Mono.defer(() -> {
+            ProductFilter conditions = ProductServiceImpl.validated(filter);
+            int pageSize = ProductServiceImpl.resolvePageSize(size, paginationProperties);
+            ProductCursor position = decode(cursor);
+            BigDecimal afterPrice = position == null ? null : position.getPrice();
+            Long afterId = position == null ? null : position.getId();
+            if (priceIndex.isServing() && ProductServiceImpl.onlyPriceConditions(conditions)) {
+                return Mono.just(ProductServiceImpl.toPage(priceIndex.page(conditions.getMinPrice(),
+                        conditions.getMaxPrice(), afterPrice, afterId, pageSize + 1), pageSize));
+            }
+            // One extra row tells us whether there is a next page without a count query
+            return productRepository.findPage(conditions, afterPrice, afterId, pageSize + 1)
+                    .map(productMapper::toDto)
+                    .collectList()
+                    .map(items -> ProductServiceImpl.toPage(items, pageSize));
+        });
+    }
+
+    /**
+     * The whole listing from the cursor on, one keyset query per chunk. The next chunk is only queried once the
+     * client has read the previous one, so a slow client holds back the database instead of filling the heap.
+     */
+    @Override
+    public Flux<ProductDto> streamOrderedByPrice(ProductFilter filter, String cursor) {
+        return Flux.defer(() -> {
+            ProductFilter conditions = ProductServiceImpl.validated(filter);
+            ProductCursor position = decode(cursor);
+            int chunkSize = reactiveProperties.getStreamChunkSize();
+            return chunks(productRepository.findPage(conditions, position == null ? null : position.getPrice(),
+                            position == null ? null : position.getId(), chunkSize), chunkSize,
+                    last -> productRepository.findPage(conditions, last.getPrice(), last.getId(), chunkSize));
+        });
+    }
+
+    @Override
+    public Flux<ProductDto> exportAll() {
+        int chunkSize = reactiveProperties.getStreamChunkSize();
+        return chunks(productRepository.findAfterId(null, chunkSize), chunkSize,
+                last -> productRepository.findAfterId(last.getId(), chunkSize));
+    }
+
+    private Flux<ProductDto> chunks(Flux<Product> first, int chunkSize, Function<Product, Flux<Product>> next) {
+        return first.collectList()
+                .expand(chunk -> chunk.size() < chunkSize ? Mono.empty() : next.apply(chunk.get(chunk.size() - 1)).collectList())
+                // Prefetch of one chunk: at most the chunk being written and the next one are in memory
+                .flatMapIterable(chunk -> chunk, 1)
+                .map(productMapper::toDto);
+    }
+
+    @Override
+    public Mono<ProductSearchPage> search(String query, Integer page, Integer size) {
+        return Mono.defer(() -> {
+            if (query == null || query.isBlank()) {
+                throw new BadRequestException("Search query must not be blank");
+            }
+            int pageNumber = page == null ? 0 : page;
+            if (pageNumber < 0) {
+                throw new BadRequestException("Page must not be negative");
+            }
+            int pageSize = ProductServiceImpl.resolvePageSize(size, paginationProperties);
+            ProductSearchIndex.Hits hits = searchIndex.search(query, (long) pageNumber * pageSize, pageSize);
+            return productRepository.findAllById(hits.getIds())
+                    .collectMap(Product::getId)
+                    .map(found -> {
+                        // The index can lag a delete by a refresh, such hits are just dropped
+                        List<ProductDto> items = new ArrayList<>(found.size());
+                        for (Long id : hits.getIds()) {
+                            Product product = found.get(id);
+                            if (product != null) {
+                                items.add(productMapper.toDto(product));
+                            }
+                        }
+                        return ProductSearchPage.builder()
+                                .items(items)
+                                .total(hits.getTotal())
+                                .page(pageNumber)
+                                .size(pageSize)
+                                .build();
+                    });
+        });
+    }
+
+    // Answered from the in-memory trie, nothing to wait for
+    @Override
+    public Mono<List<ProductSuggestion>> suggest(String prefix, Integer limit) {
+        return Mono.fromSupplier(() -> productService.suggest(prefix, limit));
+    }
+
+    @Override
+    public Mono<ProductLookupResult> findAllByIds(List<Long> ids) {
+        return Mono.defer(() -> {
+            if (ids == null || ids.isEmpty()) {
+                throw new BadRequestException("At least one id is required");
+            }
+            List<Long> requested = new ArrayList<>(new LinkedHashSet<>(ids));
+            requested.removeIf(Objects::isNull);
+            if (requested.size() > lookupProperties.getMaxIds()) {
+                throw new BadRequestException("At most " + lookupProperties.getMaxIds() + " ids can be requested at once");
+            }
+            int chunkSize = lookupProperties.getChunkSize();
+            List<List<Long>> chunks = new ArrayList<>();
+            for (int from = 0; from < requested.size(); from += chunkSize) {
+                chunks.add(requested.subList(from, Math.min(from + chunkSize, requested.size())));
+            }
+            return Flux.fromIterable(chunks)
+                    .concatMap(productRepository::findAllById)
+                    .collectMap(Product::getId)
+                    .map(found -> {
+                        List<ProductDto> products = new ArrayList<>(found.size());
+                        List<Long> missingIds = new ArrayList<>();
+                        for (Long id : requested) {
+                            Product product = found.get(id);
+                            if (product == null) {
+                                missingIds.add(id);
+                            } else {
+                                products.add(productMapper.toDto(product));
+                            }
+                        }
+                        return ProductLookupResult.builder()
+                                .products(products)
+                                .missingIds(missingIds)
+                                .build();
+                    });
+        });
+    }
+
+    private void publishCreated(Product product) {
+        eventPublisher.publishEvent(new ProductChangedEvent(ProductChangedEvent.Type.CREATED, product.getId(),
+                product.getVersion(), ProductChangedEvent.ALL_FIELDS));
+    }
+
+    private void publish(ProductChangedEvent.Type type, Long id, Optional<Long> version, List<String> fields) {
+        eventPublisher.publishEvent(new ProductChangedEvent(type, id, version.orElse(null), fields));
+    }
+
+    /**
+     * Version an UPDATE just left the product at, as the servlet stack reports it. An If-Match with one version tells
+     * it for free, otherwise it costs a read inside the write's transaction, and only while the feed is enabled.
+     */
+    private Mono<Optional<Long>> versionAfterUpdate(Long id, Set<Long> expectedVersions) {
+        if (expectedVersions != null && expectedVersions.size() == 1) {
+            return Mono.just(Optional.of(expectedVersions.iterator().next() + 1));
+        }
+        if (!changeFeedProperties.isEnabled()) {
+            return Mono.just(Optional.empty());
+        }
+        return productRepository.findVersionById(id).map(Optional::of).defaultIfEmpty(Optional.empty());
+    }
+
+    private static ProductCursor decode(String cursor) {
+        return cursor == null || cursor.isBlank() ? null : ProductCursor.decode(cursor);
+    }
+
+    private static ProductNotFoundException notFound(Long id) {
+        return new ProductNotFoundException("Product not found with id: " + id);
+    }
+}
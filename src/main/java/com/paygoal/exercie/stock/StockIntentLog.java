@@ -0,0 +1,239 @@
+package com.paygoal.exercie.stock;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of accepted stock deltas, split in numbered segment files. A record is the product id, the delta
+ * and a CRC32 of both, so a record torn by a crash is recognized and ignored along with anything after it.
+ * <p>
+ * {@link #sync} makes a record durable before its caller is answered. Concurrent writers share the fsync: whoever
+ * gets to force the file covers every record appended before it, the others find their record already forced.
+ */
+@Slf4j
+class StockIntentLog implements Closeable {
+
+    static final int RECORD_SIZE = Long.BYTES + Integer.BYTES + Integer.BYTES;
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("stock-intents-(\\d+)\\.log");
+
+    private final Path directory;
+    private final boolean fsync;
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private volatile FileChannel channel;
+    private volatile long segment;
+    // Bytes appended and bytes known to be on disk, over all segments since startup
+    private volatile long appended;
+    private volatile long forced;
+    private volatile long fsyncs;
+
+    StockIntentLog(Path directory, boolean fsync, long firstSegment) {
+        this.directory = directory;
+        this.fsync = fsync;
+        try {
+            Files.createDirectories(directory);
+            open(firstSegment);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot open the stock intent log in " + directory, ex);
+        }
+    }
+
+    /**
+     * Appends a delta and returns the position to pass to {@link #sync}.
+     */
+    long append(long productId, int delta) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        record.putLong(productId).putInt(delta).putInt(checksum(productId, delta)).flip();
+        appendLock.lock();
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+            appended += RECORD_SIZE;
+            return appended;
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot append to the stock intent log", ex);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Returns once everything up to position is on disk.
+     */
+    void sync(long position) {
+        if (!fsync || forced >= position) {
+            return;
+        }
+        syncLock.lock();
+        try {
+            if (forced >= position) {
+                return;
+            }
+            long end = appended;
+            channel.force(false);
+            fsyncs++;
+            forced = end;
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot sync the stock intent log", ex);
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Closes the current segment and starts the next one. Must not run concurrently with {@link #append}.
+     *
+     * @return the number of the segment closed
+     */
+    long rotate() {
+        syncLock.lock();
+        try {
+            channel.force(false);
+            forced = appended;
+            channel.close();
+            long closed = segment;
+            open(closed + 1);
+            return closed;
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot rotate the stock intent log", ex);
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Deletes the segments whose deltas have been applied, up to and including the given one.
+     */
+    void deleteUpTo(long lastApplied) {
+        for (long number : segments(directory)) {
+            if (number <= lastApplied && number != segment) {
+                delete(directory, number);
+            }
+        }
+    }
+
+    long segment() {
+        return segment;
+    }
+
+    long fsyncs() {
+        return fsyncs;
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.force(false);
+            channel.close();
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot close the stock intent log", ex);
+        }
+    }
+
+    private void open(long number) throws IOException {
+        channel = FileChannel.open(segmentPath(directory, number),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        segment = number;
+        // The directory entry of a new segment must survive a crash too
+        if (fsync) {
+            forceDirectory(directory);
+        }
+    }
+
+    /**
+     * Numbers of the segments in the directory, in order.
+     */
+    static List<Long> segments(Path directory) {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        List<Long> numbers = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    numbers.add(Long.parseLong(matcher.group(1)));
+                }
+            });
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot list the stock intent log in " + directory, ex);
+        }
+        numbers.sort(null);
+        return numbers;
+    }
+
+    /**
+     * Net delta per product of the valid records of a segment.
+     */
+    static Map<Long, Long> read(Path directory, long number) {
+        Map<Long, Long> deltas = new HashMap<>();
+        Path path = segmentPath(directory, number);
+        ByteBuffer bytes;
+        try {
+            bytes = ByteBuffer.wrap(Files.readAllBytes(path));
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot read stock intent log segment " + path, ex);
+        }
+        while (bytes.remaining() >= RECORD_SIZE) {
+            long productId = bytes.getLong();
+            int delta = bytes.getInt();
+            if (bytes.getInt() != checksum(productId, delta)) {
+                log.warn("Stock intent log segment {} has a corrupt record at byte {}, ignoring the rest",
+                        number, bytes.position() - RECORD_SIZE);
+                return deltas;
+            }
+            deltas.merge(productId, (long) delta, Long::sum);
+        }
+        if (bytes.hasRemaining()) {
+            log.warn("Stock intent log segment {} ends with a torn record, ignoring it", number);
+        }
+        return deltas;
+    }
+
+    static void delete(Path directory, long number) {
+        try {
+            Files.deleteIfExists(segmentPath(directory, number));
+        } catch (IOException ex) {
+            // Left behind it is only read again to be skipped: the checkpoint, or the journaled rows, are past it
+            log.warn("Cannot delete stock intent log segment {}", number, ex);
+        }
+    }
+
+    static Path segmentPath(Path directory, long number) {
+        return directory.resolve(String.format("stock-intents-%020d.log", number));
+    }
+
+    private static int checksum(long productId, int delta) {
+        CRC32 crc = new CRC32();
+        crc.update(ByteBuffer.allocate(Long.BYTES + Integer.BYTES).putLong(productId).putInt(delta).flip());
+        return (int) crc.getValue();
+    }
+
+    private static void forceDirectory(Path directory) {
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException ex) {
+            // Not every platform can open a directory, the segment data itself is still forced
+            log.debug("Cannot sync directory {}", directory, ex);
+        }
+    }
+}
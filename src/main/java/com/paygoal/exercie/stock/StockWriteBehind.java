@@ -0,0 +1,448 @@
+package com.paygoal.exercie.stock;
+
+import com.paygoal.exercie.configuration.StockWriteBehindProperties;
+import com.paygoal.exercie.dto.ProductDto;
+import com.paygoal.exercie.dto.StockDto;
+import com.paygoal.exercie.event.ProductChangedEvent;
+import com.paygoal.exercie.exception.OutOfStockException;
+import com.paygoal.exercie.exception.ProductNotFoundException;
+import com.paygoal.exercie.exception.StockLimitExceededException;
+import com.paygoal.exercie.journal.ProductJournalRestore;
+import com.paygoal.exercie.repository.ProductRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Write-behind for stock reservations and releases: a hot product takes them in memory instead of as one row UPDATE,
+ * and row lock, each.
+ * <p>
+ * Every product touched has an in-memory count of its available stock, seeded from the table, that a reservation
+ * decrements only while enough is left, plus a {@link LongAdder} of the deltas not yet written. A delta is appended to
+ * the {@link StockIntentLog} and fsynced before the caller is answered. Every {@code flush-interval}, or after
+ * {@code flush-threshold} deltas, one thread applies the net delta of each product in one transaction, together with
+ * the number of the last log segment it covers in stock_intent_checkpoint. At startup the segments past the checkpoint
+ * are replayed, so a crash loses no answered delta and applies none twice. With the product journal the table comes
+ * back from it instead, and a delta is only replayed onto a product whose restored row does not include it yet.
+ * <p>
+ * The product and lookup reads include the pending deltas; listings, search and the stock filters see them after the
+ * flush, which publishes a {@link ProductChangedEvent.Type#STOCK} event per product. A PUT, PATCH or DELETE committed
+ * meanwhile re-seeds the count from the table, the pending deltas still apply on top.
+ */
+@Slf4j
+@Component
+public class StockWriteBehind implements MeterBinder, SmartLifecycle {
+
+    private static final String APPLIED_SEGMENT = "SELECT applied_segment FROM stock_intent_checkpoint WHERE id = 1";
+    private static final String SET_APPLIED_SEGMENT = "UPDATE stock_intent_checkpoint SET applied_segment = ? WHERE id = 1";
+
+    private final StockWriteBehindProperties properties;
+    private final ProductRepository productRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transaction;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ProductJournalRestore journalRestore;
+
+    private final ConcurrentMap<Long, StockCounter> counters = new ConcurrentHashMap<>();
+    // Reservations and releases share the read lock, taking a flush snapshot needs the write lock
+    private final ReentrantReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+    private final AtomicLong unflushed = new AtomicLong();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder flushedRows = new LongAdder();
+    private StockIntentLog intentLog;
+    private ScheduledExecutorService flusher;
+
+    public StockWriteBehind(StockWriteBehindProperties properties, ProductRepository productRepository,
+                            JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                            ApplicationEventPublisher eventPublisher, ProductJournalRestore journalRestore) {
+        this.properties = properties;
+        this.productRepository = productRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+        this.journalRestore = journalRestore;
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * Started once every bean exists and before the web server, stopped after it and before any bean is destroyed:
+     * the replay and the last flush publish events, and their listeners, the journal among them, must be there.
+     */
+    @Override
+    public int getPhase() {
+        return 0;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return flusher != null && !flusher.isShutdown();
+    }
+
+    @Override
+    public void start() {
+        if (!isEnabled()) {
+            return;
+        }
+        long lastSegment = recover();
+        intentLog = new StockIntentLog(properties.getLogDirectory(), properties.isFsync(), lastSegment + 1);
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stock-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = properties.getFlushInterval().toMillis();
+        flusher.scheduleWithFixedDelay(this::flushPending, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public StockDto reserve(Long id, int quantity) {
+        return apply(id, -quantity);
+    }
+
+    public StockDto release(Long id, int quantity) {
+        return apply(id, quantity);
+    }
+
+    private StockDto apply(Long id, int delta) {
+        StockCounter counter = counter(id);
+        long stock;
+        long position;
+        Lock lock = snapshotLock.readLock();
+        lock.lock();
+        try {
+            long current;
+            do {
+                current = counter.available.get();
+                if (current + delta < 0) {
+                    throw new OutOfStockException("Not enough stock for product " + id + ": requested " + -delta
+                            + ", available " + current);
+                }
+                if (current + delta > Integer.MAX_VALUE) {
+                    throw new StockLimitExceededException("Stock of product " + id + " cannot exceed "
+                            + Integer.MAX_VALUE + ": releasing " + delta + " onto " + current);
+                }
+            } while (!counter.available.compareAndSet(current, current + delta));
+            stock = current + delta;
+            try {
+                position = intentLog.append(id, delta);
+            } catch (RuntimeException ex) {
+                counter.available.addAndGet(-delta);
+                throw ex;
+            }
+            counter.pending.add(delta);
+        } finally {
+            lock.unlock();
+        }
+        // Outside the lock, so a flush snapshot never waits for a disk
+        intentLog.sync(position);
+        accepted.increment();
+        if (unflushed.incrementAndGet() >= properties.getFlushThreshold() && flushRequested.compareAndSet(false, true)) {
+            try {
+                flusher.execute(this::flushPending);
+            } catch (RejectedExecutionException ex) {
+                // Stopping: the delta is logged and the last flush, or the replay at the next start, writes it
+                log.debug("Stock write-behind flush not scheduled, the flusher is stopped");
+            }
+        }
+        return new StockDto(id, (int) stock);
+    }
+
+    private StockCounter counter(Long id) {
+        StockCounter counter = counters.get(id);
+        if (counter != null) {
+            return counter;
+        }
+        // Seeded outside computeIfAbsent to keep the query out of the map's lock, a racing seed reads the same row
+        int stock = productRepository.findStockById(id)
+                .orElseThrow(() -> new ProductNotFoundException("Product not found with id: " + id));
+        return counters.computeIfAbsent(id, key -> new StockCounter(stock));
+    }
+
+    /**
+     * The product with its stock as the write-behind counts it, pending deltas included. A copy when that differs, the
+     * product given may be shared with other readers.
+     */
+    public ProductDto withPendingStock(ProductDto product) {
+        StockCounter counter = product.getId() == null ? null : counters.get(product.getId());
+        if (counter == null) {
+            return product;
+        }
+        return product.toBuilder().stock((int) counter.available.get()).build();
+    }
+
+    /**
+     * Whether the stock of the product differs from the row, whose version then does not tell the current state.
+     */
+    public boolean hasPendingDeltas(Long id) {
+        StockCounter counter = counters.get(id);
+        return counter != null && counter.pending.sum() != 0;
+    }
+
+    /**
+     * Writes every delta accepted so far before returning.
+     */
+    public void flush() {
+        if (!isRunning()) {
+            return;
+        }
+        try {
+            flusher.submit(this::flushPending).get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Flush of the stock write-behind failed", ex.getCause());
+        }
+    }
+
+    private void flushPending() {
+        flushRequested.set(false);
+        Map<Long, Long> deltas = new HashMap<>();
+        long segment;
+        snapshotLock.writeLock().lock();
+        try {
+            counters.forEach((id, counter) -> {
+                long delta = counter.pending.sumThenReset();
+                if (delta != 0) {
+                    deltas.put(id, delta);
+                }
+            });
+            if (deltas.isEmpty()) {
+                return;
+            }
+            try {
+                segment = intentLog.rotate();
+            } catch (RuntimeException ex) {
+                restore(deltas);
+                log.warn("Stock write-behind flush skipped, the intent log cannot be rotated", ex);
+                return;
+            }
+            unflushed.set(0);
+        } finally {
+            snapshotLock.writeLock().unlock();
+        }
+
+        try {
+            List<Long> missing = new ArrayList<>();
+            Map<Long, Long> rejected = new HashMap<>();
+            transaction.executeWithoutResult(status -> applyDeltas(deltas, segment, missing, rejected));
+            missing.forEach(counters::remove);
+            carryOver(rejected);
+            intentLog.deleteUpTo(segment);
+            flushes.increment();
+            flushedRows.add(deltas.size() - missing.size() - rejected.size());
+        } catch (RuntimeException ex) {
+            // The segment stays on disk and the next flush covers it as well
+            snapshotLock.writeLock().lock();
+            try {
+                restore(deltas);
+            } finally {
+                snapshotLock.writeLock().unlock();
+            }
+            log.warn("Stock write-behind flush of {} products failed, retrying with the next one", deltas.size(), ex);
+        }
+    }
+
+    /**
+     * Writes the deltas and the segment they cover. A product deleted meanwhile goes to missing, one whose row cannot
+     * take its delta without overflowing, after a direct write raced the re-seed, goes to rejected: the rest of the
+     * products still commit.
+     */
+    private void applyDeltas(Map<Long, Long> deltas, long segment, List<Long> missing, Map<Long, Long> rejected) {
+        deltas.forEach((id, delta) -> {
+            if (productRepository.applyStockDelta(id, delta) == 0) {
+                if (productRepository.findStockById(id).isPresent()) {
+                    rejected.put(id, delta);
+                } else {
+                    // Deleted meanwhile, nothing left to apply the delta to
+                    missing.add(id);
+                }
+            } else {
+                eventPublisher.publishEvent(new ProductChangedEvent(ProductChangedEvent.Type.STOCK, id,
+                        productRepository.findVersionById(id).orElse(null), ProductChangedEvent.STOCK_FIELDS));
+            }
+        });
+        jdbcTemplate.update(SET_APPLIED_SEGMENT, segment);
+    }
+
+    /**
+     * The checkpoint now covers the segments holding the rejected deltas, so they are logged again in the current one
+     * and stay pending for the next flush.
+     */
+    private void carryOver(Map<Long, Long> rejected) {
+        if (rejected.isEmpty()) {
+            return;
+        }
+        snapshotLock.writeLock().lock();
+        try {
+            long position = -1;
+            for (Map.Entry<Long, Long> entry : rejected.entrySet()) {
+                position = intentLog.append(entry.getKey(), Math.toIntExact(entry.getValue()));
+            }
+            intentLog.sync(position);
+            restore(rejected);
+        } finally {
+            snapshotLock.writeLock().unlock();
+        }
+        log.warn("Stock write-behind kept the deltas of products {} pending, their rows cannot take them", rejected.keySet());
+    }
+
+    private void restore(Map<Long, Long> deltas) {
+        deltas.forEach((id, delta) -> {
+            StockCounter counter = counters.get(id);
+            if (counter != null) {
+                counter.pending.add(delta);
+            }
+        });
+    }
+
+    /**
+     * Applies the segments left past the checkpoint by a crash, in one transaction, and deletes the applied ones.
+     * A segment whose delete failed after its flush is skipped for the products restored from the journal with it.
+     *
+     * @return the number of the last segment applied
+     */
+    long recover() {
+        long checkpoint = jdbcTemplate.queryForObject(APPLIED_SEGMENT, Long.class);
+        List<Long> segments = StockIntentLog.segments(properties.getLogDirectory());
+        Map<Long, Long> deltas = new HashMap<>();
+        long last = checkpoint;
+        for (long segment : segments) {
+            if (segment > checkpoint) {
+                StockIntentLog.read(properties.getLogDirectory(), segment).forEach((id, delta) -> {
+                    if (segment > journalRestore.appliedStockSegment(id)) {
+                        deltas.merge(id, delta, Long::sum);
+                    }
+                });
+                last = segment;
+            }
+        }
+        if (last > checkpoint) {
+            long start = System.nanoTime();
+            long applied = last;
+            deltas.values().removeIf(delta -> delta == 0);
+            List<Long> missing = new ArrayList<>();
+            Map<Long, Long> rejected = new HashMap<>();
+            transaction.executeWithoutResult(status -> applyDeltas(deltas, applied, missing, rejected));
+            log.info("Replayed stock intent log segments {} to {}: {} products in {} ms, {} no longer exist",
+                    checkpoint + 1, last, deltas.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), missing.size());
+            if (!rejected.isEmpty()) {
+                // Dropped instead of failing the startup, which would keep every other product from being served
+                log.error("Stock write-behind dropped the replayed deltas {}, their rows cannot take them", rejected);
+            }
+        }
+        for (long segment : segments) {
+            if (segment <= last) {
+                StockIntentLog.delete(properties.getLogDirectory(), segment);
+            }
+        }
+        return last;
+    }
+
+    /**
+     * A PUT, PATCH or DELETE wrote the row directly: the count is re-seeded from it, keeping the deltas still pending.
+     * Runs on the flush thread, where the table holds exactly the flushed deltas.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        if (flusher == null || event.getType() == ProductChangedEvent.Type.CREATED
+                || event.getType() == ProductChangedEvent.Type.STOCK || !counters.containsKey(event.getProductId())) {
+            return;
+        }
+        try {
+            flusher.execute(() -> reseed(event.getProductId()));
+        } catch (RejectedExecutionException ex) {
+            // Stopping: the counters are not read again
+            log.debug("Stock write-behind reseed of product {} skipped, the flusher is stopped", event.getProductId());
+        }
+    }
+
+    private void reseed(Long id) {
+        Optional<Integer> stock = productRepository.findStockById(id);
+        snapshotLock.writeLock().lock();
+        try {
+            StockCounter counter = counters.get(id);
+            if (counter == null) {
+                return;
+            }
+            if (stock.isEmpty()) {
+                counters.remove(id);
+            } else {
+                counter.available.set(stock.get() + counter.pending.sum());
+            }
+        } finally {
+            snapshotLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (!isRunning()) {
+            return;
+        }
+        flush();
+        flusher.shutdown();
+        intentLog.close();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("products.stock.write.behind.deltas", accepted, LongAdder::sum)
+                .description("Stock reservations and releases accepted in memory")
+                .register(registry);
+        FunctionCounter.builder("products.stock.write.behind.flushes", flushes, LongAdder::sum)
+                .description("Transactions that wrote accumulated stock deltas")
+                .register(registry);
+        FunctionCounter.builder("products.stock.write.behind.rows", flushedRows, LongAdder::sum)
+                .description("Product rows updated by the flushes")
+                .register(registry);
+        FunctionCounter.builder("products.stock.write.behind.fsyncs", this, writeBehind -> writeBehind.intentLog == null ? 0 : writeBehind.intentLog.fsyncs())
+                .description("fsyncs of the stock intent log, shared by concurrent deltas")
+                .register(registry);
+        Gauge.builder("products.stock.write.behind.pending", unflushed, AtomicLong::get)
+                .description("Deltas accepted since the last flush")
+                .register(registry);
+    }
+
+    private static final class StockCounter {
+        // Stock in the table when seeded plus every delta accepted since
+        final AtomicLong available;
+        // Deltas accepted since the last flush snapshot
+        final LongAdder pending = new LongAdder();
+
+        StockCounter(int stock) {
+            this.available = new AtomicLong(stock);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.paygoal.exercie.utils;
+
+import com.paygoal.exercie.exception.BadRequestException;
+import lombok.Value;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque continuation token for the price ordered listing.
+ * Encodes the (price, id) of the last product of a page so the next one can seek past it.
+ */
+@Value
+public class ProductCursor {
+
+    private static final String SEPARATOR = ":";
+
+    BigDecimal price;
+    Long id;
+
+    public String encode() {
+        String raw = price.toPlainString() + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static ProductCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf(SEPARATOR);
+            if (separator < 0) {
+                throw new BadRequestException("Invalid cursor: " + token);
+            }
+            return new ProductCursor(new BigDecimal(raw.substring(0, separator)), Long.valueOf(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException ex) {
+            throw new BadRequestException("Invalid cursor: " + token);
+        }
+    }
+}
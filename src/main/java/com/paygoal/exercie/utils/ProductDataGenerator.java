@@ -0,0 +1,90 @@
+package com.paygoal.exercie.utils;
+
+import com.paygoal.exercie.configuration.SeedProperties;
+import com.paygoal.exercie.journal.ProductJournalRestore;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.SplittableRandom;
+
+/**
+ * Replaces the seeded catalog with {@code products.seed.count} synthetic products at startup, unless the product
+ * journal restored the catalog of an earlier run. Rows go straight through JDBC batches, the JPA write path is far too
+ * slow for millions of rows.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ProductDataGenerator implements ApplicationRunner {
+
+    private static final String INSERT = "INSERT INTO products (id, name, description, price, stock, version) VALUES (?, ?, ?, ?, ?, 0)";
+
+    private static final String[] NOUNS = {"mesa", "silla", "lámpara", "estantería", "escritorio", "sofá", "alfombra",
+            "cuadro", "cómoda", "librero", "banqueta", "espejo", "perchero", "mesita", "aparador", "sillón", "cama", "placard"};
+    private static final String[] MATERIALS = {"de madera", "de pino", "de roble", "metálica", "de vidrio", "de mimbre",
+            "tapizada", "de cuero", "laqueada", "industrial"};
+    private static final String[] STYLES = {"redonda", "minimalista", "vintage", "nórdica", "rústica", "moderna",
+            "clásica", "plegable", "extensible", "artesanal"};
+
+    private final SeedProperties seedProperties;
+    private final JdbcTemplate jdbcTemplate;
+    private final ProductJournalRestore journalRestore;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        long count = seedProperties.getCount();
+        if (count <= 0) {
+            return;
+        }
+        if (journalRestore.isSnapshotRestored()) {
+            log.info("Catalog restored from the product journal, not seeding {} synthetic products", count);
+            return;
+        }
+        long start = System.nanoTime();
+        jdbcTemplate.update("DELETE FROM products");
+
+        SplittableRandom random = new SplittableRandom(seedProperties.getRandomSeed());
+        int batchSize = seedProperties.getBatchSize();
+        for (long first = 1; first <= count; first += batchSize) {
+            long base = first;
+            int size = (int) Math.min(batchSize, count - first + 1);
+            jdbcTemplate.batchUpdate(INSERT, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+                    long id = base + i;
+                    String noun = NOUNS[random.nextInt(NOUNS.length)];
+                    String material = MATERIALS[random.nextInt(MATERIALS.length)];
+                    ps.setLong(1, id);
+                    ps.setString(2, noun + " " + material + " " + id);
+                    ps.setString(3, noun + " " + STYLES[random.nextInt(STYLES.length)] + " " + material);
+                    ps.setBigDecimal(4, price(random));
+                    // About one in ten products is out of stock
+                    ps.setInt(5, random.nextInt(10) == 0 ? 0 : random.nextInt(1, 100));
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return size;
+                }
+            });
+        }
+        jdbcTemplate.execute("ALTER SEQUENCE products_seq RESTART WITH " + (count + 1));
+        // Fresh column selectivity, the planner picks the listing filter indexes from it
+        jdbcTemplate.execute("ANALYZE");
+        log.info("Seeded {} synthetic products in {} ms", count, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // Log-uniform between 1.000 and 1.000.000 so every price range has products
+    private static BigDecimal price(SplittableRandom random) {
+        double price = Math.pow(10, 3 + random.nextDouble() * 3);
+        return BigDecimal.valueOf(Math.round(price * 100), 2);
+    }
+}
@@ -0,0 +1,98 @@
+package com.paygoal.exercie.utils;
+
+import com.paygoal.exercie.dto.ProductDto;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Strong entity tags for products. A single product is tagged with its version,
+ * a page with a digest of the ids and versions it contains.
+ */
+public final class ProductETags {
+
+    private static final String ANY = "*";
+    private static final String WEAK_PREFIX = "W/";
+    private static final String GZIP_SUFFIX = "-gzip";
+
+    /**
+     * If-Match: * accepts whatever version the product has, but not a missing product (RFC 9110 13.1.1).
+     * Compared by identity; being empty, code that does not check for it treats it as matching nothing.
+     */
+    public static final Set<Long> ANY_VERSION = Collections.unmodifiableSet(new LinkedHashSet<>());
+
+    private ProductETags() {
+    }
+
+    public static String of(Long version) {
+        return "\"" + version + "\"";
+    }
+
+    public static String of(List<ProductDto> products, String nextCursor) {
+        StringBuilder raw = new StringBuilder();
+        for (ProductDto product : products) {
+            raw.append(product.getId()).append(':').append(product.getVersion()).append(',');
+        }
+        raw.append(nextCursor);
+        return "\"" + DigestUtils.md5DigestAsHex(raw.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+
+    /**
+     * Tag of the gzipped bytes of a representation tagged eTag: a different byte sequence needs its own strong tag.
+     */
+    public static String gzipOf(String eTag) {
+        return eTag.substring(0, eTag.length() - 1) + GZIP_SUFFIX + "\"";
+    }
+
+    /**
+     * The first of the tags an If-None-Match header names, compared weakly as the header requires, or null.
+     */
+    public static String matchedBy(String ifNoneMatch, String... eTags) {
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (ANY.equals(tag)) {
+                return eTags[0];
+            }
+            if (tag.startsWith(WEAK_PREFIX)) {
+                tag = tag.substring(WEAK_PREFIX.length());
+            }
+            for (String eTag : eTags) {
+                if (eTag.equals(tag)) {
+                    return eTag;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Versions accepted by an If-Match header, {@link #ANY_VERSION} for "*".
+     * Weak and malformed tags can never match with the strong comparison If-Match requires, so they are skipped.
+     */
+    public static Set<Long> versionsOf(String ifMatch) {
+        Set<Long> versions = new LinkedHashSet<>();
+        for (String tag : ifMatch.split(",")) {
+            tag = tag.trim();
+            if (ANY.equals(tag)) {
+                return ANY_VERSION;
+            }
+            if (tag.startsWith(WEAK_PREFIX) || tag.length() < 3 || !tag.startsWith("\"") || !tag.endsWith("\"")) {
+                continue;
+            }
+            try {
+                versions.add(Long.parseLong(tag.substring(1, tag.length() - 1)));
+            } catch (NumberFormatException ex) {
+                // not one of ours, cannot match
+            }
+        }
+        return versions;
+    }
+
+    public static boolean isAnyVersion(Set<Long> versions) {
+        return versions == ANY_VERSION;
+    }
+}
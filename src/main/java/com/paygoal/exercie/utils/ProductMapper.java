@@ -17,8 +17,15 @@ public interface ProductMapper {
     List<ProductDto> toDtoList(List<Product> products);
 
     @Mapping(source = "id", target = "id")
+    @Mapping(target = "version", ignore = true)
+    @Mapping(target = "nameLower", ignore = true)
     Product toEntity(ProductDto productDto);
 
+    @Mapping(source = "id", target = "id")
+    ProductDto withId(ProductDto productDto, Long id);
+
     @Mapping(target = "id", ignore = true)
+    @Mapping(target = "version", ignore = true)
+    @Mapping(target = "nameLower", ignore = true)
     void updateProductFromDto(ProductDto productDto, @MappingTarget Product product);
 }
\ No newline at end of file
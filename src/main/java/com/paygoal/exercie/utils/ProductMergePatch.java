@@ -0,0 +1,85 @@
+package com.paygoal.exercie.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.paygoal.exercie.dto.ProductDto;
+import com.paygoal.exercie.exception.BadRequestException;
+import com.paygoal.exercie.exception.FieldValidationException;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Turns a JSON Merge Patch (RFC 7396) document into the product columns to change.
+ * Present members are validated with the same constraints as {@link ProductDto}, absent members are left untouched.
+ */
+@Component
+@RequiredArgsConstructor
+public class ProductMergePatch {
+
+    public static final String MEDIA_TYPE = "application/merge-patch+json";
+
+    private final Validator validator;
+
+    public Map<String, Object> toChanges(JsonNode patch) {
+        if (patch == null || !patch.isObject()) {
+            throw new BadRequestException("Merge patch must be a JSON object");
+        }
+        Map<String, Object> changes = new LinkedHashMap<>();
+        Map<String, String> errors = new HashMap<>();
+        Iterator<Map.Entry<String, JsonNode>> fields = patch.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            String name = field.getKey();
+            JsonNode value = field.getValue();
+            switch (name) {
+                case "id":
+                    // read only, same as in PUT
+                    break;
+                case "name":
+                case "description":
+                    if (value.isNull() || value.isTextual()) {
+                        changes.put(name, value.isNull() ? null : value.asText());
+                    } else {
+                        errors.put(name, "Must be a string");
+                    }
+                    break;
+                case "price":
+                    if (value.isNull() || value.isNumber()) {
+                        changes.put(name, value.isNull() ? null : value.decimalValue());
+                    } else {
+                        errors.put(name, "Must be a number");
+                    }
+                    break;
+                case "stock":
+                    if (value.isNull()) {
+                        errors.put(name, "Stock cannot be null");
+                    } else if (value.canConvertToInt() && value.isIntegralNumber()) {
+                        changes.put(name, value.intValue());
+                    } else {
+                        errors.put(name, "Must be an integer");
+                    }
+                    break;
+                default:
+                    errors.put(name, "Unknown field");
+            }
+        }
+
+        changes.forEach((name, value) -> {
+            Set<ConstraintViolation<ProductDto>> violations = validator.validateValue(ProductDto.class, name, value);
+            if (!violations.isEmpty()) {
+                errors.put(name, violations.iterator().next().getMessage());
+            }
+        });
+        if (!errors.isEmpty()) {
+            throw new FieldValidationException(errors);
+        }
+        return changes;
+    }
+}
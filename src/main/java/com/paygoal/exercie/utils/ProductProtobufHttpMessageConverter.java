@@ -0,0 +1,181 @@
+package com.paygoal.exercie.utils;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+import com.paygoal.exercie.dto.ProductBatchRequest;
+import com.paygoal.exercie.dto.ProductDto;
+import com.paygoal.exercie.dto.ProductLookupResult;
+import com.paygoal.exercie.proto.Decimal;
+import com.paygoal.exercie.proto.ErrorResponse;
+import com.paygoal.exercie.proto.Product;
+import com.paygoal.exercie.proto.ProductList;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Product payloads as the Protobuf messages of product.proto, for {@code application/x-protobuf}. Reads a product and a
+ * batch, writes a product, a list of products, a lookup result and the error bodies of the exception handler.
+ */
+public class ProductProtobufHttpMessageConverter extends AbstractGenericHttpMessageConverter<Object> {
+
+    public static final MediaType PROTOBUF = new MediaType("application", "x-protobuf");
+
+    public ProductProtobufHttpMessageConverter() {
+        super(PROTOBUF);
+    }
+
+    @Override
+    public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+        Class<?> target = ResolvableType.forType(type).resolve();
+        return (target == ProductDto.class || target == ProductBatchRequest.class) && canRead(mediaType);
+    }
+
+    @Override
+    public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+        ResolvableType target = ResolvableType.forType(type != null ? type : clazz);
+        Class<?> raw = target.resolve(clazz);
+        boolean supported;
+        if (List.class.isAssignableFrom(raw)) {
+            // A List<?> behind ResponseEntity<?> has no element type to check, its elements are checked when written
+            Class<?> element = target.getGeneric(0).resolve();
+            supported = element == null || element == ProductDto.class;
+        } else {
+            supported = raw == ProductDto.class || raw == ProductLookupResult.class || Map.class.isAssignableFrom(raw);
+        }
+        return supported && canWrite(mediaType);
+    }
+
+    // Only the raw classes, used when listing the producible media types; canRead and canWrite check the generic type
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return clazz == ProductDto.class || clazz == ProductBatchRequest.class || clazz == ProductLookupResult.class
+                || List.class.isAssignableFrom(clazz) || Map.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) throws IOException {
+        return readInternal(ResolvableType.forType(type).resolve(), inputMessage);
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+        try {
+            if (clazz == ProductBatchRequest.class) {
+                return new ProductBatchRequest(fromProto(ProductList.parseFrom(inputMessage.getBody()).getProductsList()));
+            }
+            return fromProto(Product.parseFrom(inputMessage.getBody()));
+        } catch (InvalidProtocolBufferException ex) {
+            throw new HttpMessageNotReadableException("Invalid protobuf: " + ex.getMessage(), ex, inputMessage);
+        }
+    }
+
+    @Override
+    protected void writeInternal(Object body, Type type, HttpOutputMessage outputMessage) throws IOException {
+        toProto(body).writeTo(outputMessage.getBody());
+    }
+
+    private static Message toProto(Object body) {
+        if (body instanceof ProductDto) {
+            return toProto((ProductDto) body);
+        }
+        if (body instanceof ProductLookupResult) {
+            ProductLookupResult result = (ProductLookupResult) body;
+            return com.paygoal.exercie.proto.ProductLookupResult.newBuilder()
+                    .addAllProducts(toProto(result.getProducts()))
+                    .addAllMissingIds(result.getMissingIds())
+                    .build();
+        }
+        if (body instanceof List) {
+            return ProductList.newBuilder().addAllProducts(toProto((List<?>) body)).build();
+        }
+        return toError((Map<?, ?>) body);
+    }
+
+    private static List<Product> toProto(List<?> products) {
+        List<Product> messages = new ArrayList<>(products.size());
+        for (Object product : products) {
+            if (!(product instanceof ProductDto)) {
+                throw new HttpMessageNotWritableException("Only products can be written as protobuf, not " + product.getClass().getName());
+            }
+            messages.add(toProto((ProductDto) product));
+        }
+        return messages;
+    }
+
+    static Product toProto(ProductDto productDto) {
+        Product.Builder product = Product.newBuilder().setStock(productDto.getStock());
+        if (productDto.getId() != null) {
+            product.setId(productDto.getId());
+        }
+        if (productDto.getName() != null) {
+            product.setName(productDto.getName());
+        }
+        if (productDto.getDescription() != null) {
+            product.setDescription(productDto.getDescription());
+        }
+        if (productDto.getPrice() != null) {
+            product.setPrice(Decimal.newBuilder()
+                    .setUnscaled(ByteString.copyFrom(productDto.getPrice().unscaledValue().toByteArray()))
+                    .setScale(productDto.getPrice().scale()));
+        }
+        return product.build();
+    }
+
+    static ProductDto fromProto(Product product) {
+        return ProductDto.builder()
+                .id(product.hasId() ? product.getId() : null)
+                .name(product.hasName() ? product.getName() : null)
+                .description(product.hasDescription() ? product.getDescription() : null)
+                .price(product.hasPrice() ? fromProto(product.getPrice()) : null)
+                .stock(product.getStock())
+                .build();
+    }
+
+    private static List<ProductDto> fromProto(List<Product> products) {
+        List<ProductDto> productDtos = new ArrayList<>(products.size());
+        for (Product product : products) {
+            productDtos.add(fromProto(product));
+        }
+        return productDtos;
+    }
+
+    private static BigDecimal fromProto(Decimal decimal) {
+        if (decimal.getUnscaled().isEmpty()) {
+            return BigDecimal.ZERO.setScale(decimal.getScale());
+        }
+        return new BigDecimal(new BigInteger(decimal.getUnscaled().toByteArray()), decimal.getScale());
+    }
+
+    // The {status, timestamp, message} and {status, timestamp, errors} bodies of GlobalExceptionHandler
+    private static ErrorResponse toError(Map<?, ?> body) {
+        ErrorResponse.Builder error = ErrorResponse.newBuilder();
+        if (body.get("status") instanceof Number) {
+            error.setStatus(((Number) body.get("status")).intValue());
+        }
+        if (body.get("timestamp") != null) {
+            error.setTimestamp(body.get("timestamp").toString());
+        }
+        if (body.get("message") != null) {
+            error.setMessage(body.get("message").toString());
+        }
+        if (body.get("errors") instanceof Map) {
+            ((Map<?, ?>) body.get("errors")).forEach((field, message) ->
+                    error.putErrors(String.valueOf(field), String.valueOf(message)));
+        }
+        return error.build();
+    }
+}
@@ -1,13 +0,0 @@
-INSERT INTO products ( name, description, price, stock)
-VALUES
-('mesa redonda', 'una hermosa mesa hecha por un carpintero a pedido', 300000, 2),
-( 'silla de madera', 'silla robusta y elegante, ideal para comedor', 80000, 10),
-( 'lámpara de techo', 'lámpara moderna con acabado en bronce y luz cálida', 120000, 5),
-( 'estantería de pino', 'estantería artesanal de madera de pino natural', 150000, 3),
-( 'escritorio minimalista', 'escritorio espacioso con diseño minimalista en blanco', 250000, 4),
-( 'sofá de tres cuerpos', 'sofá cómodo tapizado en tela gris con cojines incluidos', 500000, 2),
-( 'alfombra persa', 'alfombra tejida a mano con motivos orientales', 220000, 1),
-( 'cuadro abstracto', 'obra de arte original en acrílico sobre lienzo', 90000, 7),
-( 'cómoda vintage', 'mueble restaurado con cajones y tiradores de bronce', 180000, 2),
-( 'librero industrial', 'librero con estructura metálica y repisas de madera rústica', 200000, 6);
-
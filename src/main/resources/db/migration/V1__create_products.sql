@@ -0,0 +1,14 @@
+-- Pooled sequence so Hibernate can batch inserts, matches allocationSize on Product.id
+CREATE SEQUENCE products_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE products (
+    id          BIGINT         NOT NULL PRIMARY KEY,
+    name        VARCHAR(255),
+    description VARCHAR(255),
+    price       NUMERIC(19, 2),
+    stock       INTEGER        NOT NULL,
+    version     BIGINT
+);
+
+-- Keyset pagination of the listing seeks on (price, id)
+CREATE INDEX idx_products_price_id ON products (price, id);
@@ -0,0 +1,14 @@
+INSERT INTO products (id, name, description, price, stock, version)
+VALUES
+(1, 'mesa redonda', 'una hermosa mesa hecha por un carpintero a pedido', 300000, 2, 0),
+(2, 'silla de madera', 'silla robusta y elegante, ideal para comedor', 80000, 10, 0),
+(3, 'lámpara de techo', 'lámpara moderna con acabado en bronce y luz cálida', 120000, 5, 0),
+(4, 'estantería de pino', 'estantería artesanal de madera de pino natural', 150000, 3, 0),
+(5, 'escritorio minimalista', 'escritorio espacioso con diseño minimalista en blanco', 250000, 4, 0),
+(6, 'sofá de tres cuerpos', 'sofá cómodo tapizado en tela gris con cojines incluidos', 500000, 2, 0),
+(7, 'alfombra persa', 'alfombra tejida a mano con motivos orientales', 220000, 1, 0),
+(8, 'cuadro abstracto', 'obra de arte original en acrílico sobre lienzo', 90000, 7, 0),
+(9, 'cómoda vintage', 'mueble restaurado con cajones y tiradores de bronce', 180000, 2, 0),
+(10, 'librero industrial', 'librero con estructura metálica y repisas de madera rústica', 200000, 6, 0);
+
+ALTER SEQUENCE products_seq RESTART WITH 11;
@@ -0,0 +1,6 @@
+-- Low stock (stock <= n) and out of stock (stock = 0) filters, price second so matches come out in listing order
+CREATE INDEX idx_products_stock_price ON products (stock, price);
+
+-- Case insensitive name prefix filter. Computed by the database, so the bulk UPDATE statements cannot leave it stale
+ALTER TABLE products ADD COLUMN name_lower VARCHAR(255) GENERATED ALWAYS AS (LOWER(name));
+CREATE INDEX idx_products_name_lower ON products (name_lower);
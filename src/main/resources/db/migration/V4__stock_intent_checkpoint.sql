@@ -0,0 +1,8 @@
+-- Last stock intent log segment whose deltas are in products.stock, see StockWriteBehind. Updated in the same
+-- transaction as the stock, so replaying the log after a crash never applies a delta twice
+CREATE TABLE stock_intent_checkpoint (
+    id              INTEGER NOT NULL PRIMARY KEY,
+    applied_segment BIGINT  NOT NULL
+);
+
+INSERT INTO stock_intent_checkpoint (id, applied_segment) VALUES (1, 0);
@@ -1,22 +1,37 @@
 package com.paygoal.exercie;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.paygoal.exercie.controller.ProductController;
 import com.paygoal.exercie.dto.ProductDto;
+import com.paygoal.exercie.search.ProductSearchIndex;
+import com.paygoal.exercie.search.ProductSuggester;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
-@SpringBootTest
+// Own database: MockMvc makes this a separate context, which would otherwise re-seed the shared one
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:integration;OPTIMIZE_REUSE_RESULTS=FALSE")
 @AutoConfigureMockMvc
+@AutoConfigureMetrics
+// Hibernate statistics are off by default, the profile turns them on for the hibernate.* meters
+@ActiveProfiles("hibernate-statistics")
 public class PaygoalExerciseApplicationIntegrationTest {
 
     @Autowired
@@ -25,6 +40,12 @@ public class PaygoalExerciseApplicationIntegrationTest {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private ProductSearchIndex searchIndex;
+
+    @Autowired
+    private ProductSuggester suggester;
+
     @Test
     void contextLoads() {
     }
@@ -97,6 +118,59 @@ public class PaygoalExerciseApplicationIntegrationTest {
                 .andExpect(status().isNotFound());
     }
 
+    @Test
+    void conditionalRequestsShouldFollowTheProductVersion() throws Exception {
+        ProductDto product = ProductDto.builder()
+                .name("Versioned product")
+                .price(new BigDecimal("10.00"))
+                .stock(1)
+                .build();
+        String createdJson = mockMvc.perform(post("/api/products")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(product)))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        Long id = objectMapper.readValue(createdJson, ProductDto.class).getId();
+
+        String etag = mockMvc.perform(get("/api/products/" + id))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get("/api/products/" + id).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+
+        product.setStock(2);
+        mockMvc.perform(put("/api/products/" + id)
+                        .header(HttpHeaders.IF_MATCH, etag)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(product)))
+                .andExpect(status().isOk());
+
+        // The same ETag is now stale for reads and writes
+        mockMvc.perform(get("/api/products/" + id).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, not(etag)))
+                .andExpect(jsonPath("$.stock").value(2));
+        mockMvc.perform(put("/api/products/" + id)
+                        .header(HttpHeaders.IF_MATCH, etag)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(product)))
+                .andExpect(status().isPreconditionFailed());
+        mockMvc.perform(delete("/api/products/" + id).header(HttpHeaders.IF_MATCH, etag))
+                .andExpect(status().isPreconditionFailed());
+        mockMvc.perform(delete("/api/products/" + id).header(HttpHeaders.IF_MATCH, "*"))
+                .andExpect(status().isNoContent());
+        // The wildcard only matches a product that exists
+        mockMvc.perform(delete("/api/products/" + id).header(HttpHeaders.IF_MATCH, "*"))
+                .andExpect(status().isPreconditionFailed());
+        mockMvc.perform(put("/api/products/" + id)
+                        .header(HttpHeaders.IF_MATCH, "*")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(product)))
+                .andExpect(status().isPreconditionFailed());
+    }
+
     @Test
     void findAllOrderedByPriceShouldReturnProductsSortedByPrice() throws Exception {
         mockMvc.perform(get("/api/products"))
@@ -106,6 +180,203 @@ public class PaygoalExerciseApplicationIntegrationTest {
                 .andExpect(jsonPath("$[*].price").value(everyItem(notNullValue())));
     }
 
+    @Test
+    void paginatedListingShouldWalkWholeCatalogInPriceOrder() throws Exception {
+        List<ProductDto> walked = new ArrayList<>();
+        String cursor = null;
+        do {
+            MvcResult result = mockMvc.perform(cursor == null
+                            ? get("/api/products").param("size", "3")
+                            : get("/api/products").param("size", "3").param("cursor", cursor))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$", hasSize(lessThanOrEqualTo(3))))
+                    .andReturn();
+            walked.addAll(Arrays.asList(objectMapper.readValue(result.getResponse().getContentAsString(), ProductDto[].class)));
+            cursor = result.getResponse().getHeader(ProductController.NEXT_CURSOR_HEADER);
+        } while (cursor != null);
+
+        assertTrue(walked.size() >= 10);
+        for (int i = 1; i < walked.size(); i++) {
+            ProductDto previous = walked.get(i - 1);
+            ProductDto current = walked.get(i);
+            int byPrice = previous.getPrice().compareTo(current.getPrice());
+            assertTrue(byPrice < 0 || (byPrice == 0 && previous.getId() < current.getId()));
+        }
+    }
+
+    @Test
+    void listingFiltersShouldCombine() throws Exception {
+        mockMvc.perform(get("/api/products")
+                        .param("minPrice", "100000")
+                        .param("maxPrice", "250000")
+                        .param("maxStock", "5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].price", everyItem(allOf(greaterThanOrEqualTo(100000.0), lessThanOrEqualTo(250000.0)))))
+                .andExpect(jsonPath("$[*].stock", everyItem(lessThanOrEqualTo(5))))
+                .andExpect(jsonPath("$[*].name", hasItem("cómoda vintage")));
+
+        mockMvc.perform(get("/api/products").param("namePrefix", "LÁMPARA de"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].name", everyItem(startsWith("lámpara de"))))
+                .andExpect(jsonPath("$[*].name", hasItem("lámpara de techo")));
+
+        mockMvc.perform(get("/api/products").param("minPrice", "10").param("maxPrice", "1"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void exportShouldStreamEveryProductAsNdjson() throws Exception {
+        String body = mockMvc.perform(get("/api/products/export"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString();
+
+        String[] lines = body.split("\n");
+        assertTrue(lines.length >= 10);
+        for (String line : lines) {
+            assertNotNull(objectMapper.readValue(line, ProductDto.class).getId());
+        }
+    }
+
+    @Test
+    void getByIdsShouldReturnProductsInRequestedOrderAndMissingIds() throws Exception {
+        mockMvc.perform(get("/api/products").param("ids", "3,987654,1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.products", hasSize(2)))
+                .andExpect(jsonPath("$.products[0].id").value(3))
+                .andExpect(jsonPath("$.products[1].id").value(1))
+                .andExpect(jsonPath("$.missingIds", contains(987654)));
+    }
+
+    @Test
+    void searchShouldFollowCreatesUpdatesAndDeletes() throws Exception {
+        ProductDto lamp = ProductDto.builder()
+                .name("Lámpara de escritorio")
+                .description("Lámpara articulada con brazo de aluminio")
+                .price(new BigDecimal("45.00"))
+                .stock(3)
+                .build();
+        String created = mockMvc.perform(post("/api/products")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(lamp)))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        Long id = objectMapper.readValue(created, ProductDto.class).getId();
+        searchIndex.refresh();
+
+        mockMvc.perform(get("/api/products/search").param("q", "LAMPARA articulada"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items[0].id").value(id))
+                .andExpect(jsonPath("$.items[0].name").value("Lámpara de escritorio"));
+
+        lamp.setName("Farol de escritorio");
+        lamp.setDescription("Farol de hierro");
+        mockMvc.perform(put("/api/products/" + id)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(lamp)))
+                .andExpect(status().isOk());
+        searchIndex.refresh();
+
+        mockMvc.perform(get("/api/products/search").param("q", "articulada"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.total").value(0));
+        mockMvc.perform(get("/api/products/search").param("q", "farol"))
+                .andExpect(jsonPath("$.items[*].id", contains(id.intValue())));
+
+        mockMvc.perform(delete("/api/products/" + id)).andExpect(status().isNoContent());
+        searchIndex.refresh();
+
+        mockMvc.perform(get("/api/products/search").param("q", "farol"))
+                .andExpect(jsonPath("$.total").value(0));
+    }
+
+    @Test
+    void suggestShouldFollowStockChanges() throws Exception {
+        List<Long> ids = new ArrayList<>();
+        for (int stock : new int[]{4, 9}) {
+            ProductDto chair = ProductDto.builder()
+                    .name("Butaca reclinable " + stock)
+                    .price(new BigDecimal("300.00"))
+                    .stock(stock)
+                    .build();
+            String created = mockMvc.perform(post("/api/products")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(objectMapper.writeValueAsString(chair)))
+                    .andExpect(status().isCreated())
+                    .andReturn().getResponse().getContentAsString();
+            ids.add(objectMapper.readValue(created, ProductDto.class).getId());
+        }
+        suggester.refresh();
+
+        mockMvc.perform(get("/api/products/suggest").param("prefix", "BUTACA recl"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].id", contains(ids.get(1).intValue(), ids.get(0).intValue())));
+
+        mockMvc.perform(post("/api/products/" + ids.get(1) + "/stock/reserve")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"quantity\": 8}"))
+                .andExpect(status().isOk());
+        suggester.refresh();
+
+        mockMvc.perform(get("/api/products/suggest").param("prefix", "butaca").param("limit", "1"))
+                .andExpect(jsonPath("$[*].id", contains(ids.get(0).intValue())));
+    }
+
+    @Test
+    void releaseBeyondTheStockColumnShouldConflict() throws Exception {
+        ProductDto shelf = ProductDto.builder()
+                .name("Estante apilable")
+                .price(new BigDecimal("90.00"))
+                .stock(10)
+                .build();
+        String created = mockMvc.perform(post("/api/products")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(shelf)))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        Long id = objectMapper.readValue(created, ProductDto.class).getId();
+
+        mockMvc.perform(post("/api/products/" + id + "/stock/release")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"quantity\": " + Integer.MAX_VALUE + "}"))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.status").value(409))
+                .andExpect(jsonPath("$.message").value("Stock of product " + id + " cannot exceed " + Integer.MAX_VALUE
+                        + ": releasing " + Integer.MAX_VALUE + " onto 10"));
+        mockMvc.perform(post("/api/products/" + id + "/stock/release")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"quantity\": " + (Integer.MAX_VALUE - 10) + "}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.stock").value(Integer.MAX_VALUE));
+    }
+
+    @Test
+    void prometheusShouldExposeEveryLayer() throws Exception {
+        mockMvc.perform(get("/api/products/1")).andExpect(status().isOk());
+
+        mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("http_server_requests_seconds_bucket")))
+                .andExpect(content().string(containsString("uri=\"/api/products/{id}\"")))
+                .andExpect(content().string(containsString("products_service_seconds_bucket{application=\"exercise\",class=\"com.paygoal.exercie.service.ProductServiceImpl\"")))
+                .andExpect(content().string(containsString("spring_data_repository_invocations_seconds_bucket")))
+                .andExpect(content().string(containsString("hikaricp_connections_acquire_seconds_bucket")))
+                .andExpect(content().string(containsString("hibernate_statements_total")))
+                .andExpect(content().string(containsString("cache_gets_total{application=\"exercise\",cache=\"products\"")))
+                .andExpect(content().string(containsString("products_coalescer_loads_total")));
+    }
+
+    @Test
+    void latencyEndpointShouldReportServiceTimers() throws Exception {
+        mockMvc.perform(get("/api/products/1")).andExpect(status().isOk());
+
+        mockMvc.perform(get("/actuator/latency").param("prefix", "products.service"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].name", everyItem(is("products.service"))))
+                .andExpect(jsonPath("$[?(@.tags.method == 'findById')].count", hasItem(greaterThanOrEqualTo(1))))
+                .andExpect(jsonPath("$[0].percentilesMs['0.99']").isNumber());
+    }
+
     @Test
     void createInvalidProductShouldReturnBadRequest() throws Exception {
         ProductDto invalidProduct = ProductDto.builder()
@@ -0,0 +1,121 @@
+package com.paygoal.exercie;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.paygoal.exercie.dto.ProductDto;
+import com.paygoal.exercie.service.ProductService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The change feed over a real connection: events as a client parses them, and resuming with Last-Event-ID.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:change-feed;OPTIMIZE_REUSE_RESULTS=FALSE",
+        "products.change-feed.enabled=true"
+})
+public class ProductChangeFeedIntegrationTest {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final List<CompletableFuture<HttpResponse<Stream<String>>>> streams = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        streams.forEach(stream -> stream.thenAccept(response -> response.body().close()));
+    }
+
+    @Test
+    void committedWritesShouldBeStreamedAndResumable() throws Exception {
+        BlockingQueue<String> lines = open(null);
+        ProductDto created = productService.create(ProductDto.builder()
+                .name("lampara de feed")
+                .price(new BigDecimal("10.00"))
+                .stock(3)
+                .build());
+        created.setPrice(new BigDecimal("12.00"));
+        productService.update(created.getId(), created);
+
+        String createdId = next(lines, "id:");
+        JsonNode createdChange = data(lines);
+        String updatedId = next(lines, "id:");
+        JsonNode updatedChange = data(lines);
+
+        assertEquals("CREATED", createdChange.get("type").asText());
+        assertEquals(created.getId(), createdChange.get("productId").asLong());
+        assertEquals(0, createdChange.get("version").asLong());
+        assertEquals("UPDATED", updatedChange.get("type").asText());
+        assertEquals(1, updatedChange.get("version").asLong());
+        assertEquals(4, updatedChange.get("fields").size());
+
+        // A client that saw only the create picks up from there
+        BlockingQueue<String> resumed = open(createdId);
+        assertEquals(updatedId, next(resumed, "id:"));
+        assertEquals("UPDATED", data(resumed).get("type").asText());
+    }
+
+    @Test
+    void unknownLastEventIdShouldBeToldToResync() throws Exception {
+        BlockingQueue<String> lines = open("0-1");
+
+        assertEquals("resync", next(lines, "event:"));
+        assertTrue(data(lines).get("lastEventId").asText().matches("\\d+-\\d+"));
+    }
+
+    private BlockingQueue<String> open(String lastEventId) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/products/changes"))
+                .header("Accept", "text/event-stream");
+        if (lastEventId != null) {
+            request.header("Last-Event-ID", lastEventId);
+        }
+        BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+        CompletableFuture<HttpResponse<Stream<String>>> stream = client.sendAsync(request.build(), HttpResponse.BodyHandlers.ofLines());
+        streams.add(stream);
+        // Headers are sent once the subscription is in place, writes after this are on the stream
+        HttpResponse<Stream<String>> response = stream.get(10, TimeUnit.SECONDS);
+        assertEquals(200, response.statusCode());
+        CompletableFuture.runAsync(() -> response.body().forEach(lines::add));
+        return lines;
+    }
+
+    // Value of the next line with the given field, skipping the others
+    private static String next(BlockingQueue<String> lines, String field) throws InterruptedException {
+        while (true) {
+            String line = lines.poll(10, TimeUnit.SECONDS);
+            assertNotNull(line, "no " + field + " line within 10 seconds");
+            if (line.startsWith(field)) {
+                return line.substring(field.length());
+            }
+        }
+    }
+
+    private JsonNode data(BlockingQueue<String> lines) throws Exception {
+        return objectMapper.readTree(next(lines, "data:"));
+    }
+}
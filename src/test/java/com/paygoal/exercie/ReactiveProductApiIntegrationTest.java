@@ -0,0 +1,324 @@
+package com.paygoal.exercie;
+
+import com.paygoal.exercie.controller.ProductController;
+import com.paygoal.exercie.controller.ReactiveProductController;
+import com.paygoal.exercie.dto.ProductDto;
+import com.paygoal.exercie.dto.StockRequest;
+import com.paygoal.exercie.event.ProductChangedEvent;
+import com.paygoal.exercie.search.ProductSearchIndex;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.web.reactive.context.ReactiveWebServerApplicationContext;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import reactor.core.publisher.Flux;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The reactive profile must behave like the servlet API: same paths, status codes, headers and error bodies.
+ */
+// Own database: the products created here must not show up in the servlet contexts
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {
+                "spring.datasource.url=jdbc:h2:mem:reactive;OPTIMIZE_REUSE_RESULTS=FALSE",
+                // The feed makes unconditional writes read back their version, as on the servlet stack
+                "products.change-feed.enabled=true"
+        })
+@ActiveProfiles("reactive")
+public class ReactiveProductApiIntegrationTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private ApplicationContext context;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ProductSearchIndex searchIndex;
+
+    @Autowired
+    private ProductChangeRecorder changes;
+
+    @TestConfiguration
+    static class Config {
+
+        @Bean
+        ProductChangeRecorder productChangeRecorder() {
+            return new ProductChangeRecorder();
+        }
+    }
+
+    static class ProductChangeRecorder {
+
+        private final Queue<ProductChangedEvent> events = new ConcurrentLinkedQueue<>();
+
+        @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+        public void onProductChanged(ProductChangedEvent event) {
+            events.add(event);
+        }
+
+        List<ProductChangedEvent> of(Long id) {
+            return events.stream().filter(event -> event.getProductId().equals(id)).collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    void reactiveProfileShouldRunOnNettyWithoutTheServletController() {
+        assertTrue(context instanceof ReactiveWebServerApplicationContext);
+        assertEquals("NettyWebServer", ((ReactiveWebServerApplicationContext) context).getWebServer().getClass().getSimpleName());
+        assertEquals(1, context.getBeansOfType(ReactiveProductController.class).size());
+        assertTrue(context.getBeansOfType(ProductController.class).isEmpty());
+    }
+
+    @Test
+    void findByIdShouldReturnSeededProductWithETag() {
+        webTestClient.get().uri("/api/products/1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"0\"")
+                .expectBody()
+                .jsonPath("$.id").isEqualTo(1)
+                .jsonPath("$.name").isEqualTo("mesa redonda");
+
+        webTestClient.get().uri("/api/products/1")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"0\"")
+                .exchange()
+                .expectStatus().isNotModified()
+                .expectBody().isEmpty();
+    }
+
+    @Test
+    void writesShouldFollowTheServletRules() {
+        ProductDto created = webTestClient.post().uri("/api/products")
+                .bodyValue(product("Reactive lamp", "45.50", 3))
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(ProductDto.class).returnResult().getResponseBody();
+        assertNotNull(created.getId());
+        // Same row as seen through JDBC, ids come from the shared pooled sequence
+        assertEquals("Reactive lamp", jdbcTemplate.queryForObject("SELECT name FROM products WHERE id = ?", String.class, created.getId()));
+
+        webTestClient.put().uri("/api/products/" + created.getId())
+                .header(HttpHeaders.IF_MATCH, "\"7\"")
+                .bodyValue(product("Reactive lamp", "50.00", 3))
+                .exchange()
+                .expectStatus().isEqualTo(412)
+                .expectBody().jsonPath("$.message").isEqualTo("Product " + created.getId() + " has been modified, current ETag is \"0\"");
+
+        webTestClient.put().uri("/api/products/" + created.getId())
+                .header(HttpHeaders.IF_MATCH, "\"0\"")
+                .bodyValue(product("Reactive lamp", "50.00", 3))
+                .exchange()
+                .expectStatus().isOk();
+
+        webTestClient.patch().uri("/api/products/" + created.getId())
+                .contentType(MediaType.valueOf("application/merge-patch+json"))
+                .bodyValue(Map.of("stock", 8))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.stock").isEqualTo(8)
+                .jsonPath("$.price").isEqualTo(50.0);
+        webTestClient.get().uri("/api/products/" + created.getId())
+                .exchange()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"2\"");
+
+        webTestClient.post().uri("/api/products/" + created.getId() + "/stock/reserve")
+                .bodyValue(new StockRequest(5))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.stock").isEqualTo(3);
+        webTestClient.post().uri("/api/products/" + created.getId() + "/stock/reserve")
+                .bodyValue(new StockRequest(5))
+                .exchange()
+                .expectStatus().isEqualTo(409)
+                .expectBody().jsonPath("$.message").isEqualTo("Not enough stock for product " + created.getId() + ": requested 5, available 3");
+        webTestClient.post().uri("/api/products/" + created.getId() + "/stock/release")
+                .bodyValue(new StockRequest(Integer.MAX_VALUE))
+                .exchange()
+                .expectStatus().isEqualTo(409)
+                .expectBody().jsonPath("$.message").isEqualTo("Stock of product " + created.getId() + " cannot exceed "
+                        + Integer.MAX_VALUE + ": releasing " + Integer.MAX_VALUE + " onto 3");
+
+        webTestClient.put().uri("/api/products/" + created.getId())
+                .header(HttpHeaders.IF_MATCH, "*")
+                .bodyValue(product("Reactive lamp", "50.00", 3))
+                .exchange()
+                .expectStatus().isOk();
+
+        webTestClient.delete().uri("/api/products/" + created.getId())
+                .header(HttpHeaders.IF_MATCH, "*")
+                .exchange()
+                .expectStatus().isNoContent();
+        webTestClient.delete().uri("/api/products/" + created.getId())
+                .header(HttpHeaders.IF_MATCH, "*")
+                .exchange()
+                .expectStatus().isEqualTo(412);
+        webTestClient.get().uri("/api/products/" + created.getId())
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody()
+                .jsonPath("$.status").isEqualTo(404)
+                .jsonPath("$.message").isEqualTo("Product not found with id: " + created.getId())
+                .jsonPath("$.timestamp").exists();
+    }
+
+    @Test
+    void writesShouldPublishTheVersionTheyCommitted() {
+        ProductDto created = webTestClient.post().uri("/api/products")
+                .bodyValue(product("Reactive shelf", "80.00", 6))
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(ProductDto.class).returnResult().getResponseBody();
+        webTestClient.put().uri("/api/products/" + created.getId())
+                .header(HttpHeaders.IF_MATCH, "\"0\"")
+                .bodyValue(product("Reactive shelf", "85.00", 6))
+                .exchange()
+                .expectStatus().isOk();
+        webTestClient.put().uri("/api/products/" + created.getId())
+                .bodyValue(product("Reactive shelf", "90.00", 6))
+                .exchange()
+                .expectStatus().isOk();
+        webTestClient.patch().uri("/api/products/" + created.getId())
+                .contentType(MediaType.valueOf("application/merge-patch+json"))
+                .bodyValue(Map.of("price", 95))
+                .exchange()
+                .expectStatus().isOk();
+        webTestClient.post().uri("/api/products/" + created.getId() + "/stock/reserve")
+                .bodyValue(new StockRequest(2))
+                .exchange()
+                .expectStatus().isOk();
+        webTestClient.post().uri("/api/products/" + created.getId() + "/stock/release")
+                .bodyValue(new StockRequest(1))
+                .exchange()
+                .expectStatus().isOk();
+        webTestClient.delete().uri("/api/products/" + created.getId())
+                .exchange()
+                .expectStatus().isNoContent();
+
+        assertEquals(List.of(
+                new ProductChangedEvent(ProductChangedEvent.Type.CREATED, created.getId(), 0L, ProductChangedEvent.ALL_FIELDS),
+                new ProductChangedEvent(ProductChangedEvent.Type.UPDATED, created.getId(), 1L, ProductChangedEvent.ALL_FIELDS),
+                new ProductChangedEvent(ProductChangedEvent.Type.UPDATED, created.getId(), 2L, ProductChangedEvent.ALL_FIELDS),
+                new ProductChangedEvent(ProductChangedEvent.Type.UPDATED, created.getId(), 3L, List.of("price")),
+                new ProductChangedEvent(ProductChangedEvent.Type.UPDATED, created.getId(), 4L, ProductChangedEvent.STOCK_FIELDS),
+                new ProductChangedEvent(ProductChangedEvent.Type.UPDATED, created.getId(), 5L, ProductChangedEvent.STOCK_FIELDS),
+                new ProductChangedEvent(ProductChangedEvent.Type.DELETED, created.getId())), changes.of(created.getId()));
+    }
+
+    @Test
+    void invalidInputShouldGetTheServletErrorBodies() {
+        webTestClient.post().uri("/api/products")
+                .bodyValue(product("", "-1", 1))
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody()
+                .jsonPath("$.status").isEqualTo(400)
+                .jsonPath("$.errors.name").exists()
+                .jsonPath("$.errors.price").exists();
+
+        webTestClient.get().uri("/api/products/abc")
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody().jsonPath("$.message").isEqualTo("Invalid value for parameter 'id'");
+
+        webTestClient.get().uri("/api/products?minPrice=10&maxPrice=5")
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody().jsonPath("$.message").isEqualTo("minPrice must not be greater than maxPrice");
+
+        webTestClient.patch().uri("/api/products/1")
+                .contentType(MediaType.valueOf("application/merge-patch+json"))
+                .bodyValue(Map.of("stock", "many"))
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody().jsonPath("$.errors.stock").isEqualTo("Must be an integer");
+    }
+
+    @Test
+    void listingShouldPageByCursorLikeTheServletStack() {
+        List<Long> expected = jdbcTemplate.queryForList("SELECT id FROM products ORDER BY price, id", Long.class);
+        List<Long> paged = new ArrayList<>();
+        String cursor = null;
+        do {
+            String uri = "/api/products?size=3" + (cursor == null ? "" : "&cursor=" + cursor);
+            WebTestClient.ResponseSpec response = webTestClient.get().uri(uri).exchange().expectStatus().isOk();
+            cursor = response.returnResult(ProductDto.class).getResponseHeaders().getFirst(ProductController.NEXT_CURSOR_HEADER);
+            response.expectBodyList(ProductDto.class).returnResult().getResponseBody()
+                    .forEach(product -> paged.add(product.getId()));
+        } while (cursor != null);
+
+        assertEquals(expected, paged);
+    }
+
+    @Test
+    void ndjsonListingShouldStreamEveryMatchingProduct() {
+        List<Long> expected = jdbcTemplate.queryForList(
+                "SELECT id FROM products WHERE stock <> 0 ORDER BY price, id", Long.class);
+
+        Flux<ProductDto> stream = webTestClient.get().uri("/api/products?inStock=true")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .returnResult(ProductDto.class).getResponseBody();
+
+        assertEquals(expected, stream.map(ProductDto::getId).collectList().block());
+    }
+
+    @Test
+    void lookupAndSearchShouldAnswerFromTheSameData() {
+        webTestClient.get().uri("/api/products?ids=2,999999,1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.products[0].id").isEqualTo(2)
+                .jsonPath("$.products[1].id").isEqualTo(1)
+                .jsonPath("$.missingIds[0]").isEqualTo(999999);
+
+        searchIndex.refresh();
+        webTestClient.get().uri("/api/products/search?q=mesa")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.items[0].name").isEqualTo("mesa redonda");
+
+        List<Long> exported = webTestClient.get().uri("/api/products/export")
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(ProductDto.class).getResponseBody()
+                .map(ProductDto::getId)
+                .collectList().block();
+        assertEquals(jdbcTemplate.queryForList("SELECT id FROM products ORDER BY id", Long.class), exported);
+        assertEquals(exported, exported.stream().sorted().collect(Collectors.toList()));
+    }
+
+    private static ProductDto product(String name, String price, int stock) {
+        return ProductDto.builder()
+                .name(name)
+                .description("created through WebFlux")
+                .price(new BigDecimal(price))
+                .stock(stock)
+                .build();
+    }
+}
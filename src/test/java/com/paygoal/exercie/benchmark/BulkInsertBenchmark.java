@@ -0,0 +1,64 @@
+package com.paygoal.exercie.benchmark;
+
+import com.paygoal.exercie.dto.ProductDto;
+import com.paygoal.exercie.service.ProductService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Rows per second of POST /api/products one by one versus POST /api/products/batch, measured at the service.
+ * Run with: mvn test -Pbenchmark -Dtest=BulkInsertBenchmark
+ */
+@Tag("benchmark")
+@SpringBootTest
+public class BulkInsertBenchmark {
+
+    private static final int ROWS = 10_000;
+    private static final int WARMUP_ROWS = 2_000;
+
+    @Autowired
+    private ProductService productService;
+
+    @Test
+    void compareSingleItemAndBatchInsertThroughput() {
+        singleItem(products("warmup single", WARMUP_ROWS));
+        productService.createAll(products("warmup batch", WARMUP_ROWS));
+
+        double single = rowsPerSecond(() -> singleItem(products("single", ROWS)));
+        double batch = rowsPerSecond(() -> productService.createAll(products("batch", ROWS)));
+
+        System.out.printf("single-item create: %,.0f rows/s%n", single);
+        System.out.printf("batch create:       %,.0f rows/s (x%.1f)%n", batch, batch / single);
+        assertTrue(batch > single, "batch insert should outperform one transaction per row");
+    }
+
+    private void singleItem(List<ProductDto> products) {
+        products.forEach(productService::create);
+    }
+
+    private static double rowsPerSecond(Runnable insert) {
+        long start = System.nanoTime();
+        insert.run();
+        return ROWS / ((System.nanoTime() - start) / 1e9);
+    }
+
+    private static List<ProductDto> products(String prefix, int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> ProductDto.builder()
+                        .name(prefix + " " + i)
+                        .description("benchmark row")
+                        .price(BigDecimal.valueOf(1 + i % 1000))
+                        .stock(i % 50)
+                        .build())
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,153 @@
+package com.paygoal.exercie.benchmark;
+
+import com.paygoal.exercie.dto.ProductDto;
+import com.paygoal.exercie.service.ProductService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Writers with the change feed streaming to many consumers, a few of which never read: write throughput next to the
+ * same writes with no stream open, and how long a change takes from commit to a reading consumer.
+ * Run with: mvn test -Pbenchmark -Dtest=ChangeFeedBenchmark
+ */
+@Tag("benchmark")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:change-feed-benchmark;OPTIMIZE_REUSE_RESULTS=FALSE",
+        "products.change-feed.enabled=true"
+})
+public class ChangeFeedBenchmark {
+
+    private static final int WRITER_THREADS = 16;
+    private static final int CREATES_PER_THREAD = 500;
+    private static final int READERS = 100;
+    private static final int STALLED = 5;
+    private static final String COMMITTED_AT = "\"committedAt\":\"";
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void writersShouldNotWaitOnConsumers() throws Exception {
+        writes("warmup", 100);
+        double alone = writes("no streams", CREATES_PER_THREAD);
+
+        Histogram lag = new Histogram(TimeUnit.SECONDS.toNanos(60), 3);
+        AtomicLong received = new AtomicLong();
+        // One connection per stream, no h2c upgrade attempts
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        // One thread per reader, each blocks on its stream for the whole run
+        ExecutorService reading = Executors.newCachedThreadPool();
+        List<HttpResponse<Stream<String>>> readers = new ArrayList<>();
+        for (int i = 0; i < READERS; i++) {
+            HttpResponse<Stream<String>> response = client.send(request(), HttpResponse.BodyHandlers.ofLines());
+            readers.add(response);
+            CompletableFuture.runAsync(() -> response.body()
+                    .filter(line -> line.startsWith("data:"))
+                    .forEach(line -> {
+                        long nanos = nanosSinceCommit(line);
+                        synchronized (lag) {
+                            lag.recordValue(Math.max(0, nanos));
+                        }
+                        received.incrementAndGet();
+                    }), reading);
+        }
+        // Clients that ask for the stream and never read it, until the socket buffers fill their sends block
+        List<Socket> stalled = new ArrayList<>();
+        for (int i = 0; i < STALLED; i++) {
+            Socket socket = new Socket("localhost", port);
+            socket.setReceiveBufferSize(4096);
+            OutputStream out = socket.getOutputStream();
+            out.write(("GET /api/products/changes HTTP/1.1\r\nHost: localhost\r\nAccept: text/event-stream\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            stalled.add(socket);
+        }
+        while (meterRegistry.get("products.change.feed.subscribers").gauge().value() < READERS + STALLED) {
+            Thread.sleep(10);
+        }
+
+        double streaming = writes("streaming", CREATES_PER_THREAD);
+        long expected = (long) READERS * WRITER_THREADS * CREATES_PER_THREAD;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        while (received.get() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        System.out.printf("creates/s: %,.0f with no streams, %,.0f with %d reading and %d stalled streams%n",
+                alone, streaming, READERS, STALLED);
+        System.out.printf("commit to reader: p50 %.2f ms, p99 %.2f ms, max %.2f ms over %,d deliveries%n",
+                lag.getValueAtPercentile(50) / 1e6, lag.getValueAtPercentile(99) / 1e6, lag.getMaxValue() / 1e6, received.get());
+        System.out.printf("resyncs: %.0f%n", meterRegistry.get("products.change.feed.resyncs").functionCounter().count());
+        assertEquals(expected, received.get());
+        readers.forEach(response -> response.body().close());
+        reading.shutdownNow();
+        for (Socket socket : stalled) {
+            socket.close();
+        }
+    }
+
+    private HttpRequest request() {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/products/changes"))
+                .header("Accept", "text/event-stream")
+                .build();
+    }
+
+    // Only committedAt is read, the readers share the machine with the server and the writers
+    private static long nanosSinceCommit(String line) {
+        int start = line.indexOf(COMMITTED_AT) + COMMITTED_AT.length();
+        Instant committedAt = Instant.parse(line.substring(start, line.indexOf('"', start)));
+        Instant now = Instant.now();
+        return (now.getEpochSecond() - committedAt.getEpochSecond()) * 1_000_000_000L + now.getNano() - committedAt.getNano();
+    }
+
+    private double writes(String prefix, int perThread) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(WRITER_THREADS);
+        long start = System.nanoTime();
+        for (int t = 0; t < WRITER_THREADS; t++) {
+            int thread = t;
+            executor.submit(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    productService.create(ProductDto.builder()
+                            .name(prefix + " " + thread + "-" + i)
+                            .price(BigDecimal.valueOf(1 + i % 1000))
+                            .stock(i % 50)
+                            .build());
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.MINUTES));
+        return WRITER_THREADS * perThread / ((System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,104 @@
+package com.paygoal.exercie.benchmark;
+
+import com.paygoal.exercie.dto.ProductDto;
+import com.paygoal.exercie.repository.ProductRepository;
+import com.paygoal.exercie.service.ProductGroupCommitter;
+import com.paygoal.exercie.service.ProductService;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Bursty ingestion through single-product creates: one transaction per create versus the group commit, with many
+ * callers at once. Run with: mvn test -Pbenchmark -Dtest=GroupCommitBenchmark
+ */
+@Tag("benchmark")
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:group-commit;OPTIMIZE_REUSE_RESULTS=FALSE",
+        "products.group-commit.enabled=true"
+})
+public class GroupCommitBenchmark {
+
+    private static final int THREADS = 64;
+    private static final int CREATES_PER_THREAD = 300;
+    private static final int WARMUP_CREATES_PER_THREAD = 50;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductGroupCommitter groupCommitter;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void compareTransactionPerCreateAndGroupCommit() throws Exception {
+        burst(productService::create, "warmup single", WARMUP_CREATES_PER_THREAD);
+        burst(groupCommitter::create, "warmup grouped", WARMUP_CREATES_PER_THREAD);
+        DistributionSummary batchSizes = meterRegistry.get("products.group.commit.batch.size").summary();
+        long warmupBatches = batchSizes.count();
+        double warmupWrites = batchSizes.totalAmount();
+        long before = productRepository.count();
+
+        Histogram single = burst(productService::create, "single", CREATES_PER_THREAD);
+        Histogram grouped = burst(groupCommitter::create, "grouped", CREATES_PER_THREAD);
+
+        int creates = THREADS * CREATES_PER_THREAD;
+        double meanBatch = (batchSizes.totalAmount() - warmupWrites) / (batchSizes.count() - warmupBatches);
+        report("transaction per create", single, creates);
+        report("group commit          ", grouped, creates);
+        System.out.printf("mean group: %.1f creates per transaction%n", meanBatch);
+        assertEquals(before + 2L * creates, productRepository.count());
+        assertTrue(meanBatch > 1, "concurrent creates should share transactions");
+    }
+
+    private static Histogram burst(Function<ProductDto, ProductDto> create, String prefix, int perThread) throws InterruptedException {
+        Histogram latencies = new Histogram(TimeUnit.SECONDS.toNanos(60), 3);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        long start = System.nanoTime();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            executor.submit(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    long begin = System.nanoTime();
+                    ProductDto created = create.apply(ProductDto.builder()
+                            .name(prefix + " " + thread + "-" + i)
+                            .description("benchmark row")
+                            .price(BigDecimal.valueOf(1 + i % 1000))
+                            .stock(i % 50)
+                            .build());
+                    assertNotNull(created.getId());
+                    synchronized (latencies) {
+                        latencies.recordValue(System.nanoTime() - begin);
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.MINUTES));
+        latencies.setEndTimeStamp(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return latencies;
+    }
+
+    private static void report(String mode, Histogram latencies, int creates) {
+        double seconds = latencies.getEndTimeStamp() / 1e3;
+        System.out.printf("%s: %,.0f creates/s, p50 %.2f ms, p99 %.2f ms%n", mode, creates / seconds,
+                latencies.getValueAtPercentile(50) / 1e6, latencies.getValueAtPercentile(99) / 1e6);
+    }
+}
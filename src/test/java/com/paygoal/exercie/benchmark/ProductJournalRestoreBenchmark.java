@@ -0,0 +1,106 @@
+package com.paygoal.exercie.benchmark;
+
+import com.paygoal.exercie.PaygoalExerciseApplication;
+import com.paygoal.exercie.journal.ProductJournalRestore;
+import com.paygoal.exercie.journal.ProductJournalWriter;
+import com.paygoal.exercie.service.ProductService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A real restart: the first run seeds a synthetic catalog and takes stock reservations with the journal on, later runs
+ * start on a fresh in-memory database and restore it from the snapshot and the journal tail.
+ * Run with: mvn test -Pbenchmark -Dtest=ProductJournalRestoreBenchmark
+ */
+@Tag("benchmark")
+public class ProductJournalRestoreBenchmark {
+
+    private static final int PRODUCTS = 500_000;
+    private static final int WRITER_THREADS = 8;
+    private static final int WRITES_PER_THREAD = 2_500;
+    private static final String CHECKSUM = "SELECT COUNT(*) AS products, SUM(stock) AS stock, SUM(version) AS versions FROM products";
+
+    @TempDir
+    Path directory;
+
+    @TempDir
+    Path copy;
+
+    @Test
+    void restartShouldRestoreTheCatalogFromTheJournal() throws Exception {
+        Map<String, Object> expected;
+        long seeded;
+        long start = System.nanoTime();
+        try (ConfigurableApplicationContext first = start(directory, "journal-benchmark-seed", PRODUCTS, 4)) {
+            seeded = System.nanoTime() - start;
+            first.getBean(ProductJournalWriter.class).snapshot();
+            write(first.getBean(ProductService.class));
+            expected = first.getBean(JdbcTemplate.class).queryForMap(CHECKSUM);
+        }
+        // The restarts below compact the tail into a new snapshot, each one gets the journal as the first run left it
+        FileSystemUtils.copyRecursively(directory, copy);
+
+        System.out.printf("first start, seeding %,d products: %,d ms%n", PRODUCTS, TimeUnit.NANOSECONDS.toMillis(seeded));
+        restart(directory, "journal-benchmark-restore-1", 1, expected);
+        restart(copy, "journal-benchmark-restore-4", 4, expected);
+    }
+
+    private void restart(Path journal, String database, int threads, Map<String, Object> expected) {
+        long start = System.nanoTime();
+        try (ConfigurableApplicationContext context = start(journal, database, PRODUCTS, threads)) {
+            long startup = System.nanoTime() - start;
+            ProductJournalRestore restore = context.getBean(ProductJournalRestore.class);
+            System.out.printf("restart with %d replay thread(s): restore %,d ms, whole startup %,d ms%n", threads,
+                    restore.getRestoreTime().toMillis(), TimeUnit.NANOSECONDS.toMillis(startup));
+            assertTrue(restore.isSnapshotRestored());
+            assertEquals(expected, context.getBean(JdbcTemplate.class).queryForMap(CHECKSUM));
+        }
+    }
+
+    // Stock reservations spread over the catalog, each one journaled after its commit
+    private static void write(ProductService productService) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(WRITER_THREADS);
+        for (int t = 0; t < WRITER_THREADS; t++) {
+            SplittableRandom random = new SplittableRandom(t);
+            executor.submit(() -> {
+                for (int i = 0; i < WRITES_PER_THREAD; i++) {
+                    long id = random.nextLong(1, PRODUCTS + 1);
+                    try {
+                        productService.releaseStock(id, 1);
+                    } catch (RuntimeException ex) {
+                        fail(ex);
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.MINUTES));
+    }
+
+    private static ConfigurableApplicationContext start(Path journal, String database, int seed, int threads) {
+        return new SpringApplicationBuilder(PaygoalExerciseApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.main.banner-mode=off",
+                "--spring.datasource.url=jdbc:h2:mem:" + database + ";OPTIMIZE_REUSE_RESULTS=FALSE",
+                "--products.seed.count=" + seed,
+                "--products.journal.enabled=true",
+                "--products.journal.directory=" + journal,
+                "--products.journal.replay-threads=" + threads);
+    }
+}
@@ -0,0 +1,75 @@
+package com.paygoal.exercie.benchmark;
+
+import com.paygoal.exercie.search.ProductSuggestTrie;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Retained heap of the autocomplete trie per million names and the latency of a prefix lookup on it.
+ * Run with: mvn test -Pbenchmark -Dtest=ProductSuggestFootprintBenchmark [-Dsuggest.names=1000000]
+ */
+@Tag("benchmark")
+public class ProductSuggestFootprintBenchmark {
+
+    private static final String[] NOUNS = {"mesa", "silla", "lámpara", "estantería", "escritorio", "sofá", "alfombra",
+            "cuadro", "cómoda", "librero", "banqueta", "espejo", "perchero", "mesita", "aparador", "sillón"};
+    private static final String[] MATERIALS = {"de madera", "de pino", "de roble", "metálica", "de vidrio", "de mimbre",
+            "tapizada", "de cuero", "laqueada", "industrial"};
+    private static final int TOP_SIZE = 10;
+    private static final int LOOKUPS = 200_000;
+
+    @Test
+    void reportFootprintAndLookupLatency() {
+        int count = Integer.getInteger("suggest.names", 1_000_000);
+        SplittableRandom random = new SplittableRandom(42);
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = NOUNS[random.nextInt(NOUNS.length)] + " " + MATERIALS[random.nextInt(MATERIALS.length)] + " " + (i + 1);
+        }
+
+        // The names themselves are live in both measurements, so only the trie is counted
+        long before = usedHeapAfterGc();
+        ProductSuggestTrie trie = new ProductSuggestTrie(TOP_SIZE);
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            trie.put((long) i + 1, names[i], random.nextInt(100), BigDecimal.valueOf(random.nextInt(1_000_000), 2));
+        }
+        long buildMillis = (System.nanoTime() - start) / 1_000_000;
+        long retained = usedHeapAfterGc() - before;
+
+        Histogram latency = new Histogram(3);
+        for (int i = 0; i < LOOKUPS; i++) {
+            String name = names[random.nextInt(count)];
+            String prefix = name.substring(0, 1 + random.nextInt(Math.min(12, name.length())));
+            long lookupStart = System.nanoTime();
+            int found = trie.suggest(prefix, TOP_SIZE).size();
+            latency.recordValue(System.nanoTime() - lookupStart);
+            assertTrue(found > 0);
+        }
+
+        System.out.printf("names: %,d, nodes: %,d (%.2f per name), built in %,d ms%n",
+                trie.size(), trie.nodeCount(), (double) trie.nodeCount() / trie.size(), buildMillis);
+        System.out.printf("retained heap: %,d MB, %,d bytes per name, %,d MB per million names%n",
+                retained >> 20, retained / count, (retained * 1_000_000L / count) >> 20);
+        System.out.printf("lookup latency: p50 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us%n",
+                latency.getValueAtPercentile(50) / 1000.0, latency.getValueAtPercentile(99) / 1000.0,
+                latency.getValueAtPercentile(99.9) / 1000.0, latency.getMaxValue() / 1000.0);
+        assertEquals(count, trie.size());
+    }
+
+    private static long usedHeapAfterGc() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,94 @@
+package com.paygoal.exercie.benchmark;
+
+import com.paygoal.exercie.dto.ProductDto;
+import com.paygoal.exercie.exception.OutOfStockException;
+import com.paygoal.exercie.service.ProductService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Many threads hammering one SKU: the conditional UPDATE versus the read-modify-write PUT path.
+ * Run with: mvn test -Pbenchmark -Dtest=StockContentionBenchmark
+ */
+@Tag("benchmark")
+@SpringBootTest
+public class StockContentionBenchmark {
+
+    private static final int THREADS = 64;
+    private static final int RESERVATIONS_PER_THREAD = 500;
+    private static final int INITIAL_STOCK = THREADS * RESERVATIONS_PER_THREAD;
+
+    @Autowired
+    private ProductService productService;
+
+    @Test
+    void reserveShouldKeepThroughputWithoutLosingStock() throws Exception {
+        Long atomicSku = createSku("atomic sku");
+        AtomicInteger reserved = new AtomicInteger();
+        long atomicNanos = hammer(() -> {
+            try {
+                productService.reserveStock(atomicSku, 1);
+                reserved.incrementAndGet();
+            } catch (OutOfStockException ignored) {
+                // counted as not reserved
+            }
+        });
+
+        Long naiveSku = createSku("read-modify-write sku");
+        AtomicInteger decremented = new AtomicInteger();
+        long naiveNanos = hammer(() -> {
+            ProductDto product = productService.findById(naiveSku);
+            product.setStock(product.getStock() - 1);
+            productService.update(naiveSku, product);
+            decremented.incrementAndGet();
+        });
+
+        int atomicStock = productService.findById(atomicSku).getStock();
+        int naiveStock = productService.findById(naiveSku).getStock();
+        int lostUpdates = naiveStock - (INITIAL_STOCK - decremented.get());
+
+        System.out.printf("conditional UPDATE: %,.0f reservations/s, %d reserved, stock left %d%n",
+                perSecond(atomicNanos), reserved.get(), atomicStock);
+        System.out.printf("read-modify-write:  %,.0f updates/s, %d lost updates%n",
+                perSecond(naiveNanos), lostUpdates);
+        assertEquals(INITIAL_STOCK - reserved.get(), atomicStock);
+        assertEquals(INITIAL_STOCK, reserved.get());
+    }
+
+    private Long createSku(String name) {
+        return productService.create(ProductDto.builder()
+                .name(name)
+                .price(new BigDecimal("1.00"))
+                .stock(INITIAL_STOCK)
+                .build()).getId();
+    }
+
+    private static long hammer(Runnable operation) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        long start = System.nanoTime();
+        for (int t = 0; t < THREADS; t++) {
+            executor.submit(() -> {
+                for (int i = 0; i < RESERVATIONS_PER_THREAD; i++) {
+                    operation.run();
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.MINUTES));
+        return System.nanoTime() - start;
+    }
+
+    private static double perSecond(long nanos) {
+        return THREADS * RESERVATIONS_PER_THREAD / (nanos / 1e9);
+    }
+}
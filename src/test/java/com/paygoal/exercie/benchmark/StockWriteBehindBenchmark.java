@@ -0,0 +1,122 @@
+package com.paygoal.exercie.benchmark;
+
+import com.paygoal.exercie.dto.ProductDto;
+import com.paygoal.exercie.dto.StockDto;
+import com.paygoal.exercie.exception.OutOfStockException;
+import com.paygoal.exercie.repository.ProductRepository;
+import com.paygoal.exercie.service.ProductService;
+import com.paygoal.exercie.stock.StockWriteBehind;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Many threads reserving one SKU: the conditional UPDATE per reservation versus the write-behind, which fsyncs the
+ * intent log per reservation and writes the row once per flush. Run with: mvn test -Pbenchmark -Dtest=StockWriteBehindBenchmark
+ */
+@Tag("benchmark")
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:stock-write-behind-benchmark;OPTIMIZE_REUSE_RESULTS=FALSE",
+        "products.stock-write-behind.enabled=true"
+})
+public class StockWriteBehindBenchmark {
+
+    private static final int THREADS = 64;
+    private static final int RESERVATIONS_PER_THREAD = 500;
+    private static final int INITIAL_STOCK = THREADS * RESERVATIONS_PER_THREAD;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private StockWriteBehind stockWriteBehind;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // A log left by an earlier run would be replayed into this fresh in-memory database
+    @DynamicPropertySource
+    static void intentLogDirectory(DynamicPropertyRegistry registry) throws IOException {
+        String directory = Files.createTempDirectory("stock-intents").toString();
+        registry.add("products.stock-write-behind.log-directory", () -> directory);
+    }
+
+    @Test
+    void compareConditionalUpdateAndWriteBehind() throws Exception {
+        Long updateSku = createSku("conditional update sku");
+        Long writeBehindSku = createSku("write-behind sku");
+
+        Histogram update = hammer(updateSku, productService::reserveStock);
+        Histogram writeBehind = hammer(writeBehindSku, stockWriteBehind::reserve);
+        stockWriteBehind.flush();
+
+        report("conditional UPDATE", update);
+        report("write-behind      ", writeBehind);
+        System.out.printf("write-behind: %.0f flushes, %.0f rows written, %.0f fsyncs%n",
+                meterRegistry.get("products.stock.write.behind.flushes").functionCounter().count(),
+                meterRegistry.get("products.stock.write.behind.rows").functionCounter().count(),
+                meterRegistry.get("products.stock.write.behind.fsyncs").functionCounter().count());
+        assertEquals(0, productRepository.findStockById(updateSku).orElseThrow());
+        assertEquals(0, productRepository.findStockById(writeBehindSku).orElseThrow());
+    }
+
+    private Long createSku(String name) {
+        return productService.create(ProductDto.builder()
+                .name(name)
+                .price(new BigDecimal("1.00"))
+                .stock(INITIAL_STOCK)
+                .build()).getId();
+    }
+
+    private static Histogram hammer(Long id, BiFunction<Long, Integer, StockDto> reserve) throws InterruptedException {
+        Histogram latencies = new Histogram(TimeUnit.SECONDS.toNanos(60), 3);
+        AtomicInteger rejected = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        long start = System.nanoTime();
+        for (int t = 0; t < THREADS; t++) {
+            executor.submit(() -> {
+                for (int i = 0; i < RESERVATIONS_PER_THREAD; i++) {
+                    long begin = System.nanoTime();
+                    try {
+                        reserve.apply(id, 1);
+                    } catch (OutOfStockException ex) {
+                        rejected.incrementAndGet();
+                    }
+                    synchronized (latencies) {
+                        latencies.recordValue(System.nanoTime() - begin);
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.MINUTES));
+        latencies.setEndTimeStamp(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        assertEquals(0, rejected.get());
+        return latencies;
+    }
+
+    private static void report(String mode, Histogram latencies) {
+        double seconds = latencies.getEndTimeStamp() / 1e3;
+        System.out.printf("%s: %,.0f reservations/s, p50 %.3f ms, p99 %.3f ms%n", mode, INITIAL_STOCK / seconds,
+                latencies.getValueAtPercentile(50) / 1e6, latencies.getValueAtPercentile(99) / 1e6);
+    }
+}
@@ -0,0 +1,42 @@
+package com.paygoal.exercie.benchmark.jmh;
+
+import com.paygoal.exercie.dto.ProductDto;
+import com.paygoal.exercie.model.Product;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Deterministic synthetic products shared by the benchmarks.
+ */
+final class Catalog {
+
+    private Catalog() {
+    }
+
+    static List<Product> products(int size) {
+        return IntStream.range(0, size)
+                .mapToObj(i -> Product.builder()
+                        .id((long) i + 1)
+                        .name("producto " + i)
+                        .description("descripcion del producto numero " + i + " para el catalogo")
+                        .price(BigDecimal.valueOf(1000 + (i * 37L) % 5000, 2))
+                        .stock(i % 50)
+                        .version(0L)
+                        .build())
+                .collect(Collectors.toList());
+    }
+
+    static List<ProductDto> productDtos(int size) {
+        return IntStream.range(0, size)
+                .mapToObj(i -> ProductDto.builder()
+                        .name("producto " + i)
+                        .description("descripcion del producto numero " + i + " para el catalogo")
+                        .price(BigDecimal.valueOf(1000 + (i * 37L) % 5000, 2))
+                        .stock(i % 50)
+                        .build())
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,63 @@
+package com.paygoal.exercie.benchmark.jmh;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.paygoal.exercie.controller.ProductController;
+import com.paygoal.exercie.dto.ProductDto;
+import com.paygoal.exercie.exception.GlobalExceptionHandler;
+import com.paygoal.exercie.exception.ProductNotFoundException;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.web.bind.MethodArgumentNotValidException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Error rendering as MVC does it: build the body in the handler and serialize it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GlobalExceptionHandlerBenchmark {
+
+    private final GlobalExceptionHandler handler = new GlobalExceptionHandler();
+    private ObjectMapper objectMapper;
+    private ProductNotFoundException notFound;
+    private MethodArgumentNotValidException invalid;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        notFound = new ProductNotFoundException("Product not found with id: 42");
+
+        BeanPropertyBindingResult bindingResult = new BeanPropertyBindingResult(new ProductDto(), "productDto");
+        bindingResult.rejectValue("name", "NotBlank", "Name is required");
+        bindingResult.rejectValue("price", "DecimalMin", "Price must be greater than 0");
+        bindingResult.rejectValue("stock", "Min", "Stock cannot be negative");
+        MethodParameter parameter = new MethodParameter(
+                ProductController.class.getMethod("createProduct", ProductDto.class), 0);
+        invalid = new MethodArgumentNotValidException(parameter, bindingResult);
+    }
+
+    @Benchmark
+    public byte[] notFound() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(handler.handleProductNotFoundException(notFound).getBody());
+    }
+
+    // Includes filling in the stack trace, which the service pays on every miss
+    @Benchmark
+    public byte[] notFoundIncludingThrow() throws JsonProcessingException {
+        ProductNotFoundException ex = new ProductNotFoundException("Product not found with id: 42");
+        return objectMapper.writeValueAsBytes(handler.handleProductNotFoundException(ex).getBody());
+    }
+
+    @Benchmark
+    public byte[] validationErrors() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(handler.handleValidationExceptions(invalid).getBody());
+    }
+}
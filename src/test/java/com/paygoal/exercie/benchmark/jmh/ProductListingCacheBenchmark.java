@@ -0,0 +1,60 @@
+package com.paygoal.exercie.benchmark.jmh;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.paygoal.exercie.cache.ProductListingCache;
+import com.paygoal.exercie.configuration.ListingCacheProperties;
+import com.paygoal.exercie.dto.ProductFilter;
+import com.paygoal.exercie.dto.ProductPage;
+import com.paygoal.exercie.model.Product;
+import com.paygoal.exercie.utils.ProductMapper;
+import com.paygoal.exercie.utils.ProductMapperImpl;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Work left in a listing request once the page is loaded: mapping and Jackson on every request,
+ * against a hit on the serialized response cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProductListingCacheBenchmark {
+
+    // 20 and 100 are the default and maximum page sizes
+    @Param({"20", "100"})
+    private int size;
+
+    private ObjectMapper objectMapper;
+    private ProductMapper productMapper;
+    private ProductListingCache listingCache;
+    private List<Product> products;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        productMapper = new ProductMapperImpl();
+        listingCache = new ProductListingCache(new ListingCacheProperties(), objectMapper, Runnable::run);
+        products = Catalog.products(size);
+    }
+
+    @Benchmark
+    public byte[] mapAndSerialize() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(productMapper.toDtoList(products));
+    }
+
+    @Benchmark
+    public byte[] cachedListing() {
+        return listingCache.get(new ProductFilter(), null, size, this::page).getGzip();
+    }
+
+    private ProductPage page() {
+        return ProductPage.builder().items(productMapper.toDtoList(products)).build();
+    }
+}
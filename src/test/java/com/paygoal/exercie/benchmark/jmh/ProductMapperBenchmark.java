@@ -0,0 +1,42 @@
+package com.paygoal.exercie.benchmark.jmh;
+
+import com.paygoal.exercie.dto.ProductDto;
+import com.paygoal.exercie.model.Product;
+import com.paygoal.exercie.utils.ProductMapper;
+import com.paygoal.exercie.utils.ProductMapperImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProductMapperBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int size;
+
+    private final ProductMapper productMapper = new ProductMapperImpl();
+    private Product product;
+    private List<Product> products;
+
+    @Setup
+    public void setUp() {
+        products = Catalog.products(size);
+        product = products.get(0);
+    }
+
+    @Benchmark
+    public ProductDto toDto() {
+        return productMapper.toDto(product);
+    }
+
+    @Benchmark
+    public List<ProductDto> toDtoList() {
+        return productMapper.toDtoList(products);
+    }
+}
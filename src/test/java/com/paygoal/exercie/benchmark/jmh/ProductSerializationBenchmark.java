@@ -0,0 +1,49 @@
+package com.paygoal.exercie.benchmark.jmh;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.paygoal.exercie.dto.ProductDto;
+import com.paygoal.exercie.utils.ProductMapperImpl;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProductSerializationBenchmark {
+
+    // 20 and 100 are the default and maximum page sizes
+    @Param({"1", "20", "100", "1000"})
+    private int size;
+
+    private ObjectMapper objectMapper;
+    private ObjectWriter listWriter;
+    private List<ProductDto> products;
+
+    @Setup
+    public void setUp() {
+        // Same defaults Spring Boot applies to the ObjectMapper used by MVC
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        listWriter = objectMapper.writerFor(new TypeReference<List<ProductDto>>() {
+        });
+        products = new ProductMapperImpl().toDtoList(Catalog.products(size));
+    }
+
+    @Benchmark
+    public byte[] writeValueAsBytes() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(products);
+    }
+
+    @Benchmark
+    public byte[] typedListWriter() throws JsonProcessingException {
+        return listWriter.writeValueAsBytes(products);
+    }
+}
@@ -0,0 +1,65 @@
+package com.paygoal.exercie.benchmark.jmh;
+
+import com.paygoal.exercie.PaygoalExerciseApplication;
+import com.paygoal.exercie.dto.ProductDto;
+import com.paygoal.exercie.service.ProductService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service reads against the seeded H2 database, with and without the product cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProductServiceBenchmark {
+
+    private static final int CATALOG_SIZE = 1000;
+
+    @Param({"true", "false"})
+    private boolean cacheEnabled;
+
+    private ConfigurableApplicationContext context;
+    private ProductService productService;
+    private long[] ids;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(PaygoalExerciseApplication.class)
+                .web(WebApplicationType.NONE)
+                // Arguments, not builder properties: those are defaults that application.properties overrides
+                .run("--spring.main.banner-mode=off",
+                        "--logging.level.root=WARN",
+                        "--spring.datasource.url=jdbc:h2:mem:jmh;OPTIMIZE_REUSE_RESULTS=FALSE",
+                        "--products.cache.enabled=" + cacheEnabled);
+        productService = context.getBean(ProductService.class);
+
+        // V2__seed_products.sql seeds the first 10 products
+        List<ProductDto> created = productService.createAll(Catalog.productDtos(CATALOG_SIZE - 10));
+        ids = created.stream().mapToLong(ProductDto::getId).toArray();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public ProductDto findById() {
+        return productService.findById(ids[ThreadLocalRandom.current().nextInt(ids.length)]);
+    }
+
+    @Benchmark
+    public List<ProductDto> findAllOrderedByPrice() {
+        return productService.findAllOrderedByPrice();
+    }
+}
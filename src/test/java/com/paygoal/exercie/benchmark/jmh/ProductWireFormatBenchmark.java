@@ -0,0 +1,122 @@
+package com.paygoal.exercie.benchmark.jmh;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.paygoal.exercie.dto.ProductBatchRequest;
+import com.paygoal.exercie.dto.ProductDto;
+import com.paygoal.exercie.utils.ProductMapperImpl;
+import com.paygoal.exercie.utils.ProductProtobufHttpMessageConverter;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.mock.http.MockHttpInputMessage;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode and decode cost of a product list in each format ProductController negotiates. The payload sizes are printed
+ * once per trial, gzip aside.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProductWireFormatBenchmark {
+
+    private static final Type PRODUCT_LIST = new ParameterizedTypeReference<List<ProductDto>>() {
+    }.getType();
+
+    @Param({"20", "100", "1000"})
+    private int size;
+
+    private List<ProductDto> products;
+    private ObjectWriter jsonWriter;
+    private ObjectReader jsonReader;
+    private ObjectWriter cborWriter;
+    private ObjectReader cborReader;
+    private ObjectWriter smileWriter;
+    private ObjectReader smileReader;
+    private ProductProtobufHttpMessageConverter protobufConverter;
+    private byte[] json;
+    private byte[] cbor;
+    private byte[] smile;
+    private byte[] protobuf;
+
+    @Setup
+    public void setUp() throws IOException {
+        TypeReference<List<ProductDto>> listType = new TypeReference<>() {
+        };
+        // Built the way ContentNegotiationConfig builds them, from Boot's defaults
+        ObjectMapper jsonMapper = Jackson2ObjectMapperBuilder.json().build();
+        ObjectMapper cborMapper = Jackson2ObjectMapperBuilder.json().factory(new CBORFactory()).build();
+        ObjectMapper smileMapper = Jackson2ObjectMapperBuilder.json().factory(new SmileFactory()).build();
+        jsonWriter = jsonMapper.writerFor(listType);
+        jsonReader = jsonMapper.readerFor(listType);
+        cborWriter = cborMapper.writerFor(listType);
+        cborReader = cborMapper.readerFor(listType);
+        smileWriter = smileMapper.writerFor(listType);
+        smileReader = smileMapper.readerFor(listType);
+        protobufConverter = new ProductProtobufHttpMessageConverter();
+
+        products = new ProductMapperImpl().toDtoList(Catalog.products(size));
+        json = encodeJson();
+        cbor = encodeCbor();
+        smile = encodeSmile();
+        protobuf = encodeProtobuf();
+        System.out.printf("%n%d products: json=%d cbor=%d smile=%d protobuf=%d bytes%n",
+                size, json.length, cbor.length, smile.length, protobuf.length);
+    }
+
+    @Benchmark
+    public byte[] encodeJson() throws IOException {
+        return jsonWriter.writeValueAsBytes(products);
+    }
+
+    @Benchmark
+    public byte[] encodeCbor() throws IOException {
+        return cborWriter.writeValueAsBytes(products);
+    }
+
+    @Benchmark
+    public byte[] encodeSmile() throws IOException {
+        return smileWriter.writeValueAsBytes(products);
+    }
+
+    @Benchmark
+    public byte[] encodeProtobuf() throws IOException {
+        MockHttpOutputMessage output = new MockHttpOutputMessage();
+        protobufConverter.write(products, PRODUCT_LIST, ProductProtobufHttpMessageConverter.PROTOBUF, output);
+        return output.getBodyAsBytes();
+    }
+
+    @Benchmark
+    public List<ProductDto> decodeJson() throws IOException {
+        return jsonReader.readValue(json);
+    }
+
+    @Benchmark
+    public List<ProductDto> decodeCbor() throws IOException {
+        return cborReader.readValue(cbor);
+    }
+
+    @Benchmark
+    public List<ProductDto> decodeSmile() throws IOException {
+        return smileReader.readValue(smile);
+    }
+
+    // A product list is read as the body of POST /api/products/batch
+    @Benchmark
+    public Object decodeProtobuf() throws IOException {
+        return protobufConverter.read(ProductBatchRequest.class, null, new MockHttpInputMessage(protobuf));
+    }
+}
@@ -0,0 +1,116 @@
+package com.paygoal.exercie.benchmark.load;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends requests at a fixed rate regardless of how fast responses come back (open model).
+ * <p>
+ * Latency is measured from the time each request was scheduled to go out, not from when it was actually sent.
+ * A closed loop, or an open one timed from the send, stops issuing requests while the server stalls and so
+ * never records the queueing it causes (coordinated omission). The send based latency is kept as well to show the gap.
+ */
+final class OpenModelLoadDriver {
+
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(5);
+
+    private final URI base;
+    private final RequestMix mix;
+    private final long productCount;
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    OpenModelLoadDriver(URI base, RequestMix mix, long productCount) {
+        this.base = base;
+        this.mix = mix;
+        this.productCount = productCount;
+    }
+
+    Map<ProductEndpoint, EndpointStats> run(int requestsPerSecond, Duration warmup, Duration duration, long randomSeed) {
+        Map<ProductEndpoint, EndpointStats> stats = new EnumMap<>(ProductEndpoint.class);
+        for (ProductEndpoint endpoint : ProductEndpoint.values()) {
+            stats.put(endpoint, new EndpointStats());
+        }
+        SplittableRandom random = new SplittableRandom(randomSeed);
+        Phaser outstanding = new Phaser(1);
+
+        long interval = TimeUnit.SECONDS.toNanos(1) / requestsPerSecond;
+        long start = System.nanoTime();
+        long measureFrom = start + warmup.toNanos();
+        long end = measureFrom + duration.toNanos();
+        for (long i = 0; ; i++) {
+            long intended = start + i * interval;
+            if (intended >= end) {
+                break;
+            }
+            long now;
+            while ((now = System.nanoTime()) < intended) {
+                LockSupport.parkNanos(intended - now);
+            }
+
+            ProductEndpoint endpoint = mix.next(random);
+            // leave room for the three ids of LOOKUP
+            long productId = 1 + random.nextLong(Math.max(1, productCount - 2));
+            boolean measured = intended >= measureFrom;
+            long sent = System.nanoTime();
+            outstanding.register();
+            client.sendAsync(endpoint.request(base, productId, random), HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, failure) -> {
+                        long done = System.nanoTime();
+                        if (measured) {
+                            String outcome = failure != null ? rootCause(failure).getClass().getSimpleName()
+                                    : endpoint.isExpected(response.statusCode()) ? null : "HTTP " + response.statusCode();
+                            stats.get(endpoint).record(intended, sent, done, outcome);
+                        }
+                        outstanding.arriveAndDeregister();
+                    });
+        }
+        outstanding.arriveAndAwaitAdvance();
+        return stats;
+    }
+
+    private static Throwable rootCause(Throwable failure) {
+        Throwable cause = failure;
+        while (cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    static final class EndpointStats {
+
+        // Corrected for coordinated omission: measured from the scheduled send time
+        final Histogram latency = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3);
+        // What a naive client would report: measured from the actual send
+        final Histogram serviceTime = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3);
+        // Unexpected status or transport failure, by kind
+        final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+        void record(long intended, long sent, long done, String error) {
+            latency.recordValue(Math.min(HIGHEST_TRACKABLE_MICROS, TimeUnit.NANOSECONDS.toMicros(done - intended)));
+            serviceTime.recordValue(Math.min(HIGHEST_TRACKABLE_MICROS, TimeUnit.NANOSECONDS.toMicros(done - sent)));
+            if (error != null) {
+                errors.computeIfAbsent(error, key -> new LongAdder()).increment();
+            }
+        }
+
+        long errorCount() {
+            return errors.values().stream().mapToLong(LongAdder::sum).sum();
+        }
+    }
+}
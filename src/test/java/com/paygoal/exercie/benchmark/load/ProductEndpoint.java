@@ -0,0 +1,80 @@
+package com.paygoal.exercie.benchmark.load;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.util.SplittableRandom;
+
+/**
+ * The ProductController calls the load test can mix, with the statuses that count as success.
+ */
+enum ProductEndpoint {
+
+    GET_BY_ID {
+        @Override
+        HttpRequest request(URI base, long productId, SplittableRandom random) {
+            return get(base.resolve("/api/products/" + productId));
+        }
+    },
+    LIST {
+        @Override
+        HttpRequest request(URI base, long productId, SplittableRandom random) {
+            return get(base.resolve("/api/products?size=20"));
+        }
+    },
+    LOOKUP {
+        @Override
+        HttpRequest request(URI base, long productId, SplittableRandom random) {
+            return get(base.resolve("/api/products?ids=" + productId + "," + (productId + 1) + "," + (productId + 2)));
+        }
+    },
+    UPDATE {
+        @Override
+        HttpRequest request(URI base, long productId, SplittableRandom random) {
+            String body = "{\"name\":\"producto " + productId + "\",\"description\":\"actualizado por la prueba de carga\","
+                    + "\"price\":" + random.nextInt(1_000, 1_000_000) + ",\"stock\":" + random.nextInt(100) + "}";
+            return json(base.resolve("/api/products/" + productId), "PUT", "application/json", body);
+        }
+    },
+    PATCH {
+        @Override
+        HttpRequest request(URI base, long productId, SplittableRandom random) {
+            return json(base.resolve("/api/products/" + productId), "PATCH", "application/merge-patch+json",
+                    "{\"stock\":" + random.nextInt(100) + "}");
+        }
+    },
+    RESERVE {
+        @Override
+        HttpRequest request(URI base, long productId, SplittableRandom random) {
+            return json(base.resolve("/api/products/" + productId + "/stock/reserve"), "POST", "application/json", "{\"quantity\":1}");
+        }
+
+        @Override
+        boolean isExpected(int status) {
+            // Running out of stock is a normal answer
+            return status == 200 || status == 409;
+        }
+    },
+    RELEASE {
+        @Override
+        HttpRequest request(URI base, long productId, SplittableRandom random) {
+            return json(base.resolve("/api/products/" + productId + "/stock/release"), "POST", "application/json", "{\"quantity\":1}");
+        }
+    };
+
+    abstract HttpRequest request(URI base, long productId, SplittableRandom random);
+
+    boolean isExpected(int status) {
+        return status == 200;
+    }
+
+    private static HttpRequest get(URI uri) {
+        return HttpRequest.newBuilder(uri).GET().build();
+    }
+
+    private static HttpRequest json(URI uri, String method, String contentType, String body) {
+        return HttpRequest.newBuilder(uri)
+                .header("Content-Type", contentType)
+                .method(method, HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+}
@@ -0,0 +1,104 @@
+package com.paygoal.exercie.benchmark.load;
+
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Boots the app on a real port, seeds a synthetic catalog and drives a mix of endpoints at a fixed request rate.
+ * Prints throughput and p50/p99/p999 per endpoint and writes the full distributions to target/loadtest/servlet/*.hgrm.
+ * <p>
+ * Run with: mvn test -Pbenchmark -Dtest=ProductLoadBenchmark -Dloadtest.products=1000000 -Dloadtest.rate=2000
+ * ({@code -Dtest='*ProductLoadBenchmark'} also runs {@link ReactiveProductLoadBenchmark} for a side-by-side comparison)
+ * <ul>
+ *     <li>loadtest.products: catalog size, 10 to 10M (default 10000)</li>
+ *     <li>loadtest.rate: requests per second (default 200)</li>
+ *     <li>loadtest.warmup / loadtest.duration: seconds (default 10 / 30)</li>
+ *     <li>loadtest.mix: endpoint weights (default {@value #DEFAULT_MIX})</li>
+ * </ul>
+ */
+@Tag("benchmark")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:loadtest;OPTIMIZE_REUSE_RESULTS=FALSE",
+        "products.seed.count=${loadtest.products:10000}",
+        "logging.level.root=WARN"
+})
+public class ProductLoadBenchmark {
+
+    static final String DEFAULT_MIX = "get_by_id=60,list=10,lookup=5,update=5,patch=5,reserve=10,release=5";
+
+    @LocalServerPort
+    private int port;
+
+    @Test
+    void mixedLoadAtFixedRate() throws IOException {
+        long products = Long.getLong("loadtest.products", 10_000);
+        int rate = Integer.getInteger("loadtest.rate", 200);
+        Duration warmup = Duration.ofSeconds(Long.getLong("loadtest.warmup", 10));
+        Duration duration = Duration.ofSeconds(Long.getLong("loadtest.duration", 30));
+        RequestMix mix = RequestMix.parse(System.getProperty("loadtest.mix", DEFAULT_MIX));
+
+        OpenModelLoadDriver driver = new OpenModelLoadDriver(URI.create("http://localhost:" + port), mix, products);
+        Map<ProductEndpoint, OpenModelLoadDriver.EndpointStats> stats = driver.run(rate, warmup, duration, 42);
+
+        report(stack(), stats, products, rate, duration);
+        // Errors are reported, not failed on: finding the rate where they start is the point of the run
+        long requests = stats.values().stream().mapToLong(endpoint -> endpoint.latency.getTotalCount()).sum();
+        assertTrue(requests > 0, "no request completed");
+    }
+
+    String stack() {
+        return "servlet";
+    }
+
+    private static void report(String stack, Map<ProductEndpoint, OpenModelLoadDriver.EndpointStats> stats,
+                               long products, int rate, Duration duration) throws IOException {
+        Path directory = Paths.get("target", "loadtest", stack);
+        Files.createDirectories(directory);
+        double seconds = duration.toMillis() / 1000.0;
+
+        System.out.printf("%s: %,d products, %,d req/s offered for %ds (latencies in ms, from the scheduled send time)%n",
+                stack, products, rate, duration.getSeconds());
+        System.out.printf("%-10s %9s %9s %8s %8s %8s %8s %8s %7s%n",
+                "endpoint", "requests", "req/s", "p50", "p99", "p999", "max", "p99 svc", "errors");
+        for (Map.Entry<ProductEndpoint, OpenModelLoadDriver.EndpointStats> entry : stats.entrySet()) {
+            Histogram latency = entry.getValue().latency;
+            if (latency.getTotalCount() == 0) {
+                continue;
+            }
+            System.out.printf("%-10s %9d %9.1f %8.2f %8.2f %8.2f %8.2f %8.2f %7d%n",
+                    entry.getKey().name().toLowerCase(),
+                    latency.getTotalCount(),
+                    latency.getTotalCount() / seconds,
+                    millis(latency.getValueAtPercentile(50)),
+                    millis(latency.getValueAtPercentile(99)),
+                    millis(latency.getValueAtPercentile(99.9)),
+                    millis(latency.getMaxValue()),
+                    millis(entry.getValue().serviceTime.getValueAtPercentile(99)),
+                    entry.getValue().errorCount());
+            try (PrintStream out = new PrintStream(Files.newOutputStream(
+                    directory.resolve(entry.getKey().name().toLowerCase() + ".hgrm")))) {
+                latency.outputPercentileDistribution(out, 1000.0);
+            }
+        }
+        stats.forEach((endpoint, endpointStats) -> endpointStats.errors.forEach((error, count) ->
+                System.out.printf("%-10s %s x%d%n", endpoint.name().toLowerCase(), error, count.sum())));
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+}
@@ -0,0 +1,24 @@
+package com.paygoal.exercie.benchmark.load;
+
+import org.junit.jupiter.api.Tag;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+/**
+ * {@link ProductLoadBenchmark} against the reactive profile (WebFlux on Netty, R2DBC), same catalog, mix and rate,
+ * distributions in target/loadtest/reactive/*.hgrm.
+ */
+@Tag("benchmark")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:loadtest-reactive;OPTIMIZE_REUSE_RESULTS=FALSE",
+        "products.seed.count=${loadtest.products:10000}",
+        "logging.level.root=WARN"
+})
+@ActiveProfiles("reactive")
+public class ReactiveProductLoadBenchmark extends ProductLoadBenchmark {
+
+    @Override
+    String stack() {
+        return "reactive";
+    }
+}
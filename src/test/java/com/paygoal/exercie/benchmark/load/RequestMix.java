@@ -0,0 +1,49 @@
+package com.paygoal.exercie.benchmark.load;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Weighted choice of endpoints, parsed from a spec like "get_by_id=70,list=10,reserve=20".
+ */
+final class RequestMix {
+
+    private final ProductEndpoint[] endpoints;
+    private final int[] cumulativeWeights;
+
+    private RequestMix(Map<ProductEndpoint, Integer> weights) {
+        endpoints = weights.keySet().toArray(new ProductEndpoint[0]);
+        cumulativeWeights = new int[endpoints.length];
+        int total = 0;
+        for (int i = 0; i < endpoints.length; i++) {
+            total += weights.get(endpoints[i]);
+            cumulativeWeights[i] = total;
+        }
+    }
+
+    static RequestMix parse(String spec) {
+        Map<ProductEndpoint, Integer> weights = new EnumMap<>(ProductEndpoint.class);
+        for (String entry : spec.split(",")) {
+            String[] parts = entry.trim().split("=");
+            int weight = Integer.parseInt(parts[1].trim());
+            if (weight > 0) {
+                weights.put(ProductEndpoint.valueOf(parts[0].trim().toUpperCase()), weight);
+            }
+        }
+        if (weights.isEmpty()) {
+            throw new IllegalArgumentException("Request mix has no endpoint with a positive weight: " + spec);
+        }
+        return new RequestMix(weights);
+    }
+
+    ProductEndpoint next(SplittableRandom random) {
+        int pick = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (pick < cumulativeWeights[i]) {
+                return endpoints[i];
+            }
+        }
+        throw new IllegalStateException();
+    }
+}
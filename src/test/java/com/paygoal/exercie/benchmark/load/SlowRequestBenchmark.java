@@ -0,0 +1,137 @@
+package com.paygoal.exercie.benchmark.load;
+
+import com.paygoal.exercie.dto.ProductDto;
+import com.paygoal.exercie.service.ProductService;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Thousands of requests at once, each one blocked on a slow downstream call before reading a product. On Tomcat's
+ * 200 platform threads they go through in waves; {@link VirtualThreadSlowRequestBenchmark} runs them all at once.
+ * Prints the wall time, latencies and the peak number of platform threads in the JVM.
+ * <p>
+ * Run with: mvn test -Pbenchmark -Dtest='*SlowRequestBenchmark' (the virtual thread half needs a Java 21 JVM)
+ * <ul>
+ *     <li>slowrequests.count: requests sent at once (default 2000)</li>
+ *     <li>slowrequests.millis: time each request waits on the downstream call (default 500)</li>
+ * </ul>
+ */
+@Tag("benchmark")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:slow-requests;OPTIMIZE_REUSE_RESULTS=FALSE",
+        "logging.level.root=WARN"
+})
+@Import(SlowRequestBenchmark.SlowDownstream.class)
+public class SlowRequestBenchmark {
+
+    private static final int SEEDED_PRODUCTS = 10;
+
+    @LocalServerPort
+    private int port;
+
+    @Test
+    void concurrentSlowRequests() throws Exception {
+        int count = Integer.getInteger("slowrequests.count", 2_000);
+        long millis = Long.getLong("slowrequests.millis", 500);
+        ExecutorService clientExecutor = Executors.newFixedThreadPool(4);
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(30))
+                .executor(clientExecutor)
+                .build();
+        // Warms up the path so the run does not time class loading and JIT
+        client.send(request(1, 1), HttpResponse.BodyHandlers.discarding());
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        int threadsBefore = threads.getThreadCount();
+        Histogram latency = new ConcurrentHistogram(TimeUnit.MINUTES.toMillis(10), 3);
+        LongAdder errors = new LongAdder();
+        List<CompletableFuture<?>> responses = new ArrayList<>(count);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            long sent = System.nanoTime();
+            responses.add(client.sendAsync(request(1 + i % SEEDED_PRODUCTS, millis), HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, failure) -> {
+                        latency.recordValue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - sent));
+                        if (failure != null || response.statusCode() != 200) {
+                            errors.increment();
+                        }
+                    }));
+        }
+        CompletableFuture.allOf(responses.toArray(new CompletableFuture[0])).handle((ignored, failure) -> null).join();
+        double wallSeconds = (System.nanoTime() - start) / 1e9;
+        clientExecutor.shutdown();
+
+        System.out.printf("%s: %,d concurrent requests waiting %d ms each: %.2f s wall, p50 %d ms, p99 %d ms, max %d ms, "
+                        + "%d errors, platform threads %d before / %d peak%n",
+                mode(), count, millis, wallSeconds, latency.getValueAtPercentile(50), latency.getValueAtPercentile(99),
+                latency.getMaxValue(), errors.sum(), threadsBefore, threads.getPeakThreadCount());
+        assertTrue(latency.getTotalCount() > 0, "no request completed");
+    }
+
+    String mode() {
+        return "platform threads";
+    }
+
+    private HttpRequest request(long productId, long millis) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/benchmark/slow/" + productId + "?millis=" + millis))
+                .timeout(Duration.ofMinutes(5))
+                .build();
+    }
+
+    @TestConfiguration
+    static class SlowDownstream {
+
+        @Bean
+        SlowDownstreamController slowDownstreamController(ProductService productService) {
+            return new SlowDownstreamController(productService);
+        }
+    }
+
+    // The sleep stands for a slow call to another service (payment, shipping quote) made while serving the request
+    @RestController
+    static class SlowDownstreamController {
+
+        private final ProductService productService;
+
+        SlowDownstreamController(ProductService productService) {
+            this.productService = productService;
+        }
+
+        @GetMapping("/benchmark/slow/{id}")
+        ProductDto slow(@PathVariable Long id, @RequestParam long millis) throws InterruptedException {
+            Thread.sleep(millis);
+            return productService.findById(id);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.paygoal.exercie.benchmark.load;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.condition.EnabledIf;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+
+/**
+ * {@link SlowRequestBenchmark} with the virtual-threads profile. Skipped on JVMs older than 21.
+ */
+@Tag("benchmark")
+@EnabledIf("com.paygoal.exercie.configuration.VirtualThreads#isSupported")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:slow-requests-virtual;OPTIMIZE_REUSE_RESULTS=FALSE",
+        "logging.level.root=WARN"
+})
+@Import(SlowRequestBenchmark.SlowDownstream.class)
+@ActiveProfiles("virtual-threads")
+public class VirtualThreadSlowRequestBenchmark extends SlowRequestBenchmark {
+
+    @Override
+    String mode() {
+        return "virtual threads";
+    }
+}
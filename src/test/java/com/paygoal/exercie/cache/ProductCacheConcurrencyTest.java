@@ -0,0 +1,73 @@
+package com.paygoal.exercie.cache;
+
+import com.paygoal.exercie.dto.ProductDto;
+import com.paygoal.exercie.exception.ProductNotFoundException;
+import com.paygoal.exercie.service.ProductService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+public class ProductCacheConcurrencyTest {
+
+    private static final int READERS = 8;
+    private static final int WRITES = 200;
+
+    @Autowired
+    private ProductService productService;
+
+    @Test
+    void committedUpdatesAndDeletesShouldNeverBeFollowedByStaleReads() throws Exception {
+        ProductDto product = productService.create(ProductDto.builder()
+                .name("version 0")
+                .description("cache concurrency")
+                .price(new BigDecimal("10.00"))
+                .stock(1)
+                .build());
+        Long id = product.getId();
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService readers = Executors.newFixedThreadPool(READERS);
+        List<Future<?>> readerResults = new ArrayList<>();
+        for (int i = 0; i < READERS; i++) {
+            readerResults.add(readers.submit(() -> {
+                while (running.get()) {
+                    try {
+                        productService.findById(id);
+                    } catch (ProductNotFoundException ignored) {
+                        // expected once the product is deleted
+                    }
+                }
+            }));
+        }
+
+        try {
+            for (int version = 1; version <= WRITES; version++) {
+                product.setName("version " + version);
+                productService.update(id, product);
+                assertEquals("version " + version, productService.findById(id).getName());
+            }
+            productService.delete(id);
+            assertThrows(ProductNotFoundException.class, () -> productService.findById(id));
+        } finally {
+            running.set(false);
+            readers.shutdown();
+            assertTrue(readers.awaitTermination(10, TimeUnit.SECONDS));
+        }
+        for (Future<?> result : readerResults) {
+            result.get();
+        }
+        assertThrows(ProductNotFoundException.class, () -> productService.findById(id));
+    }
+}
@@ -0,0 +1,120 @@
+package com.paygoal.exercie.cache;
+
+import com.paygoal.exercie.configuration.ProductCacheProperties;
+import com.paygoal.exercie.dto.CacheStatsDto;
+import com.paygoal.exercie.dto.ProductDto;
+import com.paygoal.exercie.event.ProductChangedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProductCacheTest {
+
+    private ProductCacheProperties properties;
+    private ProductCache productCache;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    void setUp() {
+        properties = new ProductCacheProperties();
+        productCache = new ProductCache(properties);
+        loads = new AtomicInteger();
+    }
+
+    private ProductDto load(Long id) {
+        loads.incrementAndGet();
+        return ProductDto.builder()
+                .id(id)
+                .name("Product " + id)
+                .price(new BigDecimal("10.00"))
+                .stock(1)
+                .build();
+    }
+
+    @Test
+    void getShouldLoadOnceAndRecordHitsAndMisses() {
+        productCache.get(1L, this::load);
+        productCache.get(1L, this::load);
+        productCache.get(1L, this::load);
+
+        CacheStatsDto stats = productCache.stats();
+        assertEquals(1, loads.get());
+        assertEquals(1, stats.getSize());
+        assertEquals(2, stats.getHitCount());
+        assertEquals(1, stats.getMissCount());
+    }
+
+    @Test
+    void callersShouldNotBeAbleToMutateCachedEntries() {
+        productCache.get(1L, this::load).setName("mutated");
+
+        assertEquals("Product 1", productCache.get(1L, this::load).getName());
+    }
+
+    @Test
+    void missShouldNotHandOutTheLoadedInstance() {
+        ProductDto loaded = load(1L);
+
+        ProductDto returned = productCache.get(1L, id -> loaded);
+
+        // The load coalescer gives that instance to every caller it joined
+        assertNotSame(loaded, returned);
+        assertEquals(loaded, returned);
+    }
+
+    @Test
+    void invalidationDuringLoadShouldDiscardLoadedValue() {
+        productCache.get(1L, id -> {
+            ProductDto stale = load(id);
+            productCache.invalidate(id);
+            return stale;
+        });
+
+        productCache.get(1L, this::load);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void updateAndDeleteEventsShouldInvalidateButCreateShouldNot() {
+        productCache.get(1L, this::load);
+        productCache.get(2L, this::load);
+
+        productCache.onProductChanged(new ProductChangedEvent(ProductChangedEvent.Type.CREATED, 1L));
+        assertEquals(2, productCache.stats().getSize());
+
+        productCache.onProductChanged(new ProductChangedEvent(ProductChangedEvent.Type.UPDATED, 1L));
+        productCache.onProductChanged(new ProductChangedEvent(ProductChangedEvent.Type.DELETED, 2L));
+        assertEquals(0, productCache.stats().getSize());
+    }
+
+    @Test
+    void sizeBoundShouldEvictEntries() {
+        properties.setMaximumSize(2);
+        productCache = new ProductCache(properties);
+
+        for (long id = 1; id <= 10; id++) {
+            productCache.get(id, this::load);
+        }
+        productCache.nativeCache().cleanUp();
+
+        CacheStatsDto stats = productCache.stats();
+        assertTrue(stats.getSize() <= 2);
+        assertTrue(stats.getEvictionCount() >= 8);
+    }
+
+    @Test
+    void disabledCacheShouldAlwaysLoad() {
+        properties.setEnabled(false);
+        productCache = new ProductCache(properties);
+
+        productCache.get(1L, this::load);
+        productCache.get(1L, this::load);
+
+        assertEquals(2, loads.get());
+    }
+}
@@ -0,0 +1,149 @@
+package com.paygoal.exercie.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.paygoal.exercie.configuration.ListingCacheProperties;
+import com.paygoal.exercie.dto.ProductDto;
+import com.paygoal.exercie.dto.ProductFilter;
+import com.paygoal.exercie.dto.ProductPage;
+import com.paygoal.exercie.event.ProductChangedEvent;
+import com.paygoal.exercie.exception.BadRequestException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProductListingCacheTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ListingCacheProperties properties = new ListingCacheProperties();
+    private final List<Runnable> backgroundTasks = new ArrayList<>();
+    private final AtomicInteger loads = new AtomicInteger();
+    private ProductListingCache listingCache;
+
+    @BeforeEach
+    void setUp() {
+        listingCache = new ProductListingCache(properties, objectMapper, backgroundTasks::add);
+    }
+
+    @Test
+    void hitsShouldServeTheSameBytesUntilAWriteCommits() throws IOException {
+        ProductListingCache.Listing first = listingCache.get(new ProductFilter(), null, 20, page("first"));
+        ProductListingCache.Listing second = listingCache.get(new ProductFilter(), null, 20, page("second"));
+
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+        assertEquals("first", objectMapper.readTree(first.getJson()).get(0).get("name").asText());
+        assertArrayEquals(first.getJson(), new GZIPInputStream(new ByteArrayInputStream(first.getGzip())).readAllBytes());
+
+        changed();
+        ProductListingCache.Listing third = listingCache.get(new ProductFilter(), null, 20, page("third"));
+        assertEquals(2, loads.get());
+        assertEquals("third", objectMapper.readTree(third.getJson()).get(0).get("name").asText());
+    }
+
+    @Test
+    void eachQueryShouldHaveItsOwnEntry() {
+        listingCache.get(new ProductFilter(), null, 20, page("all"));
+        listingCache.get(ProductFilter.builder().inStock(true).build(), null, 20, page("in stock"));
+        listingCache.get(new ProductFilter(), "cursor", 20, page("second page"));
+        listingCache.get(new ProductFilter(), null, 50, page("bigger page"));
+        listingCache.get(ProductFilter.builder().inStock(true).build(), null, 20, page("in stock"));
+
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    void writeCommittedDuringTheBuildShouldLeaveTheEntryStale() {
+        listingCache.get(new ProductFilter(), null, 20, () -> {
+            ProductPage page = page("before the write").get();
+            changed();
+            return page;
+        });
+
+        listingCache.get(new ProductFilter(), null, 20, page("after the write"));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void loaderFailuresShouldNotBeCached() {
+        Supplier<ProductPage> invalid = () -> {
+            loads.incrementAndGet();
+            throw new BadRequestException("Invalid cursor: broken");
+        };
+
+        assertThrows(BadRequestException.class, () -> listingCache.get(new ProductFilter(), "broken", 20, invalid));
+        assertThrows(BadRequestException.class, () -> listingCache.get(new ProductFilter(), "broken", 20, invalid));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void staleWhileRevalidateShouldServeTheOldBytesDuringASingleRebuild() throws IOException {
+        properties.setStaleWhileRevalidate(true);
+        ProductListingCache.Listing old = listingCache.get(new ProductFilter(), null, 20, page("old"));
+        changed();
+
+        assertSame(old, listingCache.get(new ProductFilter(), null, 20, page("new")));
+        assertSame(old, listingCache.get(new ProductFilter(), null, 20, page("new")));
+        assertEquals(1, backgroundTasks.size());
+        assertEquals(1, loads.get());
+
+        backgroundTasks.remove(0).run();
+        ProductListingCache.Listing rebuilt = listingCache.get(new ProductFilter(), null, 20, page("newer"));
+        assertEquals("new", objectMapper.readTree(rebuilt.getJson()).get(0).get("name").asText());
+        assertTrue(backgroundTasks.isEmpty());
+    }
+
+    @Test
+    void failedBackgroundRebuildShouldBeRetriedByTheNextReader() {
+        properties.setStaleWhileRevalidate(true);
+        ProductListingCache.Listing old = listingCache.get(new ProductFilter(), null, 20, page("old"));
+        changed();
+
+        listingCache.get(new ProductFilter(), null, 20, () -> {
+            throw new IllegalStateException("database down");
+        });
+        backgroundTasks.remove(0).run();
+
+        assertSame(old, listingCache.get(new ProductFilter(), null, 20, page("new")));
+        assertEquals(1, backgroundTasks.size());
+    }
+
+    @Test
+    void acceptsGzipShouldFollowTheQualityValues() {
+        assertTrue(ProductListingCache.acceptsGzip("gzip, deflate, br"));
+        assertTrue(ProductListingCache.acceptsGzip("br;q=1.0, GZIP;q=0.5"));
+        assertTrue(ProductListingCache.acceptsGzip("*"));
+        assertFalse(ProductListingCache.acceptsGzip(null));
+        assertFalse(ProductListingCache.acceptsGzip("deflate, br"));
+        assertFalse(ProductListingCache.acceptsGzip("gzip;q=0"));
+        assertFalse(ProductListingCache.acceptsGzip("identity"));
+    }
+
+    private void changed() {
+        listingCache.onProductChanged(new ProductChangedEvent(ProductChangedEvent.Type.UPDATED, 1L));
+    }
+
+    private Supplier<ProductPage> page(String name) {
+        return () -> {
+            loads.incrementAndGet();
+            return ProductPage.builder()
+                    .items(List.of(ProductDto.builder()
+                            .id(1L)
+                            .name(name)
+                            .price(new BigDecimal("10.00"))
+                            .stock(1)
+                            .version((long) loads.get())
+                            .build()))
+                    .build();
+        };
+    }
+}
@@ -0,0 +1,160 @@
+package com.paygoal.exercie.cache;
+
+import com.paygoal.exercie.dto.CoalescingStatsDto;
+import com.paygoal.exercie.dto.ProductDto;
+import com.paygoal.exercie.event.ProductChangedEvent;
+import com.paygoal.exercie.exception.ProductNotFoundException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProductLoadCoalescerTest {
+
+    private static final int CALLERS = 16;
+
+    private ProductLoadCoalescer coalescer;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        coalescer = new ProductLoadCoalescer();
+        executor = Executors.newFixedThreadPool(CALLERS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void concurrentLoadsOfSameIdShouldShareOneLoad() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        Function<Long, ProductDto> loader = id -> {
+            loads.incrementAndGet();
+            awaitQuietly(release);
+            return ProductDto.builder().id(id).name("viral").build();
+        };
+
+        List<Future<ProductDto>> results = submitCallers(7L, loader);
+        waitForCollapsed(CALLERS - 1);
+        release.countDown();
+
+        for (Future<ProductDto> result : results) {
+            assertEquals("viral", result.get(5, TimeUnit.SECONDS).getName());
+        }
+        CoalescingStatsDto stats = coalescer.stats();
+        assertEquals(1, loads.get());
+        assertEquals(1, stats.getLoads());
+        assertEquals(CALLERS - 1, stats.getCollapsed());
+        assertEquals(CALLERS - 1, stats.getCollapsedByProduct().get(7L));
+        assertEquals(0, stats.getInFlight());
+    }
+
+    @Test
+    void notFoundShouldBeSharedWithEveryWaitingCaller() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Function<Long, ProductDto> loader = id -> {
+            awaitQuietly(release);
+            throw new ProductNotFoundException("Product not found with id: " + id);
+        };
+
+        List<Future<ProductDto>> results = submitCallers(99L, loader);
+        waitForCollapsed(CALLERS - 1);
+        release.countDown();
+
+        for (Future<ProductDto> result : results) {
+            ExecutionException ex = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+            assertTrue(ex.getCause() instanceof ProductNotFoundException);
+        }
+        assertEquals(1, coalescer.stats().getLoads());
+    }
+
+    @Test
+    void errorShouldReachEveryWaitingCallerAndClearTheLoad() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Function<Long, ProductDto> loader = id -> {
+            awaitQuietly(release);
+            throw new StackOverflowError();
+        };
+
+        List<Future<ProductDto>> results = submitCallers(98L, loader);
+        waitForCollapsed(CALLERS - 1);
+        release.countDown();
+
+        for (Future<ProductDto> result : results) {
+            ExecutionException ex = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+            assertTrue(ex.getCause() instanceof StackOverflowError);
+        }
+        assertEquals(0, coalescer.stats().getInFlight());
+        assertEquals("reloaded", coalescer.load(98L, id -> ProductDto.builder().id(id).name("reloaded").build()).getName());
+    }
+
+    @Test
+    void sequentialLoadsShouldNotBeCoalesced() {
+        AtomicInteger loads = new AtomicInteger();
+
+        coalescer.load(1L, id -> ProductDto.builder().id(id).name("load " + loads.incrementAndGet()).build());
+        ProductDto second = coalescer.load(1L, id -> ProductDto.builder().id(id).name("load " + loads.incrementAndGet()).build());
+
+        assertEquals("load 2", second.getName());
+        assertEquals(0, coalescer.stats().getCollapsed());
+    }
+
+    @Test
+    void committedChangeShouldDetachCallersFromInFlightLoad() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<ProductDto> stale = executor.submit(() -> coalescer.load(3L, id -> {
+            started.countDown();
+            awaitQuietly(release);
+            return ProductDto.builder().id(id).name("before commit").build();
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        coalescer.onProductChanged(new ProductChangedEvent(ProductChangedEvent.Type.UPDATED, 3L));
+        ProductDto fresh = coalescer.load(3L, id -> ProductDto.builder().id(id).name("after commit").build());
+        release.countDown();
+
+        assertEquals("after commit", fresh.getName());
+        assertEquals("before commit", stale.get(5, TimeUnit.SECONDS).getName());
+        assertEquals(0, coalescer.stats().getCollapsed());
+    }
+
+    private List<Future<ProductDto>> submitCallers(Long id, Function<Long, ProductDto> loader) {
+        List<Future<ProductDto>> results = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            results.add(executor.submit(() -> coalescer.load(id, loader)));
+        }
+        return results;
+    }
+
+    private void waitForCollapsed(long expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (coalescer.stats().getCollapsed() < expected) {
+            assertTrue(System.nanoTime() < deadline, "callers never joined the in-flight load");
+            Thread.sleep(1);
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.paygoal.exercie.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.paygoal.exercie.dto.PriceIndexCheckDto;
+import com.paygoal.exercie.dto.ProductDto;
+import com.paygoal.exercie.dto.ProductFilter;
+import com.paygoal.exercie.dto.ProductPage;
+import com.paygoal.exercie.event.ProductChangedEvent;
+import com.paygoal.exercie.search.ProductSearchIndex;
+import com.paygoal.exercie.search.ProductSuggester;
+import com.paygoal.exercie.service.ProductService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Listings served by the in-memory price index must page exactly like the database would.
+ */
+// Own database: rows are changed behind the application's back to exercise the consistency check
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:price-index;OPTIMIZE_REUSE_RESULTS=FALSE",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "products.seed.count=" + ProductPriceIndexTest.PRODUCTS,
+        "products.price-index.enabled=true",
+        // Writes reach the index when a test refreshes it
+        "products.price-index.refresh-delay=1h",
+        // Only the price index reloads while statements are being counted
+        "products.search.refresh-delay=1h"
+})
+public class ProductPriceIndexTest {
+
+    static final int PRODUCTS = 2_000;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductPriceIndex priceIndex;
+
+    @Autowired
+    private ProductSearchIndex searchIndex;
+
+    @Autowired
+    private ProductSuggester suggester;
+
+    @Autowired
+    private ProductListingCache listingCache;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @BeforeEach
+    void setUp() {
+        priceIndex.refresh();
+        searchIndex.refresh();
+        suggester.refresh();
+    }
+
+    @Test
+    void startupShouldLoadTheWholeTable() {
+        assertTrue(priceIndex.isServing());
+        assertEquals(count(), priceIndex.size());
+    }
+
+    @Test
+    void pagesShouldFollowTheDatabaseOrder() {
+        assertEquals(jdbcTemplate.queryForList("SELECT id FROM products ORDER BY price, id", Long.class),
+                allPages(new ProductFilter()));
+
+        BigDecimal min = new BigDecimal("100");
+        BigDecimal max = new BigDecimal("2000");
+        assertEquals(jdbcTemplate.queryForList("SELECT id FROM products WHERE price BETWEEN ? AND ? ORDER BY price, id",
+                        Long.class, min, max),
+                allPages(ProductFilter.builder().minPrice(min).maxPrice(max).build()));
+    }
+
+    @Test
+    void servedPagesShouldNotQueryTheDatabase() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        ProductPage first = productService.findPageOrderedByPrice(null, 50);
+        productService.findPageOrderedByPrice(first.getNextCursor(), 50);
+
+        assertEquals(0, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void committedWritesShouldReachTheIndex() {
+        ProductDto created = productService.create(ProductDto.builder()
+                .name("Priced below everything")
+                .price(new BigDecimal("0.01"))
+                .stock(1)
+                .build());
+        priceIndex.refresh();
+        assertEquals(created.getId(), firstPageIds().get(0));
+
+        productService.update(created.getId(), ProductDto.builder()
+                .name("Priced below everything")
+                .price(new BigDecimal("999999.99"))
+                .stock(1)
+                .build());
+        priceIndex.refresh();
+        assertFalse(firstPageIds().contains(created.getId()));
+        assertEquals(new BigDecimal("999999.99"), priceIndex.page(new BigDecimal("999999.99"), null, null, null, 1)
+                .get(0).getPrice());
+
+        productService.delete(created.getId());
+        priceIndex.refresh();
+        assertTrue(priceIndex.page(new BigDecimal("999999.99"), null, null, null, 1).isEmpty());
+        assertTrue(priceIndex.check().isConsistent());
+    }
+
+    @Test
+    void listingCachedBeforeTheIndexAppliedAWriteShouldBeRebuiltAfterwards() throws IOException {
+        ProductDto created = productService.create(ProductDto.builder()
+                .name("Listed below everything")
+                .price(new BigDecimal("0.01"))
+                .stock(1)
+                .build());
+
+        // Cached under the version of the write, but the index does not have it yet
+        assertNotEquals(created.getId(), firstCachedId());
+
+        priceIndex.refresh();
+        assertEquals(created.getId(), firstCachedId());
+    }
+
+    @Test
+    void checkShouldReportRowsChangedBehindTheIndex() {
+        List<Long> ids = jdbcTemplate.queryForList("SELECT id FROM products ORDER BY id LIMIT 2", Long.class);
+        Long repriced = ids.get(0);
+        Long deleted = ids.get(1);
+        jdbcTemplate.update("UPDATE products SET price = price + 1 WHERE id = ?", repriced);
+        jdbcTemplate.update("DELETE FROM products WHERE id = ?", deleted);
+
+        PriceIndexCheckDto report = priceIndex.check();
+
+        assertFalse(report.isConsistent());
+        assertEquals(List.of(repriced), report.getStaleIds());
+        assertEquals(List.of(deleted), report.getExtraIds());
+        assertTrue(report.getMissingIds().isEmpty());
+        assertEquals(count(), report.getTableRows());
+
+        // The events the direct writes skipped bring the index back in line
+        priceIndex.onProductChanged(new ProductChangedEvent(ProductChangedEvent.Type.UPDATED, repriced));
+        priceIndex.onProductChanged(new ProductChangedEvent(ProductChangedEvent.Type.DELETED, deleted));
+        assertTrue(priceIndex.check().isConsistent());
+    }
+
+    private List<Long> allPages(ProductFilter filter) {
+        List<Long> ids = new ArrayList<>();
+        String cursor = null;
+        do {
+            ProductPage page = productService.findPageOrderedByPrice(filter, cursor, 100);
+            page.getItems().forEach(product -> ids.add(product.getId()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return ids;
+    }
+
+    private List<Long> firstPageIds() {
+        return productService.findPageOrderedByPrice(null, 20).getItems().stream()
+                .map(ProductDto::getId)
+                .collect(Collectors.toList());
+    }
+
+    private long firstCachedId() throws IOException {
+        ProductFilter filter = new ProductFilter();
+        byte[] json = listingCache.get(filter, null, 20, () -> productService.findPageOrderedByPrice(filter, null, 20)).getJson();
+        return objectMapper.readTree(json).get(0).get("id").asLong();
+    }
+
+    private long count() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM products", Long.class);
+    }
+}
@@ -0,0 +1,104 @@
+package com.paygoal.exercie.configuration;
+
+import com.paygoal.exercie.PaygoalExerciseApplication;
+import org.junit.jupiter.api.Test;
+import org.springframework.asm.ClassReader;
+import org.springframework.asm.ClassVisitor;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.core.task.AsyncTaskExecutor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class VirtualThreadConfigTest {
+
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withUserConfiguration(VirtualThreadConfig.class)
+            .withPropertyValues("products.virtual-threads.enabled=true");
+
+    @Test
+    void enablingShouldFailAtStartupBeforeJava21() {
+        assumeFalse(VirtualThreads.isSupported());
+
+        contextRunner.run(context -> {
+            assertNotNull(context.getStartupFailure());
+            assertTrue(context.getStartupFailure().getMessage().contains("needs a Java 21 runtime"));
+        });
+    }
+
+    @Test
+    void enablingShouldRunRequestsAndTasksOnVirtualThreads() {
+        assumeTrue(VirtualThreads.isSupported());
+
+        contextRunner.run(context -> {
+            assertNotNull(context.getBean(TomcatProtocolHandlerCustomizer.class));
+            AsyncTaskExecutor executor = context.getBean(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME,
+                    AsyncTaskExecutor.class);
+            assertTrue(executor.submit(() -> VirtualThreads.isVirtual(Thread.currentThread())).get());
+        });
+    }
+
+    @Test
+    void disabledShouldLeaveTheThreadPoolsAlone() {
+        new ApplicationContextRunner()
+                .withUserConfiguration(VirtualThreadConfig.class)
+                .run(context -> assertTrue(context.getBeansOfType(TomcatProtocolHandlerCustomizer.class).isEmpty()));
+    }
+
+    // A monitor held across JDBC or a sleep pins the carrier thread: use java.util.concurrent locks instead
+    @Test
+    void applicationCodeShouldNotHoldMonitors() throws Exception {
+        Path classes = Paths.get(PaygoalExerciseApplication.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        List<String> monitors = new ArrayList<>();
+        List<Path> classFiles;
+        try (Stream<Path> files = Files.walk(classes)) {
+            classFiles = files.filter(file -> file.toString().endsWith(".class")).collect(Collectors.toList());
+        }
+        for (Path classFile : classFiles) {
+            monitors.addAll(monitorsIn(classFile));
+        }
+
+        assertFalse(classFiles.isEmpty());
+        assertEquals(List.of(), monitors);
+    }
+
+    private static List<String> monitorsIn(Path classFile) throws IOException {
+        List<String> monitors = new ArrayList<>();
+        try (InputStream in = Files.newInputStream(classFile)) {
+            ClassReader reader = new ClassReader(in);
+            String className = reader.getClassName().replace('/', '.');
+            reader.accept(new ClassVisitor(Opcodes.ASM9) {
+                @Override
+                public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                    if ((access & Opcodes.ACC_SYNCHRONIZED) != 0) {
+                        monitors.add(className + "." + name + " is synchronized");
+                    }
+                    return new MethodVisitor(Opcodes.ASM9) {
+                        @Override
+                        public void visitInsn(int opcode) {
+                            if (opcode == Opcodes.MONITORENTER) {
+                                monitors.add(className + "." + name + " has a synchronized block");
+                            }
+                        }
+                    };
+                }
+            }, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        }
+        return monitors;
+    }
+}
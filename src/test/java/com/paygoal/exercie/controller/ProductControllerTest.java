@@ -1,27 +1,67 @@
 package com.paygoal.exercie.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.google.protobuf.ByteString;
+import com.paygoal.exercie.cache.ProductListingCache;
+import com.paygoal.exercie.dto.ProductBatchRequest;
 import com.paygoal.exercie.dto.ProductDto;
+import com.paygoal.exercie.dto.ProductFilter;
+import com.paygoal.exercie.dto.ProductLookupResult;
+import com.paygoal.exercie.dto.ProductPage;
+import com.paygoal.exercie.dto.ProductSearchPage;
+import com.paygoal.exercie.dto.ProductSuggestion;
+import com.paygoal.exercie.dto.StockDto;
+import com.paygoal.exercie.dto.StockRequest;
+import com.paygoal.exercie.exception.BadRequestException;
+import com.paygoal.exercie.exception.OutOfStockException;
+import com.paygoal.exercie.exception.PreconditionFailedException;
+import com.paygoal.exercie.feed.ProductChangeFeed;
+import com.paygoal.exercie.proto.Decimal;
+import com.paygoal.exercie.proto.ErrorResponse;
+import com.paygoal.exercie.proto.Product;
+import com.paygoal.exercie.proto.ProductList;
+import com.paygoal.exercie.service.ProductGroupCommitter;
 import com.paygoal.exercie.service.ProductService;
+import com.paygoal.exercie.stock.StockWriteBehind;
+import com.paygoal.exercie.utils.ProductETags;
+import com.paygoal.exercie.utils.ProductMergePatch;
+import com.paygoal.exercie.utils.ProductProtobufHttpMessageConverter;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 
 import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @WebMvcTest(ProductController.class)
+@Import(ProductMergePatch.class)
 public class ProductControllerTest {
 
     @Autowired
@@ -30,6 +70,20 @@ public class ProductControllerTest {
     @MockBean
     private ProductService productService;
 
+    // Disabled as a mock, so the listing tests go through the service
+    @MockBean
+    private ProductListingCache listingCache;
+
+    // Disabled as a mock as well, writes go straight to the service
+    @MockBean
+    private ProductGroupCommitter groupCommitter;
+
+    @MockBean
+    private StockWriteBehind stockWriteBehind;
+
+    @MockBean
+    private ProductChangeFeed changeFeed;
+
     @Autowired
     private ObjectMapper objectMapper;
 
@@ -101,6 +155,57 @@ public class ProductControllerTest {
         verify(productService, times(1)).create(any(ProductDto.class));
     }
 
+    @Test
+    void writesShouldGoThroughTheGroupCommitWhenEnabled() throws Exception {
+        when(groupCommitter.isEnabled()).thenReturn(true);
+        when(groupCommitter.create(any(ProductDto.class))).thenReturn(testProductDto);
+        when(groupCommitter.update(eq(1L), any(ProductDto.class), eq(Set.of(4L)))).thenReturn(testProductDto);
+
+        mockMvc.perform(post("/api/products")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(testProductDto)))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.id").value(1));
+        mockMvc.perform(put("/api/products/1")
+                        .header(HttpHeaders.IF_MATCH, "\"4\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(testProductDto)))
+                .andExpect(status().isOk());
+
+        verifyNoInteractions(productService);
+    }
+
+    @Test
+    void createProductsShouldCreateBatch() throws Exception {
+        when(productService.createAll(anyList())).thenReturn(productDtoList);
+
+        mockMvc.perform(post("/api/products/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new ProductBatchRequest(productDtoList))))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[1].name").value("Product 2"));
+
+        verify(productService, times(1)).createAll(productDtoList);
+    }
+
+    @Test
+    void createProductsWithInvalidItemShouldReportItemErrors() throws Exception {
+        ProductDto invalid = ProductDto.builder()
+                .name("Invalid")
+                .price(new BigDecimal("-1"))
+                .stock(1)
+                .build();
+
+        mockMvc.perform(post("/api/products/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new ProductBatchRequest(Arrays.asList(testProductDto, invalid)))))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.errors['products[1].price']").value("Price must be greater than 0"));
+
+        verify(productService, never()).createAll(anyList());
+    }
+
     @Test
     void updateShouldUpdateAndReturnProduct() throws Exception {
         ProductDto updatedProductDto = ProductDto.builder()
@@ -111,7 +216,7 @@ public class ProductControllerTest {
                 .stock(15)
                 .build();
 
-        when(productService.update(eq(1L), any(ProductDto.class))).thenReturn(updatedProductDto);
+        when(productService.update(eq(1L), any(ProductDto.class), isNull())).thenReturn(updatedProductDto);
 
         mockMvc.perform(put("/api/products/1")
                         .contentType(MediaType.APPLICATION_JSON)
@@ -120,29 +225,327 @@ public class ProductControllerTest {
                 .andExpect(jsonPath("$.name").value("Updated Product"))
                 .andExpect(jsonPath("$.price").value(79.99));
 
-        verify(productService, times(1)).update(eq(1L), any(ProductDto.class));
+        verify(productService, times(1)).update(eq(1L), any(ProductDto.class), isNull());
+    }
+
+    @Test
+    void updateWithIfMatchShouldPassExpectedVersions() throws Exception {
+        when(productService.update(eq(1L), any(ProductDto.class), eq(Set.of(3L)))).thenReturn(testProductDto);
+
+        mockMvc.perform(put("/api/products/1")
+                        .header(HttpHeaders.IF_MATCH, "\"3\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(testProductDto)))
+                .andExpect(status().isOk());
+
+        verify(productService, times(1)).update(eq(1L), any(ProductDto.class), eq(Set.of(3L)));
+    }
+
+    @Test
+    void updateWithStaleIfMatchShouldReturnPreconditionFailed() throws Exception {
+        when(productService.update(eq(1L), any(ProductDto.class), eq(Set.of(2L))))
+                .thenThrow(new PreconditionFailedException("Product 1 has been modified, current ETag is \"3\""));
+
+        mockMvc.perform(put("/api/products/1")
+                        .header(HttpHeaders.IF_MATCH, "\"2\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(testProductDto)))
+                .andExpect(status().isPreconditionFailed())
+                .andExpect(jsonPath("$.status").value(412));
     }
 
     @Test
     void deleteShouldReturnNoContent() throws Exception {
-        doNothing().when(productService).delete(1L);
+        doNothing().when(productService).delete(1L, null);
 
         mockMvc.perform(delete("/api/products/1"))
                 .andExpect(status().isNoContent());
 
-        verify(productService, times(1)).delete(1L);
+        verify(productService, times(1)).delete(1L, null);
+    }
+
+    @Test
+    void deleteWithIfMatchShouldPassExpectedVersions() throws Exception {
+        mockMvc.perform(delete("/api/products/1").header(HttpHeaders.IF_MATCH, "W/\"1\", \"4\""))
+                .andExpect(status().isNoContent());
+
+        verify(productService, times(1)).delete(1L, Set.of(4L));
+    }
+
+    @Test
+    void findByIdShouldReturnETag() throws Exception {
+        testProductDto.setVersion(3L);
+        when(productService.findById(1L)).thenReturn(testProductDto);
+
+        mockMvc.perform(get("/api/products/1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"3\""))
+                .andExpect(jsonPath("$.version").doesNotExist());
+    }
+
+    @Test
+    void findByIdWithMatchingIfNoneMatchShouldNotLoadProduct() throws Exception {
+        when(productService.findVersionById(1L)).thenReturn(3L);
+
+        mockMvc.perform(get("/api/products/1").header(HttpHeaders.IF_NONE_MATCH, "\"3\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"3\""))
+                .andExpect(content().string(""));
+
+        verify(productService, never()).findById(any());
+    }
+
+    @Test
+    void findByIdWithStaleIfNoneMatchShouldReturnProduct() throws Exception {
+        testProductDto.setVersion(4L);
+        when(productService.findVersionById(1L)).thenReturn(4L);
+        when(productService.findById(1L)).thenReturn(testProductDto);
+
+        mockMvc.perform(get("/api/products/1").header(HttpHeaders.IF_NONE_MATCH, "\"3\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"4\""))
+                .andExpect(jsonPath("$.name").value("Test Product"));
+    }
+
+    @Test
+    void searchShouldReturnRankedPage() throws Exception {
+        when(productService.search("lampara", 1, 2)).thenReturn(ProductSearchPage.builder()
+                .items(productDtoList).total(5).page(1).size(2).build());
+
+        mockMvc.perform(get("/api/products/search").param("q", "lampara").param("page", "1").param("size", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items[0].name").value("Product 1"))
+                .andExpect(jsonPath("$.total").value(5))
+                .andExpect(jsonPath("$.page").value(1));
+    }
+
+    @Test
+    void searchWithBlankQueryShouldReturnBadRequest() throws Exception {
+        when(productService.search(" ", null, null))
+                .thenThrow(new BadRequestException("Search query must not be blank"));
+
+        mockMvc.perform(get("/api/products/search").param("q", " "))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("Search query must not be blank"));
+    }
+
+    @Test
+    void suggestShouldReturnSuggestions() throws Exception {
+        when(productService.suggest("lamp", 5)).thenReturn(List.of(
+                new ProductSuggestion(4L, "Lámpara de pie", 3, new BigDecimal("30.00"))));
+
+        mockMvc.perform(get("/api/products/suggest").param("prefix", "lamp").param("limit", "5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value(4))
+                .andExpect(jsonPath("$[0].name").value("Lámpara de pie"));
     }
 
     @Test
     void findAllOrderedByPriceShouldReturnSortedProducts() throws Exception {
-        when(productService.findAllOrderedByPrice()).thenReturn(productDtoList);
+        when(productService.findPageOrderedByPrice(new ProductFilter(), null, null))
+                .thenReturn(ProductPage.builder().items(productDtoList).build());
 
         mockMvc.perform(get("/api/products"))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$[0].name").value("Product 1"))
-                .andExpect(jsonPath("$[1].name").value("Product 2"));
+                .andExpect(jsonPath("$[1].name").value("Product 2"))
+                .andExpect(header().doesNotExist(ProductController.NEXT_CURSOR_HEADER));
+
+        verify(productService, times(1)).findPageOrderedByPrice(new ProductFilter(), null, null);
+    }
+
+    @Test
+    void findAllOrderedByPriceWithMatchingIfNoneMatchShouldReturnNotModified() throws Exception {
+        ProductPage page = ProductPage.builder().items(productDtoList).build();
+        when(productService.findPageOrderedByPrice(new ProductFilter(), null, null)).thenReturn(page);
+
+        mockMvc.perform(get("/api/products")
+                        .header(HttpHeaders.IF_NONE_MATCH, ProductETags.of(productDtoList, null)))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    void findAllOrderedByPriceShouldExposeNextCursorHeader() throws Exception {
+        when(productService.findPageOrderedByPrice(new ProductFilter(), "abc", 2))
+                .thenReturn(ProductPage.builder().items(productDtoList).nextCursor("def").build());
+
+        mockMvc.perform(get("/api/products").param("cursor", "abc").param("size", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(header().string(ProductController.NEXT_CURSOR_HEADER, "def"));
+
+        verify(productService, times(1)).findPageOrderedByPrice(new ProductFilter(), "abc", 2);
+    }
+
+    @Test
+    void findAllOrderedByPriceShouldPassFilters() throws Exception {
+        ProductFilter filter = ProductFilter.builder()
+                .minPrice(new BigDecimal("10.5"))
+                .maxPrice(new BigDecimal("99"))
+                .inStock(true)
+                .maxStock(3)
+                .namePrefix("Mesa")
+                .build();
+        when(productService.findPageOrderedByPrice(filter, null, null))
+                .thenReturn(ProductPage.builder().items(productDtoList.subList(0, 1)).build());
+
+        mockMvc.perform(get("/api/products")
+                        .param("minPrice", "10.5")
+                        .param("maxPrice", "99")
+                        .param("inStock", "true")
+                        .param("maxStock", "3")
+                        .param("namePrefix", "Mesa"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1));
+    }
 
-        verify(productService, times(1)).findAllOrderedByPrice();
+    @Test
+    void cachedListingShouldBeWrittenAsStoredBytes() throws Exception {
+        byte[] json = objectMapper.writeValueAsBytes(productDtoList);
+        byte[] gzip = new byte[]{0x1f, (byte) 0x8b, 1, 2, 3};
+        when(listingCache.isEnabled()).thenReturn(true);
+        when(listingCache.get(eq(new ProductFilter()), isNull(), isNull(), any()))
+                .thenReturn(new ProductListingCache.Listing(3, "\"abc\"", "next", json, gzip));
+
+        mockMvc.perform(get("/api/products"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(content().bytes(json))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"abc\""))
+                .andExpect(header().string(ProductController.NEXT_CURSOR_HEADER, "next"))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING))
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING));
+
+        mockMvc.perform(get("/api/products").header(HttpHeaders.ACCEPT_ENCODING, "br, gzip;q=0.8"))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(gzip))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"abc-gzip\""))
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING));
+
+        mockMvc.perform(get("/api/products").header(HttpHeaders.IF_NONE_MATCH, "\"abc\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"abc\""))
+                .andExpect(content().string(""));
+        // Either encoding validates the copy a cache holds, the 304 names the one that matched
+        mockMvc.perform(get("/api/products")
+                        .header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"abc\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"abc\""))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING))
+                .andExpect(content().string(""));
+        mockMvc.perform(get("/api/products").header(HttpHeaders.IF_NONE_MATCH, "W/\"abc-gzip\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"abc-gzip\""));
+        mockMvc.perform(get("/api/products").header(HttpHeaders.IF_NONE_MATCH, "\"abd\""))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(json));
+        verifyNoInteractions(productService);
+    }
+
+    @Test
+    void findByIdShouldNegotiateBinaryFormats() throws Exception {
+        when(productService.findById(1L)).thenReturn(testProductDto);
+
+        byte[] protobuf = mockMvc.perform(get("/api/products/1").accept(ProductProtobufHttpMessageConverter.PROTOBUF))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(ProductProtobufHttpMessageConverter.PROTOBUF))
+                .andReturn().getResponse().getContentAsByteArray();
+        Product product = Product.parseFrom(protobuf);
+        assertEquals("Test Product", product.getName());
+        assertEquals(10, product.getStock());
+
+        byte[] cbor = mockMvc.perform(get("/api/products/1").accept("application/cbor"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/cbor"))
+                .andReturn().getResponse().getContentAsByteArray();
+        assertEquals(testProductDto, new ObjectMapper(new CBORFactory()).readValue(cbor, ProductDto.class));
+
+        byte[] smile = mockMvc.perform(get("/api/products/1").accept("application/x-jackson-smile"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-jackson-smile"))
+                .andReturn().getResponse().getContentAsByteArray();
+        assertEquals(testProductDto, new ObjectMapper(new SmileFactory()).readValue(smile, ProductDto.class));
+    }
+
+    @Test
+    void jsonShouldStayTheDefault() throws Exception {
+        when(productService.findById(1L)).thenReturn(testProductDto);
+
+        mockMvc.perform(get("/api/products/1"))
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON));
+        mockMvc.perform(get("/api/products/1").accept(MediaType.ALL))
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON));
+        mockMvc.perform(get("/api/products/1").header(HttpHeaders.ACCEPT, "application/x-protobuf;q=0.5, application/json"))
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON));
+    }
+
+    @Test
+    void createProductShouldReadProtobuf() throws Exception {
+        ProductDto newProduct = ProductDto.builder().name("Test Product").price(new BigDecimal("99.99")).stock(10).build();
+        when(productService.create(newProduct)).thenReturn(testProductDto);
+
+        byte[] created = mockMvc.perform(post("/api/products")
+                        .contentType(ProductProtobufHttpMessageConverter.PROTOBUF)
+                        .accept(ProductProtobufHttpMessageConverter.PROTOBUF)
+                        .content(Product.newBuilder()
+                                .setName("Test Product")
+                                .setPrice(Decimal.newBuilder().setUnscaled(ByteString.copyFrom(BigInteger.valueOf(9999).toByteArray())).setScale(2))
+                                .setStock(10)
+                                .build()
+                                .toByteArray()))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsByteArray();
+
+        assertEquals(1L, Product.parseFrom(created).getId());
+    }
+
+    @Test
+    void validationErrorsShouldBeWrittenAsProtobuf() throws Exception {
+        byte[] body = mockMvc.perform(post("/api/products")
+                        .contentType(ProductProtobufHttpMessageConverter.PROTOBUF)
+                        .accept(ProductProtobufHttpMessageConverter.PROTOBUF)
+                        .content(Product.newBuilder().setStock(1).build().toByteArray()))
+                .andExpect(status().isBadRequest())
+                .andReturn().getResponse().getContentAsByteArray();
+
+        ErrorResponse error = ErrorResponse.parseFrom(body);
+        assertEquals(400, error.getStatus());
+        assertTrue(error.getErrorsMap().containsKey("name"));
+        verifyNoInteractions(productService);
+    }
+
+    @Test
+    void cachedListingShouldOnlyAnswerJson() throws Exception {
+        when(listingCache.isEnabled()).thenReturn(true);
+        when(productService.findPageOrderedByPrice(new ProductFilter(), null, null))
+                .thenReturn(ProductPage.builder().items(productDtoList).build());
+
+        byte[] body = mockMvc.perform(get("/api/products").accept(ProductProtobufHttpMessageConverter.PROTOBUF))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(ProductProtobufHttpMessageConverter.PROTOBUF))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        assertEquals(2, ProductList.parseFrom(body).getProductsCount());
+        verify(listingCache, never()).get(any(), any(), any(), any());
+    }
+
+    @Test
+    void findAllOrderedByPriceWithInvalidFilterShouldReturnBadRequest() throws Exception {
+        mockMvc.perform(get("/api/products").param("minPrice", "cheap"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void findAllOrderedByPriceWithInvalidCursorShouldReturnBadRequest() throws Exception {
+        when(productService.findPageOrderedByPrice(new ProductFilter(), "broken", null))
+                .thenThrow(new BadRequestException("Invalid cursor: broken"));
+
+        mockMvc.perform(get("/api/products").param("cursor", "broken"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("Invalid cursor: broken"));
     }
 
     @Test
@@ -161,4 +564,199 @@ public class ProductControllerTest {
 
         verify(productService, never()).create(any(ProductDto.class));
     }
-}
\ No newline at end of file
+
+    @Test
+    void exportShouldStreamProductsAsNdjson() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<ProductDto> consumer = invocation.getArgument(0);
+            productDtoList.forEach(consumer);
+            return null;
+        }).when(productService).exportAll(any());
+
+        String body = mockMvc.perform(get("/api/products/export"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString();
+
+        String[] lines = body.split("\n");
+        assertEquals(2, lines.length);
+        assertEquals(productDtoList.get(0), objectMapper.readValue(lines[0], ProductDto.class));
+        assertEquals(productDtoList.get(1), objectMapper.readValue(lines[1], ProductDto.class));
+    }
+
+    @Test
+    void getByIdsShouldReturnLookupResult() throws Exception {
+        when(productService.findAllByIds(Arrays.asList(2L, 42L, 1L)))
+                .thenReturn(ProductLookupResult.builder()
+                        .products(Arrays.asList(productDtoList.get(1), productDtoList.get(0)))
+                        .missingIds(List.of(42L))
+                        .build());
+
+        mockMvc.perform(get("/api/products").param("ids", "2,42,1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.products[0].id").value(2))
+                .andExpect(jsonPath("$.products[1].id").value(1))
+                .andExpect(jsonPath("$.missingIds[0]").value(42));
+
+        verify(productService, never()).findPageOrderedByPrice(any(), any(), any());
+    }
+
+    @Test
+    void getByIdsWithInvalidIdShouldReturnBadRequest() throws Exception {
+        mockMvc.perform(get("/api/products").param("ids", "1,abc"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("Invalid value for parameter 'ids'"));
+    }
+
+    @Test
+    void lookupShouldReadIdsFromBody() throws Exception {
+        when(productService.findAllByIds(Arrays.asList(1L, 2L)))
+                .thenReturn(ProductLookupResult.builder().products(productDtoList).missingIds(List.of()).build());
+
+        mockMvc.perform(post("/api/products/lookup")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[1,2]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.products.length()").value(2))
+                .andExpect(jsonPath("$.missingIds").isEmpty());
+    }
+
+    @Test
+    void reserveStockShouldReturnRemainingStock() throws Exception {
+        when(productService.reserveStock(1L, 3)).thenReturn(new StockDto(1L, 7));
+
+        mockMvc.perform(post("/api/products/1/stock/reserve")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new StockRequest(3))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.productId").value(1))
+                .andExpect(jsonPath("$.stock").value(7));
+    }
+
+    @Test
+    void reserveStockShouldReturnConflictWhenOutOfStock() throws Exception {
+        when(productService.reserveStock(1L, 30)).thenThrow(new OutOfStockException("Not enough stock"));
+
+        mockMvc.perform(post("/api/products/1/stock/reserve")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new StockRequest(30))))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.status").value(409))
+                .andExpect(jsonPath("$.message").value("Not enough stock"));
+    }
+
+    @Test
+    void stockChangesShouldGoThroughTheWriteBehindWhenEnabled() throws Exception {
+        when(stockWriteBehind.isEnabled()).thenReturn(true);
+        when(stockWriteBehind.reserve(1L, 3)).thenReturn(new StockDto(1L, 7));
+        when(stockWriteBehind.release(1L, 2)).thenReturn(new StockDto(1L, 9));
+
+        mockMvc.perform(post("/api/products/1/stock/reserve")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new StockRequest(3))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.stock").value(7));
+        mockMvc.perform(post("/api/products/1/stock/release")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new StockRequest(2))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.stock").value(9));
+
+        verifyNoInteractions(productService);
+    }
+
+    @Test
+    void productWithPendingStockDeltasShouldHaveNoETag() throws Exception {
+        when(stockWriteBehind.isEnabled()).thenReturn(true);
+        when(stockWriteBehind.hasPendingDeltas(1L)).thenReturn(true);
+        when(productService.findById(1L)).thenReturn(testProductDto);
+
+        mockMvc.perform(get("/api/products/1").header(HttpHeaders.IF_NONE_MATCH, "\"0\""))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.ETAG));
+
+        verify(productService, never()).findVersionById(any());
+    }
+
+    @Test
+    void changesShouldBeNotFoundWhenTheFeedIsDisabled() throws Exception {
+        mockMvc.perform(get("/api/products/changes").accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(status().isNotFound());
+
+        verify(changeFeed, never()).subscribe(any());
+    }
+
+    @Test
+    void changesShouldResumeAfterTheLastEventId() throws Exception {
+        when(changeFeed.isEnabled()).thenReturn(true);
+        when(changeFeed.subscribe("1700000000000-41")).thenReturn(Optional.of(new ResponseBodyEmitter()));
+
+        mockMvc.perform(get("/api/products/changes")
+                        .accept(MediaType.TEXT_EVENT_STREAM)
+                        .header("Last-Event-ID", "1700000000000-41"))
+                .andExpect(request().asyncStarted());
+
+        verify(changeFeed, times(1)).subscribe("1700000000000-41");
+    }
+
+    @Test
+    void changesShouldBeUnavailableWhenTooManyStreamsAreOpen() throws Exception {
+        when(changeFeed.isEnabled()).thenReturn(true);
+        when(changeFeed.subscribe(null)).thenReturn(Optional.empty());
+
+        mockMvc.perform(get("/api/products/changes").accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(status().isServiceUnavailable());
+    }
+
+    @Test
+    void releaseStockWithInvalidQuantityShouldReturnBadRequest() throws Exception {
+        mockMvc.perform(post("/api/products/1/stock/release")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new StockRequest(0))))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.errors.quantity").value("Quantity must be greater than 0"));
+
+        verify(productService, never()).releaseStock(any(), anyInt());
+    }
+
+    @Test
+    void patchProductShouldPassOnlyPresentFields() throws Exception {
+        when(productService.patch(eq(1L), any())).thenReturn(testProductDto);
+
+        mockMvc.perform(patch("/api/products/1")
+                        .contentType(ProductMergePatch.MEDIA_TYPE)
+                        .content("{\"price\": 12.50, \"description\": null}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(1));
+
+        Map<String, Object> expected = new LinkedHashMap<>();
+        expected.put("price", new BigDecimal("12.5"));
+        expected.put("description", null);
+        verify(productService, times(1)).patch(1L, expected);
+    }
+
+    @Test
+    void patchProductWithInvalidFieldsShouldReturnBadRequest() throws Exception {
+        mockMvc.perform(patch("/api/products/1")
+                        .contentType(ProductMergePatch.MEDIA_TYPE)
+                        .content("{\"name\": \"\", \"price\": -1, \"stock\": null, \"color\": \"red\"}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.status").value(400))
+                .andExpect(jsonPath("$.errors.name").exists())
+                .andExpect(jsonPath("$.errors.price").exists())
+                .andExpect(jsonPath("$.errors.stock").value("Stock cannot be null"))
+                .andExpect(jsonPath("$.errors.color").value("Unknown field"));
+
+        verify(productService, never()).patch(any(), any());
+    }
+
+    @Test
+    void patchProductWithNonObjectBodyShouldReturnBadRequest() throws Exception {
+        mockMvc.perform(patch("/api/products/1")
+                        .contentType(ProductMergePatch.MEDIA_TYPE)
+                        .content("[1, 2]"))
+                .andExpect(status().isBadRequest());
+
+        verify(productService, never()).patch(any(), any());
+    }
+}
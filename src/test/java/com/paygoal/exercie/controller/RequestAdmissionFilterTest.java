@@ -0,0 +1,100 @@
+package com.paygoal.exercie.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.paygoal.exercie.configuration.VirtualThreadProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RequestAdmissionFilterTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private RequestAdmissionFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        VirtualThreadProperties properties = new VirtualThreadProperties();
+        properties.setMaxConcurrentRequests(1);
+        properties.setAdmissionTimeout(Duration.ofMillis(20));
+        filter = new RequestAdmissionFilter(properties, objectMapper);
+        filter.bindTo(registry);
+    }
+
+    @Test
+    void requestsPastTheLimitShouldGetServiceUnavailable() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<MockHttpServletResponse> slow = executor.submit(() -> perform("/api/products/1", new HttpServlet() {
+                @Override
+                protected void service(HttpServletRequest request, HttpServletResponse response) {
+                    entered.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }));
+            assertTrue(entered.await(5, TimeUnit.SECONDS));
+            assertEquals(1.0, registry.get("products.requests.in.flight").gauge().value());
+
+            MockHttpServletResponse rejected = perform("/api/products/2", ok());
+            assertEquals(503, rejected.getStatus());
+            assertEquals("1", rejected.getHeader(HttpHeaders.RETRY_AFTER));
+            Map<?, ?> body = objectMapper.readValue(rejected.getContentAsByteArray(), Map.class);
+            assertEquals(503, body.get("status"));
+            assertEquals("Too many requests in progress, retry later", body.get("message"));
+            assertNotNull(body.get("timestamp"));
+
+            // Monitoring must still answer while the application is saturated
+            assertEquals(200, perform("/actuator/prometheus", ok()).getStatus());
+
+            release.countDown();
+            assertEquals(200, slow.get(5, TimeUnit.SECONDS).getStatus());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+
+        assertEquals(200, perform("/api/products/3", ok()).getStatus());
+        assertEquals(0.0, registry.get("products.requests.in.flight").gauge().value());
+        assertEquals(1.0, registry.get("products.requests.rejected").functionCounter().count());
+    }
+
+    private static HttpServlet ok() {
+        return new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest request, HttpServletResponse response) {
+                response.setStatus(200);
+            }
+        };
+    }
+
+    private MockHttpServletResponse perform(String uri, HttpServlet servlet) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", uri);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain(servlet));
+        return response;
+    }
+}
@@ -3,7 +3,10 @@ package com.paygoal.exercie.exception;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.web.method.annotation.MethodArgumentTypeMismatchException;
 import java.util.Map;
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -30,6 +33,20 @@ public class GlobalExceptionHandlerTest {
         assertNotNull(body.get("timestamp"));
     }
 
+    @Test
+    void handleOutOfStockExceptionShouldReturnConflictStatus() {
+        OutOfStockException ex = new OutOfStockException("Not enough stock");
+
+        ResponseEntity<?> response = exceptionHandler.handleOutOfStockException(ex);
+
+        assertEquals(HttpStatus.CONFLICT, response.getStatusCode());
+
+        Map<String, Object> body = (Map<String, Object>) response.getBody();
+        assertEquals(409, body.get("status"));
+        assertEquals("Not enough stock", body.get("message"));
+        assertNotNull(body.get("timestamp"));
+    }
+
     @Test
     void handleBadRequestExceptionShouldReturnBadRequestStatus() {
         BadRequestException ex = new BadRequestException("Invalid request");
@@ -44,6 +61,35 @@ public class GlobalExceptionHandlerTest {
         assertNotNull(body.get("timestamp"));
     }
 
+    @Test
+    void handleTypeMismatchExceptionShouldReturnBadRequestStatus() {
+        MethodArgumentTypeMismatchException ex = new MethodArgumentTypeMismatchException("abc", Long.class, "id", null, null);
+
+        ResponseEntity<?> response = exceptionHandler.handleTypeMismatchException(ex);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+
+        Map<String, Object> body = (Map<String, Object>) response.getBody();
+        assertEquals(400, body.get("status"));
+        assertEquals("Invalid value for parameter 'id'", body.get("message"));
+        assertNotNull(body.get("timestamp"));
+    }
+
+    @Test
+    void handleCannotCreateTransactionExceptionShouldReturnServiceUnavailable() {
+        CannotCreateTransactionException ex = new CannotCreateTransactionException("Connection is not available");
+
+        ResponseEntity<?> response = exceptionHandler.handleCannotCreateTransactionException(ex);
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+        assertEquals("1", response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+
+        Map<String, Object> body = (Map<String, Object>) response.getBody();
+        assertEquals(503, body.get("status"));
+        assertEquals("Database busy, retry later", body.get("message"));
+        assertNotNull(body.get("timestamp"));
+    }
+
     @Test
     void handleGlobalExceptionShouldReturnInternalServerError() {
         Exception ex = new Exception("Something went wrong");
@@ -0,0 +1,335 @@
+package com.paygoal.exercie.feed;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.paygoal.exercie.configuration.ChangeFeedProperties;
+import com.paygoal.exercie.dto.ProductChangeDto;
+import com.paygoal.exercie.event.ProductChangedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProductChangeFeedTest {
+
+    private final ChangeFeedProperties properties = new ChangeFeedProperties();
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper().findAndRegisterModules();
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private ProductChangeFeed changeFeed;
+
+    @BeforeEach
+    void setUp() {
+        properties.setEnabled(true);
+        properties.setCapacity(8);
+        properties.setHeartbeat(Duration.ofHours(1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (changeFeed != null) {
+            changeFeed.shutdown();
+        }
+    }
+
+    @Test
+    void changesShouldBeStreamedInOrderWithTheirVersionAndFields() throws Exception {
+        start();
+        RecordingEmitter emitter = subscribe(null);
+
+        publish(ProductChangedEvent.Type.CREATED, 1L, 0L);
+        changeFeed.onProductChanged(new ProductChangedEvent(ProductChangedEvent.Type.UPDATED, 1L, 1L, List.of("price")));
+        publish(ProductChangedEvent.Type.DELETED, 1L, null);
+
+        String created = emitter.next();
+        String updated = emitter.next();
+        String deleted = emitter.next();
+        assertTrue(created.matches("id:\\d+-1\nevent:product-changed\ndata:CREATED 1 v0 \\[name, description, price, stock]\n\n"),
+                created);
+        assertTrue(updated.contains("-2\nevent:product-changed\ndata:UPDATED 1 v1 [price]"), updated);
+        assertTrue(deleted.contains("-3\nevent:product-changed\ndata:DELETED 1 vnull []"), deleted);
+        assertEquals(3.0, registry.get("products.change.feed.events").functionCounter().count());
+    }
+
+    @Test
+    void subscriberWithoutLastEventIdShouldOnlyGetNewChanges() throws Exception {
+        start();
+        publish(ProductChangedEvent.Type.CREATED, 1L, 0L);
+
+        RecordingEmitter emitter = subscribe(null);
+        publish(ProductChangedEvent.Type.CREATED, 2L, 0L);
+
+        assertTrue(emitter.next().contains("data:CREATED 2 "));
+        assertNull(emitter.poll());
+    }
+
+    @Test
+    void lastEventIdShouldResumeRightAfterIt() throws Exception {
+        start();
+        RecordingEmitter first = subscribe(null);
+        for (long id = 1; id <= 3; id++) {
+            publish(ProductChangedEvent.Type.CREATED, id, 0L);
+        }
+        String firstId = eventId(first.next());
+
+        RecordingEmitter resumed = subscribe(firstId);
+
+        assertTrue(resumed.next().contains("data:CREATED 2 "));
+        assertTrue(resumed.next().contains("data:CREATED 3 "));
+        assertNull(resumed.poll());
+    }
+
+    @Test
+    void consumerBehindTheRingShouldBeToldToResync() throws Exception {
+        start();
+        RecordingEmitter slow = subscribe(null);
+        slow.hold();
+        publish(ProductChangedEvent.Type.CREATED, 1L, 0L);
+        assertTrue(slow.sending.await(5, TimeUnit.SECONDS));
+
+        // Writers keep going while the consumer is stuck in its send
+        long start = System.nanoTime();
+        for (long id = 2; id <= 20; id++) {
+            publish(ProductChangedEvent.Type.CREATED, id, 0L);
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        slow.release();
+
+        assertTrue(slow.next().contains("data:CREATED 1 "));
+        String resync = slow.next();
+        assertTrue(resync.matches("event:resync\ndata:\\{\"lastEventId\":\"\\d+-20\"}\n\n"), resync);
+        assertTrue(slow.completed.await(5, TimeUnit.SECONDS));
+        assertEquals(1.0, registry.get("products.change.feed.resyncs").functionCounter().count());
+        assertEquals(0.0, registry.get("products.change.feed.subscribers").gauge().value());
+    }
+
+    @Test
+    void lastEventIdPastTheRingShouldResync() throws Exception {
+        start();
+        RecordingEmitter first = subscribe(null);
+        publish(ProductChangedEvent.Type.CREATED, 1L, 0L);
+        String firstId = eventId(first.next());
+        for (long id = 2; id <= 20; id++) {
+            publish(ProductChangedEvent.Type.CREATED, id, 0L);
+        }
+
+        RecordingEmitter resumed = subscribe(firstId);
+
+        assertTrue(resumed.next().startsWith("event:resync\n"));
+        assertTrue(resumed.completed.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void lastEventIdOfAnotherRunShouldResync() throws Exception {
+        start();
+        publish(ProductChangedEvent.Type.CREATED, 1L, 0L);
+
+        RecordingEmitter resumed = subscribe("1-1");
+
+        assertTrue(resumed.next().startsWith("event:resync\n"));
+        assertTrue(resumed.completed.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void newStreamShouldBeAcknowledgedAndThenGetHeartbeats() throws Exception {
+        properties.setHeartbeat(Duration.ofMillis(20));
+        start();
+
+        RecordingEmitter emitter = subscribe(null);
+
+        assertTrue(emitter.next(true).startsWith(":connected"));
+        assertTrue(emitter.next(true).startsWith(":heartbeat"));
+    }
+
+    @Test
+    void subscribersBeyondTheMaximumShouldBeRejected() throws Exception {
+        properties.setMaxSubscribers(1);
+        start();
+        subscribe(null);
+
+        assertTrue(changeFeed.subscribe(null, new RecordingEmitter()).isEmpty());
+    }
+
+    @Test
+    void concurrentSubscribersShouldNotExceedTheMaximum() throws Exception {
+        properties.setMaxSubscribers(4);
+        start();
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        CountDownLatch ready = new CountDownLatch(1);
+        AtomicInteger accepted = new AtomicInteger();
+        for (int i = 0; i < 16; i++) {
+            executor.execute(() -> {
+                try {
+                    ready.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                changeFeed.subscribe(null, new RecordingEmitter()).ifPresent(emitter -> accepted.incrementAndGet());
+            });
+        }
+        ready.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(4, accepted.get());
+        assertEquals(4.0, registry.get("products.change.feed.subscribers").gauge().value());
+    }
+
+    @Test
+    void closedStreamShouldMakeRoomForANewOne() throws Exception {
+        properties.setMaxSubscribers(1);
+        start();
+        RecordingEmitter resynced = subscribe("1-1");
+        assertTrue(resynced.completed.await(5, TimeUnit.SECONDS));
+
+        Optional<ResponseBodyEmitter> next = changeFeed.subscribe(null, new RecordingEmitter());
+
+        assertTrue(next.isPresent());
+        assertTrue(changeFeed.subscribe(null, new RecordingEmitter()).isEmpty());
+    }
+
+    @Test
+    void stopShouldCompleteEveryStreamEvenIfOneConnectionIsGone() throws Exception {
+        start();
+        RecordingEmitter[] emitters = new RecordingEmitter[4];
+        for (int i = 0; i < emitters.length; i++) {
+            emitters[i] = i % 2 == 0 ? new RecordingEmitter() : new GoneEmitter();
+            assertTrue(changeFeed.subscribe(null, emitters[i]).isPresent());
+        }
+
+        changeFeed.stop();
+
+        assertFalse(changeFeed.isRunning());
+        for (RecordingEmitter emitter : emitters) {
+            assertTrue(emitter.completed.await(5, TimeUnit.SECONDS));
+        }
+        assertEquals(0.0, registry.get("products.change.feed.subscribers").gauge().value());
+    }
+
+    private void start() {
+        changeFeed = new ProductChangeFeed(properties, OBJECT_MAPPER);
+        changeFeed.bindTo(registry);
+    }
+
+    private RecordingEmitter subscribe(String lastEventId) {
+        RecordingEmitter emitter = new RecordingEmitter();
+        assertTrue(changeFeed.subscribe(lastEventId, emitter).isPresent());
+        return emitter;
+    }
+
+    private void publish(ProductChangedEvent.Type type, Long id, Long version) {
+        changeFeed.onProductChanged(new ProductChangedEvent(type, id, version,
+                type == ProductChangedEvent.Type.DELETED ? List.of() : ProductChangedEvent.ALL_FIELDS));
+    }
+
+    private static String eventId(String event) {
+        return event.substring("id:".length(), event.indexOf('\n'));
+    }
+
+    /**
+     * Keeps each event as text, the change itself as "type id version fields". A held emitter blocks in send like a
+     * client that stopped reading.
+     */
+    // Completing it fails like a response whose connection the web server already closed
+    private static class GoneEmitter extends RecordingEmitter {
+
+        @Override
+        public void complete() {
+            super.complete();
+            throw new NullPointerException("socketWrapper is null");
+        }
+    }
+
+    private static class RecordingEmitter extends ResponseBodyEmitter {
+
+        final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+        volatile CountDownLatch sending = new CountDownLatch(1);
+        final CountDownLatch completed = new CountDownLatch(1);
+        volatile CountDownLatch gate;
+
+        @Override
+        public void send(Object text, MediaType mediaType) {
+            sending.countDown();
+            CountDownLatch held = gate;
+            if (held != null) {
+                try {
+                    held.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            // A batch of changes comes as one write, each event is recorded on its own
+            for (String event : ((String) text).split("(?<=\n\n)")) {
+                events.add(summarize(event));
+            }
+        }
+
+        private static String summarize(String event) {
+            int data = event.indexOf("data:{\"");
+            if (data < 0 || !event.contains("event:product-changed\n")) {
+                return event;
+            }
+            int end = event.indexOf('\n', data);
+            try {
+                ProductChangeDto change = OBJECT_MAPPER.readValue(event.substring(data + "data:".length(), end), ProductChangeDto.class);
+                return event.substring(0, data) + "data:" + change.getType() + " " + change.getProductId()
+                        + " v" + change.getVersion() + " " + change.getFields() + event.substring(end);
+            } catch (Exception ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        @Override
+        public void complete() {
+            completed.countDown();
+        }
+
+        // Blocks the sends after the acknowledgement of the new stream
+        void hold() throws InterruptedException {
+            assertTrue(next(true).startsWith(":connected"));
+            sending = new CountDownLatch(1);
+            gate = new CountDownLatch(1);
+        }
+
+        void release() {
+            gate.countDown();
+        }
+
+        // Next event, comments only when asked for
+        String next() throws InterruptedException {
+            return next(false);
+        }
+
+        String next(boolean comments) throws InterruptedException {
+            while (true) {
+                String event = events.poll(5, TimeUnit.SECONDS);
+                assertNotNull(event, "no event within 5 seconds");
+                if (comments || !event.startsWith(":")) {
+                    return event;
+                }
+            }
+        }
+
+        String poll() throws InterruptedException {
+            String event;
+            do {
+                event = events.poll(200, TimeUnit.MILLISECONDS);
+            } while (event != null && event.startsWith(":"));
+            return event;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.paygoal.exercie.journal;
+
+import com.paygoal.exercie.dto.ProductDto;
+import com.paygoal.exercie.service.ProductService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Committed writes journaled by the running application must come back when the in-memory table is lost and
+ * restored, which is what a restart does.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:product-journal;OPTIMIZE_REUSE_RESULTS=FALSE",
+        "products.journal.enabled=true"
+})
+public class ProductJournalRestoreTest {
+
+    private static Path directory;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductJournalRestore restore;
+
+    @Autowired
+    private ProductJournalWriter writer;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @DynamicPropertySource
+    static void journalDirectory(DynamicPropertyRegistry registry) throws IOException {
+        directory = Files.createTempDirectory("product-journal");
+        registry.add("products.journal.directory", directory::toString);
+    }
+
+    @Test
+    void committedWritesShouldBeBackAfterTheTableIsLost() {
+        ProductDto kept = create("mesa de journal");
+        ProductDto removed = create("silla de journal");
+        kept.setPrice(new BigDecimal("12.00"));
+        productService.update(kept.getId(), kept);
+        productService.reserveStock(kept.getId(), 1);
+        productService.delete(removed.getId());
+        Map<String, Object> before = row(kept.getId());
+        List<String> indexes = indexes();
+
+        restart();
+
+        assertEquals(before, row(kept.getId()));
+        // Dropped for the load and built again
+        assertEquals(indexes, indexes());
+        assertEquals(new BigDecimal("12.00"), row(kept.getId()).get("PRICE"));
+        assertEquals(2, ((Number) row(kept.getId()).get("STOCK")).intValue());
+        assertEquals(0, count(removed.getId()));
+        // Ids of deleted products are not handed out again
+        assertTrue(jdbcTemplate.queryForObject("SELECT NEXT VALUE FOR products_seq", Long.class) > removed.getId());
+        assertTrue(restore.getRestoreTime().toNanos() > 0);
+    }
+
+    @Test
+    void restoreShouldReplayTheJournalPastTheSnapshot() {
+        ProductDto product = create("lampara de journal");
+        writer.snapshot();
+        long snapshot = ProductSnapshot.latest(directory).orElseThrow();
+        product.setStock(7);
+        productService.update(product.getId(), product);
+        Map<String, Object> before = row(product.getId());
+
+        restart();
+
+        assertTrue(restore.isSnapshotRestored());
+        assertEquals(before, row(product.getId()));
+        // The segments the snapshot covers are gone, only the tail is replayed
+        assertTrue(ProductJournal.segments(directory).stream().allMatch(segment -> segment > snapshot));
+    }
+
+    // The in-memory table is lost and rebuilt from the journal directory
+    private void restart() {
+        jdbcTemplate.update("DELETE FROM products");
+        restore.restore();
+    }
+
+    private ProductDto create(String name) {
+        return productService.create(ProductDto.builder()
+                .name(name)
+                .description("para el journal")
+                .price(new BigDecimal("10.00"))
+                .stock(3)
+                .build());
+    }
+
+    private Map<String, Object> row(Long id) {
+        return jdbcTemplate.queryForMap(ProductJournalRestore.SELECT_PRODUCTS + " WHERE id = ?", id);
+    }
+
+    private List<String> indexes() {
+        return jdbcTemplate.queryForList("SELECT INDEX_NAME FROM INFORMATION_SCHEMA.INDEXES WHERE TABLE_NAME = 'PRODUCTS' "
+                + "ORDER BY INDEX_NAME", String.class);
+    }
+
+    private int count(Long id) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM products WHERE id = ?", Integer.class, id);
+    }
+}
@@ -0,0 +1,132 @@
+package com.paygoal.exercie.journal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProductJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void appendedRecordsShouldBeReadBackInOrder() {
+        ProductRecord lamp = ProductRecord.product(1, 3, "lámpara de techo", null, new BigDecimal("120000.50"), 5, 4);
+        ProductRecord deleted = ProductRecord.deleted(2);
+        try (ProductJournal journal = new ProductJournal(directory, 4096, 1)) {
+            journal.append(lamp);
+            journal.append(deleted);
+        }
+
+        assertEquals(List.of(lamp, deleted), ProductJournal.read(directory, 1));
+    }
+
+    @Test
+    void fullSegmentShouldContinueInTheNext() {
+        try (ProductJournal journal = new ProductJournal(directory, 160, 1)) {
+            for (long id = 1; id <= 5; id++) {
+                journal.append(product(id, 0));
+            }
+            assertEquals(3, journal.segment());
+        }
+
+        assertEquals(List.of(1L, 2L, 3L), ProductJournal.segments(directory));
+        assertEquals(List.of(product(1, 0), product(2, 0)), ProductJournal.read(directory, 1));
+        assertEquals(List.of(product(5, 0)), ProductJournal.read(directory, 3));
+    }
+
+    @Test
+    void corruptRecordShouldEndTheSegment() throws IOException {
+        int firstRecord;
+        try (ProductJournal journal = new ProductJournal(directory, 4096, 1)) {
+            journal.append(product(1, 0));
+            journal.append(product(2, 0));
+            journal.append(product(3, 0));
+            firstRecord = ProductJournal.FRAME_HEADER + product(1, 0).encode().length;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(ProductJournal.segmentPath(directory, 1).toFile(), "rw")) {
+            // Inside the payload of the second record, as a crash tearing it would leave it
+            file.seek(firstRecord + ProductJournal.FRAME_HEADER + 3);
+            file.write(9);
+        }
+
+        assertEquals(List.of(product(1, 0)), ProductJournal.read(directory, 1));
+    }
+
+    @Test
+    void rotateShouldStartANewSegmentAndDeleteUpToShouldDropTheCoveredOnes() {
+        try (ProductJournal journal = new ProductJournal(directory, 4096, 7)) {
+            journal.append(product(1, 0));
+            assertEquals(7, journal.rotate());
+            journal.append(product(1, 1));
+
+            journal.deleteUpTo(7);
+        }
+
+        assertEquals(List.of(8L), ProductJournal.segments(directory));
+        assertEquals(List.of(product(1, 1)), ProductJournal.read(directory, 8));
+    }
+
+    @Test
+    void committedSnapshotShouldBeReadBackWhole() {
+        try (ProductSnapshot.Writer writer = ProductSnapshot.writer(directory, 4)) {
+            for (long id = 1; id <= 3; id++) {
+                writer.add(product(id, id));
+            }
+            writer.commit(9);
+        }
+
+        ProductSnapshot snapshot = ProductSnapshot.read(directory, 4);
+        assertEquals(Optional.of(4L), ProductSnapshot.latest(directory));
+        assertEquals(4, snapshot.segment);
+        assertEquals(9, snapshot.maxId);
+        assertEquals(List.of(product(1, 1), product(2, 2), product(3, 3)), snapshot.records);
+    }
+
+    @Test
+    void unfinishedSnapshotShouldLeaveNothingBehind() throws IOException {
+        try (ProductSnapshot.Writer writer = ProductSnapshot.writer(directory, 4)) {
+            writer.add(product(1, 0));
+        }
+
+        assertEquals(Optional.empty(), ProductSnapshot.latest(directory));
+        try (var files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void olderSnapshotsShouldBeDeleted() {
+        for (long segment : new long[]{2, 5}) {
+            try (ProductSnapshot.Writer writer = ProductSnapshot.writer(directory, segment)) {
+                writer.commit(0);
+            }
+        }
+
+        ProductSnapshot.deleteBefore(directory, 5);
+
+        assertFalse(Files.exists(ProductSnapshot.snapshotPath(directory, 2)));
+        assertEquals(Optional.of(5L), ProductSnapshot.latest(directory));
+    }
+
+    @Test
+    void latestRecordShouldBeTheHigherVersionOrTheDeletion() {
+        assertEquals(product(1, 4), ProductRecord.latest(product(1, 4), product(1, 3)));
+        assertEquals(product(1, 4), ProductRecord.latest(product(1, 3), product(1, 4)));
+        assertTrue(ProductRecord.latest(product(1, 9), ProductRecord.deleted(1)).isDeleted());
+        assertTrue(ProductRecord.latest(ProductRecord.deleted(1), product(1, 9)).isDeleted());
+    }
+
+    private static ProductRecord product(long id, long version) {
+        return ProductRecord.product(id, version, "silla " + id, "silla de madera", new BigDecimal("80000.00"), 10, 0);
+    }
+}
@@ -0,0 +1,115 @@
+package com.paygoal.exercie.repository;
+
+import com.paygoal.exercie.dto.ProductFilter;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.params.provider.Arguments.arguments;
+
+/**
+ * Explains the SQL Hibernate generates for every listing filter on a large synthetic catalog, so a filter that falls
+ * back to reading the whole table fails here.
+ */
+// Own database: the synthetic catalog replaces the seeded rows
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:query-plan;OPTIMIZE_REUSE_RESULTS=FALSE",
+        "products.seed.count=" + ProductQueryPlanTest.PRODUCTS,
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector=com.paygoal.exercie.repository.ProductQueryPlanTest$LastStatement"
+})
+public class ProductQueryPlanTest {
+
+    static final int PRODUCTS = 50_000;
+    private static final int PAGE = 21;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    static Stream<Arguments> selectiveFilters() {
+        return Stream.of(
+                arguments("price range", ProductFilter.builder()
+                        .minPrice(new BigDecimal("1000")).maxPrice(new BigDecimal("1500")).build(),
+                        "PUBLIC.IDX_PRODUCTS_PRICE_ID: PRICE >= ?1"),
+                arguments("max price", ProductFilter.builder().maxPrice(new BigDecimal("1500")).build(),
+                        "PUBLIC.IDX_PRODUCTS_PRICE_ID: PRICE <= ?1"),
+                arguments("low stock", ProductFilter.builder().maxStock(3).build(),
+                        "PUBLIC.IDX_PRODUCTS_STOCK_PRICE: STOCK <= ?1"),
+                arguments("out of stock", ProductFilter.builder().inStock(false).build(),
+                        "PUBLIC.IDX_PRODUCTS_STOCK_PRICE: STOCK = ?1"),
+                arguments("name prefix", ProductFilter.builder().namePrefix("Lámpara de p").build(),
+                        "PUBLIC.IDX_PRODUCTS_NAME_LOWER: NAME_LOWER >= ?1"));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("selectiveFilters")
+    void selectiveFiltersShouldSeekAnIndexRange(String name, ProductFilter filter, String expectedAccess) {
+        String plan = explain(filter, null, null);
+
+        assertFalse(plan.contains("tableScan"), plan);
+        assertTrue(plan.contains(expectedAccess), plan);
+    }
+
+    @Test
+    void inStockShouldWalkThePriceIndexInListingOrder() {
+        String plan = explain(ProductFilter.builder().inStock(true).build(), null, null);
+
+        // Nine in ten products match, reading in price order stops after one page and needs no sort
+        assertFalse(plan.contains("tableScan"), plan);
+        assertTrue(plan.contains("PUBLIC.IDX_PRODUCTS_PRICE_ID"), plan);
+        assertTrue(plan.contains("index sorted"), plan);
+    }
+
+    @Test
+    void nextPagesShouldSeekPastTheCursor() {
+        String plan = explain(ProductFilter.builder().inStock(true).build(), new BigDecimal("5000"), 42L);
+
+        assertTrue(plan.contains("PUBLIC.IDX_PRODUCTS_PRICE_ID: PRICE >= "), plan);
+        assertTrue(plan.contains("index sorted"), plan);
+    }
+
+    @Test
+    void filtersShouldReturnMatchingRowsInListingOrder() {
+        var page = productRepository.findPage(ProductFilter.builder()
+                .maxStock(3).namePrefix("MESA").build(), null, null, PAGE);
+
+        assertFalse(page.isEmpty());
+        for (int i = 0; i < page.size(); i++) {
+            assertTrue(page.get(i).getStock() <= 3);
+            assertTrue(page.get(i).getName().startsWith("mesa"));
+            if (i > 0) {
+                assertTrue(page.get(i - 1).getPrice().compareTo(page.get(i).getPrice()) <= 0);
+            }
+        }
+    }
+
+    private String explain(ProductFilter filter, BigDecimal afterPrice, Long afterId) {
+        productRepository.findPage(filter, afterPrice, afterId, PAGE);
+        return jdbcTemplate.queryForObject("EXPLAIN " + LastStatement.SQL.get(), String.class);
+    }
+
+    /**
+     * Keeps the last SQL prepared by Hibernate on each thread.
+     */
+    public static class LastStatement implements StatementInspector {
+
+        static final ThreadLocal<String> SQL = new ThreadLocal<>();
+
+        @Override
+        public String inspect(String sql) {
+            SQL.set(sql);
+            return sql;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.paygoal.exercie.search;
+
+import com.paygoal.exercie.configuration.LookupProperties;
+import com.paygoal.exercie.configuration.SearchProperties;
+import com.paygoal.exercie.event.ProductChangedEvent;
+import com.paygoal.exercie.model.Product;
+import com.paygoal.exercie.repository.ProductRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.persistence.EntityManager;
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.Mockito.*;
+
+public class ProductSearchIndexTest {
+
+    private ProductRepository productRepository;
+    private ProductSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        productRepository = mock(ProductRepository.class);
+        index = new ProductSearchIndex(productRepository, mock(EntityManager.class), new LookupProperties(),
+                new SearchProperties(), mock(PlatformTransactionManager.class));
+        index.put(1L, "Lámpara de pie", "Lámpara de pie con pantalla de tela");
+        index.put(2L, "Sofá de tres cuerpos", "Sofá tapizado, ideal junto a una lámpara");
+        index.put(3L, "Mesa de comedor", "Mesa de roble macizo");
+    }
+
+    @AfterEach
+    void tearDown() {
+        index.shutdown();
+    }
+
+    @Test
+    void searchShouldIgnoreAccentsAndCase() {
+        assertEquals(List.of(2L), index.search("SOFA", 0, 10).getIds());
+        assertEquals(List.of(3L), index.search("mésa", 0, 10).getIds());
+    }
+
+    @Test
+    void searchShouldRankNameMatchesAndRepeatedTermsFirst() {
+        ProductSearchIndex.Hits hits = index.search("lampara", 0, 10);
+
+        assertEquals(2, hits.getTotal());
+        assertEquals(List.of(1L, 2L), hits.getIds());
+    }
+
+    @Test
+    void documentsMatchingMoreTermsShouldScoreHigher() {
+        assertEquals(List.of(2L, 1L), index.search("sofa lampara", 0, 10).getIds());
+    }
+
+    @Test
+    void searchShouldPaginateAndReportTotal() {
+        index.put(4L, "Lámpara colgante", null);
+
+        ProductSearchIndex.Hits firstPage = index.search("lampara", 0, 2);
+        ProductSearchIndex.Hits secondPage = index.search("lampara", 2, 2);
+
+        assertEquals(3, firstPage.getTotal());
+        assertEquals(2, firstPage.getIds().size());
+        assertEquals(1, secondPage.getIds().size());
+        assertFalse(firstPage.getIds().contains(secondPage.getIds().get(0)));
+        assertTrue(index.search("lampara", 4, 2).getIds().isEmpty());
+    }
+
+    @Test
+    void stopWordsAndUnknownTermsShouldMatchNothing() {
+        assertEquals(0, index.search("de la", 0, 10).getTotal());
+        assertEquals(0, index.search("heladera", 0, 10).getTotal());
+    }
+
+    @Test
+    void reindexingShouldReplacePreviousTerms() {
+        index.put(3L, "Escritorio", "Escritorio de pino");
+
+        assertEquals(0, index.search("mesa", 0, 10).getTotal());
+        assertEquals(List.of(3L), index.search("escritorio", 0, 10).getIds());
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    void committedChangesShouldReloadOnlyTheChangedProducts() {
+        Product renamed = Product.builder().id(1L).name("Farol").description("Farol de jardín")
+                .price(BigDecimal.TEN).stock(1).build();
+        when(productRepository.findAllById(anyIterable())).thenReturn(List.of(renamed));
+
+        index.onProductChanged(new ProductChangedEvent(ProductChangedEvent.Type.UPDATED, 1L));
+        index.onProductChanged(new ProductChangedEvent(ProductChangedEvent.Type.DELETED, 2L));
+        index.refresh();
+
+        assertEquals(List.of(1L), index.search("farol", 0, 10).getIds());
+        assertEquals(0, index.search("lampara sofa", 0, 10).getTotal());
+        assertEquals(2, index.size());
+        verify(productRepository, never()).streamAll();
+    }
+}
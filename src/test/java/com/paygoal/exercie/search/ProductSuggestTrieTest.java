@@ -0,0 +1,97 @@
+package com.paygoal.exercie.search;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProductSuggestTrieTest {
+
+    private ProductSuggestTrie trie;
+
+    @BeforeEach
+    void setUp() {
+        trie = new ProductSuggestTrie(3);
+        trie.put(1L, "Mesa redonda", 5, new BigDecimal("100.00"));
+        trie.put(2L, "Mesada de granito", 20, new BigDecimal("900.00"));
+        trie.put(3L, "Mesita de luz", 5, new BigDecimal("50.00"));
+        trie.put(4L, "Lámpara de pie", 0, new BigDecimal("30.00"));
+        trie.put(5L, "Lampara colgante", 7, new BigDecimal("80.00"));
+    }
+
+    private List<Long> ids(String prefix) {
+        return trie.suggest(prefix, 10).stream()
+                .map(ProductSuggestTrie.Suggestion::getId)
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    void suggestShouldRankByStockThenPrice() {
+        assertEquals(List.of(2L, 3L, 1L), ids("mes"));
+        assertEquals(List.of(5L, 4L), ids("lamp"));
+    }
+
+    @Test
+    void suggestShouldIgnoreAccentsCaseAndExtraSpaces() {
+        assertEquals(List.of(4L), ids("  LÁMPARA   de"));
+        assertEquals(List.of(1L), ids("mesa r"));
+    }
+
+    @Test
+    void suggestShouldMatchPrefixesEndingInsideAnEdge() {
+        assertEquals(List.of(2L, 1L), ids("mesa"));
+        assertEquals(List.of(2L), ids("mesad"));
+        assertTrue(ids("mesx").isEmpty());
+        assertTrue(ids("silla").isEmpty());
+    }
+
+    @Test
+    void topListsShouldHoldAtMostTopSizeAndRespectTheLimit() {
+        trie.put(6L, "Mesa ratona", 1, new BigDecimal("10.00"));
+
+        assertEquals(List.of(2L, 3L, 1L), ids("m"));
+        assertEquals(1, trie.suggest("m", 1).size());
+    }
+
+    @Test
+    void updatesShouldMoveProductsInTheRanking() {
+        trie.put(1L, "Mesa redonda", 50, new BigDecimal("100.00"));
+        assertEquals(List.of(1L, 2L, 3L), ids("mes"));
+
+        trie.put(2L, "Silla de granito", 20, new BigDecimal("900.00"));
+        assertEquals(List.of(1L, 3L), ids("mes"));
+        assertEquals(List.of(2L), ids("sil"));
+    }
+
+    @Test
+    void removeShouldPruneAndCollapseNodes() {
+        ProductSuggestTrie empty = new ProductSuggestTrie(3);
+        empty.put(1L, "mesa", 1, BigDecimal.ONE);
+        int nodesWithOne = empty.nodeCount();
+        empty.put(2L, "mesada", 1, BigDecimal.ONE);
+        empty.put(3L, "mesita", 1, BigDecimal.ONE);
+
+        assertTrue(empty.remove(2L));
+        assertTrue(empty.remove(3L));
+        assertFalse(empty.remove(3L));
+
+        assertEquals(nodesWithOne, empty.nodeCount());
+        assertEquals(1, empty.size());
+        assertEquals(List.of(1L), empty.suggest("mesa", 10).stream()
+                .map(ProductSuggestTrie.Suggestion::getId).collect(Collectors.toList()));
+    }
+
+    @Test
+    void productsWithTheSameNameShouldAllBeSuggested() {
+        trie.put(6L, "mesa REDONDA", 1, new BigDecimal("10.00"));
+
+        assertEquals(List.of(1L, 6L), ids("mesa red"));
+
+        trie.remove(1L);
+        assertEquals(List.of(6L), ids("mesa red"));
+    }
+}
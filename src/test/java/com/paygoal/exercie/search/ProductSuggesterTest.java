@@ -0,0 +1,108 @@
+package com.paygoal.exercie.search;
+
+import com.paygoal.exercie.configuration.LookupProperties;
+import com.paygoal.exercie.configuration.SearchProperties;
+import com.paygoal.exercie.event.ProductChangedEvent;
+import com.paygoal.exercie.model.Product;
+import com.paygoal.exercie.repository.ProductRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.persistence.EntityManager;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.Mockito.*;
+
+public class ProductSuggesterTest {
+
+    private ProductRepository productRepository;
+    private SearchProperties searchProperties;
+    private ProductSuggester suggester;
+
+    @BeforeEach
+    void setUp() {
+        productRepository = mock(ProductRepository.class);
+        searchProperties = new SearchProperties();
+        suggester = new ProductSuggester(productRepository, mock(EntityManager.class), new LookupProperties(),
+                searchProperties, mock(PlatformTransactionManager.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        suggester.shutdown();
+    }
+
+    private static Product product(long id, String name, int stock) {
+        return Product.builder().id(id).name(name).price(BigDecimal.TEN).stock(stock).build();
+    }
+
+    private List<Long> ids(String prefix) {
+        return suggester.suggest(prefix, 10).stream()
+                .map(ProductSuggestTrie.Suggestion::getId)
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    void buildShouldLoadTheWholeTable() {
+        when(productRepository.streamAll()).thenReturn(Stream.of(product(1L, "Sofá", 1), product(2L, "Sillón", 3)));
+
+        suggester.build();
+        suggester.refresh();
+
+        assertEquals(List.of(2L, 1L), ids("s"));
+    }
+
+    @Test
+    void fewChangesShouldBeReloadedOneByOne() {
+        when(productRepository.findAllById(anyIterable())).thenReturn(List.of(product(1L, "Sofá", 1)));
+
+        suggester.onProductChanged(new ProductChangedEvent(ProductChangedEvent.Type.CREATED, 1L));
+        suggester.refresh();
+
+        assertEquals(List.of(1L), ids("sofa"));
+        verify(productRepository, never()).streamAll();
+    }
+
+    @Test
+    void failedReloadShouldKeepTheChangesAndRetry() throws InterruptedException {
+        searchProperties.setRefreshDelay(Duration.ofMillis(50));
+        when(productRepository.findAllById(anyIterable()))
+                .thenThrow(new CannotCreateTransactionException("pool exhausted"))
+                .thenReturn(List.of(product(1L, "Sofá", 1)));
+
+        suggester.onProductChanged(new ProductChangedEvent(ProductChangedEvent.Type.CREATED, 1L));
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (ids("sofa").isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(List.of(1L), ids("sofa"));
+        verify(productRepository, times(2)).findAllById(anyIterable());
+    }
+
+    @Test
+    void bulkChangesShouldRebuildFromTheTable() {
+        searchProperties.setRebuildThreshold(2);
+        when(productRepository.streamAll()).thenReturn(Stream.of(product(1L, "Sofá", 1), product(2L, "Sillón", 3),
+                product(3L, "Silla", 2)));
+
+        for (long id = 1; id <= 3; id++) {
+            suggester.onProductChanged(new ProductChangedEvent(ProductChangedEvent.Type.CREATED, id));
+        }
+        suggester.refresh();
+
+        assertEquals(List.of(2L, 3L), ids("sil"));
+        assertEquals(3, suggester.size());
+        verify(productRepository, never()).findAllById(anyIterable());
+    }
+}
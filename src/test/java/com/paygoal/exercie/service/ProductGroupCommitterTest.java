@@ -0,0 +1,277 @@
+package com.paygoal.exercie.service;
+
+import com.paygoal.exercie.configuration.GroupCommitProperties;
+import com.paygoal.exercie.dto.ProductDto;
+import com.paygoal.exercie.exception.ProductNotFoundException;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+public class ProductGroupCommitterTest {
+
+    private final GroupCommitProperties properties = new GroupCommitProperties();
+    private final ProductService productService = mock(ProductService.class);
+    private final List<List<ProductWrite>> groups = new ArrayList<>();
+    private final AtomicLong ids = new AtomicLong();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ExecutorService callers = Executors.newFixedThreadPool(20);
+    private ProductGroupCommitter groupCommitter;
+
+    @BeforeEach
+    void setUp() {
+        properties.setEnabled(true);
+        properties.setMaxWait(Duration.ofMillis(200));
+        // Creates get the next id, updates of product 404 fail on their own
+        when(productService.writeAll(anyList())).thenAnswer(invocation -> {
+            List<ProductWrite> writes = invocation.getArgument(0);
+            synchronized (groups) {
+                groups.add(List.copyOf(writes));
+            }
+            return writes.stream()
+                    .map(write -> {
+                        if (Long.valueOf(404).equals(write.getId())) {
+                            return ProductWrite.Result.failed(new ProductNotFoundException("Product not found with id: 404"));
+                        }
+                        return ProductWrite.Result.of(withId(write.getProduct(),
+                                write.isCreate() ? ids.incrementAndGet() : write.getId()));
+                    })
+                    .collect(Collectors.toList());
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (groupCommitter != null) {
+            groupCommitter.shutdown();
+        }
+        callers.shutdownNow();
+    }
+
+    @Test
+    void concurrentWritesShouldShareATransaction() throws Exception {
+        properties.setMaxBatchSize(10);
+        properties.setMaxWait(Duration.ofSeconds(1));
+        start();
+
+        List<Future<ProductDto>> created = submitCreates(10);
+
+        for (Future<ProductDto> product : created) {
+            assertNotNull(product.get(5, TimeUnit.SECONDS).getId());
+        }
+        assertEquals(1, groups.size());
+        assertEquals(10, groups.get(0).size());
+        DistributionSummary batchSizes = registry.get("products.group.commit.batch.size").summary();
+        assertEquals(1, batchSizes.count());
+        assertEquals(10, batchSizes.totalAmount());
+    }
+
+    @Test
+    void groupsShouldNotExceedTheMaximumSize() throws Exception {
+        properties.setMaxBatchSize(4);
+        start();
+
+        for (Future<ProductDto> product : submitCreates(10)) {
+            product.get(5, TimeUnit.SECONDS);
+        }
+
+        assertTrue(groups.stream().allMatch(group -> group.size() <= 4));
+        assertEquals(10, groups.stream().mapToInt(List::size).sum());
+    }
+
+    @Test
+    void aLoneWriteShouldOnlyWaitTheMaximumWait() {
+        properties.setMaxWait(Duration.ofMillis(20));
+        start();
+
+        long start = System.nanoTime();
+        groupCommitter.create(product("Lampara"));
+
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        assertEquals(1, groups.size());
+    }
+
+    @Test
+    void eachCallerShouldGetItsOwnOutcome() throws Exception {
+        properties.setMaxWait(Duration.ofMillis(20));
+        start();
+
+        ProductDto updated = groupCommitter.update(7L, product("Mesa"), null);
+        assertEquals(7L, updated.getId());
+        assertThrows(ProductNotFoundException.class, () -> groupCommitter.update(404L, product("Silla"), null));
+    }
+
+    @Test
+    void failedGroupShouldBeRetriedOneWriteAtATime() throws Exception {
+        properties.setMaxBatchSize(3);
+        properties.setMaxWait(Duration.ofSeconds(1));
+        // The whole group fails on the row with a blank name, alone only that row does
+        when(productService.writeAll(anyList())).thenAnswer(invocation -> {
+            List<ProductWrite> writes = invocation.getArgument(0);
+            synchronized (groups) {
+                groups.add(List.copyOf(writes));
+            }
+            if (writes.stream().anyMatch(write -> write.getProduct().getName().isEmpty())) {
+                throw new DataIntegrityViolationException("NAME");
+            }
+            return writes.stream()
+                    .map(write -> ProductWrite.Result.of(withId(write.getProduct(), ids.incrementAndGet())))
+                    .collect(Collectors.toList());
+        });
+        start();
+
+        List<Future<ProductDto>> results = new ArrayList<>();
+        for (String name : List.of("Lampara", "", "Mesa")) {
+            results.add(callers.submit(() -> groupCommitter.create(product(name))));
+        }
+
+        assertNotNull(results.get(0).get(5, TimeUnit.SECONDS).getId());
+        Exception failure = assertThrows(Exception.class, () -> results.get(1).get(5, TimeUnit.SECONDS));
+        assertInstanceOf(DataIntegrityViolationException.class, failure.getCause());
+        assertNotNull(results.get(2).get(5, TimeUnit.SECONDS).getId());
+        assertEquals(1.0, registry.get("products.group.commit.fallbacks").functionCounter().count());
+    }
+
+    @Test
+    void shutdownShouldFailTheQueuedWrites() throws Exception {
+        properties.setMaxBatchSize(1);
+        CountDownLatch committing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(productService.writeAll(anyList())).thenAnswer(invocation -> {
+            committing.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IllegalStateException("interrupted commit");
+        });
+        start();
+
+        Future<ProductDto> first = callers.submit(() -> groupCommitter.create(product("Lampara")));
+        assertTrue(committing.await(5, TimeUnit.SECONDS));
+        Future<ProductDto> queued = callers.submit(() -> groupCommitter.create(product("Mesa")));
+        while (registry.get("products.group.commit.queued").gauge().value() < 1) {
+            Thread.onSpinWait();
+        }
+
+        groupCommitter.shutdown();
+        release.countDown();
+
+        assertThrows(Exception.class, () -> first.get(5, TimeUnit.SECONDS));
+        Exception failure = assertThrows(Exception.class, () -> queued.get(5, TimeUnit.SECONDS));
+        assertEquals("Group commit is shutting down", failure.getCause().getMessage());
+        assertThrows(IllegalStateException.class, () -> groupCommitter.create(product("Silla")));
+    }
+
+    @Test
+    void errorShouldFailTheQueuedWritesAndTurnTheGroupCommitOff() throws Exception {
+        properties.setMaxBatchSize(1);
+        CountDownLatch committing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(productService.writeAll(anyList())).thenAnswer(invocation -> {
+            committing.countDown();
+            release.await();
+            throw new AssertionError("broken commit");
+        });
+        start();
+
+        Future<ProductDto> first = callers.submit(() -> groupCommitter.create(product("Lampara")));
+        assertTrue(committing.await(5, TimeUnit.SECONDS));
+        Future<ProductDto> queued = callers.submit(() -> groupCommitter.create(product("Mesa")));
+        while (registry.get("products.group.commit.queued").gauge().value() < 1) {
+            Thread.onSpinWait();
+        }
+        release.countDown();
+
+        Exception failure = assertThrows(Exception.class, () -> first.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(AssertionError.class, failure.getCause().getCause());
+        failure = assertThrows(Exception.class, () -> queued.get(5, TimeUnit.SECONDS));
+        assertEquals("Group commit stopped after an error", failure.getCause().getMessage());
+        // Callers go back to a transaction each
+        assertFalse(groupCommitter.isEnabled());
+        assertThrows(IllegalStateException.class, () -> groupCommitter.create(product("Silla")));
+    }
+
+    @Test
+    void callersShouldStopWaitingAfterTheTimeout() throws Exception {
+        properties.setMaxBatchSize(1);
+        properties.setTimeout(Duration.ofMillis(200));
+        CountDownLatch taken = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(productService.writeAll(anyList())).thenAnswer(invocation -> {
+            taken.countDown();
+            release.await();
+            return List.of(ProductWrite.Result.of(product("Lampara")));
+        });
+        start();
+
+        Future<ProductDto> committing = callers.submit(() -> groupCommitter.create(product("Lampara")));
+        assertTrue(taken.await(5, TimeUnit.SECONDS));
+        Future<ProductDto> queued = callers.submit(() -> groupCommitter.create(product("Mesa")));
+
+        Exception failure = assertThrows(Exception.class, () -> committing.get(5, TimeUnit.SECONDS));
+        assertEquals("Group commit timed out, the write may still commit", failure.getCause().getMessage());
+        failure = assertThrows(Exception.class, () -> queued.get(5, TimeUnit.SECONDS));
+        assertEquals("Group commit timed out before the write was committed", failure.getCause().getMessage());
+        release.countDown();
+    }
+
+    @Test
+    void disabledShouldNotStartTheCommitter() {
+        properties.setEnabled(false);
+        start();
+
+        assertFalse(groupCommitter.isEnabled());
+        verifyNoInteractions(productService);
+    }
+
+    private void start() {
+        groupCommitter = new ProductGroupCommitter(properties, productService);
+        groupCommitter.bindTo(registry);
+    }
+
+    private List<Future<ProductDto>> submitCreates(int count) {
+        List<Future<ProductDto>> results = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String name = "Producto " + i;
+            results.add(callers.submit(() -> groupCommitter.create(product(name))));
+        }
+        return results;
+    }
+
+    private static ProductDto withId(ProductDto product, Long id) {
+        return ProductDto.builder()
+                .id(id)
+                .name(product.getName())
+                .price(product.getPrice())
+                .stock(product.getStock())
+                .build();
+    }
+
+    private static ProductDto product(String name) {
+        return ProductDto.builder()
+                .name(name)
+                .price(new BigDecimal("10.00"))
+                .stock(1)
+                .build();
+    }
+}
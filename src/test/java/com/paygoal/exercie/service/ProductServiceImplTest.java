@@ -1,25 +1,62 @@
 package com.paygoal.exercie.service;
 
+import com.paygoal.exercie.cache.ProductCache;
+import com.paygoal.exercie.cache.ProductLoadCoalescer;
+import com.paygoal.exercie.cache.ProductPriceIndex;
+import com.paygoal.exercie.configuration.BatchProperties;
+import com.paygoal.exercie.configuration.ChangeFeedProperties;
+import com.paygoal.exercie.configuration.LookupProperties;
+import com.paygoal.exercie.configuration.PaginationProperties;
+import com.paygoal.exercie.configuration.ProductCacheProperties;
+import com.paygoal.exercie.configuration.SearchProperties;
 import com.paygoal.exercie.dto.ProductDto;
+import com.paygoal.exercie.dto.ProductFilter;
+import com.paygoal.exercie.dto.ProductLookupResult;
+import com.paygoal.exercie.dto.ProductPage;
+import com.paygoal.exercie.dto.ProductSearchPage;
+import com.paygoal.exercie.dto.ProductSuggestion;
+import com.paygoal.exercie.dto.StockDto;
+import com.paygoal.exercie.event.ProductChangedEvent;
+import com.paygoal.exercie.exception.BadRequestException;
+import com.paygoal.exercie.exception.OutOfStockException;
+import com.paygoal.exercie.exception.PreconditionFailedException;
 import com.paygoal.exercie.exception.ProductNotFoundException;
+import com.paygoal.exercie.exception.StockLimitExceededException;
 import com.paygoal.exercie.model.Product;
 import com.paygoal.exercie.repository.ProductRepository;
+import com.paygoal.exercie.search.ProductSearchIndex;
+import com.paygoal.exercie.search.ProductSuggestTrie;
+import com.paygoal.exercie.search.ProductSuggester;
+import com.paygoal.exercie.stock.StockWriteBehind;
+import com.paygoal.exercie.utils.ProductCursor;
+import com.paygoal.exercie.utils.ProductETags;
 import com.paygoal.exercie.utils.ProductMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 
+import javax.persistence.EntityManager;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -31,6 +68,45 @@ public class ProductServiceImplTest {
     @Mock
     private ProductMapper productMapper;
 
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private ProductSearchIndex searchIndex;
+
+    @Mock
+    private ProductSuggester suggester;
+
+    @Mock
+    private ProductPriceIndex priceIndex;
+
+    @Mock
+    private StockWriteBehind stockWriteBehind;
+
+    @Spy
+    private PaginationProperties paginationProperties = new PaginationProperties();
+
+    @Spy
+    private LookupProperties lookupProperties = new LookupProperties();
+
+    @Spy
+    private BatchProperties batchProperties = new BatchProperties();
+
+    @Spy
+    private ChangeFeedProperties changeFeedProperties = new ChangeFeedProperties();
+
+    @Spy
+    private SearchProperties searchProperties = new SearchProperties();
+
+    @Spy
+    private ProductCache productCache = new ProductCache(new ProductCacheProperties());
+
+    @Spy
+    private ProductLoadCoalescer loadCoalescer = new ProductLoadCoalescer();
+
     @InjectMocks
     private ProductServiceImpl productService;
 
@@ -120,6 +196,18 @@ public class ProductServiceImplTest {
         verify(productMapper, never()).toDto(any(Product.class));
     }
 
+    @Test
+    void findByIdShouldServeRepeatedReadsFromCache() {
+        when(productRepository.findById(1L)).thenReturn(Optional.of(testProduct));
+        when(productMapper.toDto(testProduct)).thenReturn(testProductDto);
+
+        ProductDto first = productService.findById(1L);
+        ProductDto second = productService.findById(1L);
+
+        assertEquals(first, second);
+        verify(productRepository, times(1)).findById(1L);
+    }
+
     @Test
     void createShouldSaveAndReturnProductDto() {
         ProductDto newProductDto = ProductDto.builder()
@@ -150,6 +238,74 @@ public class ProductServiceImplTest {
         verify(productMapper, times(1)).toDto(testProduct);
     }
 
+    @Test
+    void createAllShouldSaveEveryProductAndFlushPerJdbcBatch() {
+        batchProperties.setJdbcBatchSize(2);
+        List<ProductDto> input = Arrays.asList(productDtoList.get(0), productDtoList.get(1), testProductDto);
+        when(productMapper.toEntity(any(ProductDto.class))).thenReturn(productList.get(0), productList.get(1), testProduct);
+        when(productRepository.save(any(Product.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(productMapper.toDto(any(Product.class))).thenReturn(productDtoList.get(0), productDtoList.get(1), testProductDto);
+
+        List<ProductDto> created = productService.createAll(input);
+
+        assertEquals(input, created);
+        verify(productRepository, times(3)).save(any(Product.class));
+        verify(entityManager, times(1)).flush();
+        verify(entityManager, times(1)).clear();
+        verify(eventPublisher, times(3)).publishEvent(any(ProductChangedEvent.class));
+    }
+
+    @Test
+    void writeAllShouldCreateBeforeUpdatingAndKeepTheOrder() {
+        ProductDto update = productDtoList.get(1);
+        Product updateEntity = productList.get(1);
+        when(productMapper.toEntity(testProductDto)).thenReturn(testProduct);
+        when(productMapper.toEntity(update)).thenReturn(updateEntity);
+        when(productRepository.save(testProduct)).thenReturn(testProduct);
+        when(productMapper.toDto(testProduct)).thenReturn(testProductDto);
+        when(productRepository.updateProduct(2L, updateEntity)).thenReturn(1);
+        when(productMapper.withId(update, 2L)).thenReturn(update);
+
+        List<ProductWrite.Result> results = productService.writeAll(List.of(
+                ProductWrite.update(2L, update, null), ProductWrite.create(testProductDto)));
+
+        assertEquals(update, results.get(0).getProduct());
+        assertEquals(testProductDto, results.get(1).getProduct());
+        InOrder inOrder = inOrder(productRepository);
+        inOrder.verify(productRepository).save(testProduct);
+        inOrder.verify(productRepository).updateProduct(2L, updateEntity);
+        verify(eventPublisher, times(2)).publishEvent(any(ProductChangedEvent.class));
+    }
+
+    @Test
+    void writeAllShouldOnlyFailTheWritesThatMissTheirProduct() {
+        when(productMapper.toEntity(any(ProductDto.class))).thenReturn(testProduct);
+        when(productRepository.updateProduct(1L, testProduct)).thenReturn(1);
+        when(productRepository.updateProduct(9L, testProduct)).thenReturn(0);
+        when(productRepository.updateProductIfVersion(1L, testProduct, Set.of(3L))).thenReturn(0);
+        when(productRepository.findVersionById(1L)).thenReturn(Optional.of(4L));
+        when(productMapper.withId(testProductDto, 1L)).thenReturn(testProductDto);
+
+        List<ProductWrite.Result> results = productService.writeAll(List.of(
+                ProductWrite.update(9L, testProductDto, null),
+                ProductWrite.update(1L, testProductDto, Set.of(3L)),
+                ProductWrite.update(1L, testProductDto, null)));
+
+        assertInstanceOf(ProductNotFoundException.class, results.get(0).getFailure());
+        assertInstanceOf(PreconditionFailedException.class, results.get(1).getFailure());
+        assertEquals(testProductDto, results.get(2).getProduct());
+        assertNull(results.get(2).getFailure());
+        verify(eventPublisher, times(1)).publishEvent(any(ProductChangedEvent.class));
+    }
+
+    @Test
+    void createAllShouldRejectOversizedBatches() {
+        batchProperties.setMaxItems(1);
+
+        assertThrows(BadRequestException.class, () -> productService.createAll(productDtoList));
+        verify(productRepository, never()).save(any(Product.class));
+    }
+
     @Test
     void updateShouldUpdateAndReturnProductDtoWhenProductExists() {
         ProductDto updateDetailsDto = ProductDto.builder()
@@ -160,7 +316,6 @@ public class ProductServiceImplTest {
                 .build();
 
         Product updatedProduct = Product.builder()
-                .id(1L)
                 .name("Updated Product")
                 .description("Updated Description")
                 .price(new BigDecimal("79.99"))
@@ -175,10 +330,9 @@ public class ProductServiceImplTest {
                 .stock(15)
                 .build();
 
-        when(productRepository.findById(1L)).thenReturn(Optional.of(testProduct));
-        doNothing().when(productMapper).updateProductFromDto(updateDetailsDto, testProduct);
-        when(productRepository.save(testProduct)).thenReturn(updatedProduct);
-        when(productMapper.toDto(updatedProduct)).thenReturn(updatedProductDto);
+        when(productMapper.toEntity(updateDetailsDto)).thenReturn(updatedProduct);
+        when(productRepository.updateProduct(1L, updatedProduct)).thenReturn(1);
+        when(productMapper.withId(updateDetailsDto, 1L)).thenReturn(updatedProductDto);
 
         ProductDto updated = productService.update(1L, updateDetailsDto);
 
@@ -189,10 +343,12 @@ public class ProductServiceImplTest {
         assertEquals(0, new BigDecimal("79.99").compareTo(updated.getPrice()));
         assertEquals(15, updated.getStock());
 
-        verify(productRepository, times(1)).findById(1L);
-        verify(productMapper, times(1)).updateProductFromDto(updateDetailsDto, testProduct);
-        verify(productRepository, times(1)).save(testProduct);
-        verify(productMapper, times(1)).toDto(updatedProduct);
+        verify(productRepository, times(1)).updateProduct(1L, updatedProduct);
+        verify(productRepository, never()).findById(any());
+        verify(productRepository, never()).findVersionById(any());
+        verify(productRepository, never()).save(any(Product.class));
+        verify(eventPublisher).publishEvent(new ProductChangedEvent(ProductChangedEvent.Type.UPDATED, 1L, null,
+                ProductChangedEvent.ALL_FIELDS));
     }
 
     @Test
@@ -204,38 +360,214 @@ public class ProductServiceImplTest {
                 .stock(15)
                 .build();
 
-        when(productRepository.findById(99L)).thenReturn(Optional.empty());
+        when(productMapper.toEntity(updateDetailsDto)).thenReturn(testProduct);
+        when(productRepository.updateProduct(99L, testProduct)).thenReturn(0);
 
         assertThrows(ProductNotFoundException.class, () -> {
             productService.update(99L, updateDetailsDto);
         });
 
-        verify(productRepository, times(1)).findById(99L);
-        verify(productMapper, never()).updateProductFromDto(any(), any());
+        verify(productRepository, times(1)).updateProduct(99L, testProduct);
+        verify(productMapper, never()).withId(any(), any());
+        verify(eventPublisher, never()).publishEvent(any());
+    }
+
+    @Test
+    void patchShouldWriteOnlyGivenColumnsAndReturnFreshProduct() {
+        Map<String, Object> changes = Map.of("price", new BigDecimal("5.00"));
+        when(productRepository.updateColumns(1L, changes)).thenReturn(1);
+        when(productRepository.findById(1L)).thenReturn(Optional.of(testProduct));
+        when(productMapper.toDto(testProduct)).thenReturn(testProductDto);
+
+        ProductDto patched = productService.patch(1L, changes);
+
+        assertEquals(testProductDto, patched);
+        verify(productRepository, times(1)).updateColumns(1L, changes);
         verify(productRepository, never()).save(any(Product.class));
+        verify(eventPublisher).publishEvent(new ProductChangedEvent(ProductChangedEvent.Type.UPDATED, 1L,
+                testProductDto.getVersion(), List.of("price")));
     }
 
     @Test
-    void deleteShouldDeleteProductWhenProductExists() {
+    void patchShouldThrowExceptionWhenProductDoesNotExist() {
+        Map<String, Object> changes = Map.of("stock", 3);
+        when(productRepository.updateColumns(99L, changes)).thenReturn(0);
+
+        assertThrows(ProductNotFoundException.class, () -> productService.patch(99L, changes));
+
+        verify(productRepository, never()).findById(any());
+        verify(eventPublisher, never()).publishEvent(any());
+    }
+
+    @Test
+    void patchWithoutChangesShouldNotWrite() {
         when(productRepository.findById(1L)).thenReturn(Optional.of(testProduct));
-        doNothing().when(productRepository).delete(any(Product.class));
+        when(productMapper.toDto(testProduct)).thenReturn(testProductDto);
+
+        assertEquals(testProductDto, productService.patch(1L, Map.of()));
+
+        verify(productRepository, never()).updateColumns(any(), any());
+        verify(eventPublisher, never()).publishEvent(any());
+    }
+
+    @Test
+    void conditionalUpdateShouldFailWithPreconditionWhenVersionChanged() {
+        when(productMapper.toEntity(testProductDto)).thenReturn(testProduct);
+        when(productRepository.updateProductIfVersion(1L, testProduct, Set.of(2L))).thenReturn(0);
+        when(productRepository.findVersionById(1L)).thenReturn(Optional.of(3L));
+
+        assertThrows(PreconditionFailedException.class, () -> productService.update(1L, testProductDto, Set.of(2L)));
+
+        verify(productRepository, never()).updateProduct(any(), any());
+        verify(eventPublisher, never()).publishEvent(any());
+    }
+
+    @Test
+    void conditionalDeleteShouldReportMissingProduct() {
+        when(productRepository.deleteProductByIdIfVersion(99L, Set.of(2L))).thenReturn(0);
+        when(productRepository.findVersionById(99L)).thenReturn(Optional.empty());
+
+        assertThrows(ProductNotFoundException.class, () -> productService.delete(99L, Set.of(2L)));
+    }
+
+    @Test
+    void wildcardUpdateShouldWriteAnyVersion() {
+        when(productMapper.toEntity(testProductDto)).thenReturn(testProduct);
+        when(productRepository.updateProduct(1L, testProduct)).thenReturn(1);
+        when(productMapper.withId(testProductDto, 1L)).thenReturn(testProductDto);
+
+        assertEquals(testProductDto, productService.update(1L, testProductDto, ProductETags.ANY_VERSION));
+
+        verify(productRepository, never()).updateProductIfVersion(any(), any(), any());
+    }
+
+    @Test
+    void wildcardWritesShouldFailWithPreconditionWhenProductIsMissing() {
+        when(productMapper.toEntity(testProductDto)).thenReturn(testProduct);
+        when(productRepository.updateProduct(99L, testProduct)).thenReturn(0);
+        when(productRepository.deleteProductById(99L)).thenReturn(0);
+
+        assertThrows(PreconditionFailedException.class, () -> productService.update(99L, testProductDto, ProductETags.ANY_VERSION));
+        assertThrows(PreconditionFailedException.class, () -> productService.delete(99L, ProductETags.ANY_VERSION));
+
+        verify(eventPublisher, never()).publishEvent(any());
+    }
+
+    @Test
+    void conditionalDeleteWithoutStrongTagsShouldNotWrite() {
+        when(productRepository.findVersionById(1L)).thenReturn(Optional.of(0L));
+
+        assertThrows(PreconditionFailedException.class, () -> productService.delete(1L, Set.of()));
+
+        verify(productRepository, never()).deleteProductByIdIfVersion(any(), any());
+    }
+
+    @Test
+    void findVersionByIdShouldQueryOnlyTheVersion() {
+        when(productRepository.findVersionById(1L)).thenReturn(Optional.of(4L));
+
+        assertEquals(4L, productService.findVersionById(1L));
+
+        verify(productRepository, never()).findById(any());
+    }
+
+    @Test
+    void deleteShouldDeleteProductWhenProductExists() {
+        when(productRepository.deleteProductById(1L)).thenReturn(1);
 
         productService.delete(1L);
 
-        verify(productRepository, times(1)).findById(1L);
-        verify(productRepository, times(1)).delete(testProduct);
+        verify(productRepository, times(1)).deleteProductById(1L);
+        verify(productRepository, never()).findById(any());
+        verify(eventPublisher).publishEvent(new ProductChangedEvent(ProductChangedEvent.Type.DELETED, 1L));
     }
 
     @Test
     void deleteShouldThrowExceptionWhenProductDoesNotExist() {
-        when(productRepository.findById(99L)).thenReturn(Optional.empty());
+        when(productRepository.deleteProductById(99L)).thenReturn(0);
 
         assertThrows(ProductNotFoundException.class, () -> {
             productService.delete(99L);
         });
 
-        verify(productRepository, times(1)).findById(99L);
-        verify(productRepository, never()).delete(any(Product.class));
+        verify(productRepository, times(1)).deleteProductById(99L);
+        verify(eventPublisher, never()).publishEvent(any());
+    }
+
+    @Test
+    void reserveStockShouldDecrementAndReturnRemainingStock() {
+        when(productRepository.reserveStock(1L, 3)).thenReturn(1);
+        when(productRepository.findStockById(1L)).thenReturn(Optional.of(7));
+
+        StockDto stock = productService.reserveStock(1L, 3);
+
+        assertEquals(new StockDto(1L, 7), stock);
+        verify(productRepository, never()).findById(any());
+        verify(eventPublisher).publishEvent(new ProductChangedEvent(ProductChangedEvent.Type.UPDATED, 1L, null,
+                ProductChangedEvent.STOCK_FIELDS));
+    }
+
+    @Test
+    void updateShouldReadTheNewVersionBackOnlyForTheChangeFeed() {
+        changeFeedProperties.setEnabled(true);
+        when(productMapper.toEntity(testProductDto)).thenReturn(testProduct);
+        when(productRepository.updateProduct(1L, testProduct)).thenReturn(1);
+        when(productRepository.updateProductIfVersion(1L, testProduct, Set.of(4L))).thenReturn(1);
+        when(productRepository.findVersionById(1L)).thenReturn(Optional.of(9L));
+
+        productService.update(1L, testProductDto);
+        productService.update(1L, testProductDto, Set.of(4L));
+
+        // The single If-Match version already tells the new one
+        verify(productRepository, times(1)).findVersionById(1L);
+        verify(eventPublisher).publishEvent(new ProductChangedEvent(ProductChangedEvent.Type.UPDATED, 1L, 9L,
+                ProductChangedEvent.ALL_FIELDS));
+        verify(eventPublisher).publishEvent(new ProductChangedEvent(ProductChangedEvent.Type.UPDATED, 1L, 5L,
+                ProductChangedEvent.ALL_FIELDS));
+    }
+
+    @Test
+    void reserveStockShouldThrowOutOfStockWhenNotEnoughUnits() {
+        when(productRepository.reserveStock(1L, 30)).thenReturn(0);
+        when(productRepository.findStockById(1L)).thenReturn(Optional.of(10));
+
+        OutOfStockException ex = assertThrows(OutOfStockException.class, () -> productService.reserveStock(1L, 30));
+
+        assertEquals("Not enough stock for product 1: requested 30, available 10", ex.getMessage());
+        verify(eventPublisher, never()).publishEvent(any());
+    }
+
+    @Test
+    void reserveStockShouldThrowNotFoundWhenProductDoesNotExist() {
+        when(productRepository.reserveStock(99L, 1)).thenReturn(0);
+        when(productRepository.findStockById(99L)).thenReturn(Optional.empty());
+
+        assertThrows(ProductNotFoundException.class, () -> productService.reserveStock(99L, 1));
+    }
+
+    @Test
+    void releaseStockShouldIncrementAndReturnStock() {
+        when(productRepository.releaseStock(1L, 2)).thenReturn(1);
+        when(productRepository.findStockById(1L)).thenReturn(Optional.of(12));
+
+        assertEquals(new StockDto(1L, 12), productService.releaseStock(1L, 2));
+    }
+
+    @Test
+    void releaseStockShouldThrowNotFoundWhenProductDoesNotExist() {
+        when(productRepository.releaseStock(99L, 2)).thenReturn(0);
+
+        assertThrows(ProductNotFoundException.class, () -> productService.releaseStock(99L, 2));
+        verify(eventPublisher, never()).publishEvent(any());
+    }
+
+    @Test
+    void releaseStockShouldConflictWhenTheStockWouldOverflow() {
+        when(productRepository.releaseStock(1L, Integer.MAX_VALUE)).thenReturn(0);
+        when(productRepository.findStockById(1L)).thenReturn(Optional.of(10));
+
+        assertThrows(StockLimitExceededException.class, () -> productService.releaseStock(1L, Integer.MAX_VALUE));
+        verify(eventPublisher, never()).publishEvent(any());
     }
 
     @Test
@@ -252,4 +584,202 @@ public class ProductServiceImplTest {
         verify(productRepository, times(1)).findAll(any(Sort.class));
         verify(productMapper, times(1)).toDtoList(productList);
     }
-}
\ No newline at end of file
+
+    @Test
+    void findPageOrderedByPriceShouldReturnFirstPageWithNextCursor() {
+        Product extra = Product.builder().id(3L).price(new BigDecimal("39.99")).build();
+        List<Product> fetched = Arrays.asList(productList.get(0), productList.get(1), extra);
+        when(productRepository.findAllByOrderByPriceAscIdAsc(PageRequest.of(0, 3))).thenReturn(fetched);
+        when(productMapper.toDtoList(productList)).thenReturn(productDtoList);
+
+        ProductPage page = productService.findPageOrderedByPrice(null, 2);
+
+        assertEquals(productDtoList, page.getItems());
+        ProductCursor next = ProductCursor.decode(page.getNextCursor());
+        assertEquals(0, new BigDecimal("29.99").compareTo(next.getPrice()));
+        assertEquals(2L, next.getId());
+    }
+
+    @Test
+    void findPageOrderedByPriceShouldSeekPastCursor() {
+        String cursor = new ProductCursor(new BigDecimal("19.99"), 1L).encode();
+        List<Product> fetched = Arrays.asList(productList.get(1));
+        when(productRepository.findPageAfter(new BigDecimal("19.99"), 1L, PageRequest.of(0, 21))).thenReturn(fetched);
+        when(productMapper.toDtoList(fetched)).thenReturn(Arrays.asList(productDtoList.get(1)));
+
+        ProductPage page = productService.findPageOrderedByPrice(cursor, null);
+
+        assertEquals(1, page.getItems().size());
+        assertNull(page.getNextCursor());
+        verify(productRepository, never()).findAllByOrderByPriceAscIdAsc(any(Pageable.class));
+    }
+
+    @Test
+    void findPageOrderedByPriceShouldCapPageSize() {
+        when(productRepository.findAllByOrderByPriceAscIdAsc(any(Pageable.class))).thenReturn(productList);
+        when(productMapper.toDtoList(productList)).thenReturn(productDtoList);
+
+        productService.findPageOrderedByPrice(null, 10_000);
+
+        verify(productRepository).findAllByOrderByPriceAscIdAsc(PageRequest.of(0, paginationProperties.getMaxPageSize() + 1));
+    }
+
+    @Test
+    void findPageOrderedByPriceShouldRejectInvalidInput() {
+        assertThrows(BadRequestException.class, () -> productService.findPageOrderedByPrice(null, 0));
+        assertThrows(BadRequestException.class, () -> productService.findPageOrderedByPrice("not a cursor", null));
+    }
+
+    @Test
+    void priceRangePageShouldBeServedFromPriceIndexWhenLoaded() {
+        ProductFilter filter = ProductFilter.builder().minPrice(BigDecimal.ONE).build();
+        String cursor = new ProductCursor(new BigDecimal("9.99"), 7L).encode();
+        when(priceIndex.isServing()).thenReturn(true);
+        when(priceIndex.page(BigDecimal.ONE, null, new BigDecimal("9.99"), 7L, 2))
+                .thenReturn(new ArrayList<>(productDtoList));
+
+        ProductPage page = productService.findPageOrderedByPrice(filter, cursor, 1);
+
+        assertEquals(List.of(productDtoList.get(0)), page.getItems());
+        ProductCursor next = ProductCursor.decode(page.getNextCursor());
+        assertEquals(0, new BigDecimal("19.99").compareTo(next.getPrice()));
+        assertEquals(1L, next.getId());
+        verifyNoInteractions(productRepository);
+    }
+
+    @Test
+    void stockFilterShouldNotBeServedFromPriceIndex() {
+        ProductFilter filter = ProductFilter.builder().inStock(true).build();
+        when(priceIndex.isServing()).thenReturn(true);
+        when(productRepository.findPage(filter, null, null, 21)).thenReturn(productList);
+        when(productMapper.toDtoList(productList)).thenReturn(productDtoList);
+
+        productService.findPageOrderedByPrice(filter, null, null);
+
+        verify(priceIndex, never()).page(any(), any(), any(), any(), anyInt());
+    }
+
+    @Test
+    void filteredPageShouldUseFilterQueryFromCursorPosition() {
+        ProductFilter filter = ProductFilter.builder().maxStock(5).namePrefix("prod").build();
+        String cursor = new ProductCursor(new BigDecimal("19.99"), 1L).encode();
+        List<Product> fetched = Arrays.asList(productList.get(1));
+        when(productRepository.findPage(filter, new BigDecimal("19.99"), 1L, 3)).thenReturn(fetched);
+        when(productMapper.toDtoList(fetched)).thenReturn(Arrays.asList(productDtoList.get(1)));
+
+        ProductPage page = productService.findPageOrderedByPrice(filter, cursor, 2);
+
+        assertEquals(1, page.getItems().size());
+        assertNull(page.getNextCursor());
+        verify(productRepository, never()).findPageAfter(any(), any(), any());
+    }
+
+    @Test
+    void blankNamePrefixShouldNotFilter() {
+        when(productRepository.findAllByOrderByPriceAscIdAsc(any(Pageable.class))).thenReturn(productList);
+        when(productMapper.toDtoList(productList)).thenReturn(productDtoList);
+
+        productService.findPageOrderedByPrice(ProductFilter.builder().namePrefix("  ").build(), null, null);
+
+        verify(productRepository, never()).findPage(any(), any(), any(), anyInt());
+    }
+
+    @Test
+    void filteredPageShouldRejectInvalidFilters() {
+        assertThrows(BadRequestException.class, () -> productService.findPageOrderedByPrice(ProductFilter.builder()
+                .minPrice(new BigDecimal("10")).maxPrice(new BigDecimal("9.99")).build(), null, null));
+        assertThrows(BadRequestException.class, () -> productService.findPageOrderedByPrice(ProductFilter.builder()
+                .maxStock(-1).build(), null, null));
+        verifyNoInteractions(productRepository);
+    }
+
+    @Test
+    void exportAllShouldMapAndDetachEveryProduct() {
+        Stream<Product> stream = productList.stream();
+        when(productRepository.streamAll()).thenReturn(stream);
+        when(productMapper.toDto(productList.get(0))).thenReturn(productDtoList.get(0));
+        when(productMapper.toDto(productList.get(1))).thenReturn(productDtoList.get(1));
+
+        List<ProductDto> exported = new ArrayList<>();
+        productService.exportAll(exported::add);
+
+        assertEquals(productDtoList, exported);
+        verify(entityManager).detach(productList.get(0));
+        verify(entityManager).detach(productList.get(1));
+    }
+
+    @Test
+    void findAllByIdsShouldKeepRequestedOrderAndReportMissingIds() {
+        when(productRepository.findAllById(Arrays.asList(2L, 99L, 1L))).thenReturn(productList);
+        when(productMapper.toDto(productList.get(0))).thenReturn(productDtoList.get(0));
+        when(productMapper.toDto(productList.get(1))).thenReturn(productDtoList.get(1));
+
+        ProductLookupResult result = productService.findAllByIds(Arrays.asList(2L, 99L, 1L, 2L));
+
+        assertEquals(Arrays.asList(productDtoList.get(1), productDtoList.get(0)), result.getProducts());
+        assertEquals(List.of(99L), result.getMissingIds());
+    }
+
+    @Test
+    void searchShouldReturnHitsInRankOrderAndDropDeletedOnes() {
+        when(searchIndex.search("producto", 20, 10))
+                .thenReturn(new ProductSearchIndex.Hits(23, Arrays.asList(2L, 99L, 1L)));
+        when(productRepository.findAllById(Arrays.asList(2L, 99L, 1L))).thenReturn(productList);
+        when(productMapper.toDto(productList.get(0))).thenReturn(productDtoList.get(0));
+        when(productMapper.toDto(productList.get(1))).thenReturn(productDtoList.get(1));
+
+        ProductSearchPage page = productService.search("producto", 2, 10);
+
+        assertEquals(Arrays.asList(productDtoList.get(1), productDtoList.get(0)), page.getItems());
+        assertEquals(23, page.getTotal());
+        assertEquals(2, page.getPage());
+        assertEquals(10, page.getSize());
+    }
+
+    @Test
+    void searchShouldRejectBlankQueryAndNegativePage() {
+        assertThrows(BadRequestException.class, () -> productService.search(" ", null, null));
+        assertThrows(BadRequestException.class, () -> productService.search("mesa", -1, null));
+        assertThrows(BadRequestException.class, () -> productService.search("mesa", null, 0));
+        verifyNoInteractions(searchIndex);
+    }
+
+    @Test
+    void suggestShouldCapLimitAndMapSuggestions() {
+        when(suggester.suggest("mes", 10)).thenReturn(List.of(
+                new ProductSuggestTrie.Suggestion(2L, "Mesada", 20, new BigDecimal("900.00"))));
+
+        List<ProductSuggestion> suggestions = productService.suggest("mes", 500);
+
+        assertEquals(List.of(new ProductSuggestion(2L, "Mesada", 20, new BigDecimal("900.00"))), suggestions);
+    }
+
+    @Test
+    void suggestShouldRejectBlankPrefixAndInvalidLimit() {
+        assertThrows(BadRequestException.class, () -> productService.suggest("", null));
+        assertThrows(BadRequestException.class, () -> productService.suggest("mes", 0));
+        verifyNoInteractions(suggester);
+    }
+
+    @Test
+    void findAllByIdsShouldQueryInChunks() {
+        lookupProperties.setChunkSize(2);
+        when(productRepository.findAllById(any())).thenReturn(List.of());
+
+        ProductLookupResult result = productService.findAllByIds(Arrays.asList(1L, 2L, 3L, 4L, 5L));
+
+        verify(productRepository).findAllById(Arrays.asList(1L, 2L));
+        verify(productRepository).findAllById(Arrays.asList(3L, 4L));
+        verify(productRepository).findAllById(List.of(5L));
+        assertEquals(5, result.getMissingIds().size());
+    }
+
+    @Test
+    void findAllByIdsShouldRejectEmptyAndOversizedRequests() {
+        lookupProperties.setMaxIds(2);
+
+        assertThrows(BadRequestException.class, () -> productService.findAllByIds(List.of()));
+        assertThrows(BadRequestException.class, () -> productService.findAllByIds(Arrays.asList(1L, 2L, 3L)));
+        verify(productRepository, never()).findAllById(any());
+    }
+}
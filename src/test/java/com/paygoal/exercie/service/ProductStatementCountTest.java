@@ -0,0 +1,130 @@
+package com.paygoal.exercie.service;
+
+import com.paygoal.exercie.dto.ProductDto;
+import com.paygoal.exercie.exception.ProductNotFoundException;
+import com.paygoal.exercie.search.ProductSearchIndex;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import javax.persistence.EntityManagerFactory;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Guards the number of JDBC statements issued by the write paths, so they cannot silently regress to one round trip per row.
+ */
+// Own database: a second context on the shared one would re-seed it and reset the id sequence under the first
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:statement-count;OPTIMIZE_REUSE_RESULTS=FALSE",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        // Keep the search index from reloading changed rows while statements are being counted
+        "products.search.refresh-delay=1h"
+})
+public class ProductStatementCountTest {
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private ProductSearchIndex searchIndex;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        searchIndex.refresh();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void updateShouldIssueSingleStatement() {
+        Long id = createProduct("to update");
+        statistics.clear();
+
+        productService.update(id, ProductDto.builder()
+                .name("updated")
+                .price(new BigDecimal("20.00"))
+                .stock(3)
+                .build());
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityLoadCount());
+        assertEquals("updated", productService.findById(id).getName());
+    }
+
+    @Test
+    void patchShouldUpdateOnlyGivenColumnsAndReadBack() {
+        Long id = createProduct("to patch");
+        statistics.clear();
+
+        ProductDto patched = productService.patch(id, Map.of("stock", 42));
+
+        // the targeted UPDATE plus the read of the resulting row
+        assertEquals(2, statistics.getPrepareStatementCount());
+        assertEquals(42, patched.getStock());
+        assertEquals("to patch", patched.getName());
+    }
+
+    @Test
+    void deleteShouldIssueSingleStatement() {
+        Long id = createProduct("to delete");
+        statistics.clear();
+
+        productService.delete(id);
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityLoadCount());
+    }
+
+    @Test
+    void updateAndDeleteOfMissingProductShouldIssueSingleStatement() {
+        assertThrows(ProductNotFoundException.class, () -> productService.delete(987654L));
+        assertThrows(ProductNotFoundException.class, () -> productService.update(987654L, ProductDto.builder()
+                .name("missing")
+                .price(BigDecimal.ONE)
+                .build()));
+
+        assertEquals(2, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void createAllShouldBatchInserts() {
+        List<ProductDto> products = IntStream.range(0, 200)
+                .mapToObj(i -> ProductDto.builder()
+                        .name("batched " + i)
+                        .price(new BigDecimal("10.00"))
+                        .stock(i)
+                        .build())
+                .collect(Collectors.toList());
+
+        List<ProductDto> created = productService.createAll(products);
+
+        assertEquals(200, created.size());
+        assertTrue(created.stream().allMatch(product -> product.getId() != null));
+        assertEquals(200, statistics.getEntityInsertCount());
+        // 4 insert batches of 50 plus at most one sequence call per 50 ids
+        assertTrue(statistics.getPrepareStatementCount() <= 10,
+                "expected batched inserts but got " + statistics.getPrepareStatementCount() + " statements");
+    }
+
+    private Long createProduct(String name) {
+        return productService.create(ProductDto.builder()
+                .name(name)
+                .price(new BigDecimal("10.00"))
+                .stock(1)
+                .build()).getId();
+    }
+}
@@ -0,0 +1,57 @@
+package com.paygoal.exercie.service;
+
+import com.paygoal.exercie.dto.ProductDto;
+import com.paygoal.exercie.exception.OutOfStockException;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+public class ProductStockConcurrencyTest {
+
+    private static final int THREADS = 16;
+    private static final int ATTEMPTS_PER_THREAD = 50;
+    private static final int INITIAL_STOCK = 500;
+
+    @Autowired
+    private ProductService productService;
+
+    @Test
+    void concurrentReservationsShouldNeverOversellOrLoseUnits() throws Exception {
+        Long id = productService.create(ProductDto.builder()
+                .name("hot sku")
+                .price(new BigDecimal("1.00"))
+                .stock(INITIAL_STOCK)
+                .build()).getId();
+
+        AtomicInteger reserved = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        for (int t = 0; t < THREADS; t++) {
+            executor.submit(() -> {
+                for (int i = 0; i < ATTEMPTS_PER_THREAD; i++) {
+                    try {
+                        productService.reserveStock(id, 1);
+                        reserved.incrementAndGet();
+                    } catch (OutOfStockException ex) {
+                        rejected.incrementAndGet();
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+
+        assertEquals(THREADS * ATTEMPTS_PER_THREAD, reserved.get() + rejected.get());
+        assertEquals(INITIAL_STOCK, reserved.get());
+        assertEquals(0, productService.findById(id).getStock());
+    }
+}
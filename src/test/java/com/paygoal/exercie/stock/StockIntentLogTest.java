@@ -0,0 +1,114 @@
+package com.paygoal.exercie.stock;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StockIntentLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void appendedDeltasShouldBeReadBackNetPerProduct() {
+        try (StockIntentLog intentLog = new StockIntentLog(directory, true, 1)) {
+            intentLog.append(1L, -3);
+            intentLog.append(2L, -1);
+            intentLog.append(1L, 5);
+        }
+
+        assertEquals(Map.of(1L, 2L, 2L, -1L), StockIntentLog.read(directory, 1));
+    }
+
+    @Test
+    void tornRecordAtTheEndShouldBeIgnored() throws IOException {
+        try (StockIntentLog intentLog = new StockIntentLog(directory, true, 1)) {
+            intentLog.append(1L, -3);
+            intentLog.append(1L, -4);
+        }
+        // A crash halfway through the next record
+        Files.write(StockIntentLog.segmentPath(directory, 1), new byte[]{0, 0, 0, 0, 0, 0, 0}, StandardOpenOption.APPEND);
+
+        assertEquals(Map.of(1L, -7L), StockIntentLog.read(directory, 1));
+    }
+
+    @Test
+    void corruptRecordShouldEndTheSegment() throws IOException {
+        try (StockIntentLog intentLog = new StockIntentLog(directory, true, 1)) {
+            intentLog.append(1L, -3);
+            intentLog.append(1L, -4);
+            intentLog.append(2L, -5);
+        }
+        try (RandomAccessFile file = new RandomAccessFile(StockIntentLog.segmentPath(directory, 1).toFile(), "rw")) {
+            // Last byte of the delta of the second record
+            file.seek(StockIntentLog.RECORD_SIZE + Long.BYTES + Integer.BYTES - 1);
+            file.write(9);
+        }
+
+        assertEquals(Map.of(1L, -3L), StockIntentLog.read(directory, 1));
+    }
+
+    @Test
+    void rotateShouldStartTheNextSegment() {
+        try (StockIntentLog intentLog = new StockIntentLog(directory, true, 7)) {
+            intentLog.append(1L, -1);
+            assertEquals(7, intentLog.rotate());
+            intentLog.append(1L, -2);
+            assertEquals(8, intentLog.rotate());
+            intentLog.append(1L, -4);
+
+            assertEquals(List.of(7L, 8L, 9L), StockIntentLog.segments(directory));
+            assertEquals(Map.of(1L, -2L), StockIntentLog.read(directory, 8));
+
+            intentLog.deleteUpTo(8);
+            assertEquals(List.of(9L), StockIntentLog.segments(directory));
+        }
+    }
+
+    @Test
+    void deleteUpToShouldKeepTheSegmentBeingWritten() {
+        try (StockIntentLog intentLog = new StockIntentLog(directory, true, 3)) {
+            intentLog.append(1L, -1);
+
+            intentLog.deleteUpTo(3);
+
+            assertEquals(List.of(3L), StockIntentLog.segments(directory));
+        }
+    }
+
+    @Test
+    void syncShouldCoverEveryRecordAppendedBeforeIt() {
+        try (StockIntentLog intentLog = new StockIntentLog(directory, true, 1)) {
+            long first = intentLog.append(1L, -1);
+            long second = intentLog.append(1L, -1);
+
+            intentLog.sync(second);
+            intentLog.sync(first);
+
+            assertEquals(1, intentLog.fsyncs());
+        }
+    }
+
+    @Test
+    void syncShouldBeSkippedWhenFsyncIsDisabled() {
+        try (StockIntentLog intentLog = new StockIntentLog(directory, false, 1)) {
+            intentLog.sync(intentLog.append(1L, -1));
+
+            assertEquals(0, intentLog.fsyncs());
+        }
+    }
+
+    @Test
+    void missingDirectoryShouldHaveNoSegments() {
+        assertEquals(List.of(), StockIntentLog.segments(directory.resolve("missing")));
+    }
+}
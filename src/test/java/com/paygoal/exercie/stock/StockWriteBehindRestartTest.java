@@ -0,0 +1,89 @@
+package com.paygoal.exercie.stock;
+
+import com.paygoal.exercie.PaygoalExerciseApplication;
+import com.paygoal.exercie.dto.ProductDto;
+import com.paygoal.exercie.service.ProductService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * With the product journal on, the stock comes back from the journal and the intent log replay must only add the
+ * deltas the journaled rows do not include yet.
+ */
+public class StockWriteBehindRestartTest {
+
+    @TempDir
+    Path journalDirectory;
+
+    @TempDir
+    Path logDirectory;
+
+    @TempDir
+    Path flushedSegment;
+
+    @Test
+    void restartShouldApplyEachDeltaOnceOnTopOfTheJournaledStock() throws IOException {
+        long id;
+        long untouched;
+        try (ConfigurableApplicationContext first = start("stock-write-behind-restart-1")) {
+            ProductService productService = first.getBean(ProductService.class);
+            StockWriteBehind writeBehind = first.getBean(StockWriteBehind.class);
+            // Journaled before any flush, it keeps the oldest checkpoint of the restore at 0
+            untouched = create(productService, "Mesa de reinicio");
+            id = create(productService, "Silla de reinicio");
+            writeBehind.reserve(id, 3);
+            // The segment as it is before the flush deletes it
+            FileSystemUtils.copyRecursively(logDirectory, flushedSegment);
+            writeBehind.flush();
+            writeBehind.reserve(id, 2);
+        }
+        // A delete that failed after the flush, the checkpoint row it was checked against is gone with the database
+        FileSystemUtils.copyRecursively(flushedSegment, logDirectory);
+        long flushed = StockIntentLog.segments(logDirectory).get(0);
+        // A delta answered but never flushed, as a crash leaves it
+        try (StockIntentLog crashed = new StockIntentLog(logDirectory, false, 1_000)) {
+            crashed.sync(crashed.append(id, -1));
+        }
+
+        try (ConfigurableApplicationContext second = start("stock-write-behind-restart-2")) {
+            JdbcTemplate jdbcTemplate = second.getBean(JdbcTemplate.class);
+            assertEquals(4, jdbcTemplate.queryForObject("SELECT stock FROM products WHERE id = ?", Integer.class, id));
+            assertEquals(4, second.getBean(ProductService.class).findById(id).getStock());
+            assertEquals(10, jdbcTemplate.queryForObject("SELECT stock FROM products WHERE id = ?", Integer.class, untouched));
+            assertFalse(Files.exists(StockIntentLog.segmentPath(logDirectory, flushed)));
+            assertFalse(Files.exists(StockIntentLog.segmentPath(logDirectory, 1_000)));
+        }
+    }
+
+    private static long create(ProductService productService, String name) {
+        return productService.create(ProductDto.builder()
+                .name(name)
+                .price(new BigDecimal("100.00"))
+                .stock(10)
+                .build()).getId();
+    }
+
+    private ConfigurableApplicationContext start(String database) {
+        return new SpringApplicationBuilder(PaygoalExerciseApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.main.banner-mode=off",
+                        "--spring.datasource.url=jdbc:h2:mem:" + database + ";OPTIMIZE_REUSE_RESULTS=FALSE",
+                        "--products.journal.enabled=true",
+                        "--products.journal.directory=" + journalDirectory,
+                        "--products.stock-write-behind.enabled=true",
+                        "--products.stock-write-behind.log-directory=" + logDirectory,
+                        "--products.stock-write-behind.flush-interval=1h");
+    }
+}
@@ -0,0 +1,283 @@
+package com.paygoal.exercie.stock;
+
+import com.paygoal.exercie.configuration.StockWriteBehindProperties;
+import com.paygoal.exercie.dto.ProductDto;
+import com.paygoal.exercie.event.ProductChangedEvent;
+import com.paygoal.exercie.exception.OutOfStockException;
+import com.paygoal.exercie.exception.ProductNotFoundException;
+import com.paygoal.exercie.exception.StockLimitExceededException;
+import com.paygoal.exercie.journal.ProductJournalRestore;
+import com.paygoal.exercie.repository.ProductRepository;
+import com.paygoal.exercie.service.ProductService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Stock deltas accepted in memory must reach the table exactly once, flushed or replayed after a crash.
+ */
+// Own database: the checkpoint row and the stock of the products are shared by every write-behind built here
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:stock-write-behind;OPTIMIZE_REUSE_RESULTS=FALSE")
+public class StockWriteBehindTest {
+
+    @TempDir
+    Path logDirectory;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private ProductJournalRestore journalRestore;
+
+    private final StockWriteBehindProperties properties = new StockWriteBehindProperties();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final List<StockWriteBehind> started = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        properties.setEnabled(true);
+        properties.setLogDirectory(logDirectory);
+        // Only the explicit flushes write, unless a test lowers the threshold
+        properties.setFlushInterval(Duration.ofHours(1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        started.forEach(StockWriteBehind::stop);
+    }
+
+    @Test
+    void deltasShouldBeVisibleBeforeTheyAreWritten() {
+        Long id = createProduct(10);
+        StockWriteBehind writeBehind = start();
+
+        assertEquals(7, writeBehind.reserve(id, 3).getStock());
+        assertEquals(8, writeBehind.release(id, 1).getStock());
+
+        ProductDto loaded = productService.findById(id);
+        assertEquals(8, writeBehind.withPendingStock(loaded).getStock());
+        // Readers may share the product given, it is never changed
+        assertEquals(10, loaded.getStock());
+        assertTrue(writeBehind.hasPendingDeltas(id));
+        assertEquals(10, productRepository.findStockById(id).orElseThrow());
+    }
+
+    @Test
+    void flushShouldWriteTheNetDeltaOnce() {
+        Long id = createProduct(10);
+        long version = productService.findById(id).getVersion();
+        StockWriteBehind writeBehind = start();
+        for (int i = 0; i < 5; i++) {
+            writeBehind.reserve(id, 1);
+        }
+        writeBehind.release(id, 2);
+
+        writeBehind.flush();
+
+        ProductDto product = productService.findById(id);
+        assertEquals(7, product.getStock());
+        assertEquals(version + 1, product.getVersion());
+        assertFalse(writeBehind.hasPendingDeltas(id));
+        assertEquals(6.0, registry.get("products.stock.write.behind.deltas").functionCounter().count());
+        assertEquals(1.0, registry.get("products.stock.write.behind.rows").functionCounter().count());
+        // Only the segment being written is left
+        assertEquals(1, StockIntentLog.segments(logDirectory).size());
+    }
+
+    @Test
+    void reservationBeyondTheStockShouldBeRejected() {
+        Long id = createProduct(2);
+        StockWriteBehind writeBehind = start();
+        writeBehind.reserve(id, 2);
+
+        OutOfStockException ex = assertThrows(OutOfStockException.class, () -> writeBehind.reserve(id, 1));
+
+        assertEquals("Not enough stock for product " + id + ": requested 1, available 0", ex.getMessage());
+        assertThrows(ProductNotFoundException.class, () -> writeBehind.reserve(999_999L, 1));
+    }
+
+    @Test
+    void releaseBeyondTheStockColumnShouldBeRejected() {
+        Long id = createProduct(10);
+        StockWriteBehind writeBehind = start();
+
+        StockLimitExceededException ex = assertThrows(StockLimitExceededException.class,
+                () -> writeBehind.release(id, Integer.MAX_VALUE));
+
+        assertEquals("Stock of product " + id + " cannot exceed " + Integer.MAX_VALUE + ": releasing "
+                + Integer.MAX_VALUE + " onto 10", ex.getMessage());
+        assertEquals(Integer.MAX_VALUE, writeBehind.release(id, Integer.MAX_VALUE - 10).getStock());
+        writeBehind.flush();
+        assertEquals(Integer.MAX_VALUE, productRepository.findStockById(id).orElseThrow());
+    }
+
+    @Test
+    void rowThatCannotTakeItsDeltaShouldNotBlockTheOtherProducts() {
+        Long raised = createProduct(10);
+        Long other = createProduct(10);
+        StockWriteBehind writeBehind = start();
+        writeBehind.release(raised, 5);
+        writeBehind.reserve(other, 3);
+        // Written around the service, so no re-seed accounts for it
+        jdbcTemplate.update("UPDATE products SET stock = ? WHERE id = ?", Integer.MAX_VALUE - 1, raised);
+
+        writeBehind.flush();
+
+        assertEquals(7, productRepository.findStockById(other).orElseThrow());
+        assertFalse(writeBehind.hasPendingDeltas(other));
+        assertEquals(Integer.MAX_VALUE - 1, productRepository.findStockById(raised).orElseThrow());
+        assertTrue(writeBehind.hasPendingDeltas(raised));
+        // The kept delta is logged past the checkpoint, where a replay would still find it
+        assertEquals(5, StockIntentLog.read(logDirectory, StockIntentLog.segments(logDirectory).get(0)).get(raised));
+
+        jdbcTemplate.update("UPDATE products SET stock = 0 WHERE id = ?", raised);
+        writeBehind.flush();
+
+        assertEquals(5, productRepository.findStockById(raised).orElseThrow());
+        assertFalse(writeBehind.hasPendingDeltas(raised));
+    }
+
+    @Test
+    void concurrentReservationsShouldNeverOversell() throws Exception {
+        Long id = createProduct(500);
+        // Flushes run while reservations keep coming
+        properties.setFlushThreshold(50);
+        StockWriteBehind writeBehind = start();
+        AtomicInteger reserved = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        for (int t = 0; t < 16; t++) {
+            executor.submit(() -> {
+                for (int i = 0; i < 50; i++) {
+                    try {
+                        writeBehind.reserve(id, 1);
+                        reserved.incrementAndGet();
+                    } catch (OutOfStockException ignored) {
+                        // counted as not reserved
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+
+        writeBehind.flush();
+
+        assertEquals(500, reserved.get());
+        assertEquals(0, productRepository.findStockById(id).orElseThrow());
+    }
+
+    @Test
+    void flushShouldDoNothingWhenDisabled() {
+        properties.setEnabled(false);
+        StockWriteBehind writeBehind = start();
+
+        assertDoesNotThrow(writeBehind::flush);
+        assertFalse(writeBehind.isRunning());
+    }
+
+    @Test
+    void flushShouldDoNothingOnceStopped() {
+        StockWriteBehind writeBehind = start();
+        writeBehind.stop();
+
+        assertDoesNotThrow(writeBehind::flush);
+        assertFalse(writeBehind.isRunning());
+    }
+
+    @Test
+    void deltasLeftByACrashShouldBeAppliedOnceAtStartup() {
+        Long id = createProduct(10);
+        long next = jdbcTemplate.queryForObject("SELECT applied_segment FROM stock_intent_checkpoint WHERE id = 1", Long.class) + 1;
+        // What a crash leaves behind: segments written and synced, never flushed
+        try (StockIntentLog intentLog = new StockIntentLog(logDirectory, true, next)) {
+            intentLog.append(id, -3);
+            intentLog.rotate();
+            intentLog.append(id, -2);
+            intentLog.append(id, 1);
+        }
+
+        start();
+        assertEquals(6, productRepository.findStockById(id).orElseThrow());
+
+        // The replayed segments are gone and the checkpoint is past them
+        start();
+        assertEquals(6, productRepository.findStockById(id).orElseThrow());
+    }
+
+    @Test
+    void directUpdateShouldReseedTheCountKeepingPendingDeltas() {
+        Long id = createProduct(10);
+        StockWriteBehind writeBehind = start();
+        writeBehind.reserve(id, 2);
+
+        ProductDto product = productService.findById(id);
+        product.setStock(50);
+        productService.update(id, product);
+        writeBehind.onProductChanged(new ProductChangedEvent(ProductChangedEvent.Type.UPDATED, id));
+        writeBehind.flush();
+
+        assertEquals(48, writeBehind.withPendingStock(productService.findById(id)).getStock());
+        assertEquals(48, productRepository.findStockById(id).orElseThrow());
+    }
+
+    @Test
+    void deltasOfADeletedProductShouldBeDropped() {
+        Long id = createProduct(10);
+        StockWriteBehind writeBehind = start();
+        writeBehind.reserve(id, 2);
+
+        productService.delete(id);
+        writeBehind.flush();
+
+        assertFalse(writeBehind.hasPendingDeltas(id));
+        assertThrows(ProductNotFoundException.class, () -> writeBehind.reserve(id, 1));
+    }
+
+    private StockWriteBehind start() {
+        StockWriteBehind writeBehind = new StockWriteBehind(properties, productRepository, jdbcTemplate,
+                transactionManager, eventPublisher, journalRestore);
+        writeBehind.bindTo(registry);
+        writeBehind.start();
+        started.add(writeBehind);
+        return writeBehind;
+    }
+
+    private Long createProduct(int stock) {
+        return productService.create(ProductDto.builder()
+                .name("hot sku")
+                .price(new BigDecimal("1.00"))
+                .stock(stock)
+                .build()).getId();
+    }
+}
@@ -0,0 +1,34 @@
+package com.paygoal.exercie.utils;
+
+import com.paygoal.exercie.exception.BadRequestException;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProductCursorTest {
+
+    @Test
+    void encodeAndDecodeShouldRoundTrip() {
+        ProductCursor cursor = new ProductCursor(new BigDecimal("120000.50"), 42L);
+
+        ProductCursor decoded = ProductCursor.decode(cursor.encode());
+
+        assertEquals(cursor, decoded);
+    }
+
+    @Test
+    void encodedCursorShouldBeUrlSafe() {
+        String token = new ProductCursor(new BigDecimal("99999999.99"), Long.MAX_VALUE).encode();
+
+        assertTrue(token.matches("[A-Za-z0-9_-]+"));
+    }
+
+    @Test
+    void decodeShouldRejectGarbage() {
+        assertThrows(BadRequestException.class, () -> ProductCursor.decode("%%%"));
+        assertThrows(BadRequestException.class, () -> ProductCursor.decode("bm9zZXBhcmF0b3I"));
+        assertThrows(BadRequestException.class, () -> ProductCursor.decode("YWJjOmRlZg"));
+    }
+}
@@ -0,0 +1,54 @@
+package com.paygoal.exercie.utils;
+
+import com.paygoal.exercie.dto.ProductDto;
+import com.paygoal.exercie.repository.ProductRepository;
+import com.paygoal.exercie.service.ProductService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:seed;OPTIMIZE_REUSE_RESULTS=FALSE",
+        "products.seed.count=2500",
+        "products.seed.batch-size=1000"
+})
+public class ProductDataGeneratorTest {
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ProductService productService;
+
+    @Test
+    void seedShouldReplaceCatalogAndKeepSequenceAhead() {
+        // The 10 seeded rows are gone, ids are 1..count
+        assertEquals(2500, productRepository.count());
+        assertFalse(productRepository.findById(1L).orElseThrow().getName().startsWith("mesa redonda"));
+        assertTrue(productRepository.existsById(2500L));
+
+        ProductDto created = productService.create(ProductDto.builder()
+                .name("after seed")
+                .price(BigDecimal.TEN)
+                .stock(1)
+                .build());
+        assertEquals(2501L, created.getId());
+    }
+
+    @Test
+    void seededProductsShouldBeValid() {
+        productRepository.findAllById(LongStream.rangeClosed(1, 2500).boxed()
+                .collect(Collectors.toList())).forEach(product -> {
+            assertFalse(product.getName().isBlank());
+            assertTrue(product.getPrice().compareTo(new BigDecimal("1000")) >= 0);
+            assertTrue(product.getPrice().compareTo(new BigDecimal("1000000")) <= 0);
+            assertTrue(product.getStock() >= 0);
+        });
+    }
+}
@@ -0,0 +1,59 @@
+package com.paygoal.exercie.utils;
+
+import com.paygoal.exercie.dto.ProductDto;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProductETagsTest {
+
+    @Test
+    void versionShouldBeQuoted() {
+        assertEquals("\"7\"", ProductETags.of(7L));
+    }
+
+    @Test
+    void pageTagShouldChangeWithAnyVersion() {
+        List<ProductDto> page = List.of(product(1L, 0L), product(2L, 0L));
+        List<ProductDto> changed = List.of(product(1L, 0L), product(2L, 1L));
+
+        assertEquals(ProductETags.of(page, null), ProductETags.of(List.of(product(1L, 0L), product(2L, 0L)), null));
+        assertNotEquals(ProductETags.of(page, null), ProductETags.of(changed, null));
+        assertNotEquals(ProductETags.of(page, null), ProductETags.of(page, "next"));
+    }
+
+    @Test
+    void gzipTagShouldDifferFromTheIdentityTag() {
+        assertEquals("\"abc-gzip\"", ProductETags.gzipOf("\"abc\""));
+    }
+
+    @Test
+    void matchedByShouldCompareWeaklyAndPreferTheFirstTag() {
+        assertEquals("\"b\"", ProductETags.matchedBy("\"x\", W/\"b\"", "\"a\"", "\"b\""));
+        assertEquals("\"a\"", ProductETags.matchedBy("*", "\"a\"", "\"b\""));
+        assertNull(ProductETags.matchedBy("\"c\"", "\"a\"", "\"b\""));
+    }
+
+    @Test
+    void versionsOfShouldKeepOnlyStrongTags() {
+        assertEquals(Set.of(3L, 5L), ProductETags.versionsOf("\"3\", W/\"4\", \"5\", \"abc\", 6"));
+        assertTrue(ProductETags.versionsOf("W/\"4\"").isEmpty());
+    }
+
+    @Test
+    void versionsOfShouldAcceptAnyVersionForWildcard() {
+        assertSame(ProductETags.ANY_VERSION, ProductETags.versionsOf("*"));
+        assertSame(ProductETags.ANY_VERSION, ProductETags.versionsOf("\"3\", *"));
+        assertTrue(ProductETags.isAnyVersion(ProductETags.versionsOf("*")));
+        // An empty set matches nothing, only the wildcard itself matches any version
+        assertFalse(ProductETags.isAnyVersion(Set.of()));
+        assertFalse(ProductETags.isAnyVersion(null));
+    }
+
+    private static ProductDto product(Long id, Long version) {
+        return ProductDto.builder().id(id).version(version).build();
+    }
+}
@@ -0,0 +1,177 @@
+package com.paygoal.exercie.utils;
+
+import com.paygoal.exercie.dto.ProductBatchRequest;
+import com.paygoal.exercie.dto.ProductDto;
+import com.paygoal.exercie.dto.ProductLookupResult;
+import com.paygoal.exercie.proto.ErrorResponse;
+import com.paygoal.exercie.proto.Product;
+import com.paygoal.exercie.proto.ProductList;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.mock.http.MockHttpInputMessage;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.paygoal.exercie.utils.ProductProtobufHttpMessageConverter.PROTOBUF;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProductProtobufHttpMessageConverterTest {
+
+    private static final Type PRODUCT_LIST = new ParameterizedTypeReference<List<ProductDto>>() {
+    }.getType();
+
+    private final ProductProtobufHttpMessageConverter converter = new ProductProtobufHttpMessageConverter();
+
+    @Test
+    void productShouldRoundTrip() throws IOException {
+        ProductDto productDto = product(1L, "Lampara", new BigDecimal("1500.50"));
+
+        MockHttpOutputMessage output = write(productDto, ProductDto.class);
+
+        assertEquals(PROTOBUF, output.getHeaders().getContentType());
+        assertEquals(productDto, converter.read(ProductDto.class, null, new MockHttpInputMessage(output.getBodyAsBytes())));
+    }
+
+    @Test
+    void missingFieldsShouldStayNull() throws IOException {
+        ProductDto productDto = ProductDto.builder().stock(0).build();
+
+        ProductDto read = (ProductDto) converter.read(ProductDto.class, null,
+                new MockHttpInputMessage(write(productDto, ProductDto.class).getBodyAsBytes()));
+
+        assertNull(read.getId());
+        assertNull(read.getName());
+        assertNull(read.getDescription());
+        assertNull(read.getPrice());
+        assertEquals(0, read.getStock());
+    }
+
+    @Test
+    void pricesShouldKeepTheirScaleAndPrecision() {
+        for (String price : new String[]{"0.00", "0.01", "-3.50", "99999999999999999.99", "123456789012345678901234567890.12"}) {
+            ProductDto productDto = product(1L, "Lampara", new BigDecimal(price));
+
+            assertEquals(new BigDecimal(price), ProductProtobufHttpMessageConverter.fromProto(
+                    ProductProtobufHttpMessageConverter.toProto(productDto)).getPrice());
+        }
+    }
+
+    @Test
+    void listShouldBeWrittenAsProductList() throws IOException {
+        List<ProductDto> products = List.of(product(1L, "Lampara", new BigDecimal("10.00")),
+                product(2L, "Mesa", new BigDecimal("20.00")));
+
+        ProductList list = ProductList.parseFrom(write(products, PRODUCT_LIST).getBodyAsBytes());
+
+        assertEquals(2, list.getProductsCount());
+        assertEquals("Mesa", list.getProducts(1).getName());
+        assertEquals(products.get(0), ProductProtobufHttpMessageConverter.fromProto(list.getProducts(0)));
+    }
+
+    @Test
+    void batchShouldBeReadFromProductList() throws IOException {
+        ProductList list = ProductList.newBuilder()
+                .addProducts(ProductProtobufHttpMessageConverter.toProto(product(null, "Lampara", new BigDecimal("10.00"))))
+                .addProducts(ProductProtobufHttpMessageConverter.toProto(product(null, "Mesa", new BigDecimal("20.00"))))
+                .build();
+
+        ProductBatchRequest request = (ProductBatchRequest) converter.read(ProductBatchRequest.class, null,
+                new MockHttpInputMessage(list.toByteArray()));
+
+        assertEquals(2, request.getProducts().size());
+        assertEquals("Mesa", request.getProducts().get(1).getName());
+        assertNull(request.getProducts().get(0).getId());
+    }
+
+    @Test
+    void lookupResultShouldKeepProductsAndMissingIds() throws IOException {
+        ProductLookupResult result = new ProductLookupResult(List.of(product(3L, "Silla", new BigDecimal("5.00"))), List.of(42L, 43L));
+
+        com.paygoal.exercie.proto.ProductLookupResult message = com.paygoal.exercie.proto.ProductLookupResult.parseFrom(
+                write(result, ProductLookupResult.class).getBodyAsBytes());
+
+        assertEquals(List.of(42L, 43L), message.getMissingIdsList());
+        assertEquals(result.getProducts().get(0), ProductProtobufHttpMessageConverter.fromProto(message.getProducts(0)));
+    }
+
+    @Test
+    void errorBodiesShouldBeWrittenAsErrorResponse() throws IOException {
+        Map<String, Object> errors = new LinkedHashMap<>();
+        errors.put("status", 400);
+        errors.put("timestamp", "2024-01-01T00:00");
+        errors.put("errors", Map.of("price", "Price must be greater than 0"));
+
+        ErrorResponse error = ErrorResponse.parseFrom(write(errors, Map.class).getBodyAsBytes());
+
+        assertEquals(400, error.getStatus());
+        assertEquals("2024-01-01T00:00", error.getTimestamp());
+        assertFalse(error.hasMessage());
+        assertEquals("Price must be greater than 0", error.getErrorsMap().get("price"));
+    }
+
+    @Test
+    void onlyProductPayloadsShouldBeSupported() {
+        assertTrue(converter.canRead(ProductDto.class, null, PROTOBUF));
+        assertTrue(converter.canRead(ProductBatchRequest.class, null, PROTOBUF));
+        assertFalse(converter.canRead(ProductDto.class, null, MediaType.APPLICATION_JSON));
+        assertFalse(converter.canRead(String.class, null, PROTOBUF));
+
+        assertTrue(converter.canWrite(PRODUCT_LIST, List.class, PROTOBUF));
+        assertTrue(converter.canWrite(List.class, List.class, PROTOBUF));
+        assertFalse(converter.canWrite(new ParameterizedTypeReference<List<String>>() {
+        }.getType(), List.class, PROTOBUF));
+        assertFalse(converter.canWrite(String.class, String.class, PROTOBUF));
+    }
+
+    @Test
+    void listOfOtherElementsShouldNotBeWritable() {
+        assertThrows(HttpMessageNotWritableException.class, () -> write(List.of("Lampara"), List.class));
+    }
+
+    @Test
+    void invalidBytesShouldNotBeReadable() {
+        MockHttpInputMessage input = new MockHttpInputMessage(new byte[]{(byte) 0xff, (byte) 0xff, (byte) 0xff});
+
+        assertThrows(HttpMessageNotReadableException.class, () -> converter.read(ProductDto.class, null, input));
+    }
+
+    @Test
+    void unknownFieldsShouldBeIgnored() throws IOException {
+        byte[] bytes = Product.newBuilder().setName("Lampara").setStock(2).build().toByteArray();
+        byte[] withUnknownField = new byte[bytes.length + 2];
+        System.arraycopy(bytes, 0, withUnknownField, 0, bytes.length);
+        // Field 15, varint 1
+        withUnknownField[bytes.length] = (byte) (15 << 3);
+        withUnknownField[bytes.length + 1] = 1;
+
+        ProductDto read = (ProductDto) converter.read(ProductDto.class, null, new MockHttpInputMessage(withUnknownField));
+
+        assertEquals("Lampara", read.getName());
+        assertEquals(2, read.getStock());
+    }
+
+    private MockHttpOutputMessage write(Object body, Type type) throws IOException {
+        MockHttpOutputMessage output = new MockHttpOutputMessage();
+        converter.write(body, type, PROTOBUF, output);
+        return output;
+    }
+
+    private static ProductDto product(Long id, String name, BigDecimal price) {
+        return ProductDto.builder()
+                .id(id)
+                .name(name)
+                .description("Descripcion de " + name)
+                .price(price)
+                .stock(7)
+                .build();
+    }
+}
@@ -0,0 +1,25 @@
+package com.paygoal.exercie.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TextNormalizerTest {
+
+    @Test
+    void foldShouldRemoveAccentsAndCase() {
+        assertEquals("lampara sofa nino", TextNormalizer.fold("Lámpara SOFÁ niño"));
+    }
+
+    @Test
+    void tokensShouldSplitOnPunctuationAndDropStopWords() {
+        assertEquals(List.of("mesa", "roble", "120cm"), TextNormalizer.tokens("Mesa de roble, 120cm."));
+    }
+
+    @Test
+    void tokensOfNullShouldBeEmpty() {
+        assertTrue(TextNormalizer.tokens(null).isEmpty());
+    }
+}